@@ -3,6 +3,7 @@ package com.google.android.exoplayer2.demo;
 import android.os.Handler;
 
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
 import com.google.android.exoplayer2.LoadControl;
 import com.google.android.exoplayer2.Renderer;
 import com.google.android.exoplayer2.source.TrackGroupArray;
@@ -52,6 +53,14 @@ public class CustomLoadControl implements LoadControl {
 
     public static int VIDEO_BUFFER_SCALE_UP_FACTOR = 4;
 
+    /**
+     * The maximum duration of media to retain behind the playback position, in milliseconds. The
+     * duration actually retained is scaled by the fraction of the target buffer size that is not
+     * allocated, so that the back-buffer gives way to media ahead of the playback position, but
+     * never drops below {@link DefaultLoadControl#MIN_BACK_BUFFER_SHARE_PERCENT} percent of it.
+     */
+    public static final int DEFAULT_BACK_BUFFER_DURATION_MS = 30000;
+
     public static final int LOADING_PRIORITY = 0;
 
     private final DefaultAllocator allocator;
@@ -66,6 +75,8 @@ public class CustomLoadControl implements LoadControl {
 
     private int targetBufferSize;
     private boolean isBuffering;
+    private volatile int backwardSeekCount;
+    private volatile int backwardSeekInBufferCount;
 
     private EventListener bufferedDurationListener;
     private Handler eventHandler;
@@ -214,12 +225,44 @@ public class CustomLoadControl implements LoadControl {
 
     @Override
     public long getBackBufferDurationUs() {
-        return 0;
+        if (targetBufferSize <= 0) {
+            return 0;
+        }
+        long unallocatedBytes = Math.max(0, targetBufferSize - allocator.getTotalBytesAllocated());
+        long reservedBytes =
+                (long) targetBufferSize * DefaultLoadControl.MIN_BACK_BUFFER_SHARE_PERCENT / 100;
+        return DEFAULT_BACK_BUFFER_DURATION_MS * 1000L * Math.max(unallocatedBytes, reservedBytes)
+                / targetBufferSize;
     }
 
     @Override
     public boolean retainBackBufferFromKeyframe() {
-        return false;
+        // Discard whole groups of pictures, oldest first, so that every retained sample can be
+        // decoded after a backward seek.
+        return true;
+    }
+
+    @Override
+    public void onBackwardSeek(long seekBackDurationUs, boolean inBuffer) {
+        backwardSeekCount++;
+        if (inBuffer) {
+            backwardSeekInBufferCount++;
+        }
+    }
+
+    /**
+     * Returns the number of seeks to an earlier position in the playing period.
+     */
+    public int getBackwardSeekCount() {
+        return backwardSeekCount;
+    }
+
+    /**
+     * Returns the number of seeks to an earlier position in the playing period that were to a
+     * position in the back-buffer.
+     */
+    public int getBackwardSeekInBufferCount() {
+        return backwardSeekInBufferCount;
     }
 
     @Override
@@ -295,6 +338,13 @@ public class CustomLoadControl implements LoadControl {
 
 
 
+    @Override
+    public int getUpcomingPeriodsTargetBufferBytes(int playingPeriodBytesAllocated) {
+        // Buffer time is prioritized over size, so upcoming periods are only limited by
+        // shouldContinueLoading.
+        return C.LENGTH_UNSET;
+    }
+
     @Override
     public boolean shouldStartPlayback(
             long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
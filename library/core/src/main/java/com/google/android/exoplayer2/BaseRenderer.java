@@ -29,6 +29,13 @@ import java.io.IOException;
  */
 public abstract class BaseRenderer implements Renderer, RendererCapabilities {
 
+  /**
+   * The default value returned by {@link #getMaxRenderDelayUs()}, which corresponds to the
+   * interval at which the player calls {@link #render(long, long)} during playback when no
+   * renderer reports a longer delay.
+   */
+  protected static final long DEFAULT_MAX_RENDER_DELAY_US = 10000;
+
   private final int trackType;
 
   private RendererConfiguration configuration;
@@ -150,6 +157,16 @@ public abstract class BaseRenderer implements Renderer, RendererCapabilities {
     onDisabled();
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The default implementation returns {@link #DEFAULT_MAX_RENDER_DELAY_US}.
+   */
+  @Override
+  public long getMaxRenderDelayUs() {
+    return DEFAULT_MAX_RENDER_DELAY_US;
+  }
+
   // RendererCapabilities implementation.
 
   @Override
@@ -60,6 +60,28 @@ public class DefaultLoadControl implements LoadControl {
   /** The default prioritization of buffer time constraints over size constraints. */
   public static final boolean DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS = true;
 
+  /**
+   * The default maximum duration of media to retain behind the playback position, in milliseconds.
+   */
+  public static final int DEFAULT_BACK_BUFFER_DURATION_MS = 0;
+
+  /**
+   * The share of the target buffer size reserved for the back-buffer, as a percentage. At least this
+   * share of the maximum back-buffer duration is retained, even when the whole target buffer size
+   * is allocated.
+   */
+  public static final int MIN_BACK_BUFFER_SHARE_PERCENT = 25;
+
+  /** The default for whether the back-buffer is retained from the previous keyframe. */
+  public static final boolean DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME = false;
+
+  /**
+   * The default maximum number of bytes that periods after the playing period may hold. When set to
+   * {@link C#LENGTH_UNSET}, upcoming periods are only limited by {@link
+   * #shouldContinueLoading(long, float)}.
+   */
+  public static final int DEFAULT_UPCOMING_PERIODS_MAX_BUFFER_BYTES = C.LENGTH_UNSET;
+
   private final DefaultAllocator allocator;
 
   private final long minBufferUs;
@@ -69,9 +91,14 @@ public class DefaultLoadControl implements LoadControl {
   private final int targetBufferBytesOverwrite;
   private final boolean prioritizeTimeOverSizeThresholds;
   private final PriorityTaskManager priorityTaskManager;
+  private final long backBufferDurationUs;
+  private final boolean retainBackBufferFromKeyframe;
+  private final int upcomingPeriodsMaxBufferBytes;
 
   private int targetBufferSize;
   private boolean isBuffering;
+  private volatile int backwardSeekCount;
+  private volatile int backwardSeekInBufferCount;
 
   /**
    * Constructs a new instance, using the {@code DEFAULT_*} constants defined in this class.
@@ -163,6 +190,118 @@ public class DefaultLoadControl implements LoadControl {
       int targetBufferBytes,
       boolean prioritizeTimeOverSizeThresholds,
       PriorityTaskManager priorityTaskManager) {
+    this(
+        allocator,
+        minBufferMs,
+        maxBufferMs,
+        bufferForPlaybackMs,
+        bufferForPlaybackAfterRebufferMs,
+        targetBufferBytes,
+        prioritizeTimeOverSizeThresholds,
+        priorityTaskManager,
+        DEFAULT_BACK_BUFFER_DURATION_MS,
+        DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME);
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param allocator The {@link DefaultAllocator} used by the loader.
+   * @param minBufferMs The minimum duration of media that the player will attempt to ensure is
+   *     buffered at all times, in milliseconds.
+   * @param maxBufferMs The maximum duration of media that the player will attempt buffer, in
+   *     milliseconds.
+   * @param bufferForPlaybackMs The duration of media that must be buffered for playback to start or
+   *     resume following a user action such as a seek, in milliseconds.
+   * @param bufferForPlaybackAfterRebufferMs The default duration of media that must be buffered for
+   *     playback to resume after a rebuffer, in milliseconds. A rebuffer is defined to be caused by
+   *     buffer depletion rather than a user action.
+   * @param targetBufferBytes The target buffer size in bytes. If set to {@link C#LENGTH_UNSET}, the
+   *     target buffer size will be calculated using {@link #calculateTargetBufferSize(Renderer[],
+   *     TrackSelectionArray)}.
+   * @param prioritizeTimeOverSizeThresholds Whether the load control prioritizes buffer time
+   *     constraints over buffer size constraints.
+   * @param priorityTaskManager If not null, registers itself as a task with priority {@link
+   *     C#PRIORITY_PLAYBACK} during loading periods, and unregisters itself during draining
+   * @param backBufferDurationMs The maximum duration of media to retain behind the playback
+   *     position, in milliseconds. The duration actually retained is scaled by the fraction of the
+   *     target buffer size that is not allocated, so that the back-buffer gives way to media ahead
+   *     of the playback position as memory fills up, but never drops below {@link
+   *     #MIN_BACK_BUFFER_SHARE_PERCENT} percent of this duration.
+   * @param retainBackBufferFromKeyframe Whether the back-buffer is retained from the keyframe
+   *     before its start. If true, media is discarded a whole group of pictures at a time, oldest
+   *     first.
+   */
+  public DefaultLoadControl(
+      DefaultAllocator allocator,
+      int minBufferMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs,
+      int targetBufferBytes,
+      boolean prioritizeTimeOverSizeThresholds,
+      PriorityTaskManager priorityTaskManager,
+      int backBufferDurationMs,
+      boolean retainBackBufferFromKeyframe) {
+    this(
+        allocator,
+        minBufferMs,
+        maxBufferMs,
+        bufferForPlaybackMs,
+        bufferForPlaybackAfterRebufferMs,
+        targetBufferBytes,
+        prioritizeTimeOverSizeThresholds,
+        priorityTaskManager,
+        backBufferDurationMs,
+        retainBackBufferFromKeyframe,
+        DEFAULT_UPCOMING_PERIODS_MAX_BUFFER_BYTES);
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param allocator The {@link DefaultAllocator} used by the loader.
+   * @param minBufferMs The minimum duration of media that the player will attempt to ensure is
+   *     buffered at all times, in milliseconds.
+   * @param maxBufferMs The maximum duration of media that the player will attempt buffer, in
+   *     milliseconds.
+   * @param bufferForPlaybackMs The duration of media that must be buffered for playback to start or
+   *     resume following a user action such as a seek, in milliseconds.
+   * @param bufferForPlaybackAfterRebufferMs The default duration of media that must be buffered for
+   *     playback to resume after a rebuffer, in milliseconds. A rebuffer is defined to be caused by
+   *     buffer depletion rather than a user action.
+   * @param targetBufferBytes The target buffer size in bytes. If set to {@link C#LENGTH_UNSET}, the
+   *     target buffer size will be calculated using {@link #calculateTargetBufferSize(Renderer[],
+   *     TrackSelectionArray)}.
+   * @param prioritizeTimeOverSizeThresholds Whether the load control prioritizes buffer time
+   *     constraints over buffer size constraints.
+   * @param priorityTaskManager If not null, registers itself as a task with priority {@link
+   *     C#PRIORITY_PLAYBACK} during loading periods, and unregisters itself during draining
+   * @param backBufferDurationMs The maximum duration of media to retain behind the playback
+   *     position, in milliseconds. The duration actually retained is scaled by the fraction of the
+   *     target buffer size that is not allocated, so that the back-buffer gives way to media ahead
+   *     of the playback position as memory fills up, but never drops below {@link
+   *     #MIN_BACK_BUFFER_SHARE_PERCENT} percent of this duration.
+   * @param retainBackBufferFromKeyframe Whether the back-buffer is retained from the keyframe
+   *     before its start. If true, media is discarded a whole group of pictures at a time, oldest
+   *     first.
+   * @param upcomingPeriodsMaxBufferBytes The maximum number of bytes that periods after the playing
+   *     period may hold, or {@link C#LENGTH_UNSET} if they are only limited by the buffer duration
+   *     and size thresholds. When set, upcoming periods are also limited to the part of the target
+   *     buffer size that the playing period doesn't use.
+   */
+  public DefaultLoadControl(
+      DefaultAllocator allocator,
+      int minBufferMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs,
+      int targetBufferBytes,
+      boolean prioritizeTimeOverSizeThresholds,
+      PriorityTaskManager priorityTaskManager,
+      int backBufferDurationMs,
+      boolean retainBackBufferFromKeyframe,
+      int upcomingPeriodsMaxBufferBytes) {
     this.allocator = allocator;
     minBufferUs = minBufferMs * 1000L;
     maxBufferUs = maxBufferMs * 1000L;
@@ -171,6 +310,24 @@ public class DefaultLoadControl implements LoadControl {
     targetBufferBytesOverwrite = targetBufferBytes;
     this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
     this.priorityTaskManager = priorityTaskManager;
+    this.backBufferDurationUs = backBufferDurationMs * 1000L;
+    this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
+    this.upcomingPeriodsMaxBufferBytes = upcomingPeriodsMaxBufferBytes;
+  }
+
+  /**
+   * Returns the number of seeks to an earlier position in the playing period.
+   */
+  public int getBackwardSeekCount() {
+    return backwardSeekCount;
+  }
+
+  /**
+   * Returns the number of seeks to an earlier position in the playing period that were to a
+   * position in the back-buffer.
+   */
+  public int getBackwardSeekInBufferCount() {
+    return backwardSeekInBufferCount;
   }
 
   @Override
@@ -205,12 +362,27 @@ public class DefaultLoadControl implements LoadControl {
 
   @Override
   public long getBackBufferDurationUs() {
-    return 0;
+    if (backBufferDurationUs == 0 || targetBufferSize <= 0) {
+      return 0;
+    }
+    long unallocatedBytes = Math.max(0, targetBufferSize - allocator.getTotalBytesAllocated());
+    // A share of the target buffer size is reserved for the back-buffer, so that it isn't discarded
+    // entirely when media ahead of the playback position reaches the target.
+    long reservedBytes = (long) targetBufferSize * MIN_BACK_BUFFER_SHARE_PERCENT / 100;
+    return backBufferDurationUs * Math.max(unallocatedBytes, reservedBytes) / targetBufferSize;
   }
 
   @Override
   public boolean retainBackBufferFromKeyframe() {
-    return false;
+    return retainBackBufferFromKeyframe;
+  }
+
+  @Override
+  public void onBackwardSeek(long seekBackDurationUs, boolean inBuffer) {
+    backwardSeekCount++;
+    if (inBuffer) {
+      backwardSeekInBufferCount++;
+    }
   }
 
   @Override
@@ -240,6 +412,16 @@ public class DefaultLoadControl implements LoadControl {
 
   }
 
+  @Override
+  public int getUpcomingPeriodsTargetBufferBytes(int playingPeriodBytesAllocated) {
+    if (upcomingPeriodsMaxBufferBytes == C.LENGTH_UNSET) {
+      return C.LENGTH_UNSET;
+    }
+    // The playing period has the first claim on the target buffer size.
+    return Math.min(
+        upcomingPeriodsMaxBufferBytes, Math.max(0, targetBufferSize - playingPeriodBytesAllocated));
+  }
+
   @Override
   public boolean shouldStartPlayback(
       long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
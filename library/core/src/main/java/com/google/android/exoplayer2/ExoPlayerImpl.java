@@ -50,6 +50,7 @@ import java.util.concurrent.CopyOnWriteArraySet;
   private final Handler eventHandler;
   private final ExoPlayerImplInternal internalPlayer;
   private final Handler internalPlayerHandler;
+  private final SharedPlaybackPosition sharedPlaybackPosition;
   private final CopyOnWriteArraySet<Player.EventListener> listeners;
   private final Timeline.Window window;
   private final Timeline.Period period;
@@ -122,6 +123,7 @@ import java.util.concurrent.CopyOnWriteArraySet;
             this,
             clock);
     internalPlayerHandler = new Handler(internalPlayer.getPlaybackLooper());
+    sharedPlaybackPosition = internalPlayer.getSharedPlaybackPosition();
   }
 
   @Override
@@ -441,7 +443,7 @@ import java.util.concurrent.CopyOnWriteArraySet;
     if (shouldMaskPosition()) {
       return maskingWindowPositionMs;
     } else {
-      return playbackInfoPositionUsToWindowPositionMs(playbackInfo.positionUs);
+      return getWindowPositionMs(/* buffered= */ false);
     }
   }
 
@@ -451,7 +453,7 @@ import java.util.concurrent.CopyOnWriteArraySet;
     if (shouldMaskPosition()) {
       return maskingWindowPositionMs;
     } else {
-      return playbackInfoPositionUsToWindowPositionMs(playbackInfo.bufferedPositionUs);
+      return getWindowPositionMs(/* buffered= */ true);
     }
   }
 
@@ -668,6 +670,19 @@ import java.util.concurrent.CopyOnWriteArraySet;
     }
   }
 
+  private long getWindowPositionMs(boolean buffered) {
+    // Prefer the position published by the playback thread, which doesn't wait for the playback
+    // info to be delivered, if it refers to the same period as the current playback info.
+    long positionMs =
+        sharedPlaybackPosition.getWindowPositionMs(
+            playbackInfo.timeline, playbackInfo.periodId, buffered);
+    if (positionMs != C.TIME_UNSET) {
+      return positionMs;
+    }
+    return playbackInfoPositionUsToWindowPositionMs(
+        buffered ? playbackInfo.bufferedPositionUs : playbackInfo.positionUs);
+  }
+
   private long playbackInfoPositionUsToWindowPositionMs(long positionUs) {
     long positionMs = C.usToMs(positionUs);
     if (!playbackInfo.periodId.isAd()) {
@@ -79,6 +79,7 @@ import java.util.Collections;
 
   private static final int PREPARING_SOURCE_INTERVAL_MS = 10;
   private static final int RENDERING_INTERVAL_MS = 10;
+  private static final int MAX_RENDERING_INTERVAL_MS = 100;
   private static final int IDLE_INTERVAL_MS = 1000;
 
   /**
@@ -100,10 +101,9 @@ import java.util.Collections;
   private final ExoPlayer player;
   private final Timeline.Window window;
   private final Timeline.Period period;
-  private final long backBufferDurationUs;
-  private final boolean retainBackBufferFromKeyframe;
   private final DefaultMediaClock mediaClock;
   private final PlaybackInfoUpdate playbackInfoUpdate;
+  private final SharedPlaybackPosition sharedPlaybackPosition;
   private final ArrayList<PendingMessageInfo> pendingMessages;
   private final Clock clock;
   private final MediaPeriodQueue queue;
@@ -112,6 +112,8 @@ import java.util.Collections;
   private SeekParameters seekParameters;
 
   private PlaybackInfo playbackInfo;
+  private int playbackState;
+  private boolean isLoading;
   private MediaSource mediaSource;
   private Renderer[] enabledRenderers;
   private boolean released;
@@ -148,14 +150,13 @@ import java.util.Collections;
     this.clock = clock;
     this.queue = new MediaPeriodQueue();
 
-    backBufferDurationUs = loadControl.getBackBufferDurationUs();
-    retainBackBufferFromKeyframe = loadControl.retainBackBufferFromKeyframe();
-
     seekParameters = SeekParameters.DEFAULT;
     playbackInfo =
         new PlaybackInfo(
             Timeline.EMPTY, /* startPositionUs= */ C.TIME_UNSET, emptyTrackSelectorResult);
+    playbackState = playbackInfo.playbackState;
     playbackInfoUpdate = new PlaybackInfoUpdate();
+    sharedPlaybackPosition = new SharedPlaybackPosition();
     rendererCapabilities = new RendererCapabilities[renderers.length];
     for (int i = 0; i < renderers.length; i++) {
       renderers[i].setIndex(i);
@@ -244,6 +245,13 @@ import java.util.Collections;
     return internalPlaybackThread.getLooper();
   }
 
+  /**
+   * Returns the latest playback position, which may be read from any thread.
+   */
+  public SharedPlaybackPosition getSharedPlaybackPosition() {
+    return sharedPlaybackPosition;
+  }
+
   // MediaSource.Listener implementation.
 
   @Override
@@ -365,18 +373,20 @@ import java.util.Collections;
   // Private methods.
 
   private void setState(int state) {
-    if (playbackInfo.playbackState != state) {
-      playbackInfo = playbackInfo.copyWithPlaybackState(state);
-    }
+    playbackState = state;
   }
 
   private void setIsLoading(boolean isLoading) {
-    if (playbackInfo.isLoading != isLoading) {
-      playbackInfo = playbackInfo.copyWithIsLoading(isLoading);
-    }
+    this.isLoading = isLoading;
   }
 
   private void maybeNotifyPlaybackInfoChanged() {
+    // State and loading changes are applied to the playback info only when it's about to be
+    // published, so that a message iteration creates at most one new snapshot for them.
+    if (playbackInfo.playbackState != playbackState || playbackInfo.isLoading != isLoading) {
+      playbackInfo = playbackInfo.copyWithPlaybackState(playbackState, isLoading);
+    }
+    sharedPlaybackPosition.update(playbackInfo, period);
     if (playbackInfoUpdate.hasPendingUpdate(playbackInfo)) {
       eventHandler
           .obtainMessage(
@@ -408,10 +418,10 @@ import java.util.Collections;
       stopRenderers();
       updatePlaybackPositions();
     } else {
-      if (playbackInfo.playbackState == Player.STATE_READY) {
+      if (playbackState == Player.STATE_READY) {
         startRenderers();
         handler.sendEmptyMessage(MSG_DO_SOME_WORK);
-      } else if (playbackInfo.playbackState == Player.STATE_BUFFERING) {
+      } else if (playbackState == Player.STATE_BUFFERING) {
         handler.sendEmptyMessage(MSG_DO_SOME_WORK);
       }
     }
@@ -510,16 +520,20 @@ import java.util.Collections;
     updatePlaybackPositions();
     long rendererPositionElapsedRealtimeUs = SystemClock.elapsedRealtime() * 1000;
 
-    playingPeriodHolder.mediaPeriod.discardBuffer(playbackInfo.positionUs - backBufferDurationUs,
-        retainBackBufferFromKeyframe);
+    playingPeriodHolder.mediaPeriod.discardBuffer(
+        playbackInfo.positionUs - loadControl.getBackBufferDurationUs(),
+        loadControl.retainBackBufferFromKeyframe());
 
     boolean renderersEnded = true;
     boolean renderersReadyOrEnded = true;
+    long maxRenderDelayUs = C.TIME_UNSET;
     for (Renderer renderer : enabledRenderers) {
-      // TODO: Each renderer should return the maximum delay before which it wishes to be called
-      // again. The minimum of these values should then be used as the delay before the next
-      // invocation of this method.
       renderer.render(rendererPositionUs, rendererPositionElapsedRealtimeUs);
+      long rendererMaxRenderDelayUs = renderer.getMaxRenderDelayUs();
+      if (rendererMaxRenderDelayUs != C.TIME_UNSET) {
+        maxRenderDelayUs = maxRenderDelayUs == C.TIME_UNSET ? rendererMaxRenderDelayUs
+            : Math.min(maxRenderDelayUs, rendererMaxRenderDelayUs);
+      }
       renderersEnded = renderersEnded && renderer.isEnded();
       // Determine whether the renderer is ready (or ended). We override to assume the renderer is
       // ready if it needs the next sample stream. This is necessary to avoid getting stuck if
@@ -543,29 +557,30 @@ import java.util.Collections;
         && playingPeriodHolder.info.isFinal) {
       setState(Player.STATE_ENDED);
       stopRenderers();
-    } else if (playbackInfo.playbackState == Player.STATE_BUFFERING
+    } else if (playbackState == Player.STATE_BUFFERING
         && shouldTransitionToReadyState(renderersReadyOrEnded)) {
       setState(Player.STATE_READY);
       if (playWhenReady) {
         startRenderers();
       }
-    } else if (playbackInfo.playbackState == Player.STATE_READY
+    } else if (playbackState == Player.STATE_READY
         && !(enabledRenderers.length == 0 ? isTimelineReady() : renderersReadyOrEnded)) {
       rebuffering = playWhenReady;
       setState(Player.STATE_BUFFERING);
       stopRenderers();
     }
 
-    if (playbackInfo.playbackState == Player.STATE_BUFFERING) {
+    if (playbackState == Player.STATE_BUFFERING) {
       for (Renderer renderer : enabledRenderers) {
         renderer.maybeThrowStreamError();
       }
     }
 
-    if ((playWhenReady && playbackInfo.playbackState == Player.STATE_READY)
-        || playbackInfo.playbackState == Player.STATE_BUFFERING) {
+    if (playWhenReady && playbackState == Player.STATE_READY) {
+      scheduleNextWork(operationStartTimeMs, getRenderingIntervalMs(maxRenderDelayUs));
+    } else if (playbackState == Player.STATE_BUFFERING) {
       scheduleNextWork(operationStartTimeMs, RENDERING_INTERVAL_MS);
-    } else if (enabledRenderers.length != 0 && playbackInfo.playbackState != Player.STATE_ENDED) {
+    } else if (enabledRenderers.length != 0 && playbackState != Player.STATE_ENDED) {
       scheduleNextWork(operationStartTimeMs, IDLE_INTERVAL_MS);
     } else {
       handler.removeMessages(MSG_DO_SOME_WORK);
@@ -574,6 +589,22 @@ import java.util.Collections;
     TraceUtil.endSection();
   }
 
+  /**
+   * Returns the interval until the next invocation of {@link #doSomeWork()} during playback, given
+   * the minimum of the maximum render delays reported by the enabled renderers.
+   */
+  private long getRenderingIntervalMs(long maxRenderDelayUs) {
+    if (enabledRenderers.length == 0 || nextPendingMessageIndex < pendingMessages.size()) {
+      // Pending messages and playbacks without renderers need timely position updates.
+      return RENDERING_INTERVAL_MS;
+    }
+    if (maxRenderDelayUs == C.TIME_UNSET) {
+      return MAX_RENDERING_INTERVAL_MS;
+    }
+    return Util.constrainValue(maxRenderDelayUs / 1000, RENDERING_INTERVAL_MS,
+        MAX_RENDERING_INTERVAL_MS);
+  }
+
   private void scheduleNextWork(long thisOperationStartTimeMs, long intervalMs) {
     handler.removeMessages(MSG_DO_SOME_WORK);
     handler.sendEmptyMessageAtTime(MSG_DO_SOME_WORK, thisOperationStartTimeMs + intervalMs);
@@ -634,7 +665,14 @@ import java.util.Collections;
             return;
           }
         }
+        boolean isBackwardSeek =
+            periodId.equals(playbackInfo.periodId) && newPeriodPositionUs < playbackInfo.positionUs;
         newPeriodPositionUs = seekToPeriodPosition(periodId, newPeriodPositionUs);
+        if (isBackwardSeek) {
+          loadControl.onBackwardSeek(
+              playbackInfo.positionUs - newPeriodPositionUs,
+              isBufferedFrom(queue.getPlayingPeriod(), newPeriodPositionUs));
+        }
         seekPositionAdjusted |= periodPositionUs != newPeriodPositionUs;
         periodPositionUs = newPeriodPositionUs;
       }
@@ -686,7 +724,8 @@ import java.util.Collections;
       if (newPlayingPeriodHolder.hasEnabledTracks) {
         periodPositionUs = newPlayingPeriodHolder.mediaPeriod.seekToUs(periodPositionUs);
         newPlayingPeriodHolder.mediaPeriod.discardBuffer(
-            periodPositionUs - backBufferDurationUs, retainBackBufferFromKeyframe);
+            periodPositionUs - loadControl.getBackBufferDurationUs(),
+            loadControl.retainBackBufferFromKeyframe());
       }
       resetRendererPosition(periodPositionUs);
       maybeContinueLoading();
@@ -699,6 +738,16 @@ import java.util.Collections;
     return periodPositionUs;
   }
 
+  private static boolean isBufferedFrom(MediaPeriodHolder holder, long periodPositionUs) {
+    if (holder == null || !holder.prepared || !holder.hasEnabledTracks) {
+      return false;
+    }
+    // If the media period had to discard its buffer to seek, its buffered position remains at the
+    // seek position until new media has been loaded.
+    long bufferedPositionUs = holder.getBufferedPositionUs(/* convertEosToDuration= */ false);
+    return bufferedPositionUs == C.TIME_END_OF_SOURCE || bufferedPositionUs > periodPositionUs;
+  }
+
   private boolean shouldKeepPeriodHolder(
       MediaPeriodId seekPeriodId, long positionUs, MediaPeriodHolder holder) {
     if (seekPeriodId.equals(holder.info.id) && holder.prepared) {
@@ -797,7 +846,7 @@ import java.util.Collections;
             // Set the start position to TIME_UNSET so that a subsequent seek to 0 isn't ignored.
             resetPosition ? C.TIME_UNSET : playbackInfo.positionUs,
             resetPosition ? C.TIME_UNSET : playbackInfo.contentPositionUs,
-            playbackInfo.playbackState,
+            playbackState,
             /* isLoading= */ false,
             resetState ? emptyTrackSelectorResult : playbackInfo.trackSelectorResult);
     if (releaseMediaSource) {
@@ -830,8 +879,8 @@ import java.util.Collections;
   private void sendMessageToTarget(PlayerMessage message) throws ExoPlaybackException {
     if (message.getHandler().getLooper() == handler.getLooper()) {
       deliverMessage(message);
-      if (playbackInfo.playbackState == Player.STATE_READY
-          || playbackInfo.playbackState == Player.STATE_BUFFERING) {
+      if (playbackState == Player.STATE_READY
+          || playbackState == Player.STATE_BUFFERING) {
         // The message may have caused something to change that now requires us to do work.
         handler.sendEmptyMessage(MSG_DO_SOME_WORK);
       }
@@ -1008,7 +1057,7 @@ import java.util.Collections;
           playingPeriodHolder.applyTrackSelection(
               playbackInfo.positionUs, recreateStreams, streamResetFlags);
       updateLoadControlTrackSelection(playingPeriodHolder.trackSelectorResult);
-      if (playbackInfo.playbackState != Player.STATE_ENDED
+      if (playbackState != Player.STATE_ENDED
           && periodPositionUs != playbackInfo.positionUs) {
         playbackInfo = playbackInfo.fromNewPosition(playbackInfo.periodId, periodPositionUs,
             playbackInfo.contentPositionUs);
@@ -1049,7 +1098,7 @@ import java.util.Collections;
         updateLoadControlTrackSelection(periodHolder.trackSelectorResult);
       }
     }
-    if (playbackInfo.playbackState != Player.STATE_ENDED) {
+    if (playbackState != Player.STATE_ENDED) {
       maybeContinueLoading();
       updatePlaybackPositions();
       handler.sendEmptyMessage(MSG_DO_SOME_WORK);
@@ -1084,7 +1133,7 @@ import java.util.Collections;
     if (!renderersReadyOrEnded) {
       return false;
     }
-    if (!playbackInfo.isLoading) {
+    if (!isLoading) {
       // Renderers are ready and we're not loading. Transition to ready, since the alternative is
       // getting stuck waiting for additional media that's not being loaded.
       return true;
@@ -1366,7 +1415,7 @@ import java.util.Collections;
     MediaPeriodHolder loadingPeriodHolder = queue.getLoadingPeriod();
     if (loadingPeriodHolder == null || loadingPeriodHolder.isFullyBuffered()) {
       setIsLoading(false);
-    } else if (!playbackInfo.isLoading) {
+    } else if (!isLoading) {
       maybeContinueLoading();
     }
 
@@ -1475,8 +1524,14 @@ import java.util.Collections;
   }
 
   private void maybeUpdateLoadingPeriod() throws IOException {
+    int upcomingPeriodsTargetBufferBytes = getUpcomingPeriodsTargetBufferBytes();
+    if (upcomingPeriodsTargetBufferBytes != C.LENGTH_UNSET) {
+      queue.trimUpcomingPeriods(upcomingPeriodsTargetBufferBytes);
+    }
     queue.reevaluateBuffer(rendererPositionUs);
-    if (queue.shouldLoadNextMediaPeriod()) {
+    if (queue.shouldLoadNextMediaPeriod()
+        && (queue.getLoadingPeriod() == queue.getReadingPeriod()
+            || !isUpcomingPeriodsBufferFull(upcomingPeriodsTargetBufferBytes))) {
       MediaPeriodInfo info = queue.getNextMediaPeriodInfo(rendererPositionUs, playbackInfo);
       if (info == null) {
         mediaSource.maybeThrowSourceInfoRefreshError();
@@ -1536,12 +1591,32 @@ import java.util.Collections;
     boolean continueLoading =
         loadControl.shouldContinueLoading(
             bufferedDurationUs, mediaClock.getPlaybackParameters().speed);
+    MediaPeriodHolder readingPeriodHolder = queue.getReadingPeriod();
+    if (continueLoading
+        && readingPeriodHolder != null
+        && loadingPeriodHolder != queue.getPlayingPeriod()
+        && loadingPeriodHolder != readingPeriodHolder
+        && loadingPeriodHolder != readingPeriodHolder.next) {
+      continueLoading = !isUpcomingPeriodsBufferFull(getUpcomingPeriodsTargetBufferBytes());
+    }
     setIsLoading(continueLoading);
     if (continueLoading) {
       loadingPeriodHolder.continueLoading(rendererPositionUs);
     }
   }
 
+  private int getUpcomingPeriodsTargetBufferBytes() {
+    MediaPeriodHolder playingPeriodHolder = queue.getPlayingPeriod();
+    return playingPeriodHolder == null
+        ? C.LENGTH_UNSET
+        : loadControl.getUpcomingPeriodsTargetBufferBytes(playingPeriodHolder.getBytesAllocated());
+  }
+
+  private boolean isUpcomingPeriodsBufferFull(int upcomingPeriodsTargetBufferBytes) {
+    return upcomingPeriodsTargetBufferBytes != C.LENGTH_UNSET
+        && queue.getUpcomingPeriodsBytesAllocated() >= upcomingPeriodsTargetBufferBytes;
+  }
+
   private void updatePlayingPeriodRenderers(@Nullable MediaPeriodHolder oldPlayingPeriodHolder)
       throws ExoPlaybackException {
     MediaPeriodHolder newPlayingPeriodHolder = queue.getPlayingPeriod();
@@ -1596,7 +1671,7 @@ import java.util.Collections;
           rendererIndex);
       Format[] formats = getFormats(newSelection);
       // The renderer needs enabling with its new track selection.
-      boolean playing = playWhenReady && playbackInfo.playbackState == Player.STATE_READY;
+      boolean playing = playWhenReady && playbackState == Player.STATE_READY;
       // Consider as joining only if the renderer was previously disabled.
       boolean joining = !wasRendererEnabled && playing;
       // Enable the renderer.
@@ -62,8 +62,9 @@ public interface LoadControl {
    * Note: If {@link #retainBackBufferFromKeyframe()} is false then seeking in the back-buffer will
    * only be fast if the back-buffer contains a keyframe prior to the seek position.
    * <p>
-   * Note: Implementations should return a single value. Dynamic changes to the back-buffer are not
-   * currently supported.
+   * The player calls this method whenever it discards media from the buffer, so implementations
+   * may change the value over time, for example to retain less media when memory is scarce. Media
+   * that has already been discarded is not reloaded if the value increases.
    *
    * @return The duration of media to retain in the buffer prior to the current playback position,
    *     in microseconds.
@@ -79,14 +80,23 @@ public interface LoadControl {
    * are comfortable with the back-buffer size exceeding {@link #getBackBufferDurationUs()} by as
    * much as the maximum duration between adjacent keyframes in the media.
    * <p>
-   * Note: Implementations should return a single value. Dynamic changes to the back-buffer are not
-   * currently supported.
+   * Note: Implementations should return a single value.
    *
    * @return Whether media should be retained from the keyframe before the current playback position
    * minus {@link #getBackBufferDurationUs()}, rather than any sample before or at that position.
    */
   boolean retainBackBufferFromKeyframe();
 
+  /**
+   * Called by the player after a seek to an earlier position in the playing period.
+   *
+   * @param seekBackDurationUs The distance between the playback position before the seek and the
+   *     seek position, in microseconds.
+   * @param inBuffer Whether the seek position was in the back-buffer, so that the media did not
+   *     need to be reloaded.
+   */
+  void onBackwardSeek(long seekBackDurationUs, boolean inBuffer);
+
   /**
    * Called by the player to determine whether it should continue to load the source.
    *
@@ -96,6 +106,23 @@ public interface LoadControl {
    */
   boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed);
 
+  /**
+   * Returns the number of bytes that periods after the currently playing period (for example the
+   * next items of a playlist) may hold in the buffer, given the number of bytes held by the playing
+   * period.
+   * <p>
+   * While periods after the playing period hold at least this many bytes, the player does not
+   * continue loading them and does not start loading further periods. Periods that lie entirely
+   * outside this budget are released. Periods the renderers are already reading from and the period
+   * after them are exempt, so a budget of zero still allows playback to move to the next period.
+   *
+   * @param playingPeriodBytesAllocated The number of bytes allocated by the playing period.
+   * @return The number of bytes that periods after the playing period may hold, or
+   *     {@link C#LENGTH_UNSET} if they are only limited by
+   *     {@link #shouldContinueLoading(long, float)}.
+   */
+  int getUpcomingPeriodsTargetBufferBytes(int playingPeriodBytesAllocated);
+
   /**
    * Called repeatedly by the player when it's loading the source, has yet to start playback, and
    * has the minimum amount of data necessary for playback to be started. The value returned
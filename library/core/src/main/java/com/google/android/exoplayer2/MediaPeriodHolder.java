@@ -26,6 +26,7 @@ import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.trackselection.TrackSelector;
 import com.google.android.exoplayer2.trackselection.TrackSelectorResult;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.CountingAllocator;
 import com.google.android.exoplayer2.util.Assertions;
 
 /** Holds a {@link MediaPeriod} with information required to play it as part of a timeline. */
@@ -48,6 +49,7 @@ import com.google.android.exoplayer2.util.Assertions;
   private final RendererCapabilities[] rendererCapabilities;
   private final TrackSelector trackSelector;
   private final MediaSource mediaSource;
+  private final CountingAllocator allocator;
 
   private TrackSelectorResult periodTrackSelectorResult;
 
@@ -79,7 +81,8 @@ import com.google.android.exoplayer2.util.Assertions;
     this.info = info;
     sampleStreams = new SampleStream[rendererCapabilities.length];
     mayRetainStreamFlags = new boolean[rendererCapabilities.length];
-    MediaPeriod mediaPeriod = mediaSource.createPeriod(info.id, allocator);
+    this.allocator = new CountingAllocator(allocator);
+    MediaPeriod mediaPeriod = mediaSource.createPeriod(info.id, this.allocator);
     if (info.endPositionUs != C.TIME_END_OF_SOURCE) {
       ClippingMediaPeriod clippingMediaPeriod = new ClippingMediaPeriod(mediaPeriod, true);
       clippingMediaPeriod.setClipping(0, info.endPositionUs);
@@ -128,6 +131,14 @@ import com.google.android.exoplayer2.util.Assertions;
         : bufferedPositionUs;
   }
 
+  /**
+   * Returns the number of bytes currently allocated by the media period, for example to hold
+   * buffered samples.
+   */
+  public int getBytesAllocated() {
+    return allocator.getTotalBytesAllocated();
+  }
+
   public long getNextLoadPositionUs() {
     return !prepared ? 0 : mediaPeriod.getNextLoadPositionUs();
   }
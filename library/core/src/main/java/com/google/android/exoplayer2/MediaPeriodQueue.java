@@ -276,6 +276,56 @@ import com.google.android.exoplayer2.util.Assertions;
     return removedReading;
   }
 
+  /**
+   * Returns the number of bytes allocated by the period holders after the playing period holder.
+   */
+  public int getUpcomingPeriodsBytesAllocated() {
+    int bytesAllocated = 0;
+    MediaPeriodHolder mediaPeriodHolder = playing == null ? null : playing.next;
+    while (mediaPeriodHolder != null) {
+      bytesAllocated += mediaPeriodHolder.getBytesAllocated();
+      mediaPeriodHolder = mediaPeriodHolder.next;
+    }
+    return bytesAllocated;
+  }
+
+  /**
+   * Removes period holders from the end of the queue that lie entirely outside a buffer budget.
+   * Period holders after the playing period holder are visited in order, and the first one for
+   * which the preceding period holders already allocate at least {@code targetBufferBytes} is
+   * removed along with all period holders after it. The playing and reading period holders and the
+   * period holder after the reading period holder are never removed, so that the transition to the
+   * next period isn't starved.
+   *
+   * @param targetBufferBytes The number of bytes that may be allocated by the period holders after
+   *     the playing period holder.
+   * @return Whether any period holders were removed.
+   */
+  public boolean trimUpcomingPeriods(int targetBufferBytes) {
+    if (playing == null) {
+      return false;
+    }
+    int bytesAllocated = 0;
+    MediaPeriodHolder previousPeriodHolder = playing;
+    while (previousPeriodHolder != reading) {
+      previousPeriodHolder = previousPeriodHolder.next;
+      bytesAllocated += previousPeriodHolder.getBytesAllocated();
+    }
+    if (previousPeriodHolder.next != null) {
+      previousPeriodHolder = previousPeriodHolder.next;
+      bytesAllocated += previousPeriodHolder.getBytesAllocated();
+    }
+    while (previousPeriodHolder.next != null) {
+      if (bytesAllocated >= targetBufferBytes) {
+        removeAfter(previousPeriodHolder);
+        return true;
+      }
+      previousPeriodHolder = previousPeriodHolder.next;
+      bytesAllocated += previousPeriodHolder.getBytesAllocated();
+    }
+    return false;
+  }
+
   /** Clears the queue. */
   public void clear() {
     MediaPeriodHolder front = getFrontPeriod();
@@ -167,6 +167,11 @@ public abstract class NoSampleRenderer implements Renderer, RendererCapabilities
     return true;
   }
 
+  @Override
+  public long getMaxRenderDelayUs() {
+    return C.TIME_UNSET;
+  }
+
   // RendererCapabilities implementation.
 
   @Override
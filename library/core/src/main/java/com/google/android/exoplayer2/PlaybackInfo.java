@@ -113,22 +113,7 @@ import com.google.android.exoplayer2.trackselection.TrackSelectorResult;
     return playbackInfo;
   }
 
-  public PlaybackInfo copyWithPlaybackState(int playbackState) {
-    PlaybackInfo playbackInfo =
-        new PlaybackInfo(
-            timeline,
-            manifest,
-            periodId,
-            startPositionUs,
-            contentPositionUs,
-            playbackState,
-            isLoading,
-            trackSelectorResult);
-    copyMutablePositions(this, playbackInfo);
-    return playbackInfo;
-  }
-
-  public PlaybackInfo copyWithIsLoading(boolean isLoading) {
+  public PlaybackInfo copyWithPlaybackState(int playbackState, boolean isLoading) {
     PlaybackInfo playbackInfo =
         new PlaybackInfo(
             timeline,
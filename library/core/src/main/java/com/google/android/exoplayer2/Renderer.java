@@ -234,6 +234,20 @@ public interface Renderer extends PlayerMessage.Target {
    */
   boolean isEnded();
 
+  /**
+   * Returns the maximum time that may elapse before {@link #render(long, long)} needs to be called
+   * again, measured from the start of the most recent call. The player may call
+   * {@link #render(long, long)} sooner, and uses the minimum of the values returned by its enabled
+   * renderers to decide when to wake up.
+   * <p>
+   * This method is called after {@link #render(long, long)}, and may be called when the renderer
+   * is in the following states: {@link #STATE_ENABLED}, {@link #STATE_STARTED}.
+   *
+   * @return The maximum delay in microseconds, or {@link C#TIME_UNSET} if the renderer doesn't
+   *     need to be called at any particular time.
+   */
+  long getMaxRenderDelayUs();
+
   /**
    * Stops the renderer, transitioning it to the {@link #STATE_ENABLED} state.
    * <p>
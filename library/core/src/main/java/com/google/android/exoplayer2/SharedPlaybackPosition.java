@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+
+/**
+ * The latest playback position, published by the playback thread and readable from any thread
+ * without locking or message passing.
+ * <p>
+ * Updates are guarded by a sequence counter (a seqlock). There must be a single writer, which
+ * makes the counter odd while it updates the fields and even again afterwards. Readers retry until
+ * they observe the same even counter before and after reading the fields. The fields are volatile
+ * so that their reads can't be reordered around the reads of the counter.
+ */
+/* package */ final class SharedPlaybackPosition {
+
+  private volatile int sequence;
+  private volatile Timeline timeline;
+  private volatile MediaPeriodId periodId;
+  private volatile long positionUs;
+  private volatile long bufferedPositionUs;
+  private volatile long periodPositionInWindowMs;
+
+  /**
+   * Publishes a new position. Must only be called from the playback thread.
+   *
+   * @param playbackInfo The playback info whose positions should be published.
+   * @param period A {@link Timeline.Period} that may be used for computing the position of the
+   *     period in its window.
+   */
+  public void update(PlaybackInfo playbackInfo, Timeline.Period period) {
+    Timeline timeline = playbackInfo.timeline;
+    MediaPeriodId periodId = playbackInfo.periodId;
+    boolean periodChanged = timeline != this.timeline || !periodId.equals(this.periodId);
+    if (!periodChanged
+        && playbackInfo.positionUs == positionUs
+        && playbackInfo.bufferedPositionUs == bufferedPositionUs) {
+      return;
+    }
+    sequence++;
+    if (periodChanged) {
+      this.timeline = timeline;
+      this.periodId = periodId;
+      periodPositionInWindowMs =
+          timeline.isEmpty() || periodId.isAd()
+              ? 0
+              : timeline.getPeriod(periodId.periodIndex, period).getPositionInWindowMs();
+    }
+    positionUs = playbackInfo.positionUs;
+    bufferedPositionUs = playbackInfo.bufferedPositionUs;
+    sequence++;
+  }
+
+  /**
+   * Returns the latest published position in the window, in milliseconds, or {@link C#TIME_UNSET}
+   * if the latest published position doesn't refer to the specified period of the specified
+   * timeline.
+   *
+   * @param timeline The timeline the position should refer to.
+   * @param periodId The period the position should refer to.
+   * @param buffered Whether to return the buffered position rather than the playback position.
+   */
+  public long getWindowPositionMs(Timeline timeline, MediaPeriodId periodId, boolean buffered) {
+    while (true) {
+      int sequence = this.sequence;
+      if ((sequence & 1) != 0) {
+        // An update is in progress.
+        continue;
+      }
+      Timeline publishedTimeline = this.timeline;
+      MediaPeriodId publishedPeriodId = this.periodId;
+      long positionUs = buffered ? bufferedPositionUs : this.positionUs;
+      long periodPositionInWindowMs = this.periodPositionInWindowMs;
+      if (sequence != this.sequence) {
+        continue;
+      }
+      if (timeline != publishedTimeline
+          || !periodId.equals(publishedPeriodId)
+          || positionUs == C.TIME_UNSET) {
+        return C.TIME_UNSET;
+      }
+      return C.usToMs(positionUs) + periodPositionInWindowMs;
+    }
+  }
+
+}
@@ -59,6 +59,13 @@ import java.nio.ByteBuffer;
 @TargetApi(16)
 public class MediaCodecAudioRenderer extends MediaCodecRenderer implements MediaClock {
 
+  /**
+   * The maximum render delay reported while the {@link AudioSink} is full. Must be comfortably
+   * shorter than the duration buffered by the sink, which is at least 250ms for
+   * {@link DefaultAudioSink}.
+   */
+  private static final long AUDIO_SINK_FULL_MAX_RENDER_DELAY_US = 100000;
+
   private final EventDispatcher eventDispatcher;
   private final AudioSink audioSink;
 
@@ -73,6 +80,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   private long currentPositionUs;
   private boolean allowFirstBufferPositionDiscontinuity;
   private boolean allowPositionDiscontinuity;
+  private boolean audioSinkFull;
 
   /**
    * @param mediaCodecSelector A decoder selector.
@@ -399,6 +407,20 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     }
   }
 
+  @Override
+  public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+    audioSinkFull = false;
+    super.render(positionUs, elapsedRealtimeUs);
+  }
+
+  @Override
+  public long getMaxRenderDelayUs() {
+    // While the sink is full there's nothing to do until it has played out some of its data,
+    // unless the player needs to switch to the next stream.
+    return audioSinkFull && !hasReadStreamToEnd() ? AUDIO_SINK_FULL_MAX_RENDER_DELAY_US
+        : super.getMaxRenderDelayUs();
+  }
+
   @Override
   public boolean isEnded() {
     return super.isEnded() && audioSink.isEnded();
@@ -466,6 +488,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     } catch (AudioSink.InitializationException | AudioSink.WriteException e) {
       throw ExoPlaybackException.createForRenderer(e, getIndex());
     }
+    audioSinkFull = true;
     return false;
   }
 
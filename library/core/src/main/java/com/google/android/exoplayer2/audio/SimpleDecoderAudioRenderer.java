@@ -82,6 +82,13 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
    */
   private static final int REINITIALIZATION_STATE_WAIT_END_OF_STREAM = 2;
 
+  /**
+   * The maximum render delay reported while the {@link AudioSink} is full. Must be comfortably
+   * shorter than the duration buffered by the sink, which is at least 250ms for
+   * {@link DefaultAudioSink}.
+   */
+  private static final long AUDIO_SINK_FULL_MAX_RENDER_DELAY_US = 100000;
+
   private final DrmSessionManager<ExoMediaCrypto> drmSessionManager;
   private final boolean playClearSamplesWithoutKeys;
   private final EventDispatcher eventDispatcher;
@@ -110,6 +117,7 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
   private boolean inputStreamEnded;
   private boolean outputStreamEnded;
   private boolean waitingForKeys;
+  private boolean audioSinkFull;
 
   public SimpleDecoderAudioRenderer() {
     this(null, null);
@@ -226,6 +234,7 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
 
   @Override
   public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+    audioSinkFull = false;
     if (outputStreamEnded) {
       try {
         audioSink.playToEndOfStream();
@@ -365,6 +374,7 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
       return true;
     }
 
+    audioSinkFull = true;
     return false;
   }
 
@@ -461,6 +471,14 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     }
   }
 
+  @Override
+  public long getMaxRenderDelayUs() {
+    // While the sink is full there's nothing to do until it has played out some of its data,
+    // unless the player needs to switch to the next stream.
+    return audioSinkFull && !hasReadStreamToEnd() ? AUDIO_SINK_FULL_MAX_RENDER_DELAY_US
+        : super.getMaxRenderDelayUs();
+  }
+
   @Override
   public boolean isEnded() {
     return outputStreamEnded && audioSink.isEnded();
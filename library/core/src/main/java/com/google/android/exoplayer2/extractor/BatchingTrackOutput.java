@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A {@link TrackOutput} that buffers sample metadata and passes it to another {@link TrackOutput}
+ * in batches, using {@link TrackOutput#sampleMetadataBatch}. Formats and sample data are passed on
+ * immediately.
+ * <p>
+ * Buffered samples are passed on when the batch is full and when the format changes. Extractors
+ * should also call {@link #flush()} whenever samples must become available downstream, for example
+ * at the end of a run of samples and before reaching the end of the input, and {@link #clear()}
+ * when seeking. Extractors that use this class should implement {@link Client}, so that buffered
+ * samples are also passed on when extraction is paused.
+ */
+public final class BatchingTrackOutput implements TrackOutput {
+
+  /**
+   * An {@link Extractor} that outputs samples through {@link BatchingTrackOutput}s, or that
+   * otherwise defers outputting the samples it has read.
+   */
+  public interface Client {
+
+    /**
+     * Calls {@link #flush()} on each of the extractor's {@link BatchingTrackOutput}s, and outputs
+     * any other samples it has deferred. Called between calls to
+     * {@link Extractor#read(ExtractorInput, PositionHolder)} when extraction is about to pause, so
+     * that the samples whose data has been read are available while it's paused.
+     */
+    void flushSampleBatches();
+
+  }
+
+  /**
+   * The default maximum number of samples in a batch.
+   */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+
+  private final TrackOutput output;
+  private final long[] timesUs;
+  private final int[] flags;
+  private final int[] sizes;
+  private final int[] offsets;
+  private final long[] endPositions;
+  private final CryptoData[] cryptoDatas;
+
+  private long totalBytesWritten;
+  private int batchSize;
+
+  /**
+   * @param output The {@link TrackOutput} to which batches are passed.
+   */
+  public BatchingTrackOutput(TrackOutput output) {
+    this(output, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  /**
+   * @param output The {@link TrackOutput} to which batches are passed.
+   * @param maxBatchSize The maximum number of samples in a batch.
+   */
+  public BatchingTrackOutput(TrackOutput output, int maxBatchSize) {
+    Assertions.checkArgument(maxBatchSize > 0);
+    this.output = output;
+    timesUs = new long[maxBatchSize];
+    flags = new int[maxBatchSize];
+    sizes = new int[maxBatchSize];
+    offsets = new int[maxBatchSize];
+    endPositions = new long[maxBatchSize];
+    cryptoDatas = new CryptoData[maxBatchSize];
+  }
+
+  /**
+   * Passes any buffered samples to the output.
+   */
+  public void flush() {
+    if (batchSize == 0) {
+      return;
+    }
+    for (int i = 0; i < batchSize; i++) {
+      offsets[i] = (int) (totalBytesWritten - endPositions[i]);
+    }
+    output.sampleMetadataBatch(batchSize, timesUs, flags, sizes, offsets, cryptoDatas);
+    Arrays.fill(cryptoDatas, 0, batchSize, null);
+    batchSize = 0;
+  }
+
+  /**
+   * Discards any buffered samples.
+   */
+  public void clear() {
+    Arrays.fill(cryptoDatas, 0, batchSize, null);
+    batchSize = 0;
+  }
+
+  @Override
+  public void format(Format format) {
+    flush();
+    output.format(format);
+  }
+
+  @Override
+  public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
+      throws IOException, InterruptedException {
+    int bytesAppended = output.sampleData(input, length, allowEndOfInput);
+    if (bytesAppended != C.RESULT_END_OF_INPUT) {
+      totalBytesWritten += bytesAppended;
+    }
+    return bytesAppended;
+  }
+
+  @Override
+  public void sampleData(ParsableByteArray data, int length) {
+    output.sampleData(data, length);
+    totalBytesWritten += length;
+  }
+
+  @Override
+  public void sampleMetadata(long timeUs, @C.BufferFlags int flags, int size, int offset,
+      CryptoData cryptoData) {
+    timesUs[batchSize] = timeUs;
+    this.flags[batchSize] = flags;
+    sizes[batchSize] = size;
+    endPositions[batchSize] = totalBytesWritten - offset;
+    cryptoDatas[batchSize] = cryptoData;
+    batchSize++;
+    if (batchSize == timesUs.length) {
+      flush();
+    }
+  }
+
+  @Override
+  public void sampleMetadataBatch(int sampleCount, long[] timesUs, int[] flags, int[] sizes,
+      int[] offsets, CryptoData[] cryptoDatas) {
+    flush();
+    output.sampleMetadataBatch(sampleCount, timesUs, flags, sizes, offsets, cryptoDatas);
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.extractor;
 
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.extractor.flv.FlvExtractor;
 import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
 import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
@@ -30,6 +31,7 @@ import com.google.android.exoplayer2.extractor.ts.TsPayloadReader;
 import com.google.android.exoplayer2.extractor.wav.WavExtractor;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
 import java.lang.reflect.Constructor;
+import java.util.concurrent.Executor;
 
 /**
  * An {@link ExtractorsFactory} that provides an array of extractors for the following formats:
@@ -76,6 +78,7 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
   private @Mp3Extractor.Flags int mp3Flags;
   private @TsExtractor.Mode int tsMode;
   private @DefaultTsPayloadReaderFactory.Flags int tsFlags;
+  private @Nullable Executor tsDemuxExecutor;
 
   public DefaultExtractorsFactory() {
     tsMode = TsExtractor.MODE_SINGLE_PMT;
@@ -157,6 +160,20 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
     return this;
   }
 
+  /**
+   * Sets the executor on which {@link TsExtractor} instances created by the factory parse
+   * elementary streams in parallel.
+   *
+   * @see TsExtractor#TsExtractor(int, TimestampAdjuster, TsPayloadReader.Factory, Executor)
+   * @param executor The executor to use, or null to parse elementary streams on the loading thread.
+   * @return The factory, for convenience.
+   */
+  public synchronized DefaultExtractorsFactory setTsExtractorDemuxExecutor(
+      @Nullable Executor executor) {
+    tsDemuxExecutor = executor;
+    return this;
+  }
+
   @Override
   public synchronized Extractor[] createExtractors() {
     Extractor[] extractors = new Extractor[FLAC_EXTRACTOR_CONSTRUCTOR == null ? 11 : 12];
@@ -166,7 +183,8 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
     extractors[3] = new Mp3Extractor(mp3Flags);
     extractors[4] = new AdtsExtractor();
     extractors[5] = new Ac3Extractor();
-    extractors[6] = new TsExtractor(tsMode, tsFlags);
+    extractors[6] = new TsExtractor(tsMode, new TimestampAdjuster(0),
+        new DefaultTsPayloadReaderFactory(tsFlags), tsDemuxExecutor);
     extractors[7] = new FlvExtractor();
     extractors[8] = new OggExtractor();
     extractors[9] = new PsExtractor();
@@ -182,4 +200,13 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
     return extractors;
   }
 
+  /**
+   * Returns whether {@code extractor} is an instance of the FLAC extractor, which is loaded by
+   * reflection if the FLAC extension is included.
+   */
+  /* package */ static boolean isFlacExtractor(Extractor extractor) {
+    return FLAC_EXTRACTOR_CONSTRUCTOR != null
+        && FLAC_EXTRACTOR_CONSTRUCTOR.getDeclaringClass().isInstance(extractor);
+  }
+
 }
@@ -55,4 +55,10 @@ public final class DummyTrackOutput implements TrackOutput {
     // Do nothing.
   }
 
+  @Override
+  public void sampleMetadataBatch(int sampleCount, long[] timesUs, int[] flags, int[] sizes,
+      int[] offsets, CryptoData[] cryptoDatas) {
+    // Do nothing.
+  }
+
 }
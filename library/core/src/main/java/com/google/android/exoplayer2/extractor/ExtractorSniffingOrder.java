@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.extractor.flv.FlvExtractor;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer2.extractor.ts.Ac3Extractor;
+import com.google.android.exoplayer2.extractor.ts.AdtsExtractor;
+import com.google.android.exoplayer2.extractor.ts.PsExtractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.extractor.wav.WavExtractor;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Orders extractors so that the ones most likely to read a stream are sniffed first.
+ * <p>
+ * Sniffing an extractor that can't read the stream is not free. Some extractors search a large
+ * amount of data for a sync word before giving up. The likelihood of each extractor is derived from
+ * the file extension of the stream's {@link Uri}, its MIME type (e.g. from an HTTP Content-Type
+ * header) and the magic bytes at the start of the stream, all of which are read from a single peek.
+ * Extractors without any hint keep their relative order and are sniffed afterwards, so the ordering
+ * never prevents a stream from being recognized.
+ */
+public final class ExtractorSniffingOrder {
+
+  private static final int FORMAT_UNKNOWN = 0;
+  private static final int FORMAT_MATROSKA = 1;
+  private static final int FORMAT_MP4 = 2;
+  private static final int FORMAT_MP3 = 3;
+  private static final int FORMAT_ADTS = 4;
+  private static final int FORMAT_AC3 = 5;
+  private static final int FORMAT_TS = 6;
+  private static final int FORMAT_FLV = 7;
+  private static final int FORMAT_OGG = 8;
+  private static final int FORMAT_PS = 9;
+  private static final int FORMAT_WAV = 10;
+  private static final int FORMAT_FLAC = 11;
+
+  private static final int SCORE_FILE_EXTENSION = 1;
+  private static final int SCORE_MIME_TYPE = 2;
+  private static final int SCORE_MAGIC_BYTES = 4;
+
+  private static final int HEADER_LENGTH = 12;
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int TS_SYNC_BYTE = 0x47;
+
+  private ExtractorSniffingOrder() {}
+
+  /**
+   * Sorts {@code extractors} in place so that the most likely extractors for the stream come first.
+   * The sort is stable. The peek position of {@code input} is reset before returning.
+   *
+   * @param extractors The extractors to sort.
+   * @param input The {@link ExtractorInput} from which the magic bytes should be peeked. Its peek
+   *     position must be at the start of the stream.
+   * @param uri The {@link Uri} of the stream, or null if unknown.
+   * @param mimeType The MIME type of the stream, or null if unknown. Parameters (e.g. a charset)
+   *     are ignored.
+   * @throws IOException If an error occurs peeking from the input.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  public static void sort(Extractor[] extractors, ExtractorInput input, @Nullable Uri uri,
+      @Nullable String mimeType) throws IOException, InterruptedException {
+    int fileExtensionFormat = uri == null ? FORMAT_UNKNOWN : getFormatForUri(uri);
+    int mimeTypeFormat = mimeType == null ? FORMAT_UNKNOWN : getFormatForMimeType(mimeType);
+    int magicBytesFormat;
+    try {
+      magicBytesFormat = getFormatForMagicBytes(input);
+    } finally {
+      input.resetPeekPosition();
+    }
+
+    int[] scores = new int[extractors.length];
+    for (int i = 0; i < extractors.length; i++) {
+      int format = getFormat(extractors[i]);
+      if (format == FORMAT_UNKNOWN) {
+        continue;
+      }
+      scores[i] = (format == fileExtensionFormat ? SCORE_FILE_EXTENSION : 0)
+          + (format == mimeTypeFormat ? SCORE_MIME_TYPE : 0)
+          + (format == magicBytesFormat ? SCORE_MAGIC_BYTES : 0);
+    }
+
+    // Insertion sort, which is stable and fast for the handful of extractors being sorted.
+    for (int i = 1; i < extractors.length; i++) {
+      Extractor extractor = extractors[i];
+      int score = scores[i];
+      int j = i - 1;
+      while (j >= 0 && scores[j] < score) {
+        extractors[j + 1] = extractors[j];
+        scores[j + 1] = scores[j];
+        j--;
+      }
+      extractors[j + 1] = extractor;
+      scores[j + 1] = score;
+    }
+  }
+
+  private static int getFormat(Extractor extractor) {
+    if (extractor instanceof MatroskaExtractor) {
+      return FORMAT_MATROSKA;
+    } else if (extractor instanceof FragmentedMp4Extractor || extractor instanceof Mp4Extractor) {
+      return FORMAT_MP4;
+    } else if (extractor instanceof Mp3Extractor) {
+      return FORMAT_MP3;
+    } else if (extractor instanceof AdtsExtractor) {
+      return FORMAT_ADTS;
+    } else if (extractor instanceof Ac3Extractor) {
+      return FORMAT_AC3;
+    } else if (extractor instanceof TsExtractor) {
+      return FORMAT_TS;
+    } else if (extractor instanceof FlvExtractor) {
+      return FORMAT_FLV;
+    } else if (extractor instanceof OggExtractor) {
+      return FORMAT_OGG;
+    } else if (extractor instanceof PsExtractor) {
+      return FORMAT_PS;
+    } else if (extractor instanceof WavExtractor) {
+      return FORMAT_WAV;
+    } else if (DefaultExtractorsFactory.isFlacExtractor(extractor)) {
+      // The FLAC extractor is provided by an extension.
+      return FORMAT_FLAC;
+    }
+    return FORMAT_UNKNOWN;
+  }
+
+  private static int getFormatForUri(Uri uri) {
+    String lastPathSegment = uri.getLastPathSegment();
+    if (lastPathSegment == null) {
+      return FORMAT_UNKNOWN;
+    }
+    int extensionIndex = lastPathSegment.lastIndexOf('.');
+    if (extensionIndex == -1) {
+      return FORMAT_UNKNOWN;
+    }
+    switch (Util.toLowerInvariant(lastPathSegment.substring(extensionIndex + 1))) {
+      case "mkv":
+      case "mka":
+      case "webm":
+        return FORMAT_MATROSKA;
+      case "mp4":
+      case "m4a":
+      case "m4v":
+      case "mov":
+      case "3gp":
+        return FORMAT_MP4;
+      case "mp3":
+        return FORMAT_MP3;
+      case "aac":
+        return FORMAT_ADTS;
+      case "ac3":
+      case "ec3":
+        return FORMAT_AC3;
+      case "ts":
+        return FORMAT_TS;
+      case "flv":
+        return FORMAT_FLV;
+      case "ogg":
+      case "oga":
+      case "opus":
+        return FORMAT_OGG;
+      case "mpg":
+      case "mpeg":
+      case "ps":
+        return FORMAT_PS;
+      case "wav":
+      case "wave":
+        return FORMAT_WAV;
+      case "flac":
+        return FORMAT_FLAC;
+      default:
+        return FORMAT_UNKNOWN;
+    }
+  }
+
+  private static int getFormatForMimeType(String mimeType) {
+    int parametersIndex = mimeType.indexOf(';');
+    if (parametersIndex != -1) {
+      mimeType = mimeType.substring(0, parametersIndex);
+    }
+    switch (Util.toLowerInvariant(mimeType.trim())) {
+      case "video/webm":
+      case "audio/webm":
+      case "video/x-matroska":
+      case "audio/x-matroska":
+        return FORMAT_MATROSKA;
+      case "video/mp4":
+      case "audio/mp4":
+      case "video/quicktime":
+        return FORMAT_MP4;
+      case "audio/mpeg":
+      case "audio/mp3":
+        return FORMAT_MP3;
+      case "audio/aac":
+      case "audio/aacp":
+        return FORMAT_ADTS;
+      case "audio/ac3":
+      case "audio/eac3":
+        return FORMAT_AC3;
+      case "video/mp2t":
+        return FORMAT_TS;
+      case "video/x-flv":
+        return FORMAT_FLV;
+      case "audio/ogg":
+      case "video/ogg":
+      case "application/ogg":
+        return FORMAT_OGG;
+      case "video/mp2p":
+      case "video/mpeg":
+        return FORMAT_PS;
+      case "audio/wav":
+      case "audio/x-wav":
+      case "audio/wave":
+        return FORMAT_WAV;
+      case "audio/flac":
+      case "audio/x-flac":
+        return FORMAT_FLAC;
+      default:
+        return FORMAT_UNKNOWN;
+    }
+  }
+
+  private static int getFormatForMagicBytes(ExtractorInput input)
+      throws IOException, InterruptedException {
+    byte[] header = new byte[HEADER_LENGTH];
+    try {
+      if (!input.peekFully(header, 0, HEADER_LENGTH, /* allowEndOfInput= */ true)) {
+        return FORMAT_UNKNOWN;
+      }
+    } catch (EOFException e) {
+      // The stream is shorter than the header.
+      return FORMAT_UNKNOWN;
+    }
+    if (matches(header, 4, 'f', 't', 'y', 'p') || matches(header, 4, 'm', 'o', 'o', 'v')
+        || matches(header, 4, 'm', 'o', 'o', 'f')) {
+      return FORMAT_MP4;
+    } else if (matches(header, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+      return FORMAT_MATROSKA;
+    } else if (matches(header, 0, 'O', 'g', 'g', 'S')) {
+      return FORMAT_OGG;
+    } else if (matches(header, 0, 'R', 'I', 'F', 'F') && matches(header, 8, 'W', 'A', 'V', 'E')) {
+      return FORMAT_WAV;
+    } else if (matches(header, 0, 'f', 'L', 'a', 'C')) {
+      return FORMAT_FLAC;
+    } else if (matches(header, 0, 'F', 'L', 'V')) {
+      return FORMAT_FLV;
+    } else if (matches(header, 0, 0x00, 0x00, 0x01, 0xBA)) {
+      return FORMAT_PS;
+    } else if (matches(header, 0, 'I', 'D', '3')) {
+      return FORMAT_MP3;
+    } else if (matches(header, 0, 0x0B, 0x77)) {
+      return FORMAT_AC3;
+    } else if ((header[0] & 0xFF) == 0xFF && (header[1] & 0xF6) == 0xF0) {
+      // An ADTS sync word with layer 0.
+      return FORMAT_ADTS;
+    } else if ((header[0] & 0xFF) == 0xFF && (header[1] & 0xE0) == 0xE0) {
+      return FORMAT_MP3;
+    } else if ((header[0] & 0xFF) == TS_SYNC_BYTE && isTsSyncByteAt(input, TS_PACKET_SIZE)) {
+      return FORMAT_TS;
+    }
+    return FORMAT_UNKNOWN;
+  }
+
+  private static boolean isTsSyncByteAt(ExtractorInput input, int position)
+      throws IOException, InterruptedException {
+    byte[] syncByte = new byte[1];
+    input.resetPeekPosition();
+    try {
+      return input.advancePeekPosition(position, /* allowEndOfInput= */ true)
+          && input.peekFully(syncByte, 0, 1, /* allowEndOfInput= */ true)
+          && (syncByte[0] & 0xFF) == TS_SYNC_BYTE;
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  private static boolean matches(byte[] header, int offset, int... bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      if ((header[offset + i] & 0xFF) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
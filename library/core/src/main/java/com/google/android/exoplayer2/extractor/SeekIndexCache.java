@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import androidx.annotation.Nullable;
+import android.util.Log;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Persists the seek indices of progressive streams, so that an extractor reading a stream again
+ * can output its seek index without reading it from the stream.
+ * <p>
+ * Each seek index is stored in its own file in the cache directory, in a compact binary format
+ * defined by the extractor that stores it. Entries are keyed by a string that identifies the stream
+ * (e.g. its URI or custom cache key), by the length of the stream and by its content version (e.g.
+ * its HTTP entity tag) if known, so that an entry is not used if the stream has changed. The total
+ * size of the files is bounded, and the least recently used entries are deleted when it's exceeded.
+ * The cache is best effort: errors reading or writing an entry are logged and otherwise ignored.
+ */
+public final class SeekIndexCache {
+
+  /**
+   * An {@link Extractor} that can restore its seek index from a {@link SeekIndexCache}, and store
+   * it once it's been read from the stream.
+   */
+  public interface Client {
+
+    /**
+     * Sets the entry of the cache for the stream being read. Called after the extractor is
+     * initialized and before it starts reading. The extractor should restore its seek index from
+     * the entry instead of reading it from the stream if doing so avoids work, and should store its
+     * seek index in the entry once it's been read from the stream otherwise.
+     *
+     * @param entry The entry for the stream.
+     */
+    void setSeekIndexCacheEntry(Entry entry);
+
+  }
+
+  /**
+   * The entry of a {@link SeekIndexCache} for a stream.
+   */
+  public final class Entry {
+
+    /** The key identifying the stream. */
+    public final String key;
+    /** The length of the stream in bytes. */
+    public final long length;
+    /** The version of the content of the stream, or null if unknown. */
+    @Nullable public final String contentVersion;
+
+    private Entry(String key, long length, @Nullable String contentVersion) {
+      this.key = key;
+      this.length = length;
+      this.contentVersion = contentVersion;
+    }
+
+    /**
+     * Returns the data stored in the entry, or null if there is none.
+     */
+    @Nullable
+    public byte[] read() {
+      return SeekIndexCache.this.read(this);
+    }
+
+    /**
+     * Stores data in the entry, replacing any data stored before.
+     *
+     * @param data The data to store.
+     */
+    public void write(byte[] data) {
+      SeekIndexCache.this.write(this, data);
+    }
+
+    /**
+     * Returns the {@link ChunkIndex} stored in the entry by {@link #writeChunkIndex(ChunkIndex)},
+     * or null if there is none.
+     */
+    @Nullable
+    public ChunkIndex readChunkIndex() {
+      byte[] data = read();
+      if (data == null) {
+        return null;
+      }
+      try {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        int count = input.readInt();
+        int[] sizes = new int[count];
+        long[] offsets = new long[count];
+        long[] durationsUs = new long[count];
+        long[] timesUs = new long[count];
+        for (int i = 0; i < count; i++) {
+          sizes[i] = input.readInt();
+          offsets[i] = input.readLong();
+          durationsUs[i] = input.readLong();
+          timesUs[i] = input.readLong();
+        }
+        return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
+      } catch (IOException e) {
+        Log.w(TAG, "Error reading chunk index.", e);
+        return null;
+      }
+    }
+
+    /**
+     * Stores a {@link ChunkIndex} in the entry, replacing any data stored before.
+     *
+     * @param chunkIndex The {@link ChunkIndex} to store.
+     */
+    public void writeChunkIndex(ChunkIndex chunkIndex) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(bytes);
+      try {
+        output.writeInt(chunkIndex.length);
+        for (int i = 0; i < chunkIndex.length; i++) {
+          output.writeInt(chunkIndex.sizes[i]);
+          output.writeLong(chunkIndex.offsets[i]);
+          output.writeLong(chunkIndex.durationsUs[i]);
+          output.writeLong(chunkIndex.timesUs[i]);
+        }
+      } catch (IOException e) {
+        // Writing to a ByteArrayOutputStream doesn't fail.
+        throw new IllegalStateException(e);
+      }
+      write(bytes.toByteArray());
+    }
+
+  }
+
+  /**
+   * The default maximum size of the cache in bytes.
+   */
+  public static final long DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+
+  private static final String TAG = "SeekIndexCache";
+
+  private static final int VERSION = 3;
+  private static final String FILE_EXTENSION = ".idx";
+
+  private final File directory;
+  private final long maxBytes;
+
+  /**
+   * @param directory The directory in which seek indices are stored. Should be dedicated to the
+   *     cache. Created when the first seek index is stored.
+   */
+  public SeekIndexCache(File directory) {
+    this(directory, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * @param directory The directory in which seek indices are stored. Should be dedicated to the
+   *     cache. Created when the first seek index is stored.
+   * @param maxBytes The maximum size of the cache in bytes. When a seek index is stored and the
+   *     size is exceeded, the least recently used seek indices are deleted.
+   */
+  public SeekIndexCache(File directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the entry for a stream. Entries don't hold any data in memory, so they're cheap to
+   * create.
+   *
+   * @param key The key identifying the stream.
+   * @param length The length of the stream in bytes.
+   * @param contentVersion The version of the content of the stream (e.g. its HTTP entity tag or
+   *     last modification date), or null if unknown.
+   * @return The entry for the stream.
+   */
+  public Entry getEntry(String key, long length, @Nullable String contentVersion) {
+    return new Entry(key, length, contentVersion);
+  }
+
+  private synchronized byte[] read(Entry entry) {
+    File file = getFile(entry.key);
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new AtomicFile(file).openRead()));
+      if (input.readInt() != VERSION || !entry.key.equals(input.readUTF())
+          || input.readLong() != entry.length
+          || !Util.areEqual(entry.contentVersion, input.readBoolean() ? input.readUTF() : null)) {
+        return null;
+      }
+      int dataLength = input.readInt();
+      if (dataLength < 0 || dataLength > file.length()) {
+        throw new IOException("Invalid data length: " + dataLength);
+      }
+      byte[] data = new byte[dataLength];
+      input.readFully(data);
+      // The modification time of the file is its last use, which orders evictions.
+      if (!file.setLastModified(System.currentTimeMillis())) {
+        Log.w(TAG, "Failed to update the last use of seek index: " + file);
+      }
+      return data;
+    } catch (FileNotFoundException e) {
+      return null;
+    } catch (IOException e) {
+      Log.w(TAG, "Error reading seek index.", e);
+      return null;
+    } finally {
+      Util.closeQuietly(input);
+    }
+  }
+
+  private synchronized void write(Entry entry, byte[] data) {
+    if (!directory.exists() && !directory.mkdirs()) {
+      Log.w(TAG, "Failed to create seek index directory: " + directory);
+      return;
+    }
+    AtomicFile atomicFile = new AtomicFile(getFile(entry.key));
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(atomicFile.startWrite()));
+      output.writeInt(VERSION);
+      output.writeUTF(entry.key);
+      output.writeLong(entry.length);
+      output.writeBoolean(entry.contentVersion != null);
+      if (entry.contentVersion != null) {
+        output.writeUTF(entry.contentVersion);
+      }
+      output.writeInt(data.length);
+      output.write(data);
+      atomicFile.endWrite(output);
+      output = null;
+    } catch (IOException e) {
+      Log.w(TAG, "Error writing seek index.", e);
+    } finally {
+      Util.closeQuietly(output);
+    }
+    evictLeastRecentlyUsed();
+  }
+
+  private void evictLeastRecentlyUsed() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    List<File> indexFiles = new ArrayList<>();
+    final HashMap<File, Long> lastUses = new HashMap<>();
+    long totalBytes = 0;
+    for (File file : files) {
+      if (file.getName().endsWith(FILE_EXTENSION)) {
+        indexFiles.add(file);
+        lastUses.put(file, file.lastModified());
+        totalBytes += file.length();
+      }
+    }
+    if (totalBytes <= maxBytes) {
+      return;
+    }
+    Collections.sort(indexFiles, new Comparator<File>() {
+      @Override
+      public int compare(File file1, File file2) {
+        return Util.compareLong(lastUses.get(file1), lastUses.get(file2));
+      }
+    });
+    for (int i = 0; i < indexFiles.size() && totalBytes > maxBytes; i++) {
+      File file = indexFiles.get(i);
+      long fileBytes = file.length();
+      if (file.delete()) {
+        totalBytes -= fileBytes;
+      } else {
+        Log.w(TAG, "Failed to delete seek index: " + file);
+      }
+    }
+  }
+
+  private File getFile(String key) {
+    // Keys with colliding hash codes share a file. The key stored in the file tells them apart.
+    return new File(directory, Integer.toHexString(key.hashCode()) + FILE_EXTENSION);
+  }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import androidx.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * Builds the seek index of a stream by scanning it, separately from the extraction of its samples.
+ * Used by extractors that can't read a seek index from the stream, so that seeking becomes accurate
+ * without the stream having to be played to the end first.
+ * <p>
+ * The scan reads the stream through its own {@link ExtractorInput}, on a thread other than the one
+ * on which samples are extracted. The {@link SeekMap} output by the extractor is updated as the
+ * scan progresses.
+ */
+public interface SeekIndexScanner {
+
+  /**
+   * An {@link Extractor} whose seek index can be built by a {@link SeekIndexScanner}.
+   */
+  interface Provider {
+
+    /**
+     * Returns the scanner that builds the seek index of the stream, or null if the seek index
+     * doesn't need to be scanned. Called once the extractor has output its {@link SeekMap}.
+     */
+    @Nullable
+    SeekIndexScanner getSeekIndexScanner();
+
+  }
+
+  /**
+   * Returns the position from which the stream should be scanned. A scan that fails is resumed
+   * from the position returned at that point.
+   */
+  long getStartPosition();
+
+  /**
+   * Scans the stream to its end.
+   *
+   * @param input The {@link ExtractorInput} from which to read, positioned at {@link
+   *     #getStartPosition()}.
+   * @throws IOException If an error occurs reading from the input.
+   * @throws InterruptedException If the thread is interrupted.
+   */
+  void scan(ExtractorInput input) throws IOException, InterruptedException;
+
+}
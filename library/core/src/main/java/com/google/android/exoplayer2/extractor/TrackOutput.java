@@ -141,4 +141,27 @@ public interface TrackOutput {
   void sampleMetadata(long timeUs, @C.BufferFlags int flags, int size, int offset,
       CryptoData encryptionData);
 
+  /**
+   * Called when metadata associated with a batch of samples has been extracted from the stream.
+   * Equivalent to calling {@link #sampleMetadata(long, int, int, int, CryptoData)} for each of the
+   * samples in turn, but allows the output to process the batch more efficiently.
+   * <p>
+   * The corresponding sample data will have already been passed to the output via calls to
+   * {@link #sampleData(ExtractorInput, int, boolean)} or
+   * {@link #sampleData(ParsableByteArray, int)}.
+   *
+   * @param sampleCount The number of samples in the batch. The arrays may be longer than this.
+   * @param timesUs The media timestamps associated with the samples, in microseconds.
+   * @param flags Flags associated with the samples. See {@code C.BUFFER_FLAG_*}.
+   * @param sizes The sizes of the sample data, in bytes.
+   * @param offsets For each sample, the number of bytes that have been passed to
+   *     {@link #sampleData(ExtractorInput, int, boolean)} or
+   *     {@link #sampleData(ParsableByteArray, int)} since the last byte belonging to the sample,
+   *     as of this call.
+   * @param encryptionDatas The encryption data required to decrypt the samples. Elements may be
+   *     null.
+   */
+  void sampleMetadataBatch(int sampleCount, long[] timesUs, int[] flags, int[] sizes,
+      int[] offsets, CryptoData[] encryptionDatas);
+
 }
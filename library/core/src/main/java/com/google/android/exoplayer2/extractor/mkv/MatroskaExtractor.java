@@ -32,6 +32,7 @@ import com.google.android.exoplayer2.extractor.ExtractorOutput;
 import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.extractor.MpegAudioHeader;
 import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekIndexCache;
 import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.util.Assertions;
@@ -58,7 +59,7 @@ import java.util.UUID;
 /**
  * Extracts data from the Matroska and WebM container formats.
  */
-public final class MatroskaExtractor implements Extractor {
+public final class MatroskaExtractor implements Extractor, SeekIndexCache.Client {
 
   /**
    * Factory for {@link MatroskaExtractor} instances.
@@ -332,6 +333,9 @@ public final class MatroskaExtractor implements Extractor {
 
   // Whether a seek map has been sent to the output.
   private boolean sentSeekMap;
+  // The entry of a SeekIndexCache for the stream, and the seek index restored from it, or null.
+  private SeekIndexCache.Entry seekIndexCacheEntry;
+  private ChunkIndex cachedSeekIndex;
 
   // Master seek entry related elements.
   private int seekEntryId;
@@ -409,6 +413,12 @@ public final class MatroskaExtractor implements Extractor {
     extractorOutput = output;
   }
 
+  @Override
+  public void setSeekIndexCacheEntry(SeekIndexCache.Entry entry) {
+    seekIndexCacheEntry = entry;
+    cachedSeekIndex = entry.readChunkIndex();
+  }
+
   @Override
   public void seek(long position, long timeUs) {
     clusterTimecodeUs = C.TIME_UNSET;
@@ -565,7 +575,11 @@ public final class MatroskaExtractor implements Extractor {
       case ID_CLUSTER:
         if (!sentSeekMap) {
           // We need to build cues before parsing the cluster.
-          if (seekForCuesEnabled && cuesContentPosition != C.POSITION_UNSET) {
+          if (cachedSeekIndex != null) {
+            // The cues were built when the stream was previously read. Use them instead.
+            extractorOutput.seekMap(cachedSeekIndex);
+            sentSeekMap = true;
+          } else if (seekForCuesEnabled && cuesContentPosition != C.POSITION_UNSET) {
             // We know where the Cues element is located. Seek to request it.
             seekForCues = true;
           } else {
@@ -617,7 +631,11 @@ public final class MatroskaExtractor implements Extractor {
         break;
       case ID_CUES:
         if (!sentSeekMap) {
-          extractorOutput.seekMap(buildSeekMap());
+          SeekMap seekMap = buildSeekMap();
+          if (seekIndexCacheEntry != null && seekMap instanceof ChunkIndex) {
+            seekIndexCacheEntry.writeChunkIndex((ChunkIndex) seekMap);
+          }
+          extractorOutput.seekMap(seekMap);
           sentSeekMap = true;
         } else {
           // We have already built the cues. Ignore.
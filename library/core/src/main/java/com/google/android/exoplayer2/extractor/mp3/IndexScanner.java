@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp3;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.MpegAudioHeader;
+import com.google.android.exoplayer2.extractor.SeekIndexCache;
+import com.google.android.exoplayer2.extractor.SeekIndexScanner;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Builds the index of an {@link IndexSeeker} by reading the header of each frame of the stream and
+ * skipping its data. Once the end of the stream is reached, the index is completed and stored in
+ * the {@link SeekIndexCache} entry for the stream, if there is one.
+ */
+/* package */ final class IndexScanner implements SeekIndexScanner {
+
+  private final IndexSeeker indexSeeker;
+  private final int headerData;
+  private final long firstFrameTimeUs;
+  private final int sampleRate;
+  private final byte[] scratch;
+  private final MpegAudioHeader header;
+  @Nullable private final SeekIndexCache.Entry seekIndexCacheEntry;
+
+  private long position;
+  private long samplesScanned;
+
+  /**
+   * @param indexSeeker The seeker whose index is built. Must be empty.
+   * @param headerData The header of the first frame. Only frames whose headers match it are
+   *     indexed.
+   * @param firstFramePosition The position of the first frame in the stream.
+   * @param seekIndexCacheEntry The entry in which the complete index is stored, or null.
+   */
+  public IndexScanner(IndexSeeker indexSeeker, int headerData, long firstFramePosition,
+      @Nullable SeekIndexCache.Entry seekIndexCacheEntry) {
+    this.indexSeeker = indexSeeker;
+    this.headerData = headerData;
+    this.seekIndexCacheEntry = seekIndexCacheEntry;
+    firstFrameTimeUs = indexSeeker.getTimeUs(firstFramePosition);
+    position = firstFramePosition;
+    scratch = new byte[4];
+    header = new MpegAudioHeader();
+    // The sample rate is one of the header values that must match between frames.
+    MpegAudioHeader.populateHeader(headerData, header);
+    sampleRate = header.sampleRate;
+  }
+
+  @Override
+  public long getStartPosition() {
+    return position;
+  }
+
+  @Override
+  public void scan(ExtractorInput input) throws IOException, InterruptedException {
+    while (true) {
+      input.resetPeekPosition();
+      if (!input.peekFully(scratch, 0, 4, true)) {
+        break;
+      }
+      int frameHeaderData = (scratch[0] & 0xFF) << 24 | (scratch[1] & 0xFF) << 16
+          | (scratch[2] & 0xFF) << 8 | (scratch[3] & 0xFF);
+      if (!Mp3Extractor.headersMatch(frameHeaderData, headerData)
+          || !MpegAudioHeader.populateHeader(frameHeaderData, header)) {
+        // Not the start of a frame. Search for the next frame from the next byte, as the extractor
+        // does when it loses synchronization.
+        input.skipFully(1);
+        position++;
+        continue;
+      }
+      try {
+        input.skipFully(header.frameSize);
+      } catch (EOFException e) {
+        // The last frame is truncated, so it isn't read by the extractor either.
+        break;
+      }
+      indexSeeker.maybeAddSeekPoint(getTimeUs(), position);
+      position += header.frameSize;
+      samplesScanned += header.samplesPerFrame;
+    }
+    indexSeeker.setComplete(getTimeUs(), position);
+    if (seekIndexCacheEntry != null) {
+      seekIndexCacheEntry.writeChunkIndex(indexSeeker.toChunkIndex());
+    }
+  }
+
+  /**
+   * Returns the time of the frame at {@link #position}.
+   */
+  private long getTimeUs() {
+    return firstFrameTimeUs + samplesScanned * C.MICROS_PER_SECOND / sampleRate;
+  }
+
+}
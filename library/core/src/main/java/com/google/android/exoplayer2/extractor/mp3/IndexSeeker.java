@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp3;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.SeekPoint;
+import java.util.Arrays;
+
+/**
+ * MP3 seeker that uses an index of frame positions built by an {@link IndexScanner}, for streams
+ * without seeking metadata. Seeks within the indexed part of the stream are exact. Seeks beyond it
+ * are delegated to a fallback seeker until the index is complete.
+ * <p>
+ * Points are added from the thread scanning the stream while the seeker is queried from other
+ * threads, so all methods are synchronized.
+ */
+/* package */ final class IndexSeeker implements Mp3Extractor.Seeker {
+
+  /**
+   * The minimum time between two consecutive points of the index.
+   */
+  private static final long MIN_TIME_BETWEEN_POINTS_US = C.MICROS_PER_SECOND;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final Mp3Extractor.Seeker fallbackSeeker;
+
+  private long[] timesUs;
+  private long[] positions;
+  private int pointCount;
+  private long endPosition;
+  private long durationUs;
+
+  /**
+   * Creates a seeker with an empty index.
+   *
+   * @param fallbackSeeker The seeker to use beyond the indexed part of the stream.
+   * @param firstFramePosition The position of the first frame in the stream.
+   */
+  public IndexSeeker(Mp3Extractor.Seeker fallbackSeeker, long firstFramePosition) {
+    this.fallbackSeeker = fallbackSeeker;
+    timesUs = new long[INITIAL_CAPACITY];
+    positions = new long[INITIAL_CAPACITY];
+    timesUs[0] = fallbackSeeker.getTimeUs(firstFramePosition);
+    positions[0] = firstFramePosition;
+    pointCount = 1;
+    endPosition = C.POSITION_UNSET;
+    durationUs = C.TIME_UNSET;
+  }
+
+  /**
+   * Creates a seeker with a complete index, restored from a {@link ChunkIndex} previously returned
+   * by {@link #toChunkIndex()}.
+   *
+   * @param fallbackSeeker The seeker to use beyond the indexed part of the stream.
+   * @param chunkIndex The restored index. Must not be empty.
+   */
+  public IndexSeeker(Mp3Extractor.Seeker fallbackSeeker, ChunkIndex chunkIndex) {
+    this.fallbackSeeker = fallbackSeeker;
+    timesUs = chunkIndex.timesUs.clone();
+    positions = chunkIndex.offsets.clone();
+    pointCount = chunkIndex.length;
+    int lastIndex = pointCount - 1;
+    endPosition = positions[lastIndex] + chunkIndex.sizes[lastIndex];
+    durationUs = chunkIndex.getDurationUs();
+  }
+
+  /**
+   * Returns whether the index covers the whole stream.
+   */
+  public synchronized boolean isComplete() {
+    return durationUs != C.TIME_UNSET;
+  }
+
+  /**
+   * Adds the start of a frame to the index, if it extends the index and is far enough from the last
+   * point. Frames must be passed in stream order, starting from the first frame.
+   *
+   * @param timeUs The time of the frame in microseconds.
+   * @param position The position of the frame in the stream.
+   */
+  public synchronized void maybeAddSeekPoint(long timeUs, long position) {
+    if (isComplete() || position <= positions[pointCount - 1]
+        || timeUs < timesUs[pointCount - 1] + MIN_TIME_BETWEEN_POINTS_US) {
+      return;
+    }
+    if (pointCount == positions.length) {
+      timesUs = Arrays.copyOf(timesUs, pointCount * 2);
+      positions = Arrays.copyOf(positions, pointCount * 2);
+    }
+    timesUs[pointCount] = timeUs;
+    positions[pointCount] = position;
+    pointCount++;
+  }
+
+  /**
+   * Marks the index as complete. Frames must have been passed to {@link #maybeAddSeekPoint(long,
+   * long)} contiguously up to the end of the stream.
+   *
+   * @param durationUs The duration of the stream in microseconds.
+   * @param endPosition The position of the end of the last frame in the stream.
+   */
+  public synchronized void setComplete(long durationUs, long endPosition) {
+    this.durationUs = durationUs;
+    this.endPosition = endPosition;
+  }
+
+  /**
+   * Returns the complete index as a {@link ChunkIndex}, with one chunk per point of the index.
+   */
+  public synchronized ChunkIndex toChunkIndex() {
+    int[] sizes = new int[pointCount];
+    long[] durationsUs = new long[pointCount];
+    for (int i = 0; i < pointCount; i++) {
+      long nextPosition = i < pointCount - 1 ? positions[i + 1] : endPosition;
+      long nextTimeUs = i < pointCount - 1 ? timesUs[i + 1] : durationUs;
+      sizes[i] = (int) (nextPosition - positions[i]);
+      durationsUs[i] = nextTimeUs - timesUs[i];
+    }
+    return new ChunkIndex(sizes, Arrays.copyOf(positions, pointCount), durationsUs,
+        Arrays.copyOf(timesUs, pointCount));
+  }
+
+  @Override
+  public synchronized boolean isSeekable() {
+    return isComplete() || fallbackSeeker.isSeekable();
+  }
+
+  @Override
+  public synchronized SeekPoints getSeekPoints(long timeUs) {
+    int lastIndex = pointCount - 1;
+    if (!isComplete() && timeUs > timesUs[lastIndex]) {
+      return fallbackSeeker.getSeekPoints(timeUs);
+    }
+    int index = Math.max(0, binarySearchFloor(timesUs, pointCount, timeUs));
+    SeekPoint seekPoint = new SeekPoint(timesUs[index], positions[index]);
+    if (seekPoint.timeUs >= timeUs || index == lastIndex) {
+      return new SeekPoints(seekPoint);
+    } else {
+      SeekPoint nextSeekPoint = new SeekPoint(timesUs[index + 1], positions[index + 1]);
+      return new SeekPoints(seekPoint, nextSeekPoint);
+    }
+  }
+
+  @Override
+  public synchronized long getTimeUs(long position) {
+    int lastIndex = pointCount - 1;
+    if (!isComplete() && position > positions[lastIndex]) {
+      return fallbackSeeker.getTimeUs(position);
+    }
+    int index = binarySearchFloor(positions, pointCount, position);
+    if (index < 0) {
+      return timesUs[0];
+    } else if (positions[index] == position) {
+      return timesUs[index];
+    }
+    // Interpolate between the surrounding points of the index.
+    long nextPosition = index < lastIndex ? positions[index + 1] : endPosition;
+    long nextTimeUs = index < lastIndex ? timesUs[index + 1] : durationUs;
+    if (position >= nextPosition) {
+      return nextTimeUs;
+    }
+    return timesUs[index] + (position - positions[index]) * (nextTimeUs - timesUs[index])
+        / (nextPosition - positions[index]);
+  }
+
+  @Override
+  public synchronized long getDurationUs() {
+    return isComplete() ? durationUs : fallbackSeeker.getDurationUs();
+  }
+
+  private static int binarySearchFloor(long[] array, int length, long value) {
+    int index = Arrays.binarySearch(array, 0, length, value);
+    return index >= 0 ? index : -(index + 2);
+  }
+
+}
@@ -16,9 +16,11 @@
 package com.google.android.exoplayer2.extractor.mp3;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
@@ -26,6 +28,8 @@ import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.extractor.GaplessInfoHolder;
 import com.google.android.exoplayer2.extractor.MpegAudioHeader;
 import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekIndexCache;
+import com.google.android.exoplayer2.extractor.SeekIndexScanner;
 import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.metadata.Metadata;
@@ -40,7 +44,8 @@ import java.lang.annotation.RetentionPolicy;
 /**
  * Extracts data from the MP3 container format.
  */
-public final class Mp3Extractor implements Extractor {
+public final class Mp3Extractor implements Extractor, SeekIndexCache.Client,
+    SeekIndexScanner.Provider {
 
   /**
    * Factory for {@link Mp3Extractor} instances.
@@ -58,7 +63,8 @@ public final class Mp3Extractor implements Extractor {
    * Flags controlling the behavior of the extractor.
    */
   @Retention(RetentionPolicy.SOURCE)
-  @IntDef(flag = true, value = {FLAG_ENABLE_CONSTANT_BITRATE_SEEKING, FLAG_DISABLE_ID3_METADATA})
+  @IntDef(flag = true, value = {FLAG_ENABLE_CONSTANT_BITRATE_SEEKING, FLAG_DISABLE_ID3_METADATA,
+      FLAG_ENABLE_INDEX_SEEKING})
   public @interface Flags {}
   /**
    * Flag to force enable seeking using a constant bitrate assumption in cases where seeking would
@@ -70,6 +76,21 @@ public final class Mp3Extractor implements Extractor {
    * required.
    */
   public static final int FLAG_DISABLE_ID3_METADATA = 2;
+  /**
+   * Flag to enable accurate seeking in streams of known length without seeking metadata, by
+   * building an index of frame positions with a {@link SeekIndexScanner} that reads the frame
+   * headers of the stream. Seeking uses a constant bitrate assumption beyond the scanned part of
+   * the stream. Once the whole stream has been scanned, the index is stored in the {@link
+   * SeekIndexCache} entry for the stream, if there is one.
+   * <p>
+   * The scan reads the whole stream a second time, separately from the loading of samples, so
+   * enabling this flag can double the data transferred for a stream that isn't cached locally. The
+   * scan is skipped if the index is restored from a {@link SeekIndexCache}. {@link
+   * com.google.android.exoplayer2.source.ExtractorMediaSource} defers the scan until the first
+   * samples have been loaded, and runs it with priority {@link C#PRIORITY_DOWNLOAD} if it loads on
+   * a {@link com.google.android.exoplayer2.upstream.LoaderExecutor}.
+   */
+  public static final int FLAG_ENABLE_INDEX_SEEKING = 4;
 
   /**
    * The maximum number of bytes to search when synchronizing, before giving up.
@@ -108,6 +129,9 @@ public final class Mp3Extractor implements Extractor {
 
   private Metadata metadata;
   private Seeker seeker;
+  @Nullable private SeekIndexCache.Entry seekIndexCacheEntry;
+  @Nullable private ChunkIndex cachedSeekIndex;
+  @Nullable private IndexScanner indexScanner;
   private long basisTimeUs;
   private long samplesRead;
   private int sampleBytesRemaining;
@@ -164,6 +188,21 @@ public final class Mp3Extractor implements Extractor {
     // Do nothing
   }
 
+  // SeekIndexCache.Client implementation.
+
+  @Override
+  public void setSeekIndexCacheEntry(SeekIndexCache.Entry entry) {
+    seekIndexCacheEntry = entry;
+    cachedSeekIndex = entry.readChunkIndex();
+  }
+
+  // SeekIndexScanner.Provider implementation.
+
+  @Override
+  public @Nullable SeekIndexScanner getSeekIndexScanner() {
+    return indexScanner;
+  }
+
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
@@ -180,6 +219,17 @@ public final class Mp3Extractor implements Extractor {
           || (!seeker.isSeekable() && (flags & FLAG_ENABLE_CONSTANT_BITRATE_SEEKING) != 0)) {
         seeker = getConstantBitrateSeeker(input);
       }
+      if ((flags & FLAG_ENABLE_INDEX_SEEKING) != 0 && seeker instanceof ConstantBitrateSeeker
+          && input.getLength() != C.LENGTH_UNSET) {
+        if (cachedSeekIndex != null && cachedSeekIndex.length > 0) {
+          seeker = new IndexSeeker(seeker, cachedSeekIndex);
+        } else {
+          IndexSeeker indexSeeker = new IndexSeeker(seeker, input.getPosition());
+          indexScanner = new IndexScanner(indexSeeker, synchronizedHeaderData, input.getPosition(),
+              seekIndexCacheEntry);
+          seeker = indexSeeker;
+        }
+      }
       extractorOutput.seekMap(seeker);
       trackOutput.format(Format.createAudioSampleFormat(null, synchronizedHeader.mimeType, null,
           Format.NO_VALUE, MpegAudioHeader.MAX_FRAME_SIZE_BYTES, synchronizedHeader.channels,
@@ -399,7 +449,7 @@ public final class Mp3Extractor implements Extractor {
   /**
    * Returns whether the headers match in those bits masked by {@link #MPEG_AUDIO_HEADER_MASK}.
    */
-  private static boolean headersMatch(int headerA, long headerB) {
+  /* package */ static boolean headersMatch(int headerA, long headerB) {
     return (headerA & MPEG_AUDIO_HEADER_MASK) == (headerB & MPEG_AUDIO_HEADER_MASK);
   }
 
@@ -105,42 +105,35 @@ import java.util.List;
   }
 
   /**
-   * Parses an stbl atom (defined in 14496-12).
+   * Parses an stbl atom (defined in 14496-12), without applying the edit list of the track. The
+   * returned table no longer references the data of {@code stblAtom}.
    *
    * @param track Track to which this sample table corresponds.
-   * @param stblAtom stbl (sample table) atom to decode.
-   * @param gaplessInfoHolder Holder to populate with gapless playback information.
-   * @return Sample table described by the stbl atom.
-   * @throws ParserException If the resulting sample sequence does not contain a sync sample.
+   * @param stblAtom stbl (sample table) atom to decode. Its sample size and chunk offset atoms are
+   *     read separately by a {@link SampleTableAtomReader}, and aren't children of the atom.
+   * @param sampleSizes The sample sizes read from the stsz or stz2 atom, or null if neither was
+   *     present.
+   * @param chunkOffsets The chunk offsets read from the stco or co64 atom, or null if neither was
+   *     present.
+   * @return Sample table described by the stbl atom, before edits are applied.
+   * @throws ParserException If the stbl atom is malformed.
    */
-  public static TrackSampleTable parseStbl(Track track, Atom.ContainerAtom stblAtom,
-      GaplessInfoHolder gaplessInfoHolder) throws ParserException {
-    SampleSizeBox sampleSizeBox;
-    Atom.LeafAtom stszAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stsz);
-    if (stszAtom != null) {
-      sampleSizeBox = new StszSampleSizeBox(stszAtom);
-    } else {
-      Atom.LeafAtom stz2Atom = stblAtom.getLeafAtomOfType(Atom.TYPE_stz2);
-      if (stz2Atom == null) {
-        throw new ParserException("Track has no sample table size information");
-      }
-      sampleSizeBox = new Stz2SampleSizeBox(stz2Atom);
+  public static UneditedSampleTable parseUneditedStbl(Track track, Atom.ContainerAtom stblAtom,
+      SampleTableAtomReader.SampleSizes sampleSizes, CompactLongArray chunkOffsets)
+      throws ParserException {
+    if (sampleSizes == null) {
+      throw new ParserException("Track has no sample table size information");
     }
 
-    int sampleCount = sampleSizeBox.getSampleCount();
+    int sampleCount = sampleSizes.sampleCount;
     if (sampleCount == 0) {
-      return new TrackSampleTable(
-          new long[0], new int[0], 0, new long[0], new int[0], C.TIME_UNSET);
+      return new UneditedSampleTable(new TrackSampleTable.Builder(0), 0);
     }
 
     // Entries are byte offsets of chunks.
-    boolean chunkOffsetsAreLongs = false;
-    Atom.LeafAtom chunkOffsetsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stco);
-    if (chunkOffsetsAtom == null) {
-      chunkOffsetsAreLongs = true;
-      chunkOffsetsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_co64);
+    if (chunkOffsets == null) {
+      throw new ParserException("Track has no chunk offset information");
     }
-    ParsableByteArray chunkOffsets = chunkOffsetsAtom.data;
     // Entries are (chunk number, number of samples per chunk, sample description index).
     ParsableByteArray stsc = stblAtom.getLeafAtomOfType(Atom.TYPE_stsc).data;
     // Entries are (number of samples, timestamp delta between those samples).
@@ -153,7 +146,7 @@ import java.util.List;
     ParsableByteArray ctts = cttsAtom != null ? cttsAtom.data : null;
 
     // Prepare to read chunk information.
-    ChunkIterator chunkIterator = new ChunkIterator(stsc, chunkOffsets, chunkOffsetsAreLongs);
+    ChunkIterator chunkIterator = new ChunkIterator(stsc, chunkOffsets);
 
     // Prepare to read sample timestamps.
     stts.setPosition(Atom.FULL_HEADER_SIZE);
@@ -184,24 +177,17 @@ import java.util.List;
     }
 
     // True if we can rechunk fixed-sample-size data. Note that we only rechunk raw audio.
-    boolean isRechunkable = sampleSizeBox.isFixedSampleSize()
+    boolean isRechunkable = sampleSizes.fixedSampleSize != 0
         && MimeTypes.AUDIO_RAW.equals(track.format.sampleMimeType)
         && remainingTimestampDeltaChanges == 0 && remainingTimestampOffsetChanges == 0
         && remainingSynchronizationSamples == 0;
 
-    long[] offsets;
-    int[] sizes;
-    int maximumSize = 0;
-    long[] timestamps;
-    int[] flags;
+    TrackSampleTable.Builder samples;
     long timestampTimeUnits = 0;
     long duration;
 
     if (!isRechunkable) {
-      offsets = new long[sampleCount];
-      sizes = new int[sampleCount];
-      timestamps = new long[sampleCount];
-      flags = new int[sampleCount];
+      samples = new TrackSampleTable.Builder(sampleCount);
       long offset = 0;
       int remainingSamplesInChunk = 0;
 
@@ -228,22 +214,17 @@ import java.util.List;
           remainingSamplesAtTimestampOffset--;
         }
 
-        offsets[i] = offset;
-        sizes[i] = sampleSizeBox.readNextSampleSize();
-        if (sizes[i] > maximumSize) {
-          maximumSize = sizes[i];
-        }
-        timestamps[i] = timestampTimeUnits + timestampOffset;
-
+        int size = sampleSizes.getSize(i);
         // All samples are synchronization samples if the stss is not present.
-        flags[i] = stss == null ? C.BUFFER_FLAG_KEY_FRAME : 0;
+        int flags = stss == null ? C.BUFFER_FLAG_KEY_FRAME : 0;
         if (i == nextSynchronizationSampleIndex) {
-          flags[i] = C.BUFFER_FLAG_KEY_FRAME;
+          flags = C.BUFFER_FLAG_KEY_FRAME;
           remainingSynchronizationSamples--;
           if (remainingSynchronizationSamples > 0) {
             nextSynchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
           }
         }
+        samples.addSample(offset, size, timestampTimeUnits + timestampOffset, flags);
 
         // Add on the duration of this sample.
         timestampTimeUnits += timestampDeltaInTimeUnits;
@@ -260,7 +241,7 @@ import java.util.List;
           remainingTimestampDeltaChanges--;
         }
 
-        offset += sizes[i];
+        offset += size;
         remainingSamplesInChunk--;
       }
       duration = timestampTimeUnits + timestampOffset;
@@ -290,23 +271,43 @@ import java.util.List;
         chunkOffsetsBytes[chunkIterator.index] = chunkIterator.offset;
         chunkSampleCounts[chunkIterator.index] = chunkIterator.numSamples;
       }
-      int fixedSampleSize = sampleSizeBox.readNextSampleSize();
+      int fixedSampleSize = sampleSizes.fixedSampleSize;
       FixedSampleSizeRechunker.Results rechunkedResults = FixedSampleSizeRechunker.rechunk(
           fixedSampleSize, chunkOffsetsBytes, chunkSampleCounts, timestampDeltaInTimeUnits);
-      offsets = rechunkedResults.offsets;
-      sizes = rechunkedResults.sizes;
-      maximumSize = rechunkedResults.maximumSize;
-      timestamps = rechunkedResults.timestamps;
-      flags = rechunkedResults.flags;
+      int rechunkedSampleCount = rechunkedResults.offsets.length;
+      samples = new TrackSampleTable.Builder(rechunkedSampleCount);
+      for (int i = 0; i < rechunkedSampleCount; i++) {
+        samples.addSample(rechunkedResults.offsets[i], rechunkedResults.sizes[i],
+            rechunkedResults.timestamps[i], rechunkedResults.flags[i]);
+      }
       duration = rechunkedResults.duration;
     }
+    return new UneditedSampleTable(samples, duration);
+  }
+
+  /**
+   * Applies the edit list of a track to its sample table.
+   *
+   * @param track Track to which the sample table corresponds.
+   * @param sampleTable The sample table before edits are applied. It must not be used afterwards.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @return The edited sample table.
+   */
+  public static TrackSampleTable applyEditList(Track track, UneditedSampleTable sampleTable,
+      GaplessInfoHolder gaplessInfoHolder) {
+    TrackSampleTable.Builder samples = sampleTable.samples;
+    long duration = sampleTable.duration;
+    int sampleCount = samples.getSampleCount();
+    if (sampleCount == 0) {
+      return samples.build(C.TIME_UNSET);
+    }
     long durationUs = Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, track.timescale);
 
     if (track.editListDurations == null || gaplessInfoHolder.hasGaplessInfo()) {
       // There is no edit list, or we are ignoring it as we already have gapless metadata to apply.
       // This implementation does not support applying both gapless metadata and an edit list.
-      Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(offsets, sizes, maximumSize, timestamps, flags, durationUs);
+      samples.scaleTimestamps(0, C.MICROS_PER_SECOND, track.timescale);
+      return samples.build(durationUs);
     }
 
     // See the BMFF spec (ISO 14496-12) subsection 8.6.6. Edit lists that require prerolling from a
@@ -316,19 +317,19 @@ import java.util.List;
     // of samples. The extractor may place further restrictions on what edited streams are playable.
 
     if (track.editListDurations.length == 1 && track.type == C.TRACK_TYPE_AUDIO
-        && timestamps.length >= 2) {
+        && sampleCount >= 2) {
       // Handle the edit by setting gapless playback metadata, if possible. This implementation
       // assumes that only one "roll" sample is needed, which is the case for AAC, so the start/end
       // points of the edit must lie within the first/last samples respectively.
       long editStartTime = track.editListMediaTimes[0];
       long editEndTime = editStartTime + Util.scaleLargeTimestamp(track.editListDurations[0],
           track.timescale, track.movieTimescale);
-      if (timestamps[0] <= editStartTime
-          && editStartTime < timestamps[1]
-          && timestamps[timestamps.length - 1] < editEndTime
+      if (samples.getTimestamp(0) <= editStartTime
+          && editStartTime < samples.getTimestamp(1)
+          && samples.getTimestamp(sampleCount - 1) < editEndTime
           && editEndTime <= duration) {
         long paddingTimeUnits = duration - editEndTime;
-        long encoderDelay = Util.scaleLargeTimestamp(editStartTime - timestamps[0],
+        long encoderDelay = Util.scaleLargeTimestamp(editStartTime - samples.getTimestamp(0),
             track.format.sampleRate, track.timescale);
         long encoderPadding = Util.scaleLargeTimestamp(paddingTimeUnits,
             track.format.sampleRate, track.timescale);
@@ -336,8 +337,8 @@ import java.util.List;
             && encoderPadding <= Integer.MAX_VALUE) {
           gaplessInfoHolder.encoderDelay = (int) encoderDelay;
           gaplessInfoHolder.encoderPadding = (int) encoderPadding;
-          Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-          return new TrackSampleTable(offsets, sizes, maximumSize, timestamps, flags, durationUs);
+          samples.scaleTimestamps(0, C.MICROS_PER_SECOND, track.timescale);
+          return samples.build(durationUs);
         }
       }
     }
@@ -347,14 +348,10 @@ import java.util.List;
       // unfragmented files open to interpretation. We handle this as a special case and include all
       // samples in the edit.
       long editStartTime = track.editListMediaTimes[0];
-      for (int i = 0; i < timestamps.length; i++) {
-        timestamps[i] =
-            Util.scaleLargeTimestamp(
-                timestamps[i] - editStartTime, C.MICROS_PER_SECOND, track.timescale);
-      }
+      samples.scaleTimestamps(editStartTime, C.MICROS_PER_SECOND, track.timescale);
       durationUs =
           Util.scaleLargeTimestamp(duration - editStartTime, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(offsets, sizes, maximumSize, timestamps, flags, durationUs);
+      return samples.build(durationUs);
     }
 
     // Omit any sample at the end point of an edit for audio tracks.
@@ -362,33 +359,24 @@ import java.util.List;
 
     // Count the number of samples after applying edits.
     int editedSampleCount = 0;
-    int nextSampleIndex = 0;
-    boolean copyMetadata = false;
     for (int i = 0; i < track.editListDurations.length; i++) {
       long editMediaTime = track.editListMediaTimes[i];
       if (editMediaTime != -1) {
         long editDuration =
             Util.scaleLargeTimestamp(
                 track.editListDurations[i], track.timescale, track.movieTimescale);
-        int startIndex = Util.binarySearchCeil(timestamps, editMediaTime, true, true);
+        int startIndex = samples.binarySearchTimestampCeil(editMediaTime, true, true);
         int endIndex =
-            Util.binarySearchCeil(
-                timestamps, editMediaTime + editDuration, omitClippedSample, false);
+            samples.binarySearchTimestampCeil(
+                editMediaTime + editDuration, omitClippedSample, false);
         editedSampleCount += endIndex - startIndex;
-        copyMetadata |= nextSampleIndex != startIndex;
-        nextSampleIndex = endIndex;
       }
     }
-    copyMetadata |= editedSampleCount != sampleCount;
-
-    // Calculate edited sample timestamps and update the corresponding metadata arrays.
-    long[] editedOffsets = copyMetadata ? new long[editedSampleCount] : offsets;
-    int[] editedSizes = copyMetadata ? new int[editedSampleCount] : sizes;
-    int editedMaximumSize = copyMetadata ? 0 : maximumSize;
-    int[] editedFlags = copyMetadata ? new int[editedSampleCount] : flags;
-    long[] editedTimestamps = new long[editedSampleCount];
+
+    // Copy the edited samples to a new table, calculating their timestamps.
+    TrackSampleTable.Builder editedSamples = new TrackSampleTable.Builder(editedSampleCount);
+    boolean hasSyncSample = false;
     long pts = 0;
-    int sampleIndex = 0;
     for (int i = 0; i < track.editListDurations.length; i++) {
       long editMediaTime = track.editListMediaTimes[i];
       long editDuration = track.editListDurations[i];
@@ -396,49 +384,32 @@ import java.util.List;
         long endMediaTime =
             editMediaTime
                 + Util.scaleLargeTimestamp(editDuration, track.timescale, track.movieTimescale);
-        int startIndex = Util.binarySearchCeil(timestamps, editMediaTime, true, true);
-        int endIndex = Util.binarySearchCeil(timestamps, endMediaTime, omitClippedSample, false);
-        if (copyMetadata) {
-          int count = endIndex - startIndex;
-          System.arraycopy(offsets, startIndex, editedOffsets, sampleIndex, count);
-          System.arraycopy(sizes, startIndex, editedSizes, sampleIndex, count);
-          System.arraycopy(flags, startIndex, editedFlags, sampleIndex, count);
-        }
+        int startIndex = samples.binarySearchTimestampCeil(editMediaTime, true, true);
+        int endIndex = samples.binarySearchTimestampCeil(endMediaTime, omitClippedSample, false);
         for (int j = startIndex; j < endIndex; j++) {
           long ptsUs = Util.scaleLargeTimestamp(pts, C.MICROS_PER_SECOND, track.movieTimescale);
           long timeInSegmentUs =
               Util.scaleLargeTimestamp(
-                  timestamps[j] - editMediaTime, C.MICROS_PER_SECOND, track.timescale);
-          editedTimestamps[sampleIndex] = ptsUs + timeInSegmentUs;
-          if (copyMetadata && editedSizes[sampleIndex] > editedMaximumSize) {
-            editedMaximumSize = sizes[j];
-          }
-          sampleIndex++;
+                  samples.getTimestamp(j) - editMediaTime, C.MICROS_PER_SECOND, track.timescale);
+          int flags = samples.getFlags(j);
+          hasSyncSample |= (flags & C.BUFFER_FLAG_KEY_FRAME) != 0;
+          editedSamples.addSample(
+              samples.getOffset(j), samples.getSize(j), ptsUs + timeInSegmentUs, flags);
         }
       }
       pts += editDuration;
     }
     long editedDurationUs = Util.scaleLargeTimestamp(pts, C.MICROS_PER_SECOND, track.timescale);
 
-    boolean hasSyncSample = false;
-    for (int i = 0; i < editedFlags.length && !hasSyncSample; i++) {
-      hasSyncSample |= (editedFlags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0;
-    }
     if (!hasSyncSample) {
       // We don't support edit lists where the edited sample sequence doesn't contain a sync sample.
       // Such edit lists are often (although not always) broken, so we ignore it and continue.
       Log.w(TAG, "Ignoring edit list: Edited sample sequence does not contain a sync sample.");
-      Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(offsets, sizes, maximumSize, timestamps, flags, durationUs);
+      samples.scaleTimestamps(0, C.MICROS_PER_SECOND, track.timescale);
+      return samples.build(durationUs);
     }
 
-    return new TrackSampleTable(
-        editedOffsets,
-        editedSizes,
-        editedMaximumSize,
-        editedTimestamps,
-        editedFlags,
-        editedDurationUs);
+    return editedSamples.build(editedDurationUs);
   }
 
   /**
@@ -1184,6 +1155,23 @@ import java.util.List;
     // Prevent instantiation.
   }
 
+  /**
+   * A sample table parsed from an stbl atom, before the edit list of its track is applied.
+   */
+  /* package */ static final class UneditedSampleTable {
+
+    /** The samples, with timestamps in the timescale of the track. */
+    public final TrackSampleTable.Builder samples;
+    /** The duration of the samples in the timescale of the track. */
+    public final long duration;
+
+    public UneditedSampleTable(TrackSampleTable.Builder samples, long duration) {
+      this.samples = samples;
+      this.duration = duration;
+    }
+
+  }
+
   private static final class ChunkIterator {
 
     public final int length;
@@ -1192,20 +1180,16 @@ import java.util.List;
     public int numSamples;
     public long offset;
 
-    private final boolean chunkOffsetsAreLongs;
-    private final ParsableByteArray chunkOffsets;
+    private final CompactLongArray chunkOffsets;
     private final ParsableByteArray stsc;
 
     private int nextSamplesPerChunkChangeIndex;
     private int remainingSamplesPerChunkChanges;
 
-    public ChunkIterator(ParsableByteArray stsc, ParsableByteArray chunkOffsets,
-        boolean chunkOffsetsAreLongs) {
+    public ChunkIterator(ParsableByteArray stsc, CompactLongArray chunkOffsets) {
       this.stsc = stsc;
       this.chunkOffsets = chunkOffsets;
-      this.chunkOffsetsAreLongs = chunkOffsetsAreLongs;
-      chunkOffsets.setPosition(Atom.FULL_HEADER_SIZE);
-      length = chunkOffsets.readUnsignedIntToInt();
+      length = chunkOffsets.length();
       stsc.setPosition(Atom.FULL_HEADER_SIZE);
       remainingSamplesPerChunkChanges = stsc.readUnsignedIntToInt();
       Assertions.checkState(stsc.readInt() == 1, "first_chunk must be 1");
@@ -1216,8 +1200,7 @@ import java.util.List;
       if (++index == length) {
         return false;
       }
-      offset = chunkOffsetsAreLongs ? chunkOffsets.readUnsignedLongToLong()
-          : chunkOffsets.readUnsignedInt();
+      offset = chunkOffsets.get(index);
       if (index == nextSamplesPerChunkChangeIndex) {
         numSamples = stsc.readUnsignedIntToInt();
         stsc.skipBytes(4); // Skip sample_description_index
@@ -1267,111 +1250,4 @@ import java.util.List;
 
   }
 
-  /**
-   * A box containing sample sizes (e.g. stsz, stz2).
-   */
-  private interface SampleSizeBox {
-
-    /**
-     * Returns the number of samples.
-     */
-    int getSampleCount();
-
-    /**
-     * Returns the size for the next sample.
-     */
-    int readNextSampleSize();
-
-    /**
-     * Returns whether samples have a fixed size.
-     */
-    boolean isFixedSampleSize();
-
-  }
-
-  /**
-   * An stsz sample size box.
-   */
-  /* package */ static final class StszSampleSizeBox implements SampleSizeBox {
-
-    private final int fixedSampleSize;
-    private final int sampleCount;
-    private final ParsableByteArray data;
-
-    public StszSampleSizeBox(Atom.LeafAtom stszAtom) {
-      data = stszAtom.data;
-      data.setPosition(Atom.FULL_HEADER_SIZE);
-      fixedSampleSize = data.readUnsignedIntToInt();
-      sampleCount = data.readUnsignedIntToInt();
-    }
-
-    @Override
-    public int getSampleCount() {
-      return sampleCount;
-    }
-
-    @Override
-    public int readNextSampleSize() {
-      return fixedSampleSize == 0 ? data.readUnsignedIntToInt() : fixedSampleSize;
-    }
-
-    @Override
-    public boolean isFixedSampleSize() {
-      return fixedSampleSize != 0;
-    }
-
-  }
-
-  /**
-   * An stz2 sample size box.
-   */
-  /* package */ static final class Stz2SampleSizeBox implements SampleSizeBox {
-
-    private final ParsableByteArray data;
-    private final int sampleCount;
-    private final int fieldSize; // Can be 4, 8, or 16.
-
-    // Used only if fieldSize == 4.
-    private int sampleIndex;
-    private int currentByte;
-
-    public Stz2SampleSizeBox(Atom.LeafAtom stz2Atom) {
-      data = stz2Atom.data;
-      data.setPosition(Atom.FULL_HEADER_SIZE);
-      fieldSize = data.readUnsignedIntToInt() & 0x000000FF;
-      sampleCount = data.readUnsignedIntToInt();
-    }
-
-    @Override
-    public int getSampleCount() {
-      return sampleCount;
-    }
-
-    @Override
-    public int readNextSampleSize() {
-      if (fieldSize == 8) {
-        return data.readUnsignedByte();
-      } else if (fieldSize == 16) {
-        return data.readUnsignedShort();
-      } else {
-        // fieldSize == 4.
-        if ((sampleIndex++ % 2) == 0) {
-          // Read the next byte into our cached byte when we are reading the upper bits.
-          currentByte = data.readUnsignedByte();
-          // Read the upper bits from the byte and shift them to the lower 4 bits.
-          return (currentByte & 0xF0) >> 4;
-        } else {
-          // Mask out the upper 4 bits of the last byte we read.
-          return currentByte & 0x0F;
-        }
-      }
-    }
-
-    @Override
-    public boolean isFixedSampleSize() {
-      return false;
-    }
-
-  }
-
 }
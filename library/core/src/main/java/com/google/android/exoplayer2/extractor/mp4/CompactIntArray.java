@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * An array of ints with a fixed capacity, to which values are appended. Values are stored as chars
+ * while they fit in 16 bits, which takes half the memory of an {@code int[]} for small values such
+ * as sample sizes. If a value doesn't fit, all values are moved to a plain array.
+ */
+/* package */ final class CompactIntArray {
+
+  private final int capacity;
+
+  private int length;
+  private char[] shortValues;
+  private int[] values;
+
+  /**
+   * @param capacity The maximum number of values that can be added.
+   */
+  public CompactIntArray(int capacity) {
+    this.capacity = capacity;
+    shortValues = new char[capacity];
+  }
+
+  /**
+   * Returns the number of values that have been added.
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Appends a value.
+   *
+   * @param value The value to append.
+   */
+  public void add(int value) {
+    Assertions.checkState(length < capacity);
+    if (shortValues != null) {
+      if (value >= 0 && value <= Character.MAX_VALUE) {
+        shortValues[length++] = (char) value;
+        return;
+      }
+      int[] values = new int[capacity];
+      for (int i = 0; i < length; i++) {
+        values[i] = shortValues[i];
+      }
+      this.values = values;
+      shortValues = null;
+    }
+    values[length++] = value;
+  }
+
+  /**
+   * Returns the value at the specified index.
+   *
+   * @param index The index of the value.
+   */
+  public int get(int index) {
+    return shortValues != null ? shortValues[index] : values[index];
+  }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * An array of longs with a fixed capacity, to which values are appended. Values are stored as the
+ * first value of each block of entries and an int delta from it per entry, which takes half the
+ * memory of a {@code long[]} for values that are close to each other, such as sample offsets and
+ * timestamps. If a value can't be stored as a delta, all values are moved to a plain array.
+ */
+/* package */ final class CompactLongArray {
+
+  private static final int BLOCK_SHIFT = 8;
+
+  private final int capacity;
+
+  private int length;
+  private long[] values;
+  private long[] blockBases;
+  private int[] deltas;
+
+  /**
+   * @param capacity The maximum number of values that can be added.
+   */
+  public CompactLongArray(int capacity) {
+    this.capacity = capacity;
+    blockBases = new long[(capacity + (1 << BLOCK_SHIFT) - 1) >> BLOCK_SHIFT];
+    deltas = new int[capacity];
+  }
+
+  /**
+   * Returns the number of values that have been added.
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Appends a value.
+   *
+   * @param value The value to append.
+   */
+  public void add(long value) {
+    Assertions.checkState(length < capacity);
+    if (values == null) {
+      int blockIndex = length >> BLOCK_SHIFT;
+      if ((length & ((1 << BLOCK_SHIFT) - 1)) == 0) {
+        blockBases[blockIndex] = value;
+      }
+      long delta = value - blockBases[blockIndex];
+      if (delta == (int) delta && (value >= blockBases[blockIndex]) == (delta >= 0)) {
+        deltas[length++] = (int) delta;
+        return;
+      }
+      // The delta doesn't fit in an int (or the difference overflowed).
+      long[] values = new long[capacity];
+      for (int i = 0; i < length; i++) {
+        values[i] = get(i);
+      }
+      this.values = values;
+      blockBases = null;
+      deltas = null;
+    }
+    values[length++] = value;
+  }
+
+  /**
+   * Returns the value at the specified index.
+   *
+   * @param index The index of the value.
+   */
+  public long get(int index) {
+    return values != null ? values[index] : blockBases[index >> BLOCK_SHIFT] + deltas[index];
+  }
+
+  /**
+   * Equivalent to {@link com.google.android.exoplayer2.util.Util#binarySearchFloor(long[], long,
+   * boolean, boolean)} on an array holding the added values.
+   */
+  public int binarySearchFloor(long value, boolean inclusive, boolean stayInBounds) {
+    int index = binarySearch(value);
+    if (index < 0) {
+      index = -(index + 2);
+    } else {
+      while ((--index) >= 0 && get(index) == value) {}
+      if (inclusive) {
+        index++;
+      }
+    }
+    return stayInBounds ? Math.max(0, index) : index;
+  }
+
+  /**
+   * Equivalent to {@link com.google.android.exoplayer2.util.Util#binarySearchCeil(long[], long,
+   * boolean, boolean)} on an array holding the added values.
+   */
+  public int binarySearchCeil(long value, boolean inclusive, boolean stayInBounds) {
+    int index = binarySearch(value);
+    if (index < 0) {
+      index = ~index;
+    } else {
+      while ((++index) < length && get(index) == value) {}
+      if (inclusive) {
+        index--;
+      }
+    }
+    return stayInBounds ? Math.min(length - 1, index) : index;
+  }
+
+  /**
+   * Equivalent to {@code Arrays.binarySearch(array, value)}, including for unsorted arrays.
+   */
+  private int binarySearch(long value) {
+    int low = 0;
+    int high = length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midValue = get(mid);
+      if (midValue < value) {
+        low = mid + 1;
+      } else if (midValue > value) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+}
@@ -25,6 +25,7 @@ import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.drm.DrmInitData;
 import com.google.android.exoplayer2.drm.DrmInitData.SchemeData;
+import com.google.android.exoplayer2.extractor.BatchingTrackOutput;
 import com.google.android.exoplayer2.extractor.ChunkIndex;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
@@ -50,13 +51,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Stack;
 import java.util.UUID;
 
 /**
  * Extracts data from the FMP4 container format.
  */
-public final class FragmentedMp4Extractor implements Extractor {
+public final class FragmentedMp4Extractor implements Extractor, BatchingTrackOutput.Client {
 
   /**
    * Factory for {@link FragmentedMp4Extractor} instances.
@@ -143,7 +143,9 @@ public final class FragmentedMp4Extractor implements Extractor {
   // Parser state.
   private final ParsableByteArray atomHeader;
   private final byte[] extendedTypeScratch;
-  private final Stack<ContainerAtom> containerAtoms;
+  private final ArrayDeque<ContainerAtom> containerAtoms;
+  private final ArrayList<ParsableByteArray> moofAtomDatas;
+  private final ArrayDeque<ParsableByteArray> recycledAtomDatas;
   private final ArrayDeque<MetadataSampleInfo> pendingMetadataSampleInfos;
   private final @Nullable TrackOutput additionalEmsgTrackOutput;
 
@@ -249,7 +251,9 @@ public final class FragmentedMp4Extractor implements Extractor {
     encryptionSignalByte = new ParsableByteArray(1);
     defaultInitializationVector = new ParsableByteArray();
     extendedTypeScratch = new byte[16];
-    containerAtoms = new Stack<>();
+    containerAtoms = new ArrayDeque<>();
+    moofAtomDatas = new ArrayList<>();
+    recycledAtomDatas = new ArrayDeque<>();
     pendingMetadataSampleInfos = new ArrayDeque<>();
     trackBundles = new SparseArray<>();
     durationUs = C.TIME_UNSET;
@@ -278,11 +282,14 @@ public final class FragmentedMp4Extractor implements Extractor {
   public void seek(long position, long timeUs) {
     int trackCount = trackBundles.size();
     for (int i = 0; i < trackCount; i++) {
-      trackBundles.valueAt(i).reset();
+      TrackBundle trackBundle = trackBundles.valueAt(i);
+      trackBundle.output.clear();
+      trackBundle.reset();
     }
     pendingMetadataSampleInfos.clear();
     pendingMetadataSampleBytes = 0;
     containerAtoms.clear();
+    recycleMoofAtomDatas();
     enterReadingAtomHeaderState();
   }
 
@@ -298,6 +305,7 @@ public final class FragmentedMp4Extractor implements Extractor {
       switch (parserState) {
         case STATE_READING_ATOM_HEADER:
           if (!readAtomHeader(input)) {
+            flushTrackBundles();
             return Extractor.RESULT_END_OF_INPUT;
           }
           break;
@@ -315,6 +323,20 @@ public final class FragmentedMp4Extractor implements Extractor {
     }
   }
 
+  // BatchingTrackOutput.Client implementation.
+
+  @Override
+  public void flushSampleBatches() {
+    flushTrackBundles();
+  }
+
+  private void flushTrackBundles() {
+    int trackCount = trackBundles.size();
+    for (int i = 0; i < trackCount; i++) {
+      trackBundles.valueAt(i).output.flush();
+    }
+  }
+
   private void enterReadingAtomHeaderState() {
     parserState = STATE_READING_ATOM_HEADER;
     atomHeaderBytesRead = 0;
@@ -380,7 +402,7 @@ public final class FragmentedMp4Extractor implements Extractor {
 
     if (shouldParseContainerAtom(atomType)) {
       long endPosition = input.getPosition() + atomSize - Atom.HEADER_SIZE;
-      containerAtoms.add(new ContainerAtom(atomType, endPosition));
+      containerAtoms.push(new ContainerAtom(atomType, endPosition));
       if (atomSize == atomHeaderBytesRead) {
         processAtomEnded(endPosition);
       } else {
@@ -394,7 +416,7 @@ public final class FragmentedMp4Extractor implements Extractor {
       if (atomSize > Integer.MAX_VALUE) {
         throw new ParserException("Leaf atom with length > 2147483647 (unsupported).");
       }
-      atomData = new ParsableByteArray((int) atomSize);
+      atomData = obtainAtomData((int) atomSize);
       System.arraycopy(atomHeader.data, 0, atomData.data, 0, Atom.HEADER_SIZE);
       parserState = STATE_READING_ATOM_PAYLOAD;
     } else {
@@ -426,6 +448,29 @@ public final class FragmentedMp4Extractor implements Extractor {
     enterReadingAtomHeaderState();
   }
 
+  /**
+   * Returns a {@link ParsableByteArray} into which leaf atom data of the given size can be read.
+   * Leaf atoms within a moof are discarded once the moof has been parsed, so their data is recycled
+   * for the following moofs. The data of pssh atoms is retained by {@link DrmInitData}, and so is
+   * never recycled.
+   */
+  private ParsableByteArray obtainAtomData(int size) {
+    if (atomType == Atom.TYPE_pssh || containerAtoms.isEmpty()
+        || containerAtoms.peekLast().type != Atom.TYPE_moof) {
+      return new ParsableByteArray(size);
+    }
+    ParsableByteArray data = recycledAtomDatas.isEmpty() ? new ParsableByteArray(size)
+        : recycledAtomDatas.pop();
+    data.reset(size);
+    moofAtomDatas.add(data);
+    return data;
+  }
+
+  private void recycleMoofAtomDatas() {
+    recycledAtomDatas.addAll(moofAtomDatas);
+    moofAtomDatas.clear();
+  }
+
   private void onLeafAtomRead(LeafAtom leaf, long inputPosition) throws ParserException {
     if (!containerAtoms.isEmpty()) {
       containerAtoms.peek().add(leaf);
@@ -507,6 +552,7 @@ public final class FragmentedMp4Extractor implements Extractor {
 
   private void onMoofContainerAtomRead(ContainerAtom moof) throws ParserException {
     parseMoof(moof, trackBundles, flags, extendedTypeScratch);
+    recycleMoofAtomDatas();
     // If drm init data is sideloaded, we ignore pssh boxes.
     DrmInitData drmInitData = sideloadedDrmInitData != null ? null
         : getDrmInitDataFromAtoms(moof.leafChildren);
@@ -1244,6 +1290,9 @@ public final class FragmentedMp4Extractor implements Extractor {
         == fragment.trunLength[currentTrackBundle.currentTrackRunIndex]) {
       currentTrackBundle.currentTrackRunIndex++;
       currentTrackBundle.currentSampleInTrackRun = 0;
+      // Samples are committed in batches. Pass on the rest of the run, so that its samples are
+      // available while the runs of other tracks are extracted.
+      currentTrackBundle.output.flush();
       currentTrackBundle = null;
     }
     parserState = STATE_READING_SAMPLE_START;
@@ -1398,7 +1447,7 @@ public final class FragmentedMp4Extractor implements Extractor {
   private static final class TrackBundle {
 
     public final TrackFragment fragment;
-    public final TrackOutput output;
+    public final BatchingTrackOutput output;
 
     public Track track;
     public DefaultSampleValues defaultSampleValues;
@@ -1408,7 +1457,7 @@ public final class FragmentedMp4Extractor implements Extractor {
 
     public TrackBundle(TrackOutput output) {
       fragment = new TrackFragment();
-      this.output = output;
+      this.output = new BatchingTrackOutput(output);
     }
 
     public void init(Track track, DefaultSampleValues defaultSampleValues) {
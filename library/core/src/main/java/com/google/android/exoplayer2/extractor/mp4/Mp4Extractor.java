@@ -19,21 +19,25 @@ import androidx.annotation.IntDef;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.extractor.BatchingTrackOutput;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
 import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.extractor.GaplessInfoHolder;
 import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekIndexCache;
 import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.extractor.SeekPoint;
-import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.extractor.mp4.Atom.ContainerAtom;
+import com.google.android.exoplayer2.extractor.mp4.AtomParsers.UneditedSampleTable;
 import com.google.android.exoplayer2.metadata.Metadata;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.NalUnitUtil;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -43,8 +47,13 @@ import java.util.Stack;
 
 /**
  * Extracts data from the MP4 container format.
+ * <p>
+ * If a {@link SeekIndexCache} entry is set, the sample tables of the tracks are stored in it once
+ * they've been parsed. When the stream is read again, the tables are restored from the entry and
+ * the sample table atoms of the moov atom are skipped rather than parsed again.
  */
-public final class Mp4Extractor implements Extractor, SeekMap {
+public final class Mp4Extractor implements Extractor, SeekMap, SeekIndexCache.Client,
+    BatchingTrackOutput.Client {
 
   /**
    * Factory for {@link Mp4Extractor} instances.
@@ -73,11 +82,13 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    * Parser states.
    */
   @Retention(RetentionPolicy.SOURCE)
-  @IntDef({STATE_READING_ATOM_HEADER, STATE_READING_ATOM_PAYLOAD, STATE_READING_SAMPLE})
+  @IntDef({STATE_READING_ATOM_HEADER, STATE_READING_ATOM_PAYLOAD,
+      STATE_READING_SAMPLE_TABLE_ATOM, STATE_READING_SAMPLE})
   private @interface State {}
   private static final int STATE_READING_ATOM_HEADER = 0;
   private static final int STATE_READING_ATOM_PAYLOAD = 1;
-  private static final int STATE_READING_SAMPLE = 2;
+  private static final int STATE_READING_SAMPLE_TABLE_ATOM = 2;
+  private static final int STATE_READING_SAMPLE = 3;
 
   // Brand stored in the ftyp atom for QuickTime media.
   private static final int BRAND_QUICKTIME = Util.getIntegerCodeForString("qt  ");
@@ -102,6 +113,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
   private final ParsableByteArray atomHeader;
   private final Stack<ContainerAtom> containerAtoms;
+  private final SampleTableAtomReader sampleTableAtomReader;
+  private final ArrayList<MoovTrak> moovTraks;
 
   @State private int parserState;
   private int atomType;
@@ -110,17 +123,25 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private ParsableByteArray atomData;
 
   private int sampleTrackIndex;
+  private int previousSampleTrackIndex;
   private int sampleBytesWritten;
   private int sampleCurrentNalBytesRemaining;
 
   // Extractor outputs.
   private ExtractorOutput extractorOutput;
+  private SeekIndexCache.Entry seekIndexCacheEntry;
   private Mp4Track[] tracks;
-  private long[][] accumulatedSampleSizes;
+  private CompactLongArray[] accumulatedSampleSizes;
   private int firstVideoTrackIndex;
   private long durationUs;
   private boolean isQuickTime;
 
+  // The edited sample tables of the traks of the moov atom, if they've been restored from the
+  // SeekIndexCache entry or parsed before.
+  private KnownTrack[] knownTracks;
+  private long moovPosition;
+  private long moovReloadPosition;
+
   /**
    * Creates a new extractor for unfragmented MP4 streams.
    */
@@ -138,9 +159,13 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     this.flags = flags;
     atomHeader = new ParsableByteArray(Atom.LONG_HEADER_SIZE);
     containerAtoms = new Stack<>();
+    sampleTableAtomReader = new SampleTableAtomReader();
+    moovTraks = new ArrayList<>();
     nalStartCode = new ParsableByteArray(NalUnitUtil.NAL_START_CODE);
     nalLength = new ParsableByteArray(4);
     sampleTrackIndex = C.INDEX_UNSET;
+    previousSampleTrackIndex = C.INDEX_UNSET;
+    moovReloadPosition = C.POSITION_UNSET;
   }
 
   @Override
@@ -153,13 +178,43 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     extractorOutput = output;
   }
 
+  @Override
+  public void setSeekIndexCacheEntry(SeekIndexCache.Entry entry) {
+    seekIndexCacheEntry = entry;
+    byte[] data = entry.read();
+    if (data == null) {
+      return;
+    }
+    ParsableByteArray knownTracksData = new ParsableByteArray(data);
+    try {
+      KnownTrack[] knownTracks = new KnownTrack[knownTracksData.readInt()];
+      for (int i = 0; i < knownTracks.length; i++) {
+        knownTracks[i] = new KnownTrack(knownTracksData.readInt(), knownTracksData.readInt(),
+            knownTracksData.readLong(), knownTracksData.readInt(), knownTracksData.readInt(),
+            TrackSampleTable.readFrom(knownTracksData));
+      }
+      this.knownTracks = knownTracks;
+    } catch (IOException | RuntimeException e) {
+      // The entry is malformed. Parse the sample tables and replace it.
+    }
+  }
+
   @Override
   public void seek(long position, long timeUs) {
+    moovReloadPosition = C.POSITION_UNSET;
     containerAtoms.clear();
+    sampleTableAtomReader.reset();
+    moovTraks.clear();
     atomHeaderBytesRead = 0;
     sampleTrackIndex = C.INDEX_UNSET;
+    previousSampleTrackIndex = C.INDEX_UNSET;
     sampleBytesWritten = 0;
     sampleCurrentNalBytesRemaining = 0;
+    if (tracks != null) {
+      for (Mp4Track track : tracks) {
+        track.trackOutput.clear();
+      }
+    }
     if (position == 0) {
       enterReadingAtomHeaderState();
     } else if (tracks != null) {
@@ -176,6 +231,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   public int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
     while (true) {
+      if (moovReloadPosition != C.POSITION_UNSET) {
+        seekPosition.position = moovReloadPosition;
+        moovReloadPosition = C.POSITION_UNSET;
+        return RESULT_SEEK;
+      }
       switch (parserState) {
         case STATE_READING_ATOM_HEADER:
           if (!readAtomHeader(input)) {
@@ -187,6 +247,10 @@ public final class Mp4Extractor implements Extractor, SeekMap {
             return RESULT_SEEK;
           }
           break;
+        case STATE_READING_SAMPLE_TABLE_ATOM:
+          sampleTableAtomReader.readAtom(input);
+          processAtomEnded(input.getPosition());
+          break;
         case STATE_READING_SAMPLE:
           return readSample(input, seekPosition);
         default:
@@ -195,6 +259,17 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
   }
 
+  // BatchingTrackOutput.Client implementation.
+
+  @Override
+  public void flushSampleBatches() {
+    if (tracks != null) {
+      for (Mp4Track track : tracks) {
+        track.trackOutput.flush();
+      }
+    }
+  }
+
   // SeekMap implementation.
 
   @Override
@@ -225,14 +300,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == C.INDEX_UNSET) {
         return new SeekPoints(SeekPoint.START);
       }
-      long sampleTimeUs = sampleTable.timestampsUs[sampleIndex];
+      long sampleTimeUs = sampleTable.getTimestampUs(sampleIndex);
       firstTimeUs = sampleTimeUs;
-      firstOffset = sampleTable.offsets[sampleIndex];
+      firstOffset = sampleTable.getOffset(sampleIndex);
       if (sampleTimeUs < timeUs && sampleIndex < sampleTable.sampleCount - 1) {
         int secondSampleIndex = sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs);
         if (secondSampleIndex != C.INDEX_UNSET && secondSampleIndex != sampleIndex) {
-          secondTimeUs = sampleTable.timestampsUs[secondSampleIndex];
-          secondOffset = sampleTable.offsets[secondSampleIndex];
+          secondTimeUs = sampleTable.getTimestampUs(secondSampleIndex);
+          secondOffset = sampleTable.getOffset(secondSampleIndex);
         }
       }
     } else {
@@ -303,13 +378,30 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
     if (shouldParseContainerAtom(atomType)) {
       long endPosition = input.getPosition() + atomSize - atomHeaderBytesRead;
+      if (atomType == Atom.TYPE_moov) {
+        moovPosition = input.getPosition() - atomHeaderBytesRead;
+      }
       containerAtoms.add(new ContainerAtom(atomType, endPosition));
+      if (atomType == Atom.TYPE_stbl) {
+        sampleTableAtomReader.reset();
+      }
       if (atomSize == atomHeaderBytesRead) {
         processAtomEnded(endPosition);
       } else {
         // Start reading the first child atom.
         enterReadingAtomHeaderState();
       }
+    } else if (SampleTableAtomReader.isSampleTableAtom(atomType) && !containerAtoms.isEmpty()
+        && containerAtoms.peek().type == Atom.TYPE_stbl) {
+      // These atoms are large for long recordings, so they're decoded as they're read. If the
+      // sample tables are already known, only the values they're checked against are read.
+      sampleTableAtomReader.startAtom(atomType, atomSize - atomHeaderBytesRead,
+          knownTracks == null);
+      parserState = STATE_READING_SAMPLE_TABLE_ATOM;
+    } else if (knownTracks != null && isSampleTableLeafAtom(atomType)) {
+      // The sample tables are already known, so the atoms they're parsed from are skipped.
+      atomData = null;
+      parserState = STATE_READING_ATOM_PAYLOAD;
     } else if (shouldParseLeafAtom(atomType)) {
       // We don't support parsing of leaf atoms that define extended atom sizes, or that have
       // lengths greater than Integer.MAX_VALUE.
@@ -361,9 +453,18 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       Atom.ContainerAtom containerAtom = containerAtoms.pop();
       if (containerAtom.type == Atom.TYPE_moov) {
         // We've reached the end of the moov atom. Process it and prepare to read samples.
-        processMoovAtom(containerAtom);
         containerAtoms.clear();
+        if (!processMoovAtom(containerAtom)) {
+          // The known sample tables don't match the traks. Read the moov atom again to parse them.
+          knownTracks = null;
+          moovTraks.clear();
+          moovReloadPosition = moovPosition;
+          break;
+        }
         parserState = STATE_READING_SAMPLE;
+      } else if (containerAtom.type == Atom.TYPE_trak && !containerAtoms.isEmpty()
+          && containerAtoms.peek().type == Atom.TYPE_moov) {
+        onMoovTrakAtomRead(containerAtoms.peek(), containerAtom);
       } else if (!containerAtoms.isEmpty()) {
         containerAtoms.peek().add(containerAtom);
       }
@@ -373,10 +474,33 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
   }
 
+  /**
+   * Parses a trak atom of the moov atom as soon as it has been read, so that its sample table data,
+   * which is large for long recordings, is released before the following trak atoms are read. Edit
+   * lists are applied once the whole moov atom has been read, because they depend on gapless
+   * playback information in the udta atom, which may follow the trak atoms.
+   */
+  private void onMoovTrakAtomRead(ContainerAtom moov, ContainerAtom trak) throws ParserException {
+    MoovTrak moovTrak = new MoovTrak(trak, sampleTableAtomReader.getSampleSizes(),
+        sampleTableAtomReader.getChunkOffsets(), sampleTableAtomReader.getSampleCount(),
+        sampleTableAtomReader.getFirstChunkOffset());
+    sampleTableAtomReader.reset();
+    Atom.LeafAtom mvhd = moov.getLeafAtomOfType(Atom.TYPE_mvhd);
+    if (mvhd != null) {
+      // Otherwise the trak atom is parsed once the mvhd atom has been read.
+      moovTrak.parse(mvhd, (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0, isQuickTime,
+          knownTracks == null);
+    }
+    moovTraks.add(moovTrak);
+  }
+
   /**
    * Updates the stored track metadata to reflect the contents of the specified moov atom.
+   *
+   * @return Whether the moov atom was processed. False if the known sample tables don't match the
+   *     traks of the moov atom, in which case nothing is output.
    */
-  private void processMoovAtom(ContainerAtom moov) throws ParserException {
+  private boolean processMoovAtom(ContainerAtom moov) throws ParserException {
     int firstVideoTrackIndex = C.INDEX_UNSET;
     long durationUs = C.TIME_UNSET;
     List<Mp4Track> tracks = new ArrayList<>();
@@ -391,27 +515,59 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
     }
 
-    for (int i = 0; i < moov.containerChildren.size(); i++) {
-      Atom.ContainerAtom atom = moov.containerChildren.get(i);
-      if (atom.type != Atom.TYPE_trak) {
-        continue;
+    Atom.LeafAtom mvhd = moov.getLeafAtomOfType(Atom.TYPE_mvhd);
+    List<Track> parsedTracks = new ArrayList<>();
+    List<MoovTrak> parsedMoovTraks = new ArrayList<>();
+    for (int i = 0; i < moovTraks.size(); i++) {
+      MoovTrak moovTrak = moovTraks.get(i);
+      moovTrak.parse(mvhd, (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0, isQuickTime,
+          knownTracks == null);
+      if (moovTrak.track != null) {
+        parsedTracks.add(moovTrak.track);
+        parsedMoovTraks.add(moovTrak);
       }
+    }
+    boolean tracksKnown = knownTracks != null;
+    if (tracksKnown) {
+      if (knownTracks.length != parsedTracks.size()) {
+        return false;
+      }
+      for (int i = 0; i < knownTracks.length; i++) {
+        if (!knownTracks[i].matches(parsedMoovTraks.get(i))) {
+          return false;
+        }
+      }
+    }
 
-      Track track = AtomParsers.parseTrak(atom, moov.getLeafAtomOfType(Atom.TYPE_mvhd),
-          C.TIME_UNSET, null, (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0, isQuickTime);
+    KnownTrack[] knownTracks = new KnownTrack[parsedTracks.size()];
+    for (int i = 0; i < moovTraks.size(); i++) {
+      MoovTrak moovTrak = moovTraks.get(i);
+      Track track = moovTrak.track;
       if (track == null) {
         continue;
       }
 
-      Atom.ContainerAtom stblAtom = atom.getContainerAtomOfType(Atom.TYPE_mdia)
-          .getContainerAtomOfType(Atom.TYPE_minf).getContainerAtomOfType(Atom.TYPE_stbl);
-      TrackSampleTable trackSampleTable = AtomParsers.parseStbl(track, stblAtom, gaplessInfoHolder);
+      int trackIndex = parsedTracks.indexOf(track);
+      if (tracksKnown) {
+        // Applying the edit list may also have updated the gapless info.
+        KnownTrack knownTrack = this.knownTracks[trackIndex];
+        gaplessInfoHolder.encoderDelay = knownTrack.encoderDelay;
+        gaplessInfoHolder.encoderPadding = knownTrack.encoderPadding;
+        knownTracks[trackIndex] = knownTrack;
+      } else {
+        TrackSampleTable sampleTable =
+            AtomParsers.applyEditList(track, moovTrak.sampleTable, gaplessInfoHolder);
+        knownTracks[trackIndex] = new KnownTrack(track.id, moovTrak.sampleCount,
+            moovTrak.firstChunkOffset, gaplessInfoHolder.encoderDelay,
+            gaplessInfoHolder.encoderPadding, sampleTable);
+      }
+      TrackSampleTable trackSampleTable = knownTracks[trackIndex].sampleTable;
       if (trackSampleTable.sampleCount == 0) {
         continue;
       }
 
       Mp4Track mp4Track = new Mp4Track(track, trackSampleTable,
-          extractorOutput.track(i, track.type));
+          new BatchingTrackOutput(extractorOutput.track(i, track.type)));
       // Each sample has up to three bytes of overhead for the start code that replaces its length.
       // Allow ten source samples per output sample, like the platform extractor.
       int maxInputSize = trackSampleTable.maximumSize + 3 * 10;
@@ -439,10 +595,19 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     this.firstVideoTrackIndex = firstVideoTrackIndex;
     this.durationUs = durationUs;
     this.tracks = tracks.toArray(new Mp4Track[tracks.size()]);
+    moovTraks.clear();
     accumulatedSampleSizes = calculateAccumulatedSampleSizes(this.tracks);
+    if (!tracksKnown) {
+      // Keep the tables, so that they aren't parsed again if the moov atom is read again.
+      this.knownTracks = knownTracks;
+      if (seekIndexCacheEntry != null) {
+        writeKnownTracks(seekIndexCacheEntry, knownTracks);
+      }
+    }
 
     extractorOutput.endTracks();
     extractorOutput.seekMap(this);
+    return true;
   }
 
   /**
@@ -466,15 +631,22 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     long inputPosition = input.getPosition();
     if (sampleTrackIndex == C.INDEX_UNSET) {
       sampleTrackIndex = getTrackIndexOfNextReadSample(inputPosition);
+      if (previousSampleTrackIndex != C.INDEX_UNSET
+          && previousSampleTrackIndex != sampleTrackIndex) {
+        // Samples are committed in batches. Pass on the samples of the previous track, so that they
+        // are available while the interleaved samples of the next track are extracted.
+        tracks[previousSampleTrackIndex].trackOutput.flush();
+      }
+      previousSampleTrackIndex = sampleTrackIndex;
       if (sampleTrackIndex == C.INDEX_UNSET) {
         return RESULT_END_OF_INPUT;
       }
     }
     Mp4Track track = tracks[sampleTrackIndex];
-    TrackOutput trackOutput = track.trackOutput;
+    BatchingTrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
-    int sampleSize = track.sampleTable.sizes[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex);
+    int sampleSize = track.sampleTable.getSize(sampleIndex);
     long skipAmount = position - inputPosition + sampleBytesWritten;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
       positionHolder.position = position;
@@ -524,9 +696,12 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         sampleCurrentNalBytesRemaining -= writtenBytes;
       }
     }
-    trackOutput.sampleMetadata(track.sampleTable.timestampsUs[sampleIndex],
-        track.sampleTable.flags[sampleIndex], sampleSize, 0, null);
+    trackOutput.sampleMetadata(track.sampleTable.getTimestampUs(sampleIndex),
+        track.sampleTable.getFlags(sampleIndex), sampleSize, 0, null);
     track.sampleIndex++;
+    if (track.sampleIndex == track.sampleTable.sampleCount) {
+      trackOutput.flush();
+    }
     sampleTrackIndex = C.INDEX_UNSET;
     sampleBytesWritten = 0;
     sampleCurrentNalBytesRemaining = 0;
@@ -560,8 +735,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == track.sampleTable.sampleCount) {
         continue;
       }
-      long sampleOffset = track.sampleTable.offsets[sampleIndex];
-      long sampleAccumulatedBytes = accumulatedSampleSizes[trackIndex][sampleIndex];
+      long sampleOffset = track.sampleTable.getOffset(sampleIndex);
+      long sampleAccumulatedBytes = accumulatedSampleSizes[trackIndex].get(sampleIndex);
       long skipAmount = sampleOffset - inputPosition;
       boolean requiresReload = skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE;
       if ((!requiresReload && preferredRequiresReload)
@@ -601,16 +776,17 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
   /**
    * For each sample of each track, calculates accumulated size of all samples which need to be read
-   * before this sample can be used.
+   * before this sample can be used. The sizes of each track increase in sample order, so they're
+   * stored compactly.
    */
-  private static long[][] calculateAccumulatedSampleSizes(Mp4Track[] tracks) {
-    long[][] accumulatedSampleSizes = new long[tracks.length][];
+  private static CompactLongArray[] calculateAccumulatedSampleSizes(Mp4Track[] tracks) {
+    CompactLongArray[] accumulatedSampleSizes = new CompactLongArray[tracks.length];
     int[] nextSampleIndex = new int[tracks.length];
     long[] nextSampleTimesUs = new long[tracks.length];
     boolean[] tracksFinished = new boolean[tracks.length];
     for (int i = 0; i < tracks.length; i++) {
-      accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.sampleCount];
-      nextSampleTimesUs[i] = tracks[i].sampleTable.timestampsUs[0];
+      accumulatedSampleSizes[i] = new CompactLongArray(tracks[i].sampleTable.sampleCount);
+      nextSampleTimesUs[i] = tracks[i].sampleTable.getTimestampUs(0);
     }
     long accumulatedSampleSize = 0;
     int finishedTracks = 0;
@@ -624,12 +800,12 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         }
       }
       int trackSampleIndex = nextSampleIndex[minTimeTrackIndex];
-      accumulatedSampleSizes[minTimeTrackIndex][trackSampleIndex] = accumulatedSampleSize;
-      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.sizes[trackSampleIndex];
+      accumulatedSampleSizes[minTimeTrackIndex].add(accumulatedSampleSize);
+      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.getSize(trackSampleIndex);
       nextSampleIndex[minTimeTrackIndex] = ++trackSampleIndex;
-      if (trackSampleIndex < accumulatedSampleSizes[minTimeTrackIndex].length) {
+      if (trackSampleIndex < tracks[minTimeTrackIndex].sampleTable.sampleCount) {
         nextSampleTimesUs[minTimeTrackIndex] =
-            tracks[minTimeTrackIndex].sampleTable.timestampsUs[trackSampleIndex];
+            tracks[minTimeTrackIndex].sampleTable.getTimestampUs(trackSampleIndex);
       } else {
         tracksFinished[minTimeTrackIndex] = true;
         finishedTracks++;
@@ -653,7 +829,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     if (sampleIndex == C.INDEX_UNSET) {
       return offset;
     }
-    long sampleOffset = sampleTable.offsets[sampleIndex];
+    long sampleOffset = sampleTable.getOffset(sampleIndex);
     return Math.min(sampleOffset, offset);
   }
 
@@ -698,6 +874,38 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     return false;
   }
 
+  /**
+   * Stores the sample tables of the tracks in a {@link SeekIndexCache} entry.
+   */
+  private static void writeKnownTracks(SeekIndexCache.Entry entry, KnownTrack[] knownTracks) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    try {
+      output.writeInt(knownTracks.length);
+      for (KnownTrack knownTrack : knownTracks) {
+        output.writeInt(knownTrack.trackId);
+        output.writeInt(knownTrack.sampleCount);
+        output.writeLong(knownTrack.firstChunkOffset);
+        output.writeInt(knownTrack.encoderDelay);
+        output.writeInt(knownTrack.encoderPadding);
+        knownTrack.sampleTable.writeTo(output);
+      }
+    } catch (IOException e) {
+      // Writing to a ByteArrayOutputStream doesn't fail.
+      throw new IllegalStateException(e);
+    }
+    entry.write(bytes.toByteArray());
+  }
+
+  /**
+   * Returns whether {@code atom} is a leaf atom of an stbl atom from which sample tables are
+   * parsed.
+   */
+  private static boolean isSampleTableLeafAtom(int atom) {
+    return atom == Atom.TYPE_stts || atom == Atom.TYPE_stss || atom == Atom.TYPE_ctts
+        || atom == Atom.TYPE_stsc || SampleTableAtomReader.isSampleTableAtom(atom);
+  }
+
   /**
    * Returns whether the extractor should decode a leaf atom with type {@code atom}.
    */
@@ -705,9 +913,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     return atom == Atom.TYPE_mdhd || atom == Atom.TYPE_mvhd || atom == Atom.TYPE_hdlr
         || atom == Atom.TYPE_stsd || atom == Atom.TYPE_stts || atom == Atom.TYPE_stss
         || atom == Atom.TYPE_ctts || atom == Atom.TYPE_elst || atom == Atom.TYPE_stsc
-        || atom == Atom.TYPE_stsz || atom == Atom.TYPE_stz2 || atom == Atom.TYPE_stco
-        || atom == Atom.TYPE_co64 || atom == Atom.TYPE_tkhd || atom == Atom.TYPE_ftyp
-        || atom == Atom.TYPE_udta;
+        || atom == Atom.TYPE_tkhd || atom == Atom.TYPE_ftyp || atom == Atom.TYPE_udta;
   }
 
   /**
@@ -718,15 +924,102 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         || atom == Atom.TYPE_minf || atom == Atom.TYPE_stbl || atom == Atom.TYPE_edts;
   }
 
+  /**
+   * A trak atom of the moov atom, and the track and unedited sample table parsed from it.
+   */
+  private static final class MoovTrak {
+
+    private ContainerAtom trakAtom;
+    private SampleTableAtomReader.SampleSizes sampleSizes;
+    private CompactLongArray chunkOffsets;
+
+    public final int sampleCount;
+    public final long firstChunkOffset;
+
+    public Track track;
+    public UneditedSampleTable sampleTable;
+
+    public MoovTrak(ContainerAtom trakAtom, SampleTableAtomReader.SampleSizes sampleSizes,
+        CompactLongArray chunkOffsets, int sampleCount, long firstChunkOffset) {
+      this.trakAtom = trakAtom;
+      this.sampleSizes = sampleSizes;
+      this.chunkOffsets = chunkOffsets;
+      this.sampleCount = sampleCount;
+      this.firstChunkOffset = firstChunkOffset;
+    }
+
+    /**
+     * Parses the trak atom and releases it. Does nothing if it's already been parsed.
+     *
+     * @param mvhd The mvhd atom of the moov atom.
+     * @param ignoreEditLists Whether to ignore the edit list of the track.
+     * @param isQuickTime True for QuickTime media. False otherwise.
+     * @param parseSampleTable Whether to parse the sample table of the track. If false, the
+     *     sample table atoms may have been skipped.
+     * @throws ParserException If the trak atom is malformed.
+     */
+    public void parse(Atom.LeafAtom mvhd, boolean ignoreEditLists, boolean isQuickTime,
+        boolean parseSampleTable) throws ParserException {
+      if (trakAtom == null) {
+        return;
+      }
+      track = AtomParsers.parseTrak(trakAtom, mvhd, C.TIME_UNSET, null, ignoreEditLists,
+          isQuickTime);
+      if (track != null && parseSampleTable) {
+        ContainerAtom stblAtom = trakAtom.getContainerAtomOfType(Atom.TYPE_mdia)
+            .getContainerAtomOfType(Atom.TYPE_minf).getContainerAtomOfType(Atom.TYPE_stbl);
+        sampleTable = AtomParsers.parseUneditedStbl(track, stblAtom, sampleSizes, chunkOffsets);
+      }
+      trakAtom = null;
+      sampleSizes = null;
+      chunkOffsets = null;
+    }
+
+  }
+
+  /**
+   * The edited sample table of a track, and the gapless info after its edit list was applied. The
+   * sample count of the stsz atom and the first chunk offset identify the sample table atoms it
+   * was parsed from.
+   */
+  private static final class KnownTrack {
+
+    public final int trackId;
+    public final int sampleCount;
+    public final long firstChunkOffset;
+    public final int encoderDelay;
+    public final int encoderPadding;
+    public final TrackSampleTable sampleTable;
+
+    public KnownTrack(int trackId, int sampleCount, long firstChunkOffset, int encoderDelay,
+        int encoderPadding, TrackSampleTable sampleTable) {
+      this.trackId = trackId;
+      this.sampleCount = sampleCount;
+      this.firstChunkOffset = firstChunkOffset;
+      this.encoderDelay = encoderDelay;
+      this.encoderPadding = encoderPadding;
+      this.sampleTable = sampleTable;
+    }
+
+    /**
+     * Returns whether the sample table was parsed from the trak atom of {@code moovTrak}.
+     */
+    public boolean matches(MoovTrak moovTrak) {
+      return trackId == moovTrak.track.id && sampleCount == moovTrak.sampleCount
+          && firstChunkOffset == moovTrak.firstChunkOffset;
+    }
+
+  }
+
   private static final class Mp4Track {
 
     public final Track track;
     public final TrackSampleTable sampleTable;
-    public final TrackOutput trackOutput;
+    public final BatchingTrackOutput trackOutput;
 
     public int sampleIndex;
 
-    public Mp4Track(Track track, TrackSampleTable sampleTable, TrackOutput trackOutput) {
+    public Mp4Track(Track track, TrackSampleTable sampleTable, BatchingTrackOutput trackOutput) {
       this.track = track;
       this.sampleTable = sampleTable;
       this.trackOutput = trackOutput;
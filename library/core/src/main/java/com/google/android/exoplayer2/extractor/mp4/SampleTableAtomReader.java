@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.io.IOException;
+
+/**
+ * Reads the sample size (stsz, stz2) and chunk offset (stco, co64) atoms of an stbl atom. These
+ * atoms have an entry per sample or chunk, so they're the largest atoms of long recordings. Rather
+ * than reading them whole, their entries are read in bounded chunks and decoded into compact
+ * arrays as they're read.
+ * <p>
+ * An instance reads the atoms of one stbl atom at a time. Reads can be resumed after an
+ * {@link IOException}. If the sample table is already known, the entries can be skipped, in which
+ * case only the sample count and the first chunk offset are read to check that the atoms match.
+ */
+/* package */ final class SampleTableAtomReader {
+
+  /**
+   * Sample sizes read from an stsz or stz2 atom.
+   */
+  public static final class SampleSizes {
+
+    /**
+     * The number of samples.
+     */
+    public final int sampleCount;
+    /**
+     * The size of every sample if samples have a fixed size, or 0 otherwise.
+     */
+    public final int fixedSampleSize;
+
+    private final CompactIntArray sizes;
+
+    private SampleSizes(int sampleCount, int fixedSampleSize) {
+      this.sampleCount = sampleCount;
+      this.fixedSampleSize = fixedSampleSize;
+      sizes = fixedSampleSize == 0 ? new CompactIntArray(sampleCount) : null;
+    }
+
+    /**
+     * Returns the size of a sample in bytes.
+     *
+     * @param index The sample index.
+     */
+    public int getSize(int index) {
+      return sizes == null ? fixedSampleSize : sizes.get(index);
+    }
+
+  }
+
+  /**
+   * The maximum number of bytes of entries that are read at once.
+   */
+  private static final int MAX_READ_SIZE = 64 * 1024;
+  // Version and flags (4), field size or fixed sample size (4), sample count (4).
+  private static final int SAMPLE_SIZE_HEADER_SIZE = 12;
+  // Version and flags (4), chunk count (4).
+  private static final int CHUNK_OFFSET_HEADER_SIZE = 8;
+
+  private final ParsableByteArray scratch;
+
+  private int atomType;
+  private long bytesRemaining;
+  private boolean readEntries;
+  private boolean readingEntries;
+  private int fieldSize;
+  private int entriesRemaining;
+
+  private SampleSizes sampleSizes;
+  private CompactLongArray chunkOffsets;
+  private int sampleCount;
+  private long firstChunkOffset;
+
+  public SampleTableAtomReader() {
+    scratch = new ParsableByteArray(MAX_READ_SIZE);
+    firstChunkOffset = C.POSITION_UNSET;
+  }
+
+  /**
+   * Returns whether atoms of the specified type are read by this class.
+   *
+   * @param atomType The type of the atom.
+   */
+  public static boolean isSampleTableAtom(int atomType) {
+    return atomType == Atom.TYPE_stsz || atomType == Atom.TYPE_stz2 || atomType == Atom.TYPE_stco
+        || atomType == Atom.TYPE_co64;
+  }
+
+  /**
+   * Discards the atoms that have been read, so that the atoms of another stbl atom can be read.
+   */
+  public void reset() {
+    sampleSizes = null;
+    chunkOffsets = null;
+    sampleCount = 0;
+    firstChunkOffset = C.POSITION_UNSET;
+  }
+
+  /**
+   * Prepares to read an atom whose header has been read.
+   *
+   * @param atomType The type of the atom. Must be one for which {@link #isSampleTableAtom(int)}
+   *     returns true.
+   * @param payloadSize The size of the atom, excluding its header.
+   * @param readEntries Whether to read the entries of the atom. If false, only the sample count or
+   *     the first chunk offset is read, and the rest of the atom is skipped.
+   */
+  public void startAtom(int atomType, long payloadSize, boolean readEntries) {
+    this.atomType = atomType;
+    this.readEntries = readEntries;
+    bytesRemaining = payloadSize;
+    readingEntries = false;
+  }
+
+  /**
+   * Reads the rest of the atom started by {@link #startAtom(int, long)}.
+   *
+   * @param input The {@link ExtractorInput} from which to read the atom.
+   * @throws IOException If an error occurs reading from the input, or the atom is malformed.
+   * @throws InterruptedException If the thread is interrupted.
+   */
+  public void readAtom(ExtractorInput input) throws IOException, InterruptedException {
+    if (!readingEntries) {
+      readAtomHeader(input);
+      readingEntries = true;
+    }
+    while (entriesRemaining > 0) {
+      int entriesToRead = (int) Math.min(entriesRemaining, MAX_READ_SIZE * 8L / fieldSize);
+      int bytesToRead = (int) ((entriesToRead * (long) fieldSize + 7) / 8);
+      input.readFully(scratch.data, 0, bytesToRead);
+      scratch.setPosition(0);
+      for (int i = 0; i < entriesToRead; i++) {
+        if (atomType == Atom.TYPE_stco || atomType == Atom.TYPE_co64) {
+          long chunkOffset = fieldSize == 32 ? scratch.readUnsignedInt()
+              : scratch.readUnsignedLongToLong();
+          if (firstChunkOffset == C.POSITION_UNSET) {
+            firstChunkOffset = chunkOffset;
+          }
+          if (chunkOffsets != null) {
+            chunkOffsets.add(chunkOffset);
+          }
+        } else if (fieldSize == 4) {
+          // Two entries per byte, the first in the upper bits. Reads start at even entries.
+          int currentByte = scratch.data[i / 2] & 0xFF;
+          sampleSizes.sizes.add((i % 2) == 0 ? currentByte >> 4 : currentByte & 0x0F);
+        } else if (fieldSize == 8) {
+          sampleSizes.sizes.add(scratch.readUnsignedByte());
+        } else if (fieldSize == 16) {
+          sampleSizes.sizes.add(scratch.readUnsignedShort());
+        } else {
+          sampleSizes.sizes.add(scratch.readUnsignedIntToInt());
+        }
+      }
+      entriesRemaining -= entriesToRead;
+      bytesRemaining -= bytesToRead;
+    }
+    while (bytesRemaining > 0) {
+      // Skip any data following the entries.
+      int bytesToSkip = (int) Math.min(bytesRemaining, MAX_READ_SIZE);
+      input.skipFully(bytesToSkip);
+      bytesRemaining -= bytesToSkip;
+    }
+  }
+
+  /**
+   * Returns the sample sizes read from the stsz or stz2 atom, or null if neither has been read.
+   */
+  public SampleSizes getSampleSizes() {
+    return sampleSizes;
+  }
+
+  /**
+   * Returns the chunk offsets read from the stco or co64 atom, or null if neither has been read.
+   */
+  public CompactLongArray getChunkOffsets() {
+    return chunkOffsets;
+  }
+
+  /**
+   * Returns the sample count of the stsz or stz2 atom, or 0 if neither has been read. Also
+   * available if the entries weren't read.
+   */
+  public int getSampleCount() {
+    return sampleCount;
+  }
+
+  /**
+   * Returns the first chunk offset of the stco or co64 atom, or {@link C#POSITION_UNSET} if neither
+   * has been read or it has no entries. Also available if the entries weren't read.
+   */
+  public long getFirstChunkOffset() {
+    return firstChunkOffset;
+  }
+
+  private void readAtomHeader(ExtractorInput input) throws IOException, InterruptedException {
+    boolean isSampleSizeAtom = atomType == Atom.TYPE_stsz || atomType == Atom.TYPE_stz2;
+    int headerSize = isSampleSizeAtom ? SAMPLE_SIZE_HEADER_SIZE : CHUNK_OFFSET_HEADER_SIZE;
+    if (bytesRemaining < headerSize) {
+      throw new ParserException("Sample table atom too short: " + bytesRemaining);
+    }
+    input.readFully(scratch.data, 0, headerSize);
+    bytesRemaining -= headerSize;
+    scratch.setPosition(4); // Skip version and flags.
+    int entryCount;
+    int sampleCount = 0;
+    int fixedSampleSize = 0;
+    if (atomType == Atom.TYPE_stsz) {
+      fixedSampleSize = scratch.readUnsignedIntToInt();
+      sampleCount = scratch.readUnsignedIntToInt();
+      fieldSize = 32;
+      entryCount = fixedSampleSize == 0 ? sampleCount : 0;
+    } else if (atomType == Atom.TYPE_stz2) {
+      fieldSize = scratch.readUnsignedIntToInt() & 0x000000FF;
+      if (fieldSize != 8 && fieldSize != 16) {
+        fieldSize = 4;
+      }
+      sampleCount = scratch.readUnsignedIntToInt();
+      entryCount = sampleCount;
+    } else {
+      fieldSize = atomType == Atom.TYPE_stco ? 32 : 64;
+      entryCount = scratch.readUnsignedIntToInt();
+    }
+    // Check the entry count against the atom size before allocating arrays for the entries.
+    if ((entryCount * (long) fieldSize + 7) / 8 > bytesRemaining) {
+      throw new ParserException("Sample table atom too short for " + entryCount + " entries");
+    }
+    if (isSampleSizeAtom) {
+      this.sampleCount = sampleCount;
+    }
+    if (!readEntries) {
+      // Only the first chunk offset is read.
+      entriesRemaining = isSampleSizeAtom ? 0 : Math.min(entryCount, 1);
+      return;
+    }
+    if (isSampleSizeAtom) {
+      sampleSizes = new SampleSizes(sampleCount, fixedSampleSize);
+    } else {
+      chunkOffsets = new CompactLongArray(entryCount);
+    }
+    entriesRemaining = entryCount;
+  }
+
+}
@@ -17,61 +17,86 @@ package com.google.android.exoplayer2.extractor.mp4;
 
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Sample table for a track in an MP4 file.
+ * <p>
+ * Long recordings have millions of samples, so the table is stored compactly. Offsets and
+ * timestamps are stored in {@link CompactLongArray}s, sizes in a {@link CompactIntArray}, and key
+ * frame flags are stored as one bit per sample. Flags fall back to a plain array when they can't be
+ * represented as a bit. All entries can be read in constant time. Tables are built one sample at a
+ * time using a {@link Builder}, so that the samples are never held in plain arrays.
  */
 /* package */ final class TrackSampleTable {
 
+  // Sample count (4) and duration (8).
+  private static final int SERIALIZED_HEADER_SIZE = 12;
+  // Offset (8), size (4), timestamp (8) and flags (4).
+  private static final int SERIALIZED_SAMPLE_SIZE = 24;
+
   /**
    * Number of samples.
    */
   public final int sampleCount;
   /**
-   * Sample offsets in bytes.
+   * Maximum sample size in bytes.
    */
-  public final long[] offsets;
+  public final int maximumSize;
   /**
-   * Sample sizes in bytes.
+   * The duration of the track sample table in microseconds, or {@link C#TIME_UNSET} if the sample
+   * table is empty.
    */
-  public final int[] sizes;
+  public final long durationUs;
+
+  private final Samples samples;
+  private final CompactLongArray timestampsUs;
+
+  private TrackSampleTable(Samples samples, CompactLongArray timestampsUs, long durationUs) {
+    this.samples = samples;
+    this.timestampsUs = timestampsUs;
+    this.durationUs = durationUs;
+    sampleCount = samples.offsets.length();
+    maximumSize = samples.maximumSize;
+  }
+
   /**
-   * Maximum sample size in {@link #sizes}.
+   * Returns the offset of a sample in bytes.
+   *
+   * @param index The index of the sample.
    */
-  public final int maximumSize;
+  public long getOffset(int index) {
+    return samples.offsets.get(index);
+  }
+
   /**
-   * Sample timestamps in microseconds.
+   * Returns the size of a sample in bytes.
+   *
+   * @param index The index of the sample.
    */
-  public final long[] timestampsUs;
+  public int getSize(int index) {
+    return samples.getSize(index);
+  }
+
   /**
-   * Sample flags.
+   * Returns the timestamp of a sample in microseconds.
+   *
+   * @param index The index of the sample.
    */
-  public final int[] flags;
+  public long getTimestampUs(int index) {
+    return timestampsUs.get(index);
+  }
+
   /**
-   * The duration of the track sample table in microseconds, or {@link C#TIME_UNSET} if the sample
-   * table is empty.
+   * Returns the flags of a sample.
+   *
+   * @param index The index of the sample.
    */
-  public final long durationUs;
-
-  public TrackSampleTable(
-      long[] offsets,
-      int[] sizes,
-      int maximumSize,
-      long[] timestampsUs,
-      int[] flags,
-      long durationUs) {
-    Assertions.checkArgument(sizes.length == timestampsUs.length);
-    Assertions.checkArgument(offsets.length == timestampsUs.length);
-    Assertions.checkArgument(flags.length == timestampsUs.length);
-
-    this.offsets = offsets;
-    this.sizes = sizes;
-    this.maximumSize = maximumSize;
-    this.timestampsUs = timestampsUs;
-    this.flags = flags;
-    this.durationUs = durationUs;
-    sampleCount = offsets.length;
+  public int getFlags(int index) {
+    return samples.getFlags(index);
   }
 
   /**
@@ -84,9 +109,9 @@ import com.google.android.exoplayer2.util.Util;
   public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
     // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
     // Frames are not reordered past synchronization samples so this works in practice.
-    int startIndex = Util.binarySearchFloor(timestampsUs, timeUs, true, false);
+    int startIndex = timestampsUs.binarySearchFloor(timeUs, true, false);
     for (int i = startIndex; i >= 0; i--) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+      if ((getFlags(i) & C.BUFFER_FLAG_KEY_FRAME) != 0) {
         return i;
       }
     }
@@ -101,13 +126,231 @@ import com.google.android.exoplayer2.util.Util;
    * @return index Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
    */
   public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
-    int startIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i < timestampsUs.length; i++) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+    int startIndex = timestampsUs.binarySearchCeil(timeUs, true, false);
+    for (int i = startIndex; i < sampleCount; i++) {
+      if ((getFlags(i) & C.BUFFER_FLAG_KEY_FRAME) != 0) {
         return i;
       }
     }
     return C.INDEX_UNSET;
   }
 
+  /**
+   * Writes the table to an output, in a form that can be read by {@link
+   * #readFrom(ParsableByteArray)}.
+   *
+   * @param output The output to write to.
+   * @throws IOException If an error occurs writing to the output.
+   */
+  public void writeTo(DataOutput output) throws IOException {
+    output.writeInt(sampleCount);
+    output.writeLong(durationUs);
+    for (int i = 0; i < sampleCount; i++) {
+      output.writeLong(getOffset(i));
+      output.writeInt(getSize(i));
+      output.writeLong(getTimestampUs(i));
+      output.writeInt(getFlags(i));
+    }
+  }
+
+  /**
+   * Reads a table written by {@link #writeTo(DataOutput)}.
+   *
+   * @param data The data to read from, positioned at the start of the table. Its position is
+   *     advanced to the end of the table.
+   * @return The table.
+   * @throws IOException If {@code data} doesn't hold a complete table.
+   */
+  public static TrackSampleTable readFrom(ParsableByteArray data) throws IOException {
+    if (data.bytesLeft() < SERIALIZED_HEADER_SIZE) {
+      throw new IOException("Truncated sample table");
+    }
+    int sampleCount = data.readInt();
+    long durationUs = data.readLong();
+    if (sampleCount < 0 || (long) sampleCount * SERIALIZED_SAMPLE_SIZE > data.bytesLeft()) {
+      throw new IOException("Invalid sample count: " + sampleCount);
+    }
+    Builder builder = new Builder(sampleCount);
+    for (int i = 0; i < sampleCount; i++) {
+      builder.addSample(data.readLong(), data.readInt(), data.readLong(), data.readInt());
+    }
+    return builder.build(durationUs);
+  }
+
+  /**
+   * Builds a {@link TrackSampleTable}. Samples are added with timestamps in an arbitrary timescale,
+   * which can then be converted to microseconds, edited or copied to another builder.
+   */
+  public static final class Builder {
+
+    private final Samples samples;
+
+    private CompactLongArray timestamps;
+
+    /**
+     * @param capacity The number of samples that will be added.
+     */
+    public Builder(int capacity) {
+      samples = new Samples(capacity);
+      timestamps = new CompactLongArray(capacity);
+    }
+
+    /**
+     * Returns the number of samples that have been added.
+     */
+    public int getSampleCount() {
+      return timestamps.length();
+    }
+
+    /**
+     * Returns the maximum size of the samples that have been added.
+     */
+    public int getMaximumSize() {
+      return samples.maximumSize;
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @param offset The offset of the sample in bytes.
+     * @param size The size of the sample in bytes.
+     * @param timestamp The timestamp of the sample.
+     * @param flags The flags of the sample.
+     */
+    public void addSample(long offset, int size, long timestamp, int flags) {
+      samples.add(offset, size, flags);
+      timestamps.add(timestamp);
+    }
+
+    /**
+     * Returns the offset of a sample in bytes.
+     *
+     * @param index The index of the sample.
+     */
+    public long getOffset(int index) {
+      return samples.offsets.get(index);
+    }
+
+    /**
+     * Returns the size of a sample in bytes.
+     *
+     * @param index The index of the sample.
+     */
+    public int getSize(int index) {
+      return samples.getSize(index);
+    }
+
+    /**
+     * Returns the timestamp of a sample.
+     *
+     * @param index The index of the sample.
+     */
+    public long getTimestamp(int index) {
+      return timestamps.get(index);
+    }
+
+    /**
+     * Returns the flags of a sample.
+     *
+     * @param index The index of the sample.
+     */
+    public int getFlags(int index) {
+      return samples.getFlags(index);
+    }
+
+    /**
+     * Equivalent to {@link com.google.android.exoplayer2.util.Util#binarySearchCeil(long[], long,
+     * boolean, boolean)} on the sample timestamps.
+     */
+    public int binarySearchTimestampCeil(long timestamp, boolean inclusive, boolean stayInBounds) {
+      return timestamps.binarySearchCeil(timestamp, inclusive, stayInBounds);
+    }
+
+    /**
+     * Replaces each sample timestamp with {@code Util.scaleLargeTimestamp(timestamp - offset,
+     * multiplier, divisor)}.
+     *
+     * @param offset The offset to subtract from the timestamps.
+     * @param multiplier The multiplier.
+     * @param divisor The divisor.
+     */
+    public void scaleTimestamps(long offset, long multiplier, long divisor) {
+      int sampleCount = timestamps.length();
+      CompactLongArray scaledTimestamps = new CompactLongArray(sampleCount);
+      for (int i = 0; i < sampleCount; i++) {
+        scaledTimestamps.add(
+            Util.scaleLargeTimestamp(timestamps.get(i) - offset, multiplier, divisor));
+      }
+      timestamps = scaledTimestamps;
+    }
+
+    /**
+     * Builds the table. Must be called once all samples have been added, and their timestamps have
+     * been converted to microseconds. The builder must not be used afterwards.
+     *
+     * @param durationUs The duration of the table in microseconds.
+     */
+    public TrackSampleTable build(long durationUs) {
+      Assertions.checkState(samples.offsets.length() == samples.capacity);
+      return new TrackSampleTable(samples, timestamps, durationUs);
+    }
+
+  }
+
+  /**
+   * The offsets, sizes and flags of samples.
+   */
+  private static final class Samples {
+
+    public final int capacity;
+    public final CompactLongArray offsets;
+
+    public int maximumSize;
+
+    private final CompactIntArray sizes;
+    private long[] keyFrameBits;
+    private int[] flags;
+
+    public Samples(int capacity) {
+      this.capacity = capacity;
+      offsets = new CompactLongArray(capacity);
+      sizes = new CompactIntArray(capacity);
+      keyFrameBits = new long[(capacity + 63) >> 6];
+    }
+
+    public void add(long offset, int size, int flags) {
+      int index = offsets.length();
+      offsets.add(offset);
+      maximumSize = Math.max(maximumSize, size);
+      sizes.add(size);
+      if (keyFrameBits != null && flags != 0 && flags != C.BUFFER_FLAG_KEY_FRAME) {
+        // The flags can't be represented as a single bit.
+        this.flags = new int[capacity];
+        for (int i = 0; i < index; i++) {
+          this.flags[i] = getFlags(i);
+        }
+        keyFrameBits = null;
+      }
+      if (keyFrameBits != null) {
+        if (flags == C.BUFFER_FLAG_KEY_FRAME) {
+          keyFrameBits[index >> 6] |= 1L << index;
+        }
+      } else {
+        this.flags[index] = flags;
+      }
+    }
+
+    public int getSize(int index) {
+      return sizes.get(index);
+    }
+
+    public int getFlags(int index) {
+      if (keyFrameBits != null) {
+        return (keyFrameBits[index >> 6] & (1L << index)) != 0 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+      }
+      return flags[index];
+    }
+
+  }
+
 }
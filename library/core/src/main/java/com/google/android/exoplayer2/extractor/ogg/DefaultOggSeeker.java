@@ -22,9 +22,14 @@ import com.google.android.exoplayer2.extractor.SeekPoint;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Used to seek in an Ogg stream.
+ * <p>
+ * The granule and position of each page read while seeking are stored in an index, which is kept
+ * across seeks. A seek starts by bisecting between the indexed pages closest to the target
+ * granule, so repeated seeks in the same stream need fewer reads.
  */
 /* package */ final class DefaultOggSeeker implements OggSeeker {
 
@@ -43,6 +48,7 @@ import java.io.IOException;
   private final long startPosition;
   private final long endPosition;
   private final StreamReader streamReader;
+  private final PageIndex pageIndex;
 
   private int state;
   private long totalGranules;
@@ -53,6 +59,7 @@ import java.io.IOException;
   private long end;
   private long startGranule;
   private long endGranule;
+  private boolean pageIndexBoundsPending;
 
   /**
    * Constructs an OggSeeker.
@@ -68,6 +75,7 @@ import java.io.IOException;
     this.streamReader = streamReader;
     this.startPosition = startPosition;
     this.endPosition = endPosition;
+    pageIndex = new PageIndex();
     if (firstPayloadPageSize == endPosition - startPosition) {
       totalGranules = firstPayloadPageGranulePosition;
       state = STATE_IDLE;
@@ -133,6 +141,7 @@ import java.io.IOException;
     end = endPosition;
     startGranule = 0;
     endGranule = totalGranules;
+    pageIndexBoundsPending = true;
   }
 
   /**
@@ -152,11 +161,19 @@ import java.io.IOException;
   //@VisibleForTesting
   public long getNextSeekPosition(long targetGranule, ExtractorInput input)
       throws IOException, InterruptedException {
+    long initialPosition = input.getPosition();
+    if (pageIndexBoundsPending) {
+      pageIndexBoundsPending = false;
+      if (applyPageIndexBounds(targetGranule)
+          && (initialPosition < start || initialPosition > end)) {
+        // The input is outside of the narrowed range, so start by seeking into it.
+        return getEstimatedPositionInRange(targetGranule);
+      }
+    }
     if (start == end) {
       return -(startGranule + 2);
     }
 
-    long initialPosition = input.getPosition();
     if (!skipToNextPage(input, end)) {
       if (start == initialPosition) {
         throw new IOException("No ogg page can be found.");
@@ -166,13 +183,20 @@ import java.io.IOException;
 
     pageHeader.populate(input, false);
     input.resetPeekPosition();
+    pageIndex.add(pageHeader.granulePosition, input.getPosition(),
+        pageHeader.headerSize + pageHeader.bodySize);
 
     long granuleDistance = targetGranule - pageHeader.granulePosition;
     int pageSize = pageHeader.headerSize + pageHeader.bodySize;
     if (granuleDistance < 0 || granuleDistance > MATCH_RANGE) {
       if (granuleDistance < 0) {
-        end = initialPosition;
+        // The page containing the target granule starts at or before this page.
+        end = input.getPosition();
         endGranule = pageHeader.granulePosition;
+        if (end == start) {
+          // The input is at the start of the page containing the target granule.
+          return -(startGranule + 2);
+        }
       } else {
         start = input.getPosition() + pageSize;
         startGranule = pageHeader.granulePosition;
@@ -201,6 +225,49 @@ import java.io.IOException;
     return -(pageHeader.granulePosition + 2);
   }
 
+  /**
+   * Narrows the range to bisect to the indexed pages closest to {@code targetGranule}.
+   *
+   * @param targetGranule The target granule position.
+   * @return Whether the range was narrowed.
+   */
+  private boolean applyPageIndexBounds(long targetGranule) {
+    synchronized (pageIndex) {
+      boolean narrowed = false;
+      int lowerIndex = pageIndex.getLowerIndex(targetGranule);
+      if (lowerIndex >= 0) {
+        // The page ends before the page containing the target granule.
+        start = pageIndex.getPosition(lowerIndex) + pageIndex.getSize(lowerIndex);
+        startGranule = pageIndex.getGranule(lowerIndex);
+        narrowed = true;
+      }
+      if (lowerIndex + 1 < pageIndex.size()) {
+        // The page is the page containing the target granule, or a later one.
+        end = pageIndex.getPosition(lowerIndex + 1);
+        endGranule = pageIndex.getGranule(lowerIndex + 1);
+        narrowed = true;
+      }
+      return narrowed;
+    }
+  }
+
+  /**
+   * Returns a position in the range to bisect, estimated by interpolating between the granules at
+   * its bounds.
+   *
+   * @param targetGranule The target granule position.
+   * @return The estimated position.
+   */
+  private long getEstimatedPositionInRange(long targetGranule) {
+    if (end - start < MATCH_BYTE_RANGE || targetGranule - startGranule <= MATCH_RANGE
+        || endGranule <= startGranule) {
+      return start;
+    }
+    long position = start + ((targetGranule - startGranule) * (end - start)
+        / (endGranule - startGranule)) - DEFAULT_OFFSET;
+    return Math.max(start, Math.min(position, end - 1));
+  }
+
   private long getEstimatedPosition(long position, long granuleDistance, long offset) {
     position += (granuleDistance * (endPosition - startPosition) / totalGranules) - offset;
     if (position < startPosition) {
@@ -226,6 +293,17 @@ import java.io.IOException;
       }
       long granule = streamReader.convertTimeToGranule(timeUs);
       long estimatedPosition = getEstimatedPosition(startPosition, granule, DEFAULT_OFFSET);
+      synchronized (pageIndex) {
+        // Keep the estimate between the closest indexed pages, where the seek will bisect.
+        int lowerIndex = pageIndex.getLowerIndex(granule);
+        if (lowerIndex >= 0) {
+          estimatedPosition = Math.max(estimatedPosition,
+              pageIndex.getPosition(lowerIndex) + pageIndex.getSize(lowerIndex));
+        }
+        if (lowerIndex + 1 < pageIndex.size()) {
+          estimatedPosition = Math.min(estimatedPosition, pageIndex.getPosition(lowerIndex + 1));
+        }
+      }
       return new SeekPoints(new SeekPoint(timeUs, estimatedPosition));
     }
 
@@ -306,6 +384,8 @@ import java.io.IOException;
     pageHeader.reset();
     while ((pageHeader.type & 0x04) != 0x04 && input.getPosition() < endPosition) {
       pageHeader.populate(input, false);
+      pageIndex.add(pageHeader.granulePosition, input.getPosition(),
+          pageHeader.headerSize + pageHeader.bodySize);
       input.skipFully(pageHeader.headerSize + pageHeader.bodySize);
     }
     return pageHeader.granulePosition;
@@ -329,6 +409,8 @@ import java.io.IOException;
       throws IOException, InterruptedException {
     pageHeader.populate(input, false);
     while (pageHeader.granulePosition < targetGranule) {
+      pageIndex.add(pageHeader.granulePosition, input.getPosition(),
+          pageHeader.headerSize + pageHeader.bodySize);
       input.skipFully(pageHeader.headerSize + pageHeader.bodySize);
       // Store in a member field to be able to resume after IOExceptions.
       currentGranule = pageHeader.granulePosition;
@@ -339,4 +421,83 @@ import java.io.IOException;
     return currentGranule;
   }
 
+  /**
+   * Index of the granule and position of Ogg pages, sorted by granule. Only the first page read for
+   * each granule is stored. Written on the loading thread and read by the seek map, so accessed
+   * while holding its lock.
+   */
+  private static final class PageIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] granules;
+    private long[] positions;
+    private int[] sizes;
+    private int size;
+
+    public PageIndex() {
+      granules = new long[INITIAL_CAPACITY];
+      positions = new long[INITIAL_CAPACITY];
+      sizes = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a page to the index, if the index doesn't already have a page with the same granule.
+     *
+     * @param granule The granule position of the page.
+     * @param position The position of the start of the page.
+     * @param pageSize The size of the page, including its header.
+     */
+    public synchronized void add(long granule, long position, int pageSize) {
+      if (granule < 0) {
+        // No packet ends on the page.
+        return;
+      }
+      int index = Arrays.binarySearch(granules, 0, size, granule);
+      if (index >= 0) {
+        return;
+      }
+      index = -(index + 1);
+      if (size == granules.length) {
+        granules = Arrays.copyOf(granules, size * 2);
+        positions = Arrays.copyOf(positions, size * 2);
+        sizes = Arrays.copyOf(sizes, size * 2);
+      }
+      System.arraycopy(granules, index, granules, index + 1, size - index);
+      System.arraycopy(positions, index, positions, index + 1, size - index);
+      System.arraycopy(sizes, index, sizes, index + 1, size - index);
+      granules[index] = granule;
+      positions[index] = position;
+      sizes[index] = pageSize;
+      size++;
+    }
+
+    /**
+     * Returns the index of the page with the greatest granule less than {@code granule}, or -1 if
+     * there is no such page. A page whose granule equals {@code granule} contains the end of the
+     * sample at that granule, so it isn't before the page containing {@code granule}.
+     */
+    public synchronized int getLowerIndex(long granule) {
+      int index = Arrays.binarySearch(granules, 0, size, granule);
+      return index >= 0 ? index - 1 : -(index + 2);
+    }
+
+    public synchronized int size() {
+      return size;
+    }
+
+    public synchronized long getGranule(int index) {
+      return granules[index];
+    }
+
+    public synchronized long getPosition(int index) {
+      return positions[index];
+    }
+
+    public synchronized int getSize(int index) {
+      return sizes[index];
+    }
+
+  }
+
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.ts;
+
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link ElementaryStreamReader} that records the calls made to it, and replays them on a
+ * wrapped reader on an {@link Executor}.
+ * <p>
+ * The calls recorded between two calls to {@link #flush()} form a batch. Flushed batches are queued
+ * and replayed in order by a single task on the executor, which runs for as long as the queue isn't
+ * empty, so the caller can keep recording the next batch while earlier ones are replayed. The queue
+ * is bounded: {@link #flush()} blocks while {@link #MAX_PENDING_BATCHES} batches are pending.
+ * <p>
+ * {@link #createTracks(ExtractorOutput, PesReader.TrackIdGenerator)} is forwarded immediately. The
+ * wrapped reader is only accessed by one thread at a time, and calls are replayed in the order in
+ * which they were made, so the samples of each track are output in order. Callers must call
+ * {@link #awaitReplay()} or {@link #awaitFlush()} before anything else accesses the outputs of the
+ * wrapped reader.
+ */
+/* package */ final class AsyncElementaryStreamReader implements ElementaryStreamReader {
+
+  /**
+   * The maximum number of flushed batches that may be waiting to be replayed, including the one
+   * being replayed.
+   */
+  public static final int MAX_PENDING_BATCHES = 4;
+
+  private static final int OPERATION_SEEK = 0;
+  private static final int OPERATION_PACKET_STARTED = 1;
+  private static final int OPERATION_PACKET_STARTED_DATA_ALIGNED = 2;
+  private static final int OPERATION_CONSUME = 3;
+  private static final int OPERATION_PACKET_FINISHED = 4;
+
+  private static final int INITIAL_OPERATION_CAPACITY = 16;
+  private static final int INITIAL_DATA_CAPACITY = 4096;
+
+  private final ElementaryStreamReader reader;
+  private final Executor executor;
+  private final Runnable replayRunnable;
+  private final ParsableByteArray replayData;
+
+  // Accessed only by the thread that makes calls.
+  private Batch recordingBatch;
+
+  // Guarded by this.
+  private final ArrayDeque<Batch> pendingBatches;
+  private final ArrayDeque<Batch> freeBatches;
+  private ParserException parserException;
+  private RuntimeException runtimeException;
+
+  /**
+   * @param reader The reader to which calls should be forwarded.
+   * @param executor The executor on which calls should be replayed.
+   */
+  public AsyncElementaryStreamReader(ElementaryStreamReader reader, Executor executor) {
+    this.reader = reader;
+    this.executor = executor;
+    replayRunnable = new Runnable() {
+      @Override
+      public void run() {
+        replay();
+      }
+    };
+    replayData = new ParsableByteArray();
+    recordingBatch = new Batch();
+    pendingBatches = new ArrayDeque<>();
+    freeBatches = new ArrayDeque<>();
+  }
+
+  /**
+   * Queues the calls made since the last flush for replay on the executor, and returns without
+   * waiting for them to be replayed unless {@link #MAX_PENDING_BATCHES} batches are already
+   * pending. Does nothing if no calls were made.
+   * <p>
+   * The wait can't be interrupted. If the thread is interrupted while waiting, its interrupted
+   * status is set again before the method returns.
+   */
+  public void flush() {
+    if (recordingBatch.operationCount == 0) {
+      return;
+    }
+    boolean startReplay;
+    synchronized (this) {
+      waitForPendingBatches(MAX_PENDING_BATCHES - 1);
+      startReplay = pendingBatches.isEmpty();
+      pendingBatches.add(recordingBatch);
+      recordingBatch = freeBatches.isEmpty() ? new Batch() : freeBatches.remove();
+    }
+    if (startReplay) {
+      executor.execute(replayRunnable);
+    }
+  }
+
+  /**
+   * Blocks until the calls queued by {@link #flush()} have been replayed. Errors of the wrapped
+   * reader are kept until {@link #awaitFlush()} is called.
+   * <p>
+   * The wait can't be interrupted, since the wrapped reader may still be writing to its outputs
+   * until the replay completes. If the thread is interrupted while waiting, its interrupted status
+   * is set again before the method returns.
+   */
+  public synchronized void awaitReplay() {
+    waitForPendingBatches(0);
+  }
+
+  /**
+   * Returns whether the wrapped reader threw an exception that hasn't been reported by
+   * {@link #awaitFlush()}. Calls queued after the exception are discarded.
+   */
+  public synchronized boolean hasError() {
+    return parserException != null || runtimeException != null;
+  }
+
+  /**
+   * Blocks until the calls queued by {@link #flush()} have been replayed, as
+   * {@link #awaitReplay()}, and then reports any error of the wrapped reader.
+   *
+   * @throws ParserException If the wrapped reader threw a {@link ParserException}.
+   */
+  public synchronized void awaitFlush() throws ParserException {
+    waitForPendingBatches(0);
+    if (parserException != null) {
+      ParserException exception = parserException;
+      parserException = null;
+      throw exception;
+    } else if (runtimeException != null) {
+      RuntimeException exception = runtimeException;
+      runtimeException = null;
+      throw exception;
+    }
+  }
+
+  // ElementaryStreamReader implementation.
+
+  @Override
+  public void seek() {
+    recordingBatch.addOperation(OPERATION_SEEK, 0);
+  }
+
+  @Override
+  public void createTracks(ExtractorOutput extractorOutput,
+      PesReader.TrackIdGenerator idGenerator) {
+    reader.createTracks(extractorOutput, idGenerator);
+  }
+
+  @Override
+  public void packetStarted(long pesTimeUs, boolean dataAlignmentIndicator) {
+    recordingBatch.addOperation(
+        dataAlignmentIndicator ? OPERATION_PACKET_STARTED_DATA_ALIGNED : OPERATION_PACKET_STARTED,
+        pesTimeUs);
+  }
+
+  @Override
+  public void consume(ParsableByteArray data) {
+    recordingBatch.addData(data);
+  }
+
+  @Override
+  public void packetFinished() {
+    recordingBatch.addOperation(OPERATION_PACKET_FINISHED, 0);
+  }
+
+  // Internal methods.
+
+  /**
+   * Waits until at most {@code maxPendingBatches} batches are pending. Must be called while holding
+   * the lock of this instance.
+   */
+  private void waitForPendingBatches(int maxPendingBatches) {
+    boolean interrupted = false;
+    while (pendingBatches.size() > maxPendingBatches) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void replay() {
+    Batch batch;
+    boolean failed;
+    synchronized (this) {
+      batch = pendingBatches.peek();
+      failed = hasError();
+    }
+    while (batch != null) {
+      ParserException parserException = null;
+      RuntimeException runtimeException = null;
+      if (!failed) {
+        try {
+          replay(batch);
+        } catch (ParserException e) {
+          parserException = e;
+        } catch (RuntimeException e) {
+          runtimeException = e;
+        }
+      }
+      batch.clear();
+      synchronized (this) {
+        if (parserException != null) {
+          this.parserException = parserException;
+        } else if (runtimeException != null) {
+          this.runtimeException = runtimeException;
+        }
+        pendingBatches.remove();
+        freeBatches.add(batch);
+        notifyAll();
+        // The next batch is replayed by this task. If there is none, the next flush starts a task.
+        batch = pendingBatches.peek();
+        failed = hasError();
+      }
+    }
+  }
+
+  private void replay(Batch batch) throws ParserException {
+    int dataOffset = 0;
+    for (int i = 0; i < batch.operationCount; i++) {
+      switch (batch.operations[i]) {
+        case OPERATION_SEEK:
+          reader.seek();
+          break;
+        case OPERATION_PACKET_STARTED:
+        case OPERATION_PACKET_STARTED_DATA_ALIGNED:
+          reader.packetStarted(batch.operationValues[i],
+              batch.operations[i] == OPERATION_PACKET_STARTED_DATA_ALIGNED);
+          break;
+        case OPERATION_CONSUME:
+          int dataEndOffset = (int) batch.operationValues[i];
+          replayData.reset(batch.data, dataEndOffset);
+          replayData.setPosition(dataOffset);
+          reader.consume(replayData);
+          dataOffset = dataEndOffset;
+          break;
+        case OPERATION_PACKET_FINISHED:
+          reader.packetFinished();
+          break;
+        default:
+          throw new IllegalStateException();
+      }
+    }
+  }
+
+  /**
+   * The calls recorded between two flushes. Reused once replayed, so that the arrays only grow
+   * while the reader is in use.
+   */
+  private static final class Batch {
+
+    public int[] operations;
+    public long[] operationValues;
+    public int operationCount;
+    public byte[] data;
+    public int dataLength;
+
+    public Batch() {
+      operations = new int[INITIAL_OPERATION_CAPACITY];
+      operationValues = new long[INITIAL_OPERATION_CAPACITY];
+      data = new byte[INITIAL_DATA_CAPACITY];
+    }
+
+    public void addOperation(int operation, long value) {
+      if (operationCount == operations.length) {
+        operations = Arrays.copyOf(operations, operationCount * 2);
+        operationValues = Arrays.copyOf(operationValues, operationCount * 2);
+      }
+      operations[operationCount] = operation;
+      operationValues[operationCount] = value;
+      operationCount++;
+    }
+
+    public void addData(ParsableByteArray data) {
+      int length = data.bytesLeft();
+      if (length == 0) {
+        return;
+      }
+      if (dataLength + length > this.data.length) {
+        this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, dataLength + length));
+      }
+      data.readBytes(this.data, dataLength, length);
+      dataLength += length;
+      // The value of a consume operation is the end offset of its data.
+      addOperation(OPERATION_CONSUME, dataLength);
+    }
+
+    public void clear() {
+      operationCount = 0;
+      dataLength = 0;
+    }
+
+  }
+
+}
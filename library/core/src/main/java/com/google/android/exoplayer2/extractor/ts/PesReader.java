@@ -22,6 +22,7 @@ import com.google.android.exoplayer2.extractor.ExtractorOutput;
 import com.google.android.exoplayer2.util.ParsableBitArray;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
+import java.util.concurrent.Executor;
 
 /**
  * Parses PES packet data and extracts samples.
@@ -39,9 +40,10 @@ public final class PesReader implements TsPayloadReader {
   private static final int MAX_HEADER_EXTENSION_SIZE = 10;
   private static final int PES_SCRATCH_SIZE = 10; // max(HEADER_SIZE, MAX_HEADER_EXTENSION_SIZE)
 
-  private final ElementaryStreamReader reader;
   private final ParsableBitArray pesScratch;
 
+  private ElementaryStreamReader reader;
+
   private int state;
   private int bytesRead;
 
@@ -60,6 +62,20 @@ public final class PesReader implements TsPayloadReader {
     state = STATE_FINDING_HEADER;
   }
 
+  /**
+   * Makes the reader record calls to its {@link ElementaryStreamReader}, so that they can be
+   * replayed on {@code executor}. PES headers, including their timestamps, are still parsed on the
+   * calling thread. Must be called before {@link #init}.
+   *
+   * @param executor The executor on which the elementary stream should be parsed.
+   * @return The {@link AsyncElementaryStreamReader} that records the calls.
+   */
+  /* package */ AsyncElementaryStreamReader enableAsyncReading(Executor executor) {
+    AsyncElementaryStreamReader asyncReader = new AsyncElementaryStreamReader(reader, executor);
+    reader = asyncReader;
+    return asyncReader;
+  }
+
   @Override
   public void init(TimestampAdjuster timestampAdjuster, ExtractorOutput extractorOutput,
       TrackIdGenerator idGenerator) {
@@ -16,11 +16,13 @@
 package com.google.android.exoplayer2.extractor.ts;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 import android.util.SparseIntArray;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.extractor.BatchingTrackOutput;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
@@ -44,11 +46,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Extracts data from the MPEG-2 TS container format.
  */
-public final class TsExtractor implements Extractor {
+public final class TsExtractor implements Extractor, BatchingTrackOutput.Client {
 
   /**
    * Factory for {@link TsExtractor} instances.
@@ -108,15 +111,22 @@ public final class TsExtractor implements Extractor {
   private static final long HEVC_FORMAT_IDENTIFIER = Util.getIntegerCodeForString("HEVC");
 
   private static final int BUFFER_SIZE = TS_PACKET_SIZE * 50;
+  /**
+   * The number of bytes of packets consumed between flushes of the {@link PesReader}s that parse
+   * their elementary streams on the demux executor.
+   */
+  private static final int ASYNC_FLUSH_INTERVAL_BYTES = TS_PACKET_SIZE * 1024;
   private static final int SNIFF_TS_PACKET_COUNT = 5;
 
   @Mode private final int mode;
   private final List<TimestampAdjuster> timestampAdjusters;
   private final ParsableByteArray tsPacketBuffer;
-  private final SparseIntArray continuityCounters;
+  private final int[] continuityCounters; // Indexed by pid
   private final TsPayloadReader.Factory payloadReaderFactory;
-  private final SparseArray<TsPayloadReader> tsPayloadReaders; // Indexed by pid
+  private final TsPayloadReader[] tsPayloadReaders; // Indexed by pid
   private final SparseBooleanArray trackIds;
+  @Nullable private final Executor demuxExecutor;
+  private final List<AsyncElementaryStreamReader> asyncReaders;
 
   // Accessed only by the loading thread.
   private ExtractorOutput output;
@@ -124,6 +134,7 @@ public final class TsExtractor implements Extractor {
   private boolean tracksEnded;
   private TsPayloadReader id3Reader;
   private int bytesSinceLastSync;
+  private int bytesSinceAsyncFlush;
 
   public TsExtractor() {
     this(0);
@@ -157,6 +168,24 @@ public final class TsExtractor implements Extractor {
    */
   public TsExtractor(@Mode int mode, TimestampAdjuster timestampAdjuster,
       TsPayloadReader.Factory payloadReaderFactory) {
+    this(mode, timestampAdjuster, payloadReaderFactory, null);
+  }
+
+  /**
+   * @param mode Mode for the extractor. One of {@link #MODE_MULTI_PMT}, {@link #MODE_SINGLE_PMT}
+   *     and {@link #MODE_HLS}.
+   * @param timestampAdjuster A timestamp adjuster for offsetting and scaling sample timestamps.
+   * @param payloadReaderFactory Factory for injecting a custom set of payload readers.
+   * @param demuxExecutor An executor on which the elementary streams of {@link PesReader}s are
+   *     parsed in parallel, or null to parse them on the loading thread. PES headers and sections
+   *     are always parsed on the loading thread. The executor should be able to run one task per
+   *     elementary stream concurrently. Parsing continues in the background between calls to
+   *     {@link #read(ExtractorInput, PositionHolder)}, and is only waited for at the end of the
+   *     input, when seeking or releasing, and when {@link #flushSampleBatches()} is called.
+   */
+  public TsExtractor(@Mode int mode, TimestampAdjuster timestampAdjuster,
+      TsPayloadReader.Factory payloadReaderFactory, @Nullable Executor demuxExecutor) {
+    this.demuxExecutor = demuxExecutor;
     this.payloadReaderFactory = Assertions.checkNotNull(payloadReaderFactory);
     this.mode = mode;
     if (mode == MODE_SINGLE_PMT || mode == MODE_HLS) {
@@ -167,8 +196,10 @@ public final class TsExtractor implements Extractor {
     }
     tsPacketBuffer = new ParsableByteArray(new byte[BUFFER_SIZE], 0);
     trackIds = new SparseBooleanArray();
-    tsPayloadReaders = new SparseArray<>();
-    continuityCounters = new SparseIntArray();
+    asyncReaders = new ArrayList<>();
+    tsPayloadReaders = new TsPayloadReader[MAX_PID_PLUS_ONE];
+    continuityCounters = new int[MAX_PID_PLUS_ONE];
+    Arrays.fill(continuityCounters, C.INDEX_UNSET);
     resetPayloadReaders();
   }
 
@@ -200,12 +231,15 @@ public final class TsExtractor implements Extractor {
 
   @Override
   public void seek(long position, long timeUs) {
+    // The elementary streams read before the seek are discarded, including any errors parsing them.
+    awaitAsyncReplay();
+    bytesSinceAsyncFlush = 0;
     int timestampAdjustersCount = timestampAdjusters.size();
     for (int i = 0; i < timestampAdjustersCount; i++) {
       timestampAdjusters.get(i).reset();
     }
     tsPacketBuffer.reset();
-    continuityCounters.clear();
+    Arrays.fill(continuityCounters, C.INDEX_UNSET);
     // Elementary stream readers' state should be cleared to get consistent behaviours when seeking.
     resetPayloadReaders();
     bytesSinceLastSync = 0;
@@ -213,7 +247,7 @@ public final class TsExtractor implements Extractor {
 
   @Override
   public void release() {
-    // Do nothing
+    awaitAsyncReplay();
   }
 
   @Override
@@ -235,35 +269,69 @@ public final class TsExtractor implements Extractor {
       int limit = tsPacketBuffer.limit();
       int read = input.read(data, limit, BUFFER_SIZE - limit);
       if (read == C.RESULT_END_OF_INPUT) {
+        flushAsyncReaders();
+        awaitAsyncReaders();
         return RESULT_END_OF_INPUT;
       }
       tsPacketBuffer.setLimit(limit + read);
     }
 
-    // Note: See ISO/IEC 13818-1, section 2.4.3.2 for details of the header format.
+    // Demux all complete packets in the buffer.
     int limit = tsPacketBuffer.limit();
     int position = tsPacketBuffer.getPosition();
-    int searchStart = position;
-    while (position < limit && data[position] != TS_SYNC_BYTE) {
-      position++;
-    }
-    tsPacketBuffer.setPosition(position);
+    while (true) {
+      int searchStart = position;
+      while (position < limit && data[position] != TS_SYNC_BYTE) {
+        position++;
+      }
+      tsPacketBuffer.setPosition(position);
 
-    int endOfPacket = position + TS_PACKET_SIZE;
-    if (endOfPacket > limit) {
-      bytesSinceLastSync += position - searchStart;
-      if (mode == MODE_HLS && bytesSinceLastSync > TS_PACKET_SIZE * 2) {
-        throw new ParserException("Cannot find sync byte. Most likely not a Transport Stream.");
+      int endOfPacket = position + TS_PACKET_SIZE;
+      if (endOfPacket > limit) {
+        bytesSinceLastSync += position - searchStart;
+        if (mode == MODE_HLS && bytesSinceLastSync > TS_PACKET_SIZE * 2) {
+          throw new ParserException("Cannot find sync byte. Most likely not a Transport Stream.");
+        }
+        if (bytesSinceAsyncFlush >= ASYNC_FLUSH_INTERVAL_BYTES) {
+          bytesSinceAsyncFlush = 0;
+          flushAsyncReaders();
+        }
+        maybeThrowAsyncReaderError();
+        return RESULT_CONTINUE;
       }
-      return RESULT_CONTINUE;
+      bytesSinceLastSync = 0;
+      bytesSinceAsyncFlush += TS_PACKET_SIZE;
+
+      consumePacket(endOfPacket, limit);
+      tsPacketBuffer.setPosition(endOfPacket);
+      position = endOfPacket;
     }
-    bytesSinceLastSync = 0;
+  }
+
+  // BatchingTrackOutput.Client implementation.
+
+  @Override
+  public void flushSampleBatches() {
+    // Errors are thrown by the next read.
+    bytesSinceAsyncFlush = 0;
+    flushAsyncReaders();
+    awaitAsyncReplay();
+  }
+
+  // Internals.
 
+  /**
+   * Consumes the packet at the current position of {@link #tsPacketBuffer}.
+   *
+   * @param endOfPacket The position of the end of the packet in {@link #tsPacketBuffer}.
+   * @param limit The limit of {@link #tsPacketBuffer}.
+   */
+  private void consumePacket(int endOfPacket, int limit) throws ParserException {
+    // Note: See ISO/IEC 13818-1, section 2.4.3.2 for details of the header format.
     int tsPacketHeader = tsPacketBuffer.readInt();
     if ((tsPacketHeader & 0x800000) != 0) { // transport_error_indicator
       // There are uncorrectable errors in this packet.
-      tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return;
     }
     boolean payloadUnitStartIndicator = (tsPacketHeader & 0x400000) != 0;
     // Ignoring transport_priority (tsPacketHeader & 0x200000)
@@ -272,21 +340,22 @@ public final class TsExtractor implements Extractor {
     boolean adaptationFieldExists = (tsPacketHeader & 0x20) != 0;
     boolean payloadExists = (tsPacketHeader & 0x10) != 0;
 
-    TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders.get(pid) : null;
+    TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders[pid] : null;
     if (payloadReader == null) {
-      tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return;
     }
 
     // Discontinuity check.
     if (mode != MODE_HLS) {
       int continuityCounter = tsPacketHeader & 0xF;
-      int previousCounter = continuityCounters.get(pid, continuityCounter - 1);
-      continuityCounters.put(pid, continuityCounter);
+      int previousCounter = continuityCounters[pid];
+      if (previousCounter == C.INDEX_UNSET) {
+        previousCounter = continuityCounter - 1;
+      }
+      continuityCounters[pid] = continuityCounter;
       if (previousCounter == continuityCounter) {
         // Duplicate packet found.
-        tsPacketBuffer.setPosition(endOfPacket);
-        return RESULT_CONTINUE;
+        return;
       } else if (continuityCounter != ((previousCounter + 1) & 0xF)) {
         // Discontinuity found.
         payloadReader.seek();
@@ -303,23 +372,86 @@ public final class TsExtractor implements Extractor {
     tsPacketBuffer.setLimit(endOfPacket);
     payloadReader.consume(tsPacketBuffer, payloadUnitStartIndicator);
     tsPacketBuffer.setLimit(limit);
+  }
 
-    tsPacketBuffer.setPosition(endOfPacket);
-    return RESULT_CONTINUE;
+  /**
+   * Queues the elementary stream data consumed since the last flush for parsing on the demux
+   * executor.
+   */
+  private void flushAsyncReaders() {
+    for (int i = 0; i < asyncReaders.size(); i++) {
+      asyncReaders.get(i).flush();
+    }
   }
 
-  // Internals.
+  /**
+   * Waits for the queued elementary stream data to be parsed, and throws any error parsing it.
+   */
+  private void awaitAsyncReaders() throws ParserException {
+    int asyncReaderCount = asyncReaders.size();
+    // Every reader must have finished replaying before an exception is propagated, since the caller
+    // may reset the outputs the readers write to.
+    ParserException parserException = null;
+    RuntimeException runtimeException = null;
+    for (int i = 0; i < asyncReaderCount; i++) {
+      try {
+        asyncReaders.get(i).awaitFlush();
+      } catch (ParserException e) {
+        if (parserException == null) {
+          parserException = e;
+        }
+      } catch (RuntimeException e) {
+        if (runtimeException == null) {
+          runtimeException = e;
+        }
+      }
+    }
+    if (runtimeException != null) {
+      throw runtimeException;
+    } else if (parserException != null) {
+      throw parserException;
+    }
+  }
+
+  /**
+   * Waits for the queued elementary stream data to be parsed, keeping any error parsing it.
+   */
+  private void awaitAsyncReplay() {
+    for (int i = 0; i < asyncReaders.size(); i++) {
+      asyncReaders.get(i).awaitReplay();
+    }
+  }
+
+  /**
+   * Throws any error already found parsing elementary stream data, once all the queued data has
+   * been parsed.
+   */
+  private void maybeThrowAsyncReaderError() throws ParserException {
+    for (int i = 0; i < asyncReaders.size(); i++) {
+      if (asyncReaders.get(i).hasError()) {
+        awaitAsyncReaders();
+        return;
+      }
+    }
+  }
+
+  private void maybeEnableAsyncReading(TsPayloadReader payloadReader) {
+    if (demuxExecutor != null && payloadReader instanceof PesReader) {
+      asyncReaders.add(((PesReader) payloadReader).enableAsyncReading(demuxExecutor));
+    }
+  }
 
   private void resetPayloadReaders() {
     trackIds.clear();
-    tsPayloadReaders.clear();
+    Arrays.fill(tsPayloadReaders, null);
+    asyncReaders.clear();
     SparseArray<TsPayloadReader> initialPayloadReaders =
         payloadReaderFactory.createInitialPayloadReaders();
     int initialPayloadReadersSize = initialPayloadReaders.size();
     for (int i = 0; i < initialPayloadReadersSize; i++) {
-      tsPayloadReaders.put(initialPayloadReaders.keyAt(i), initialPayloadReaders.valueAt(i));
+      tsPayloadReaders[initialPayloadReaders.keyAt(i)] = initialPayloadReaders.valueAt(i);
     }
-    tsPayloadReaders.put(TS_PAT_PID, new SectionReader(new PatReader()));
+    tsPayloadReaders[TS_PAT_PID] = new SectionReader(new PatReader());
     id3Reader = null;
   }
 
@@ -361,12 +493,12 @@ public final class TsExtractor implements Extractor {
           patScratch.skipBits(13); // network_PID (13)
         } else {
           int pid = patScratch.readBits(13);
-          tsPayloadReaders.put(pid, new SectionReader(new PmtReader(pid)));
+          tsPayloadReaders[pid] = new SectionReader(new PmtReader(pid));
           remainingPmts++;
         }
       }
       if (mode != MODE_HLS) {
-        tsPayloadReaders.remove(TS_PAT_PID);
+        tsPayloadReaders[TS_PAT_PID] = null;
       }
     }
 
@@ -439,6 +571,7 @@ public final class TsExtractor implements Extractor {
         // appears intermittently during playback. See [Internal: b/20261500].
         EsInfo dummyEsInfo = new EsInfo(TS_STREAM_TYPE_ID3, null, null, new byte[0]);
         id3Reader = payloadReaderFactory.createPayloadReader(TS_STREAM_TYPE_ID3, dummyEsInfo);
+        maybeEnableAsyncReading(id3Reader);
         id3Reader.init(timestampAdjuster, output,
             new TrackIdGenerator(programNumber, TS_STREAM_TYPE_ID3, MAX_PID_PLUS_ONE));
       }
@@ -480,10 +613,11 @@ public final class TsExtractor implements Extractor {
         TsPayloadReader reader = trackIdToReaderScratch.valueAt(i);
         if (reader != null) {
           if (reader != id3Reader) {
+            maybeEnableAsyncReading(reader);
             reader.init(timestampAdjuster, output,
                 new TrackIdGenerator(programNumber, trackId, MAX_PID_PLUS_ONE));
           }
-          tsPayloadReaders.put(trackIdToPidScratch.valueAt(i), reader);
+          tsPayloadReaders[trackIdToPidScratch.valueAt(i)] = reader;
         }
       }
 
@@ -494,7 +628,7 @@ public final class TsExtractor implements Extractor {
           tracksEnded = true;
         }
       } else {
-        tsPayloadReaders.remove(pid);
+        tsPayloadReaders[pid] = null;
         remainingPmts = mode == MODE_SINGLE_PMT ? 0 : remainingPmts - 1;
         if (remainingPmts == 0) {
           output.endTracks();
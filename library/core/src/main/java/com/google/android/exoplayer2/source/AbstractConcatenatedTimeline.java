@@ -19,6 +19,7 @@ import android.util.Pair;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.Timeline;
+import java.util.Arrays;
 
 /**
  * Abstract base class for the concatenation of one or more {@link Timeline}s.
@@ -198,6 +199,39 @@ import com.google.android.exoplayer2.Timeline;
         : getFirstPeriodIndexByChildIndex(childIndex) + periodIndexInChild;
   }
 
+  /**
+   * Returns the indices of the child timelines whose windows are played after the window of a
+   * period, in playback order. Each child index is returned at most once, and the index of the
+   * child containing the period isn't returned.
+   *
+   * @param periodIndex A valid period index within the bounds of the timeline.
+   * @param maxCount The maximum number of child indices to return.
+   * @param repeatMode The repeat mode used for playback.
+   * @param shuffleModeEnabled Whether shuffling is enabled for playback.
+   * @return The child indices.
+   */
+  public final int[] getNextChildIndices(int periodIndex, int maxCount,
+      @Player.RepeatMode int repeatMode, boolean shuffleModeEnabled) {
+    int currentChildIndex = getChildIndexByPeriodIndex(periodIndex);
+    int windowIndex = getPeriod(periodIndex, new Period()).windowIndex;
+    int[] childIndices = new int[maxCount];
+    int childIndexCount = 0;
+    // Each window is visited at most once, which ends the walk when repeating.
+    int windowCount = getWindowCount();
+    for (int i = 0; i < windowCount && childIndexCount < maxCount; i++) {
+      windowIndex = getNextWindowIndex(windowIndex, repeatMode, shuffleModeEnabled);
+      if (windowIndex == C.INDEX_UNSET) {
+        break;
+      }
+      int childIndex = getChildIndexByWindowIndex(windowIndex);
+      if (childIndex != currentChildIndex
+          && !containsChildIndex(childIndices, childIndexCount, childIndex)) {
+        childIndices[childIndexCount++] = childIndex;
+      }
+    }
+    return Arrays.copyOf(childIndices, childIndexCount);
+  }
+
   /**
    * Returns the index of the child timeline containing the given period index.
    *
@@ -249,6 +283,15 @@ import com.google.android.exoplayer2.Timeline;
    */
   protected abstract Object getChildUidByChildIndex(int childIndex);
 
+  private static boolean containsChildIndex(int[] childIndices, int count, int childIndex) {
+    for (int i = 0; i < count; i++) {
+      if (childIndices[i] == childIndex) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private int getNextChildIndex(int childIndex, boolean shuffleModeEnabled) {
     return shuffleModeEnabled ? shuffleOrder.getNextIndex(childIndex)
         : childIndex < childCount - 1 ? childIndex + 1 : C.INDEX_UNSET;
@@ -16,6 +16,8 @@
 package com.google.android.exoplayer2.source;
 
 import androidx.annotation.Nullable;
+import android.util.Pair;
+import android.util.SparseArray;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlayer;
 import com.google.android.exoplayer2.Timeline;
@@ -39,9 +41,14 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<Integer
   private final Map<MediaPeriod, Integer> sourceIndexByMediaPeriod;
   private final boolean isAtomic;
   private final ShuffleOrder shuffleOrder;
+  private final SparseArray<PrefetchedMediaPeriod> prefetchedMediaPeriods;
+  private final Timeline.Window window;
+  private final Timeline.Period period;
 
+  private ExoPlayer player;
   private Listener listener;
   private ConcatenatedTimeline timeline;
+  private int prefetchCount;
 
   /**
    * @param mediaSources The {@link MediaSource}s to concatenate. It is valid for the same
@@ -82,11 +89,35 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<Integer
     timelines = new Timeline[mediaSources.length];
     manifests = new Object[mediaSources.length];
     sourceIndexByMediaPeriod = new HashMap<>();
+    prefetchedMediaPeriods = new SparseArray<>();
+    window = new Timeline.Window();
+    period = new Timeline.Period();
+  }
+
+  /**
+   * Sets the number of following sources whose first media period is created and prepared when a
+   * media period is created, so that loading manifests and initialization data for upcoming items
+   * overlaps with playback of the current one. The following sources are those played next in the
+   * player's current repeat and shuffle modes. The prefetched periods load at a lower priority than
+   * playback and do not load any further until the player starts loading them. Their memory is
+   * counted towards the period that adopts them, but isn't reported to the
+   * {@link com.google.android.exoplayer2.LoadControl} before then. For example, a prefetched
+   * {@link ExtractorMediaSource} period may hold up to its continue loading check interval. The
+   * default value is zero, which disables prefetching.
+   * <p>
+   * Must be called before the source is prepared.
+   *
+   * @param prefetchCount The number of following sources to prefetch.
+   */
+  public void setPrefetchCount(int prefetchCount) {
+    Assertions.checkArgument(prefetchCount >= 0);
+    this.prefetchCount = prefetchCount;
   }
 
   @Override
   public void prepareSource(ExoPlayer player, boolean isTopLevelSource, Listener listener) {
     super.prepareSource(player, isTopLevelSource, listener);
+    this.player = player;
     this.listener = listener;
     boolean[] duplicateFlags = buildDuplicateFlags(mediaSources);
     if (mediaSources.length == 0) {
@@ -105,8 +136,17 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<Integer
     int sourceIndex = timeline.getChildIndexByPeriodIndex(id.periodIndex);
     MediaPeriodId periodIdInSource = id.copyWithPeriodIndex(
         id.periodIndex - timeline.getFirstPeriodIndexByChildIndex(sourceIndex));
-    MediaPeriod mediaPeriod = mediaSources[sourceIndex].createPeriod(periodIdInSource, allocator);
+    MediaPeriod mediaPeriod;
+    PrefetchedMediaPeriod prefetchedMediaPeriod = prefetchedMediaPeriods.get(sourceIndex);
+    if (prefetchedMediaPeriod != null && prefetchedMediaPeriod.matches(periodIdInSource)) {
+      prefetchedMediaPeriods.remove(sourceIndex);
+      prefetchedMediaPeriod.adopt(allocator);
+      mediaPeriod = prefetchedMediaPeriod;
+    } else {
+      mediaPeriod = mediaSources[sourceIndex].createPeriod(periodIdInSource, allocator);
+    }
     sourceIndexByMediaPeriod.put(mediaPeriod, sourceIndex);
+    updatePrefetchedMediaPeriods(id.periodIndex, allocator);
     return mediaPeriod;
   }
 
@@ -114,12 +154,21 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<Integer
   public void releasePeriod(MediaPeriod mediaPeriod) {
     int sourceIndex = sourceIndexByMediaPeriod.get(mediaPeriod);
     sourceIndexByMediaPeriod.remove(mediaPeriod);
-    mediaSources[sourceIndex].releasePeriod(mediaPeriod);
+    if (mediaPeriod instanceof PrefetchedMediaPeriod) {
+      ((PrefetchedMediaPeriod) mediaPeriod).releasePeriod();
+    } else {
+      mediaSources[sourceIndex].releasePeriod(mediaPeriod);
+    }
   }
 
   @Override
   public void releaseSource() {
+    for (int i = 0; i < prefetchedMediaPeriods.size(); i++) {
+      prefetchedMediaPeriods.valueAt(i).releasePeriod();
+    }
+    prefetchedMediaPeriods.clear();
     super.releaseSource();
+    player = null;
     listener = null;
     timeline = null;
   }
@@ -150,6 +199,45 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<Integer
     listener.onSourceInfoRefreshed(this, timeline, manifests.clone());
   }
 
+  /**
+   * Prefetches the first media period of the {@code prefetchCount} sources played after the source
+   * of a period, and releases prefetched media periods of other sources.
+   */
+  private void updatePrefetchedMediaPeriods(int periodIndex, Allocator allocator) {
+    int[] nextSourceIndices = prefetchCount == 0 ? new int[0]
+        : timeline.getNextChildIndices(periodIndex, prefetchCount, player.getRepeatMode(),
+            player.getShuffleModeEnabled());
+    for (int i = prefetchedMediaPeriods.size() - 1; i >= 0; i--) {
+      if (!containsSourceIndex(nextSourceIndices, prefetchedMediaPeriods.keyAt(i))) {
+        prefetchedMediaPeriods.valueAt(i).releasePeriod();
+        prefetchedMediaPeriods.removeAt(i);
+      }
+    }
+    for (int sourceIndex : nextSourceIndices) {
+      if (prefetchedMediaPeriods.get(sourceIndex) != null
+          || timelines[sourceIndex].getWindowCount() == 0) {
+        continue;
+      }
+      // Prefetch the period in which playback of the source starts by default.
+      Pair<Integer, Long> defaultPosition =
+          timelines[sourceIndex].getPeriodPosition(window, period, 0, C.TIME_UNSET);
+      if (defaultPosition != null) {
+        MediaPeriodId id = new MediaPeriodId(defaultPosition.first);
+        prefetchedMediaPeriods.put(sourceIndex, new PrefetchedMediaPeriod(mediaSources[sourceIndex],
+            id, allocator, defaultPosition.second));
+      }
+    }
+  }
+
+  private static boolean containsSourceIndex(int[] sourceIndices, int sourceIndex) {
+    for (int index : sourceIndices) {
+      if (index == sourceIndex) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private static boolean[] buildDuplicateFlags(MediaSource[] mediaSources) {
     boolean[] duplicateFlags = new boolean[mediaSources.length];
     IdentityHashMap<MediaSource, Void> sources = new IdentityHashMap<>(mediaSources.length);
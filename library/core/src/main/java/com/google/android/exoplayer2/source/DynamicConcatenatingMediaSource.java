@@ -19,7 +19,7 @@ import android.os.Handler;
 import android.os.Looper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import android.util.SparseIntArray;
+import android.util.Pair;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayer;
@@ -31,6 +31,7 @@ import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.IdentityHashMap;
@@ -58,14 +59,19 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
   private final MediaSourceHolder query;
   private final Map<MediaPeriod, MediaSourceHolder> mediaSourceByMediaPeriod;
   private final List<DeferredMediaPeriod> deferredMediaPeriods;
+  private final List<MediaSourceHolder> prefetchingHolders;
+  private final Timeline.Window window;
+  private final Timeline.Period period;
   private final boolean isAtomic;
 
   private ExoPlayer player;
   private Listener listener;
+  private ConcatenatedTimeline timeline;
   private ShuffleOrder shuffleOrder;
   private boolean preventListenerNotification;
   private int windowCount;
   private int periodCount;
+  private int prefetchCount;
 
   /**
    * Creates a new dynamic concatenating media source.
@@ -98,10 +104,33 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
     this.mediaSourcesPublic = new ArrayList<>();
     this.mediaSourceHolders = new ArrayList<>();
     this.deferredMediaPeriods = new ArrayList<>(1);
+    this.prefetchingHolders = new ArrayList<>();
+    this.window = new Timeline.Window();
+    this.period = new Timeline.Period();
     this.query = new MediaSourceHolder(null, null, -1, -1, -1);
     this.isAtomic = isAtomic;
   }
 
+  /**
+   * Sets the number of following media sources whose first media period is created and prepared
+   * when a media period is created, so that loading initialization data for upcoming playlist items
+   * overlaps with playback of the current one. The following media sources are those played next
+   * in the player's current repeat and shuffle modes. The prefetched periods load at a lower
+   * priority than playback and do not load any further until the player starts loading them. Their
+   * memory is counted towards the period that adopts them, but isn't reported to the
+   * {@link com.google.android.exoplayer2.LoadControl} before then. For example, a prefetched
+   * {@link ExtractorMediaSource} period may hold up to its continue loading check interval. The
+   * default value is zero, which disables prefetching.
+   * <p>
+   * Must be called before the source is prepared.
+   *
+   * @param prefetchCount The number of following media sources to prefetch.
+   */
+  public synchronized void setPrefetchCount(int prefetchCount) {
+    Assertions.checkArgument(prefetchCount >= 0);
+    this.prefetchCount = prefetchCount;
+  }
+
   /**
    * Appends a {@link MediaSource} to the playlist.
    * <p>
@@ -363,14 +392,23 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
     MediaPeriodId idInSource = id.copyWithPeriodIndex(
         id.periodIndex - holder.firstPeriodIndexInChild);
     MediaPeriod mediaPeriod;
-    if (!holder.isPrepared) {
-      mediaPeriod = new DeferredMediaPeriod(holder.mediaSource, idInSource, allocator);
-      deferredMediaPeriods.add((DeferredMediaPeriod) mediaPeriod);
+    if (holder.prefetchedMediaPeriod != null && holder.prefetchedMediaPeriod.matches(idInSource)) {
+      // The prefetched period is already counted as active.
+      holder.prefetchedMediaPeriod.adopt(allocator);
+      mediaPeriod = holder.prefetchedMediaPeriod;
+      holder.prefetchedMediaPeriod = null;
+      prefetchingHolders.remove(holder);
     } else {
-      mediaPeriod = holder.mediaSource.createPeriod(idInSource, allocator);
+      if (!holder.isPrepared) {
+        mediaPeriod = new DeferredMediaPeriod(holder.mediaSource, idInSource, allocator);
+        deferredMediaPeriods.add((DeferredMediaPeriod) mediaPeriod);
+      } else {
+        mediaPeriod = holder.mediaSource.createPeriod(idInSource, allocator);
+      }
+      holder.activeMediaPeriods++;
     }
     mediaSourceByMediaPeriod.put(mediaPeriod, holder);
-    holder.activeMediaPeriods++;
+    updatePrefetchedMediaPeriods(id.periodIndex, allocator);
     return mediaPeriod;
   }
 
@@ -380,6 +418,8 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
     if (mediaPeriod instanceof DeferredMediaPeriod) {
       deferredMediaPeriods.remove(mediaPeriod);
       ((DeferredMediaPeriod) mediaPeriod).releasePeriod();
+    } else if (mediaPeriod instanceof PrefetchedMediaPeriod) {
+      ((PrefetchedMediaPeriod) mediaPeriod).releasePeriod();
     } else {
       holder.mediaSource.releasePeriod(mediaPeriod);
     }
@@ -391,10 +431,17 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
 
   @Override
   public void releaseSource() {
+    for (int i = 0; i < prefetchingHolders.size(); i++) {
+      MediaSourceHolder holder = prefetchingHolders.get(i);
+      holder.prefetchedMediaPeriod.releasePeriod();
+      holder.prefetchedMediaPeriod = null;
+    }
+    prefetchingHolders.clear();
     super.releaseSource();
     mediaSourceHolders.clear();
     player = null;
     listener = null;
+    timeline = null;
     shuffleOrder = shuffleOrder.cloneAndClear();
     windowCount = 0;
     periodCount = 0;
@@ -460,11 +507,9 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
 
   private void maybeNotifyListener(@Nullable EventDispatcher actionOnCompletion) {
     if (!preventListenerNotification) {
-      listener.onSourceInfoRefreshed(
-          this,
-          new ConcatenatedTimeline(
-              mediaSourceHolders, windowCount, periodCount, shuffleOrder, isAtomic),
-          null);
+      timeline = new ConcatenatedTimeline(
+          mediaSourceHolders, windowCount, periodCount, shuffleOrder, isAtomic);
+      listener.onSourceInfoRefreshed(this, timeline, null);
       if (actionOnCompletion != null) {
         player.createMessage(this).setType(MSG_ON_COMPLETION).setPayload(actionOnCompletion).send();
       }
@@ -472,32 +517,44 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
   }
 
   private void addMediaSourceInternal(int newIndex, MediaSource newMediaSource) {
-    final MediaSourceHolder newMediaSourceHolder;
-    DeferredTimeline newTimeline = new DeferredTimeline();
-    if (newIndex > 0) {
-      MediaSourceHolder previousHolder = mediaSourceHolders.get(newIndex - 1);
-      newMediaSourceHolder =
-          new MediaSourceHolder(
-              newMediaSource,
-              newTimeline,
-              newIndex,
-              previousHolder.firstWindowIndexInChild + previousHolder.timeline.getWindowCount(),
-              previousHolder.firstPeriodIndexInChild + previousHolder.timeline.getPeriodCount());
-    } else {
-      newMediaSourceHolder = new MediaSourceHolder(newMediaSource, newTimeline, 0, 0, 0);
-    }
-    correctOffsets(
-        newIndex,
-        /* childIndexUpdate= */ 1,
-        newTimeline.getWindowCount(),
-        newTimeline.getPeriodCount());
-    mediaSourceHolders.add(newIndex, newMediaSourceHolder);
-    prepareChildSource(newMediaSourceHolder, newMediaSourceHolder.mediaSource);
+    addMediaSourcesInternal(newIndex, Collections.singletonList(newMediaSource));
   }
 
   private void addMediaSourcesInternal(int index, Collection<MediaSource> mediaSources) {
+    int firstWindowIndex = 0;
+    int firstPeriodIndex = 0;
+    if (index > 0) {
+      MediaSourceHolder previousHolder = mediaSourceHolders.get(index - 1);
+      firstWindowIndex =
+          previousHolder.firstWindowIndexInChild + previousHolder.timeline.getWindowCount();
+      firstPeriodIndex =
+          previousHolder.firstPeriodIndexInChild + previousHolder.timeline.getPeriodCount();
+    }
+    // Create all holders before inserting them, so that the offsets of the holders after the
+    // insertion point are corrected once rather than once per added media source.
+    List<MediaSourceHolder> newMediaSourceHolders = new ArrayList<>(mediaSources.size());
+    int windowIndex = firstWindowIndex;
+    int periodIndex = firstPeriodIndex;
     for (MediaSource mediaSource : mediaSources) {
-      addMediaSourceInternal(index++, mediaSource);
+      DeferredTimeline newTimeline = new DeferredTimeline();
+      newMediaSourceHolders.add(
+          new MediaSourceHolder(
+              mediaSource,
+              newTimeline,
+              index + newMediaSourceHolders.size(),
+              windowIndex,
+              periodIndex));
+      windowIndex += newTimeline.getWindowCount();
+      periodIndex += newTimeline.getPeriodCount();
+    }
+    correctOffsets(
+        index,
+        /* childIndexUpdate= */ newMediaSourceHolders.size(),
+        windowIndex - firstWindowIndex,
+        periodIndex - firstPeriodIndex);
+    mediaSourceHolders.addAll(index, newMediaSourceHolders);
+    for (MediaSourceHolder newMediaSourceHolder : newMediaSourceHolders) {
+      prepareChildSource(newMediaSourceHolder, newMediaSourceHolder.mediaSource);
     }
   }
 
@@ -541,7 +598,62 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
         -oldTimeline.getWindowCount(),
         -oldTimeline.getPeriodCount());
     holder.isRemoved = true;
-    if (holder.activeMediaPeriods == 0) {
+    if (holder.prefetchedMediaPeriod != null) {
+      releasePrefetchedMediaPeriod(holder);
+    } else if (holder.activeMediaPeriods == 0) {
+      releaseChildSource(holder);
+    }
+  }
+
+  /**
+   * Prefetches the first media period of the {@code prefetchCount} media sources played after the
+   * media source of a period, and releases prefetched media periods of other media sources.
+   */
+  private void updatePrefetchedMediaPeriods(int periodIndex, Allocator allocator) {
+    int[] nextHolderIndices = prefetchCount == 0 ? new int[0]
+        : timeline.getNextChildIndices(periodIndex, prefetchCount, player.getRepeatMode(),
+            player.getShuffleModeEnabled());
+    for (int i = prefetchingHolders.size() - 1; i >= 0; i--) {
+      MediaSourceHolder holder = prefetchingHolders.get(i);
+      if (!containsHolderIndex(nextHolderIndices, holder.childIndex)) {
+        releasePrefetchedMediaPeriod(holder);
+      }
+    }
+    for (int holderIndex : nextHolderIndices) {
+      MediaSourceHolder holder = mediaSourceHolders.get(holderIndex);
+      if (!holder.isPrepared
+          || holder.prefetchedMediaPeriod != null
+          || holder.timeline.getWindowCount() == 0) {
+        continue;
+      }
+      // Prefetch the period in which playback of the media source starts by default.
+      Pair<Integer, Long> defaultPosition =
+          holder.timeline.getPeriodPosition(window, period, 0, C.TIME_UNSET);
+      if (defaultPosition != null) {
+        MediaPeriodId id = new MediaPeriodId(defaultPosition.first);
+        holder.prefetchedMediaPeriod =
+            new PrefetchedMediaPeriod(holder.mediaSource, id, allocator, defaultPosition.second);
+        holder.activeMediaPeriods++;
+        prefetchingHolders.add(holder);
+      }
+    }
+  }
+
+  private static boolean containsHolderIndex(int[] holderIndices, int holderIndex) {
+    for (int index : holderIndices) {
+      if (index == holderIndex) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void releasePrefetchedMediaPeriod(MediaSourceHolder holder) {
+    holder.prefetchedMediaPeriod.releasePeriod();
+    holder.prefetchedMediaPeriod = null;
+    prefetchingHolders.remove(holder);
+    holder.activeMediaPeriods--;
+    if (holder.activeMediaPeriods == 0 && holder.isRemoved) {
       releaseChildSource(holder);
     }
   }
@@ -598,6 +710,7 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
     public boolean isPrepared;
     public boolean isRemoved;
     public int activeMediaPeriods;
+    public @Nullable PrefetchedMediaPeriod prefetchedMediaPeriod;
 
     public MediaSourceHolder(
         MediaSource mediaSource,
@@ -666,7 +779,8 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
     private final int[] firstWindowInChildIndices;
     private final Timeline[] timelines;
     private final int[] uids;
-    private final SparseIntArray childIndexByUid;
+    private final int[] sortedUids;
+    private final int[] childIndicesBySortedUid;
 
     public ConcatenatedTimeline(
         Collection<MediaSourceHolder> mediaSourceHolders,
@@ -682,14 +796,24 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
       firstWindowInChildIndices = new int[childCount];
       timelines = new Timeline[childCount];
       uids = new int[childCount];
-      childIndexByUid = new SparseIntArray();
+      // Pack each uid with its child index so that a single primitive sort orders both. This keeps
+      // building the uid lookup at O(n log n), as a new timeline is built for every playlist edit.
+      long[] uidAndChildIndices = new long[childCount];
       int index = 0;
       for (MediaSourceHolder mediaSourceHolder : mediaSourceHolders) {
         timelines[index] = mediaSourceHolder.timeline;
         firstPeriodInChildIndices[index] = mediaSourceHolder.firstPeriodIndexInChild;
         firstWindowInChildIndices[index] = mediaSourceHolder.firstWindowIndexInChild;
         uids[index] = mediaSourceHolder.uid;
-        childIndexByUid.put(uids[index], index++);
+        uidAndChildIndices[index] = ((long) mediaSourceHolder.uid << 32) | index;
+        index++;
+      }
+      Arrays.sort(uidAndChildIndices);
+      sortedUids = new int[childCount];
+      childIndicesBySortedUid = new int[childCount];
+      for (int i = 0; i < childCount; i++) {
+        sortedUids[i] = (int) (uidAndChildIndices[i] >> 32);
+        childIndicesBySortedUid[i] = (int) uidAndChildIndices[i];
       }
     }
 
@@ -708,8 +832,8 @@ public final class DynamicConcatenatingMediaSource extends CompositeMediaSource<
       if (!(childUid instanceof Integer)) {
         return C.INDEX_UNSET;
       }
-      int index = childIndexByUid.get((int) childUid, -1);
-      return index == -1 ? C.INDEX_UNSET : index;
+      int index = Arrays.binarySearch(sortedUids, (int) childUid);
+      return index < 0 ? C.INDEX_UNSET : childIndicesBySortedUid[index];
     }
 
     @Override
@@ -23,11 +23,15 @@ import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.FormatHolder;
 import com.google.android.exoplayer2.SeekParameters;
 import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.extractor.BatchingTrackOutput;
 import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.ExtractorSniffingOrder;
 import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekIndexCache;
+import com.google.android.exoplayer2.extractor.SeekIndexScanner;
 import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.extractor.SeekMap.SeekPoints;
 import com.google.android.exoplayer2.extractor.TrackOutput;
@@ -37,8 +41,11 @@ import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultDataSource;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.Loadable;
+import com.google.android.exoplayer2.upstream.LoaderExecutor;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.ConditionVariable;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -46,11 +53,13 @@ import com.google.android.exoplayer2.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A {@link MediaPeriod} that extracts data using an {@link Extractor}.
  */
-/* package */ final class ExtractorMediaPeriod implements MediaPeriod, ExtractorOutput,
+/* package */ final class ExtractorMediaPeriod implements PrioritizableMediaPeriod, ExtractorOutput,
     Loader.Callback<ExtractorMediaPeriod.ExtractingLoadable>, Loader.ReleaseCallback,
     UpstreamFormatChangedListener {
 
@@ -82,6 +91,9 @@ import java.util.Arrays;
   private final Listener listener;
   private final Allocator allocator;
   @Nullable private final String customCacheKey;
+  @Nullable private final SeekIndexCache seekIndexCache;
+  @Nullable private final DataSource.Factory seekIndexScanDataSourceFactory;
+  @Nullable private final LoaderExecutor loaderExecutor;
   private final long continueLoadingCheckIntervalBytes;
   private final Loader loader;
   private final ExtractorHolder extractorHolder;
@@ -97,6 +109,7 @@ import java.util.Arrays;
   private boolean sampleQueuesBuilt;
   private boolean prepared;
   private int actualMinLoadableRetryCount;
+  private int loadPriority;
 
   private boolean seenFirstTrackSelection;
   private boolean notifyDiscontinuity;
@@ -117,6 +130,13 @@ import java.util.Arrays;
   private boolean loadingFinished;
   private boolean released;
 
+  private SeekIndexScanner pendingSeekIndexScanner;
+  private Loader seekIndexScanLoader;
+  private int seekIndexScanErrorCount;
+
+  // Accessed only by the loading thread.
+  private boolean seekIndexCacheEntrySet;
+
   /**
    * @param uri The {@link Uri} of the media stream.
    * @param dataSource The data source to read the media.
@@ -140,6 +160,83 @@ import java.util.Arrays;
       Allocator allocator,
       @Nullable String customCacheKey,
       int continueLoadingCheckIntervalBytes) {
+    this(uri, dataSource, extractors, minLoadableRetryCount, eventDispatcher, listener, allocator,
+        customCacheKey, continueLoadingCheckIntervalBytes, null, C.PRIORITY_PLAYBACK);
+  }
+
+  /**
+   * @param uri The {@link Uri} of the media stream.
+   * @param dataSource The data source to read the media.
+   * @param extractors The extractors to use to read the data source.
+   * @param minLoadableRetryCount The minimum number of times to retry if a loading error occurs.
+   * @param eventDispatcher A dispatcher to notify of events.
+   * @param listener A listener to notify when information about the period changes.
+   * @param allocator An {@link Allocator} from which to obtain media buffer allocations.
+   * @param customCacheKey A custom key that uniquely identifies the original stream. Used for cache
+   *     indexing. May be null.
+   * @param continueLoadingCheckIntervalBytes The number of bytes that should be loaded between each
+   *     invocation of {@link Callback#onContinueLoadingRequested(SequenceableLoader)}.
+   * @param loaderExecutor A shared {@link LoaderExecutor} on which to load, or null if the period
+   *     should load on its own thread.
+   * @param loadPriority The priority of the period's loads on {@code loaderExecutor}.
+   */
+  public ExtractorMediaPeriod(
+      Uri uri,
+      DataSource dataSource,
+      Extractor[] extractors,
+      int minLoadableRetryCount,
+      EventDispatcher eventDispatcher,
+      Listener listener,
+      Allocator allocator,
+      @Nullable String customCacheKey,
+      int continueLoadingCheckIntervalBytes,
+      @Nullable LoaderExecutor loaderExecutor,
+      int loadPriority) {
+    this(uri, dataSource, extractors, minLoadableRetryCount, eventDispatcher, listener, allocator,
+        customCacheKey, continueLoadingCheckIntervalBytes, loaderExecutor, loadPriority, null,
+        null);
+  }
+
+  /**
+   * @param uri The {@link Uri} of the media stream.
+   * @param dataSource The data source to read the media.
+   * @param extractors The extractors to use to read the data source.
+   * @param minLoadableRetryCount The minimum number of times to retry if a loading error occurs.
+   * @param eventDispatcher A dispatcher to notify of events.
+   * @param listener A listener to notify when information about the period changes.
+   * @param allocator An {@link Allocator} from which to obtain media buffer allocations.
+   * @param customCacheKey A custom key that uniquely identifies the original stream. Used for cache
+   *     indexing. May be null.
+   * @param continueLoadingCheckIntervalBytes The number of bytes that should be loaded between each
+   *     invocation of {@link Callback#onContinueLoadingRequested(SequenceableLoader)}.
+   * @param loaderExecutor A shared {@link LoaderExecutor} on which to load, or null if the period
+   *     should load on its own thread.
+   * @param loadPriority The priority of the period's loads on {@code loaderExecutor}.
+   * @param seekIndexCache A cache in which the seek index of the stream is persisted, or null. Only
+   *     used for extractors that implement {@link SeekIndexCache.Client}, and for streams of known
+   *     length.
+   * @param seekIndexScanDataSourceFactory A factory for the data source from which the stream is
+   *     scanned for its seek index, separately from the loading of samples, or null if the stream
+   *     shouldn't be scanned. Only used for extractors that implement
+   *     {@link SeekIndexScanner.Provider}, and only if they return a scanner for the stream. The
+   *     scan reads the stream a second time, so it's deferred until the first
+   *     {@code continueLoadingCheckIntervalBytes} of samples have been loaded, and runs on
+   *     {@code loaderExecutor} with priority {@link C#PRIORITY_DOWNLOAD} if there is one.
+   */
+  public ExtractorMediaPeriod(
+      Uri uri,
+      DataSource dataSource,
+      Extractor[] extractors,
+      int minLoadableRetryCount,
+      EventDispatcher eventDispatcher,
+      Listener listener,
+      Allocator allocator,
+      @Nullable String customCacheKey,
+      int continueLoadingCheckIntervalBytes,
+      @Nullable LoaderExecutor loaderExecutor,
+      int loadPriority,
+      @Nullable SeekIndexCache seekIndexCache,
+      @Nullable DataSource.Factory seekIndexScanDataSourceFactory) {
     this.uri = uri;
     this.dataSource = dataSource;
     this.minLoadableRetryCount = minLoadableRetryCount;
@@ -148,7 +245,12 @@ import java.util.Arrays;
     this.allocator = allocator;
     this.customCacheKey = customCacheKey;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
-    loader = new Loader("Loader:ExtractorMediaPeriod");
+    this.seekIndexCache = seekIndexCache;
+    this.seekIndexScanDataSourceFactory = seekIndexScanDataSourceFactory;
+    this.loaderExecutor = loaderExecutor;
+    this.loadPriority = loadPriority;
+    loader = loaderExecutor != null ? new Loader(loaderExecutor, loadPriority)
+        : new Loader("Loader:ExtractorMediaPeriod");
     extractorHolder = new ExtractorHolder(extractors, this);
     loadCondition = new ConditionVariable();
     maybeFinishPrepareRunnable = new Runnable() {
@@ -161,6 +263,8 @@ import java.util.Arrays;
       @Override
       public void run() {
         if (!released) {
+          // Enough samples have been loaded for the scan not to hold up the start of playback.
+          maybeStartSeekIndexScan();
           callback.onContinueLoadingRequested(ExtractorMediaPeriod.this);
         }
       }
@@ -187,6 +291,9 @@ import java.util.Arrays;
       }
     }
     loader.release(this);
+    if (seekIndexScanLoader != null) {
+      seekIndexScanLoader.release();
+    }
     handler.removeCallbacksAndMessages(null);
     released = true;
   }
@@ -211,6 +318,17 @@ import java.util.Arrays;
     maybeThrowError();
   }
 
+  @Override
+  public int getLoadPriority() {
+    return loadPriority;
+  }
+
+  @Override
+  public void setLoadPriority(int priority) {
+    loadPriority = priority;
+    loader.setPriority(priority);
+  }
+
   @Override
   public TrackGroupArray getTrackGroups() {
     return tracks;
@@ -480,6 +598,8 @@ import java.util.Arrays;
           : largestQueuedTimestampUs + DEFAULT_LAST_SAMPLE_DURATION_US;
       listener.onSourceInfoRefreshed(durationUs, seekMap.isSeekable());
     }
+    // Streams shorter than the continue loading check interval are scanned once they're loaded.
+    maybeStartSeekIndexScan();
     eventDispatcher.loadCompleted(
         loadable.dataSpec,
         C.DATA_TYPE_MEDIA,
@@ -581,6 +701,21 @@ import java.util.Arrays;
   public void seekMap(SeekMap seekMap) {
     this.seekMap = seekMap;
     handler.post(maybeFinishPrepareRunnable);
+    if (seekIndexScanDataSourceFactory != null
+        && extractorHolder.extractor instanceof SeekIndexScanner.Provider) {
+      final SeekIndexScanner scanner =
+          ((SeekIndexScanner.Provider) extractorHolder.extractor).getSeekIndexScanner();
+      if (scanner != null) {
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            if (seekIndexScanLoader == null) {
+              pendingSeekIndexScanner = scanner;
+            }
+          }
+        });
+      }
+    }
   }
 
   // UpstreamFormatChangedListener implementation. Called by the loading thread.
@@ -592,6 +727,47 @@ import java.util.Arrays;
 
   // Internal methods.
 
+  /**
+   * Sets the entry of {@link #seekIndexCache} for the stream on {@code extractor}, if it's a
+   * {@link SeekIndexCache.Client}. The entry is keyed by the content version of the stream if
+   * {@code dataSource} provides one, so that an entry isn't used if the stream is replaced by one
+   * of the same length. Called by the loading thread.
+   */
+  private void maybeSetSeekIndexCacheEntry(Extractor extractor, DataSource dataSource,
+      long length) {
+    if (seekIndexCacheEntrySet) {
+      return;
+    }
+    seekIndexCacheEntrySet = true;
+    if (seekIndexCache == null || length == C.LENGTH_UNSET
+        || !(extractor instanceof SeekIndexCache.Client)) {
+      return;
+    }
+    String contentVersion = getResponseHeader(dataSource, "ETag");
+    if (contentVersion == null) {
+      contentVersion = getResponseHeader(dataSource, "Last-Modified");
+    }
+    ((SeekIndexCache.Client) extractor).setSeekIndexCacheEntry(seekIndexCache.getEntry(
+        customCacheKey != null ? customCacheKey : uri.toString(), length, contentVersion));
+  }
+
+  /**
+   * Starts scanning the stream for its seek index if a scan is pending, on a loader of its own so
+   * that the scan doesn't hold up the loading of samples.
+   */
+  private void maybeStartSeekIndexScan() {
+    if (released || pendingSeekIndexScanner == null) {
+      return;
+    }
+    SeekIndexScanner scanner = pendingSeekIndexScanner;
+    pendingSeekIndexScanner = null;
+    seekIndexScanLoader = loaderExecutor != null
+        ? new Loader(loaderExecutor, C.PRIORITY_DOWNLOAD) : new Loader("Loader:SeekIndexScan");
+    seekIndexScanLoader.startLoading(
+        new SeekIndexScanLoadable(scanner, seekIndexScanDataSourceFactory.createDataSource()),
+        new SeekIndexScanCallback(), actualMinLoadableRetryCount);
+  }
+
   private void maybeFinishPrepare() {
     if (released || prepared || seekMap == null || !sampleQueuesBuilt) {
       return;
@@ -753,6 +929,39 @@ import java.util.Arrays;
     return e instanceof UnrecognizedInputFormatException;
   }
 
+  /**
+   * Returns the MIME type from the Content-Type response header of an open data source, or null if
+   * the header isn't available. See {@link #getResponseHeader(DataSource, String)}.
+   */
+  private static @Nullable String getMimeType(DataSource dataSource) {
+    return getResponseHeader(dataSource, "Content-Type");
+  }
+
+  /**
+   * Returns the first value of a response header of an open {@link HttpDataSource}, or of the
+   * {@link HttpDataSource} from which an open {@link DefaultDataSource} is reading. Returns null if
+   * there's no such {@link HttpDataSource} or the header isn't present.
+   */
+  private static @Nullable String getResponseHeader(DataSource dataSource, String name) {
+    Map<String, List<String>> headers;
+    if (dataSource instanceof HttpDataSource) {
+      headers = ((HttpDataSource) dataSource).getResponseHeaders();
+    } else if (dataSource instanceof DefaultDataSource) {
+      headers = ((DefaultDataSource) dataSource).getResponseHeaders();
+    } else {
+      return null;
+    }
+    if (headers == null) {
+      return null;
+    }
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+        return header.getValue().get(0);
+      }
+    }
+    return null;
+  }
+
   private final class SampleStreamImpl implements SampleStream {
 
     private final int track;
@@ -843,7 +1052,9 @@ import java.util.Arrays;
             length += position;
           }
           input = new DefaultExtractorInput(dataSource, position, length);
-          Extractor extractor = extractorHolder.selectExtractor(input, dataSource.getUri());
+          Extractor extractor =
+              extractorHolder.selectExtractor(input, dataSource.getUri(), getMimeType(dataSource));
+          maybeSetSeekIndexCacheEntry(extractor, dataSource, length);
           if (pendingExtractorSeek) {
             extractor.seek(position, seekTimeUs);
             pendingExtractorSeek = false;
@@ -853,6 +1064,8 @@ import java.util.Arrays;
             result = extractor.read(input, positionHolder);
             if (input.getPosition() > position + continueLoadingCheckIntervalBytes) {
               position = input.getPosition();
+              // Make the samples extracted so far available while loading is paused.
+              extractorHolder.flushSampleBatches();
               loadCondition.close();
               handler.post(onContinueLoadingRequestedRunnable);
             }
@@ -861,6 +1074,7 @@ import java.util.Arrays;
           if (result == Extractor.RESULT_SEEK) {
             result = Extractor.RESULT_CONTINUE;
           } else if (input != null) {
+            extractorHolder.flushSampleBatches();
             positionHolder.position = input.getPosition();
             bytesLoaded = positionHolder.position - dataSpec.absoluteStreamPosition;
           }
@@ -871,6 +1085,80 @@ import java.util.Arrays;
 
   }
 
+  /**
+   * Scans the media stream for its seek index.
+   */
+  private final class SeekIndexScanLoadable implements Loadable {
+
+    private final SeekIndexScanner scanner;
+    private final DataSource dataSource;
+
+    private volatile boolean loadCanceled;
+
+    public SeekIndexScanLoadable(SeekIndexScanner scanner, DataSource dataSource) {
+      this.scanner = scanner;
+      this.dataSource = dataSource;
+    }
+
+    @Override
+    public void cancelLoad() {
+      loadCanceled = true;
+    }
+
+    @Override
+    public boolean isLoadCanceled() {
+      return loadCanceled;
+    }
+
+    @Override
+    public void load() throws IOException, InterruptedException {
+      long position = scanner.getStartPosition();
+      try {
+        long length = dataSource.open(
+            new DataSpec(uri, position, C.LENGTH_UNSET, customCacheKey));
+        if (length != C.LENGTH_UNSET) {
+          length += position;
+        }
+        scanner.scan(new DefaultExtractorInput(dataSource, position, length));
+      } finally {
+        Util.closeQuietly(dataSource);
+      }
+    }
+
+  }
+
+  /**
+   * Handles the end of a {@link SeekIndexScanLoadable}. Errors are retried, but aren't propagated,
+   * as seeking still works, less accurately, without a complete seek index.
+   */
+  private final class SeekIndexScanCallback implements Loader.Callback<SeekIndexScanLoadable> {
+
+    @Override
+    public void onLoadCompleted(SeekIndexScanLoadable loadable, long elapsedRealtimeMs,
+        long loadDurationMs) {
+      if (prepared && seekMap.getDurationUs() != C.TIME_UNSET
+          && seekMap.getDurationUs() != durationUs) {
+        // The seek index is complete, so the duration is now exact.
+        durationUs = seekMap.getDurationUs();
+        listener.onSourceInfoRefreshed(durationUs, seekMap.isSeekable());
+      }
+    }
+
+    @Override
+    public void onLoadCanceled(SeekIndexScanLoadable loadable, long elapsedRealtimeMs,
+        long loadDurationMs, boolean released) {
+      // Do nothing.
+    }
+
+    @Override
+    public int onLoadError(SeekIndexScanLoadable loadable, long elapsedRealtimeMs,
+        long loadDurationMs, IOException error) {
+      return ++seekIndexScanErrorCount <= actualMinLoadableRetryCount ? Loader.RETRY
+          : Loader.DONT_RETRY;
+    }
+
+  }
+
   /**
    * Stores a list of extractors and a selected extractor when the format has been detected.
    */
@@ -897,16 +1185,18 @@ import java.util.Arrays;
      *
      * @param input The {@link ExtractorInput} from which data should be read.
      * @param uri The {@link Uri} of the data.
+     * @param mimeType The MIME type of the data, or null if unknown.
      * @return An initialized extractor for reading {@code input}.
      * @throws UnrecognizedInputFormatException Thrown if the input format could not be detected.
      * @throws IOException Thrown if the input could not be read.
      * @throws InterruptedException Thrown if the thread was interrupted.
      */
-    public Extractor selectExtractor(ExtractorInput input, Uri uri)
+    public Extractor selectExtractor(ExtractorInput input, Uri uri, @Nullable String mimeType)
         throws IOException, InterruptedException {
       if (extractor != null) {
         return extractor;
       }
+      ExtractorSniffingOrder.sort(extractors, input, uri, mimeType);
       for (Extractor extractor : extractors) {
         try {
           if (extractor.sniff(input)) {
@@ -927,6 +1217,15 @@ import java.util.Arrays;
       return extractor;
     }
 
+    /**
+     * Passes any samples buffered by the selected extractor to the output, if it buffers samples.
+     */
+    public void flushSampleBatches() {
+      if (extractor instanceof BatchingTrackOutput.Client) {
+        ((BatchingTrackOutput.Client) extractor).flushSampleBatches();
+      }
+    }
+
     public void release() {
       if (extractor != null) {
         extractor.release();
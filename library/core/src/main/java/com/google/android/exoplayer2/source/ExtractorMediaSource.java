@@ -25,11 +25,13 @@ import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorsFactory;
+import com.google.android.exoplayer2.extractor.SeekIndexCache;
 import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
 import com.google.android.exoplayer2.source.ads.AdsMediaSource;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.LoaderExecutor;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
 
@@ -99,6 +101,9 @@ public final class ExtractorMediaSource implements MediaSource, ExtractorMediaPe
   private final EventDispatcher eventDispatcher;
   private final String customCacheKey;
   private final int continueLoadingCheckIntervalBytes;
+  @Nullable private final LoaderExecutor loaderExecutor;
+  private final int loadPriority;
+  @Nullable private final SeekIndexCache seekIndexCache;
 
   private MediaSource.Listener sourceListener;
   private long timelineDurationUs;
@@ -113,6 +118,9 @@ public final class ExtractorMediaSource implements MediaSource, ExtractorMediaPe
     private @Nullable String customCacheKey;
     private int minLoadableRetryCount;
     private int continueLoadingCheckIntervalBytes;
+    private @Nullable LoaderExecutor loaderExecutor;
+    private int loadPriority;
+    private @Nullable SeekIndexCache seekIndexCache;
     private boolean isCreateCalled;
 
     /**
@@ -124,6 +132,7 @@ public final class ExtractorMediaSource implements MediaSource, ExtractorMediaPe
       this.dataSourceFactory = dataSourceFactory;
       minLoadableRetryCount = MIN_RETRY_COUNT_DEFAULT_FOR_MEDIA;
       continueLoadingCheckIntervalBytes = DEFAULT_LOADING_CHECK_INTERVAL_BYTES;
+      loadPriority = C.PRIORITY_PLAYBACK;
     }
 
     /**
@@ -188,6 +197,41 @@ public final class ExtractorMediaSource implements MediaSource, ExtractorMediaPe
       return this;
     }
 
+    /**
+     * Sets a shared {@link LoaderExecutor} on which the created media sources load, instead of
+     * using a dedicated thread for each media period. The default value is {@code null}.
+     *
+     * @param loaderExecutor The shared {@link LoaderExecutor}.
+     * @param loadPriority The priority of the loads on {@code loaderExecutor}. Larger values
+     *     indicate higher priorities. Use {@link C#PRIORITY_PLAYBACK} for media that is required
+     *     for playback, and lower values for prefetching.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setLoaderExecutor(LoaderExecutor loaderExecutor, int loadPriority) {
+      Assertions.checkState(!isCreateCalled);
+      this.loaderExecutor = loaderExecutor;
+      this.loadPriority = loadPriority;
+      return this;
+    }
+
+    /**
+     * Sets a {@link SeekIndexCache} in which the seek indices of the created media sources are
+     * persisted, so that they don't need to be read from the stream when it's played again. Only
+     * used by extractors that implement {@link SeekIndexCache.Client}. Streams are identified by
+     * their custom cache key if set, or their {@link Uri} otherwise, by their length, and by their
+     * HTTP entity tag or last modification date if available. The default value is {@code null}.
+     *
+     * @param seekIndexCache The {@link SeekIndexCache}.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setSeekIndexCache(SeekIndexCache seekIndexCache) {
+      Assertions.checkState(!isCreateCalled);
+      this.seekIndexCache = seekIndexCache;
+      return this;
+    }
+
     /**
      * Returns a new {@link ExtractorMediaSource} using the current parameters. Media source events
      * will not be delivered.
@@ -216,7 +260,7 @@ public final class ExtractorMediaSource implements MediaSource, ExtractorMediaPe
       }
       return new ExtractorMediaSource(uri, dataSourceFactory, extractorsFactory,
           minLoadableRetryCount, eventHandler, eventListener, customCacheKey,
-          continueLoadingCheckIntervalBytes);
+          continueLoadingCheckIntervalBytes, loaderExecutor, loadPriority, seekIndexCache);
     }
 
     @Override
@@ -302,7 +346,10 @@ public final class ExtractorMediaSource implements MediaSource, ExtractorMediaPe
         eventHandler,
         eventListener == null ? null : new EventListenerWrapper(eventListener),
         customCacheKey,
-        continueLoadingCheckIntervalBytes);
+        continueLoadingCheckIntervalBytes,
+        null,
+        C.PRIORITY_PLAYBACK,
+        null);
   }
 
   private ExtractorMediaSource(
@@ -313,7 +360,10 @@ public final class ExtractorMediaSource implements MediaSource, ExtractorMediaPe
       @Nullable Handler eventHandler,
       @Nullable MediaSourceEventListener eventListener,
       @Nullable String customCacheKey,
-      int continueLoadingCheckIntervalBytes) {
+      int continueLoadingCheckIntervalBytes,
+      @Nullable LoaderExecutor loaderExecutor,
+      int loadPriority,
+      @Nullable SeekIndexCache seekIndexCache) {
     this.uri = uri;
     this.dataSourceFactory = dataSourceFactory;
     this.extractorsFactory = extractorsFactory;
@@ -321,6 +371,9 @@ public final class ExtractorMediaSource implements MediaSource, ExtractorMediaPe
     this.eventDispatcher = new EventDispatcher(eventHandler, eventListener);
     this.customCacheKey = customCacheKey;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
+    this.loaderExecutor = loaderExecutor;
+    this.loadPriority = loadPriority;
+    this.seekIndexCache = seekIndexCache;
   }
 
   @Override
@@ -346,7 +399,11 @@ public final class ExtractorMediaSource implements MediaSource, ExtractorMediaPe
         this,
         allocator,
         customCacheKey,
-        continueLoadingCheckIntervalBytes);
+        continueLoadingCheckIntervalBytes,
+        loaderExecutor,
+        loadPriority,
+        seekIndexCache,
+        dataSourceFactory);
   }
 
   @Override
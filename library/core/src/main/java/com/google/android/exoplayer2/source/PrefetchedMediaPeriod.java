@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.CountingAllocator;
+import java.io.IOException;
+
+/**
+ * Media period that is created and prepared before the player asks for it, so that preparation
+ * (e.g. loading initialization data) overlaps with the playback of earlier media. The period does
+ * not load beyond what is needed for preparation until the player adopts it by calling
+ * {@link #prepare(Callback, long)} and starts loading it.
+ * <p>
+ * Until it's adopted, the period allocates through its own {@link CountingAllocator}, and loads at
+ * {@link #PREFETCH_LOAD_PRIORITY} if it's a {@link PrioritizableMediaPeriod}. On adoption its
+ * allocations are attributed to the adopting allocator, and its original load priority restored.
+ */
+/* package */ final class PrefetchedMediaPeriod implements MediaPeriod, MediaPeriod.Callback {
+
+  /**
+   * The load priority of periods that are prefetched but not yet adopted. Lower than
+   * {@link C#PRIORITY_PLAYBACK}, so that prefetching doesn't delay loads for playback.
+   */
+  public static final int PREFETCH_LOAD_PRIORITY = C.PRIORITY_PLAYBACK - 1;
+
+  public final MediaSource mediaSource;
+  public final MediaPeriodId id;
+
+  private final CountingAllocator prefetchAllocator;
+  private final MediaPeriod mediaPeriod;
+  private final int originalLoadPriority;
+
+  private Callback callback;
+  private boolean prepared;
+  private boolean pendingContinueLoadingRequest;
+
+  /**
+   * Creates the period and starts preparing it.
+   *
+   * @param mediaSource The media source that creates the period.
+   * @param id The identifier of the period in {@code mediaSource}.
+   * @param allocator The allocator of the period whose creation triggered prefetching. Allocations
+   *     are obtained from the same underlying allocator, but aren't counted by {@code allocator}.
+   * @param preparePositionUs The expected position at which playback of the period starts.
+   */
+  public PrefetchedMediaPeriod(MediaSource mediaSource, MediaPeriodId id, Allocator allocator,
+      long preparePositionUs) {
+    this.mediaSource = mediaSource;
+    this.id = id;
+    prefetchAllocator = new CountingAllocator(allocator instanceof CountingAllocator
+        ? ((CountingAllocator) allocator).getUpstreamAllocator() : allocator);
+    mediaPeriod = mediaSource.createPeriod(id, prefetchAllocator);
+    if (mediaPeriod instanceof PrioritizableMediaPeriod) {
+      PrioritizableMediaPeriod prioritizableMediaPeriod = (PrioritizableMediaPeriod) mediaPeriod;
+      originalLoadPriority = prioritizableMediaPeriod.getLoadPriority();
+      prioritizableMediaPeriod.setLoadPriority(
+          Math.min(originalLoadPriority, PREFETCH_LOAD_PRIORITY));
+    } else {
+      originalLoadPriority = C.PRIORITY_PLAYBACK;
+    }
+    mediaPeriod.prepare(this, preparePositionUs);
+  }
+
+  /**
+   * Returns whether the period can be used in place of a period with the given identifier.
+   *
+   * @param id The identifier of the requested period in {@link #mediaSource}.
+   */
+  public boolean matches(MediaPeriodId id) {
+    return !id.isAd() && id.periodIndex == this.id.periodIndex;
+  }
+
+  /**
+   * Hands the period over to the player, which will use it in place of a newly created period.
+   * Must be called at most once, before {@link #prepare(Callback, long)}.
+   *
+   * @param allocator The allocator with which the player requested the period. If it's a
+   *     {@link CountingAllocator}, the bytes allocated by the period are counted by it from now on.
+   */
+  public void adopt(Allocator allocator) {
+    if (allocator instanceof CountingAllocator) {
+      prefetchAllocator.attachTo((CountingAllocator) allocator);
+    }
+    if (mediaPeriod instanceof PrioritizableMediaPeriod) {
+      ((PrioritizableMediaPeriod) mediaPeriod).setLoadPriority(originalLoadPriority);
+    }
+  }
+
+  /**
+   * Releases the period.
+   */
+  public void releasePeriod() {
+    mediaSource.releasePeriod(mediaPeriod);
+  }
+
+  @Override
+  public void prepare(Callback callback, long preparePositionUs) {
+    this.callback = callback;
+    if (prepared) {
+      callback.onPrepared(this);
+    }
+    if (pendingContinueLoadingRequest) {
+      // The wrapped period may be blocked until loading is continued, so the request can't be lost.
+      pendingContinueLoadingRequest = false;
+      callback.onContinueLoadingRequested(this);
+    }
+  }
+
+  @Override
+  public void maybeThrowPrepareError() throws IOException {
+    mediaPeriod.maybeThrowPrepareError();
+  }
+
+  @Override
+  public TrackGroupArray getTrackGroups() {
+    return mediaPeriod.getTrackGroups();
+  }
+
+  @Override
+  public long selectTracks(TrackSelection[] selections, boolean[] mayRetainStreamFlags,
+      SampleStream[] streams, boolean[] streamResetFlags, long positionUs) {
+    return mediaPeriod.selectTracks(selections, mayRetainStreamFlags, streams, streamResetFlags,
+        positionUs);
+  }
+
+  @Override
+  public void discardBuffer(long positionUs, boolean toKeyframe) {
+    mediaPeriod.discardBuffer(positionUs, toKeyframe);
+  }
+
+  @Override
+  public long readDiscontinuity() {
+    return mediaPeriod.readDiscontinuity();
+  }
+
+  @Override
+  public long getBufferedPositionUs() {
+    return mediaPeriod.getBufferedPositionUs();
+  }
+
+  @Override
+  public long seekToUs(long positionUs) {
+    return mediaPeriod.seekToUs(positionUs);
+  }
+
+  @Override
+  public long getAdjustedSeekPositionUs(long positionUs, SeekParameters seekParameters) {
+    return mediaPeriod.getAdjustedSeekPositionUs(positionUs, seekParameters);
+  }
+
+  @Override
+  public long getNextLoadPositionUs() {
+    return mediaPeriod.getNextLoadPositionUs();
+  }
+
+  @Override
+  public void reevaluateBuffer(long positionUs) {
+    mediaPeriod.reevaluateBuffer(positionUs);
+  }
+
+  @Override
+  public boolean continueLoading(long positionUs) {
+    return mediaPeriod.continueLoading(positionUs);
+  }
+
+  @Override
+  public void onContinueLoadingRequested(MediaPeriod source) {
+    // Requests are held back until the player has adopted the period, which stops further loading
+    // while the period is only prefetched.
+    if (callback != null) {
+      callback.onContinueLoadingRequested(this);
+    } else {
+      pendingContinueLoadingRequest = true;
+    }
+  }
+
+  // MediaPeriod.Callback implementation
+
+  @Override
+  public void onPrepared(MediaPeriod mediaPeriod) {
+    prepared = true;
+    if (callback != null) {
+      callback.onPrepared(this);
+    }
+  }
+
+}
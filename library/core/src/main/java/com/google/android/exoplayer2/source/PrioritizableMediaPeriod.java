@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import com.google.android.exoplayer2.upstream.LoaderExecutor;
+
+/**
+ * A {@link MediaPeriod} whose loads may run on a shared {@link LoaderExecutor}, and whose priority
+ * relative to other loads on that executor can be changed.
+ */
+public interface PrioritizableMediaPeriod extends MediaPeriod {
+
+  /**
+   * Returns the current priority of the period's loads.
+   */
+  int getLoadPriority();
+
+  /**
+   * Sets the priority of the period's subsequent loads. Has no effect if the period doesn't load on
+   * a shared {@link LoaderExecutor}.
+   *
+   * @param priority The priority of the period's loads. Larger values indicate higher priorities.
+   */
+  void setLoadPriority(int priority);
+
+}
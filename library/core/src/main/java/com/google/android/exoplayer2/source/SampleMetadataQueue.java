@@ -22,6 +22,8 @@ import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
 import com.google.android.exoplayer2.extractor.TrackOutput.CryptoData;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A queue of metadata describing the contents of a media buffer.
@@ -39,8 +41,10 @@ import com.google.android.exoplayer2.util.Util;
 
   }
 
-  private static final int SAMPLE_CAPACITY_INCREMENT = 1000;
+  private static final int INITIAL_SAMPLE_CAPACITY = 1000;
+  private static final int INITIAL_KEYFRAME_CAPACITY = 64;
 
+  private SampleArrays sampleArrays;
   private int capacity;
   private int[] sourceIds;
   private long[] offsets;
@@ -55,6 +59,11 @@ import com.google.android.exoplayer2.util.Util;
   private int relativeFirstIndex;
   private int readPosition;
 
+  // The absolute indices of the queued keyframes, in a circular buffer.
+  private int[] keyframeIndices;
+  private int keyframeFirstIndex;
+  private int keyframeCount;
+
   private long largestDiscardedTimestampUs;
   private long largestQueuedTimestampUs;
   private boolean upstreamKeyframeRequired;
@@ -63,14 +72,8 @@ import com.google.android.exoplayer2.util.Util;
   private int upstreamSourceId;
 
   public SampleMetadataQueue() {
-    capacity = SAMPLE_CAPACITY_INCREMENT;
-    sourceIds = new int[capacity];
-    offsets = new long[capacity];
-    timesUs = new long[capacity];
-    flags = new int[capacity];
-    sizes = new int[capacity];
-    cryptoDatas = new CryptoData[capacity];
-    formats = new Format[capacity];
+    setSampleArrays(SampleArrays.obtain(INITIAL_SAMPLE_CAPACITY));
+    keyframeIndices = new int[INITIAL_KEYFRAME_CAPACITY];
     largestDiscardedTimestampUs = Long.MIN_VALUE;
     largestQueuedTimestampUs = Long.MIN_VALUE;
     upstreamFormatRequired = true;
@@ -90,6 +93,8 @@ import com.google.android.exoplayer2.util.Util;
     absoluteFirstIndex = 0;
     relativeFirstIndex = 0;
     readPosition = 0;
+    keyframeFirstIndex = 0;
+    keyframeCount = 0;
     upstreamKeyframeRequired = true;
     largestDiscardedTimestampUs = Long.MIN_VALUE;
     largestQueuedTimestampUs = Long.MIN_VALUE;
@@ -97,6 +102,7 @@ import com.google.android.exoplayer2.util.Util;
       upstreamFormat = null;
       upstreamFormatRequired = true;
     }
+    maybeShrinkCapacity();
   }
 
   /**
@@ -117,13 +123,19 @@ import com.google.android.exoplayer2.util.Util;
     int discardCount = getWriteIndex() - discardFromIndex;
     Assertions.checkArgument(0 <= discardCount && discardCount <= (length - readPosition));
     length -= discardCount;
+    while (keyframeCount > 0 && getKeyframeIndex(keyframeCount - 1) >= discardFromIndex) {
+      keyframeCount--;
+    }
     largestQueuedTimestampUs = Math.max(largestDiscardedTimestampUs, getLargestTimestamp(length));
+    long totalBytesWritten;
     if (length == 0) {
-      return 0;
+      totalBytesWritten = 0;
     } else {
       int relativeLastWriteIndex = getRelativeIndex(length - 1);
-      return offsets[relativeLastWriteIndex] + sizes[relativeLastWriteIndex];
+      totalBytesWritten = offsets[relativeLastWriteIndex] + sizes[relativeLastWriteIndex];
     }
+    maybeShrinkCapacity();
+    return totalBytesWritten;
   }
 
   public void sourceId(int sourceId) {
@@ -277,7 +289,7 @@ import com.google.android.exoplayer2.util.Util;
         || (timeUs > largestQueuedTimestampUs && !allowTimeBeyondBuffer)) {
       return SampleQueue.ADVANCE_FAILED;
     }
-    int offset = findSampleBefore(relativeReadIndex, length - readPosition, timeUs, toKeyframe);
+    int offset = findSampleBefore(readPosition, length - readPosition, timeUs, toKeyframe);
     if (offset == -1) {
       return SampleQueue.ADVANCE_FAILED;
     }
@@ -329,7 +341,7 @@ import com.google.android.exoplayer2.util.Util;
       return C.POSITION_UNSET;
     }
     int searchLength = stopAtReadPosition && readPosition != length ? readPosition + 1 : length;
-    int discardCount = findSampleBefore(relativeFirstIndex, searchLength, timeUs, toKeyframe);
+    int discardCount = findSampleBefore(0, searchLength, timeUs, toKeyframe);
     if (discardCount == -1) {
       return C.POSITION_UNSET;
     }
@@ -381,6 +393,39 @@ import com.google.android.exoplayer2.util.Util;
 
   public synchronized void commitSample(long timeUs, @C.BufferFlags int sampleFlags, long offset,
       int size, CryptoData cryptoData) {
+    commitSampleInternal(timeUs, sampleFlags, offset, size, cryptoData);
+  }
+
+  /**
+   * Commits a batch of samples, equivalent to calling
+   * {@link #commitSample(long, int, long, int, CryptoData)} for each of them in turn.
+   *
+   * @param fromIndex The index of the first sample to commit in the arrays.
+   * @param toIndex The index after the last sample to commit in the arrays.
+   * @param timesUs The sample timestamps, to which {@code timeOffsetUs} is added.
+   * @param timeOffsetUs The offset to add to the sample timestamps.
+   * @param sampleFlags The sample flags.
+   * @param sizes The sample sizes.
+   * @param offsets For each sample, the number of bytes written after the end of the sample.
+   * @param totalBytesWritten The total number of bytes written, from which the absolute sample
+   *     offsets are derived.
+   * @param cryptoDatas The sample encryption data. Elements may be null.
+   */
+  public synchronized void commitSamples(int fromIndex, int toIndex, long[] timesUs,
+      long timeOffsetUs, int[] sampleFlags, int[] sizes, int[] offsets, long totalBytesWritten,
+      CryptoData[] cryptoDatas) {
+    for (int i = fromIndex; i < toIndex; i++) {
+      commitSampleInternal(timesUs[i] + timeOffsetUs, sampleFlags[i],
+          totalBytesWritten - sizes[i] - offsets[i], sizes[i], cryptoDatas[i]);
+    }
+  }
+
+  public synchronized void commitSampleTimestamp(long timeUs) {
+    largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timeUs);
+  }
+
+  private void commitSampleInternal(long timeUs, @C.BufferFlags int sampleFlags, long offset,
+      int size, CryptoData cryptoData) {
     if (upstreamKeyframeRequired) {
       if ((sampleFlags & C.BUFFER_FLAG_KEY_FRAME) == 0) {
         return;
@@ -388,7 +433,7 @@ import com.google.android.exoplayer2.util.Util;
       upstreamKeyframeRequired = false;
     }
     Assertions.checkState(!upstreamFormatRequired);
-    commitSampleTimestamp(timeUs);
+    largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timeUs);
 
     int relativeEndIndex = getRelativeIndex(length);
     timesUs[relativeEndIndex] = timeUs;
@@ -398,51 +443,18 @@ import com.google.android.exoplayer2.util.Util;
     cryptoDatas[relativeEndIndex] = cryptoData;
     formats[relativeEndIndex] = upstreamFormat;
     sourceIds[relativeEndIndex] = upstreamSourceId;
+    if ((sampleFlags & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+      addKeyframeIndex(absoluteFirstIndex + length);
+    }
 
     length++;
     if (length == capacity) {
-      // Increase the capacity.
-      int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
-      int[] newSourceIds = new int[newCapacity];
-      long[] newOffsets = new long[newCapacity];
-      long[] newTimesUs = new long[newCapacity];
-      int[] newFlags = new int[newCapacity];
-      int[] newSizes = new int[newCapacity];
-      CryptoData[] newCryptoDatas = new CryptoData[newCapacity];
-      Format[] newFormats = new Format[newCapacity];
-      int beforeWrap = capacity - relativeFirstIndex;
-      System.arraycopy(offsets, relativeFirstIndex, newOffsets, 0, beforeWrap);
-      System.arraycopy(timesUs, relativeFirstIndex, newTimesUs, 0, beforeWrap);
-      System.arraycopy(flags, relativeFirstIndex, newFlags, 0, beforeWrap);
-      System.arraycopy(sizes, relativeFirstIndex, newSizes, 0, beforeWrap);
-      System.arraycopy(cryptoDatas, relativeFirstIndex, newCryptoDatas, 0, beforeWrap);
-      System.arraycopy(formats, relativeFirstIndex, newFormats, 0, beforeWrap);
-      System.arraycopy(sourceIds, relativeFirstIndex, newSourceIds, 0, beforeWrap);
-      int afterWrap = relativeFirstIndex;
-      System.arraycopy(offsets, 0, newOffsets, beforeWrap, afterWrap);
-      System.arraycopy(timesUs, 0, newTimesUs, beforeWrap, afterWrap);
-      System.arraycopy(flags, 0, newFlags, beforeWrap, afterWrap);
-      System.arraycopy(sizes, 0, newSizes, beforeWrap, afterWrap);
-      System.arraycopy(cryptoDatas, 0, newCryptoDatas, beforeWrap, afterWrap);
-      System.arraycopy(formats, 0, newFormats, beforeWrap, afterWrap);
-      System.arraycopy(sourceIds, 0, newSourceIds, beforeWrap, afterWrap);
-      offsets = newOffsets;
-      timesUs = newTimesUs;
-      flags = newFlags;
-      sizes = newSizes;
-      cryptoDatas = newCryptoDatas;
-      formats = newFormats;
-      sourceIds = newSourceIds;
-      relativeFirstIndex = 0;
-      length = capacity;
-      capacity = newCapacity;
+      // Increase the capacity geometrically, so that the total cost of copying is linear in the
+      // number of samples queued.
+      setCapacity(capacity * 2);
     }
   }
 
-  public synchronized void commitSampleTimestamp(long timeUs) {
-    largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timeUs);
-  }
-
   /**
    * Attempts to discard samples from the end of the queue to allow samples starting from the
    * specified timestamp to be spliced in. Samples will not be discarded prior to the read position.
@@ -477,25 +489,32 @@ import com.google.android.exoplayer2.util.Util;
   /**
    * Finds the sample in the specified range that's before or at the specified time. If
    * {@code keyframe} is {@code true} then the sample is additionally required to be a keyframe.
+   * <p>
+   * The search stops at the first sample in the range whose timestamp is after the specified time.
+   * As in {@link #getLargestTimestamp(int)}, timestamps prior to a keyframe are assumed to be less
+   * than the timestamp of the keyframe itself, and of subsequent samples. The last keyframe before
+   * or at the specified time can then be found by binary searching the keyframes, and only the
+   * samples that follow it need to be scanned.
    *
-   * @param relativeStartIndex The relative index from which to start searching.
+   * @param startOffset The offset from {@code relativeFirstIndex} from which to start searching.
    * @param length The length of the range being searched.
    * @param timeUs The specified time.
    * @param keyframe Whether only keyframes should be considered.
-   * @return The offset from {@code relativeFirstIndex} to the found sample, or -1 if no matching
-   *     sample was found.
+   * @return The offset from {@code startOffset} to the found sample, or -1 if no matching sample
+   *     was found.
    */
-  private int findSampleBefore(int relativeStartIndex, int length, long timeUs, boolean keyframe) {
-    // This could be optimized to use a binary search, however in practice callers to this method
-    // normally pass times near to the start of the search region. Hence it's unclear whether
-    // switching to a binary search would yield any real benefit.
+  private int findSampleBefore(int startOffset, int length, long timeUs, boolean keyframe) {
+    int endOffset = startOffset + length;
+    int keyframeOffset = findKeyframeBefore(startOffset, endOffset, timeUs);
+    if (keyframe) {
+      return keyframeOffset == -1 ? -1 : keyframeOffset - startOffset;
+    }
     int sampleCountToTarget = -1;
-    int searchIndex = relativeStartIndex;
-    for (int i = 0; i < length && timesUs[searchIndex] <= timeUs; i++) {
-      if (!keyframe || (flags[searchIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-        // We've found a suitable sample.
-        sampleCountToTarget = i;
-      }
+    int searchOffset = keyframeOffset == -1 ? startOffset : keyframeOffset;
+    int searchIndex = getRelativeIndex(searchOffset);
+    for (; searchOffset < endOffset && timesUs[searchIndex] <= timeUs; searchOffset++) {
+      // We've found a suitable sample.
+      sampleCountToTarget = searchOffset - startOffset;
       searchIndex++;
       if (searchIndex == capacity) {
         searchIndex = 0;
@@ -504,6 +523,67 @@ import com.google.android.exoplayer2.util.Util;
     return sampleCountToTarget;
   }
 
+  /**
+   * Returns the offset from {@code relativeFirstIndex} of the last keyframe in the specified range
+   * that's before or at the specified time, or -1 if there is no such keyframe.
+   */
+  private int findKeyframeBefore(int startOffset, int endOffset, long timeUs) {
+    // Find the keyframes in the range. Their absolute indices are increasing.
+    int first = findFirstKeyframeAtOrAfter(absoluteFirstIndex + startOffset);
+    int last = findFirstKeyframeAtOrAfter(absoluteFirstIndex + endOffset) - 1;
+    // Find the last of them before or at the specified time. Their timestamps are increasing.
+    int result = -1;
+    while (first <= last) {
+      int mid = (first + last) >>> 1;
+      int offset = getKeyframeIndex(mid) - absoluteFirstIndex;
+      if (timesUs[getRelativeIndex(offset)] <= timeUs) {
+        result = offset;
+        first = mid + 1;
+      } else {
+        last = mid - 1;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the position in the keyframe buffer of the first keyframe whose absolute index is
+   * greater than or equal to {@code absoluteIndex}, or {@code keyframeCount} if there is none.
+   */
+  private int findFirstKeyframeAtOrAfter(int absoluteIndex) {
+    int low = 0;
+    int high = keyframeCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getKeyframeIndex(mid) < absoluteIndex) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int getKeyframeIndex(int position) {
+    int index = keyframeFirstIndex + position;
+    return keyframeIndices[index < keyframeIndices.length ? index : index - keyframeIndices.length];
+  }
+
+  private void addKeyframeIndex(int absoluteIndex) {
+    if (keyframeCount == keyframeIndices.length) {
+      int[] newKeyframeIndices = new int[keyframeIndices.length * 2];
+      int beforeWrap = keyframeIndices.length - keyframeFirstIndex;
+      System.arraycopy(keyframeIndices, keyframeFirstIndex, newKeyframeIndices, 0, beforeWrap);
+      System.arraycopy(keyframeIndices, 0, newKeyframeIndices, beforeWrap, keyframeFirstIndex);
+      keyframeIndices = newKeyframeIndices;
+      keyframeFirstIndex = 0;
+    }
+    int index = keyframeFirstIndex + keyframeCount;
+    keyframeIndices[index < keyframeIndices.length ? index : index - keyframeIndices.length] =
+        absoluteIndex;
+    keyframeCount++;
+  }
+
   /**
    * Discards the specified number of samples.
    *
@@ -515,6 +595,13 @@ import com.google.android.exoplayer2.util.Util;
         getLargestTimestamp(discardCount));
     length -= discardCount;
     absoluteFirstIndex += discardCount;
+    while (keyframeCount > 0 && getKeyframeIndex(0) < absoluteFirstIndex) {
+      keyframeFirstIndex++;
+      if (keyframeFirstIndex == keyframeIndices.length) {
+        keyframeFirstIndex = 0;
+      }
+      keyframeCount--;
+    }
     relativeFirstIndex += discardCount;
     if (relativeFirstIndex >= capacity) {
       relativeFirstIndex -= capacity;
@@ -558,14 +645,123 @@ import com.google.android.exoplayer2.util.Util;
     return largestTimestampUs;
   }
 
-   /**
-    * Returns the relative index for a given offset from the start of the queue.
+  /**
+   * Halves the capacity while the queue is no more than a quarter full, returning the larger
+   * arrays to the pool. Must not be called when the position of the last discarded sample may
+   * still be needed, since it's not retained.
+   */
+  private void maybeShrinkCapacity() {
+    int newCapacity = capacity;
+    while (newCapacity > INITIAL_SAMPLE_CAPACITY && length <= newCapacity / 4) {
+      newCapacity /= 2;
+    }
+    if (newCapacity != capacity) {
+      setCapacity(newCapacity);
+    }
+  }
+
+  /**
+   * Moves the queued samples into arrays of the specified capacity, which must be larger than the
+   * number of queued samples.
+   */
+  private void setCapacity(int newCapacity) {
+    SampleArrays newSampleArrays = SampleArrays.obtain(newCapacity);
+    int beforeWrap = Math.min(length, capacity - relativeFirstIndex);
+    int afterWrap = length - beforeWrap;
+    copySamples(relativeFirstIndex, newSampleArrays, 0, beforeWrap);
+    copySamples(0, newSampleArrays, beforeWrap, afterWrap);
+    SampleArrays.recycle(sampleArrays);
+    setSampleArrays(newSampleArrays);
+    relativeFirstIndex = 0;
+  }
+
+  private void copySamples(int fromIndex, SampleArrays to, int toIndex, int count) {
+    System.arraycopy(sourceIds, fromIndex, to.sourceIds, toIndex, count);
+    System.arraycopy(offsets, fromIndex, to.offsets, toIndex, count);
+    System.arraycopy(sizes, fromIndex, to.sizes, toIndex, count);
+    System.arraycopy(flags, fromIndex, to.flags, toIndex, count);
+    System.arraycopy(timesUs, fromIndex, to.timesUs, toIndex, count);
+    System.arraycopy(cryptoDatas, fromIndex, to.cryptoDatas, toIndex, count);
+    System.arraycopy(formats, fromIndex, to.formats, toIndex, count);
+  }
+
+  private void setSampleArrays(SampleArrays sampleArrays) {
+    this.sampleArrays = sampleArrays;
+    capacity = sampleArrays.capacity;
+    sourceIds = sampleArrays.sourceIds;
+    offsets = sampleArrays.offsets;
+    sizes = sampleArrays.sizes;
+    flags = sampleArrays.flags;
+    timesUs = sampleArrays.timesUs;
+    cryptoDatas = sampleArrays.cryptoDatas;
+    formats = sampleArrays.formats;
+  }
+
+  /**
+   * Returns the relative index for a given offset from the start of the queue.
     *
-    * @param offset The offset, which must be in the range [0, length].
-    */
+   * @param offset The offset, which must be in the range [0, length].
+   */
   private int getRelativeIndex(int offset) {
     int relativeIndex = relativeFirstIndex + offset;
     return relativeIndex < capacity ? relativeIndex : relativeIndex - capacity;
   }
 
+  /**
+   * The parallel arrays backing a queue. Arrays are pooled across all queues, since queues grow and
+   * shrink repeatedly as buffers fill and are discarded.
+   */
+  private static final class SampleArrays {
+
+    /**
+     * The maximum total capacity of the pooled arrays.
+     */
+    private static final int MAX_POOLED_SAMPLE_CAPACITY = 32 * INITIAL_SAMPLE_CAPACITY;
+
+    private static final ArrayList<SampleArrays> pool = new ArrayList<>();
+    private static int pooledSampleCapacity;
+
+    public final int capacity;
+    public final int[] sourceIds;
+    public final long[] offsets;
+    public final int[] sizes;
+    public final int[] flags;
+    public final long[] timesUs;
+    public final CryptoData[] cryptoDatas;
+    public final Format[] formats;
+
+    public static synchronized SampleArrays obtain(int capacity) {
+      for (int i = pool.size() - 1; i >= 0; i--) {
+        if (pool.get(i).capacity == capacity) {
+          pooledSampleCapacity -= capacity;
+          return pool.remove(i);
+        }
+      }
+      return new SampleArrays(capacity);
+    }
+
+    public static synchronized void recycle(SampleArrays sampleArrays) {
+      if (pooledSampleCapacity + sampleArrays.capacity > MAX_POOLED_SAMPLE_CAPACITY) {
+        return;
+      }
+      // Don't retain formats and crypto data of released queues.
+      Arrays.fill(sampleArrays.cryptoDatas, null);
+      Arrays.fill(sampleArrays.formats, null);
+      pool.add(sampleArrays);
+      pooledSampleCapacity += sampleArrays.capacity;
+    }
+
+    private SampleArrays(int capacity) {
+      this.capacity = capacity;
+      sourceIds = new int[capacity];
+      offsets = new long[capacity];
+      sizes = new int[capacity];
+      flags = new int[capacity];
+      timesUs = new long[capacity];
+      cryptoDatas = new CryptoData[capacity];
+      formats = new Format[capacity];
+    }
+
+  }
+
 }
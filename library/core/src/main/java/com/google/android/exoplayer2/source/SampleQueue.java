@@ -584,6 +584,29 @@ public final class SampleQueue implements TrackOutput {
     metadataQueue.commitSample(timeUs, flags, absoluteOffset, size, cryptoData);
   }
 
+  @Override
+  public void sampleMetadataBatch(int sampleCount, long[] timesUs, int[] flags, int[] sizes,
+      int[] offsets, CryptoData[] cryptoDatas) {
+    if (pendingFormatAdjustment) {
+      format(lastUnadjustedFormat);
+    }
+    int firstSampleIndex = 0;
+    if (pendingSplice) {
+      while (firstSampleIndex < sampleCount
+          && ((flags[firstSampleIndex] & C.BUFFER_FLAG_KEY_FRAME) == 0
+              || !metadataQueue.attemptSplice(timesUs[firstSampleIndex]))) {
+        firstSampleIndex++;
+      }
+      if (firstSampleIndex == sampleCount) {
+        return;
+      }
+      pendingSplice = false;
+    }
+    // Commit the whole batch while holding the metadata queue's lock only once.
+    metadataQueue.commitSamples(firstSampleIndex, sampleCount, timesUs, sampleOffsetUs, flags,
+        sizes, offsets, totalBytesWritten, cryptoDatas);
+  }
+
   // Private methods.
 
   /**
@@ -197,6 +197,12 @@ public final class ChunkExtractorWrapper implements ExtractorOutput {
       trackOutput.sampleMetadata(timeUs, flags, size, offset, cryptoData);
     }
 
+    @Override
+    public void sampleMetadataBatch(int sampleCount, long[] timesUs, int[] flags, int[] sizes,
+        int[] offsets, CryptoData[] cryptoDatas) {
+      trackOutput.sampleMetadataBatch(sampleCount, timesUs, flags, sizes, offsets, cryptoDatas);
+    }
+
   }
 
 }
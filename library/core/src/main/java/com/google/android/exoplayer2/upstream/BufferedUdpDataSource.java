@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import androidx.annotation.IntDef;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.UdpDataSource.UdpDataSourceException;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+
+/**
+ * A UDP {@link DataSource} for high packet rates, such as MPEG-TS over multicast.
+ * <p>
+ * Unlike {@link UdpDataSource}, which receives a datagram only when {@link #read} is called,
+ * datagrams are received on a dedicated thread into a fixed ring of reusable packet buffers, so
+ * that the socket keeps being drained whilst the loading thread is busy extracting. Each call to
+ * {@link #read} copies as many buffered payloads as fit into the target buffer.
+ * <p>
+ * Datagrams carrying RTP are reordered by sequence number in a jitter buffer and have their RTP
+ * headers stripped. A gap in the sequence is skipped once later packets have been waiting for
+ * longer than the maximum jitter delay, or once the gap no longer fits in the jitter buffer. Lost,
+ * late and dropped packets are counted, and the counters can be queried whilst the source is open.
+ */
+public final class BufferedUdpDataSource implements DataSource {
+
+  /**
+   * How datagrams are checked for RTP headers.
+   */
+  @Retention(RetentionPolicy.SOURCE)
+  @IntDef({RTP_MODE_AUTO, RTP_MODE_ENABLED, RTP_MODE_DISABLED})
+  public @interface RtpMode {}
+  /**
+   * Datagrams are treated as RTP if they have an RTP version 2 header followed by an MPEG-TS sync
+   * byte, and as raw payloads otherwise.
+   */
+  public static final int RTP_MODE_AUTO = 0;
+  /**
+   * Datagrams are always treated as RTP. Datagrams without a valid RTP header are discarded.
+   */
+  public static final int RTP_MODE_ENABLED = 1;
+  /**
+   * Datagrams are always treated as raw payloads.
+   */
+  public static final int RTP_MODE_DISABLED = 2;
+
+  /**
+   * The default number of packet buffers in the receive ring.
+   */
+  public static final int DEFAULT_PACKET_BUFFER_COUNT = 1024;
+  /**
+   * The default number of RTP packets that can be held for reordering.
+   */
+  public static final int DEFAULT_JITTER_BUFFER_PACKET_COUNT = 64;
+  /**
+   * The default maximum time that a packet is held waiting for a missing earlier packet, in
+   * milliseconds.
+   */
+  public static final int DEFAULT_MAX_JITTER_DELAY_MS = 100;
+  /**
+   * The default socket receive buffer size requested from the system, in bytes.
+   */
+  public static final int DEFAULT_SOCKET_RECEIVE_BUFFER_SIZE = 1024 * 1024;
+
+  private static final int RTP_HEADER_LENGTH = 12;
+  private static final int RTP_VERSION = 2;
+  private static final int TS_SYNC_BYTE = 0x47;
+
+  private final TransferListener<? super BufferedUdpDataSource> listener;
+  private final int maxPacketSize;
+  private final int packetBufferCount;
+  private final int jitterBufferPacketCount;
+  private final int maxJitterDelayMs;
+  private final int socketTimeoutMillis;
+  private final @RtpMode int rtpMode;
+
+  private Uri uri;
+  private DatagramSocket socket;
+  private MulticastSocket multicastSocket;
+  private InetAddress address;
+  private volatile Receiver receiver;
+  private boolean opened;
+
+  /**
+   * @param listener An optional listener.
+   */
+  public BufferedUdpDataSource(TransferListener<? super BufferedUdpDataSource> listener) {
+    this(listener, UdpDataSource.DEFAULT_MAX_PACKET_SIZE, DEFAULT_PACKET_BUFFER_COUNT,
+        DEFAULT_JITTER_BUFFER_PACKET_COUNT, DEFAULT_MAX_JITTER_DELAY_MS,
+        UdpDataSource.DEAFULT_SOCKET_TIMEOUT_MILLIS, RTP_MODE_AUTO);
+  }
+
+  /**
+   * @param listener An optional listener.
+   * @param maxPacketSize The maximum datagram packet size, in bytes.
+   * @param packetBufferCount The number of packet buffers in the receive ring. Datagrams that
+   *     arrive when all buffers are waiting to be read are dropped.
+   * @param jitterBufferPacketCount The number of RTP packets that can be held for reordering.
+   * @param maxJitterDelayMs The maximum time that an RTP packet is held waiting for a missing
+   *     earlier packet, in milliseconds.
+   * @param socketTimeoutMillis The maximum time to wait for data in {@link #read}, in
+   *     milliseconds. A timeout of zero is interpreted as an infinite timeout.
+   * @param rtpMode How datagrams are checked for RTP headers.
+   */
+  public BufferedUdpDataSource(TransferListener<? super BufferedUdpDataSource> listener,
+      int maxPacketSize, int packetBufferCount, int jitterBufferPacketCount, int maxJitterDelayMs,
+      int socketTimeoutMillis, @RtpMode int rtpMode) {
+    Assertions.checkArgument(packetBufferCount > jitterBufferPacketCount);
+    Assertions.checkArgument(jitterBufferPacketCount > 0);
+    this.listener = listener;
+    this.maxPacketSize = maxPacketSize;
+    this.packetBufferCount = packetBufferCount;
+    this.jitterBufferPacketCount = jitterBufferPacketCount;
+    this.maxJitterDelayMs = maxJitterDelayMs;
+    this.socketTimeoutMillis = socketTimeoutMillis;
+    this.rtpMode = rtpMode;
+  }
+
+  /**
+   * Returns the number of datagrams received since the source was last opened.
+   */
+  public long getReceivedPacketCount() {
+    Receiver receiver = this.receiver;
+    return receiver == null ? 0 : receiver.getReceivedPacketCount();
+  }
+
+  /**
+   * Returns the number of RTP packets that were never received, as inferred from gaps in the
+   * sequence numbers, since the source was last opened.
+   */
+  public long getLostPacketCount() {
+    Receiver receiver = this.receiver;
+    return receiver == null ? 0 : receiver.getLostPacketCount();
+  }
+
+  /**
+   * Returns the number of RTP packets that were discarded because they arrived after their
+   * position in the sequence had been skipped, or were duplicates, since the source was last
+   * opened.
+   */
+  public long getLatePacketCount() {
+    Receiver receiver = this.receiver;
+    return receiver == null ? 0 : receiver.getLatePacketCount();
+  }
+
+  /**
+   * Returns the number of datagrams that were dropped because all packet buffers were waiting to
+   * be read, since the source was last opened.
+   */
+  public long getOverflowPacketCount() {
+    Receiver receiver = this.receiver;
+    return receiver == null ? 0 : receiver.getOverflowPacketCount();
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws UdpDataSourceException {
+    uri = dataSpec.uri;
+    String host = uri.getHost();
+    int port = uri.getPort();
+
+    try {
+      address = InetAddress.getByName(host);
+      InetSocketAddress socketAddress = new InetSocketAddress(address, port);
+      if (address.isMulticastAddress()) {
+        multicastSocket = new MulticastSocket(socketAddress);
+        multicastSocket.joinGroup(address);
+        socket = multicastSocket;
+      } else {
+        socket = new DatagramSocket(socketAddress);
+      }
+      // Request a large kernel buffer to absorb bursts. The system may grant less.
+      socket.setReceiveBufferSize(DEFAULT_SOCKET_RECEIVE_BUFFER_SIZE);
+    } catch (IOException e) {
+      throw new UdpDataSourceException(e);
+    }
+
+    receiver = new Receiver(socket);
+    Thread receiverThread = new Thread(receiver, "BufferedUdpDataSource:Receiver");
+    receiverThread.start();
+
+    opened = true;
+    if (listener != null) {
+      listener.onTransferStart(this, dataSpec);
+    }
+    return C.LENGTH_UNSET;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws UdpDataSourceException {
+    if (readLength == 0) {
+      return 0;
+    }
+    int bytesRead = receiver.read(buffer, offset, readLength);
+    int bytesTransferred = receiver.getAndResetBytesDequeued();
+    if (listener != null && bytesTransferred > 0) {
+      listener.onBytesTransferred(this, bytesTransferred);
+    }
+    return bytesRead;
+  }
+
+  @Override
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() {
+    uri = null;
+    if (receiver != null) {
+      receiver.cancel();
+    }
+    if (multicastSocket != null) {
+      try {
+        multicastSocket.leaveGroup(address);
+      } catch (IOException e) {
+        // Do nothing.
+      }
+      multicastSocket = null;
+    }
+    if (socket != null) {
+      // Unblocks the receiver thread, which then exits.
+      socket.close();
+      socket = null;
+    }
+    address = null;
+    if (opened) {
+      opened = false;
+      if (listener != null) {
+        listener.onTransferEnd(this);
+      }
+    }
+  }
+
+  /**
+   * A reusable buffer for a single datagram.
+   */
+  private static final class Packet {
+
+    public final byte[] data;
+    public final DatagramPacket datagramPacket;
+
+    public int payloadOffset;
+    public int payloadLength;
+    public int sequenceNumber;
+
+    public Packet(int maxPacketSize) {
+      data = new byte[maxPacketSize];
+      datagramPacket = new DatagramPacket(data, maxPacketSize);
+    }
+
+  }
+
+  /**
+   * Receives datagrams for a single opening of the source, and buffers them until they are read.
+   * Each instance has its own packet buffers, so a receiver that is still exiting after the source
+   * is closed cannot interfere with a subsequent opening.
+   */
+  private final class Receiver implements Runnable {
+
+    private final DatagramSocket socket;
+    private final Packet overflowPacket;
+    private final ArrayDeque<Packet> freePackets;
+    private final ArrayDeque<Packet> readyPackets;
+
+    // Guarded by this.
+    private final RtpJitterBuffer<Packet> jitterBuffer;
+    private int bytesDequeued;
+    private IOException receiveError;
+    private boolean canceled;
+    private long receivedPacketCount;
+    private long overflowPacketCount;
+
+    // Accessed only by the reading thread.
+    private Packet currentPacket;
+    private int currentPacketBytesRemaining;
+
+    public Receiver(DatagramSocket socket) {
+      this.socket = socket;
+      overflowPacket = new Packet(maxPacketSize);
+      freePackets = new ArrayDeque<>(packetBufferCount);
+      for (int i = 0; i < packetBufferCount; i++) {
+        freePackets.add(new Packet(maxPacketSize));
+      }
+      readyPackets = new ArrayDeque<>(packetBufferCount);
+      jitterBuffer =
+          new RtpJitterBuffer<>(jitterBufferPacketCount, maxJitterDelayMs, readyPackets);
+    }
+
+    public synchronized long getReceivedPacketCount() {
+      return receivedPacketCount;
+    }
+
+    public synchronized long getLostPacketCount() {
+      return jitterBuffer.getLostPacketCount();
+    }
+
+    public synchronized long getLatePacketCount() {
+      return jitterBuffer.getLatePacketCount();
+    }
+
+    public synchronized long getOverflowPacketCount() {
+      return overflowPacketCount;
+    }
+
+    public synchronized void cancel() {
+      canceled = true;
+      notifyAll();
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Packet packet;
+        synchronized (this) {
+          if (canceled) {
+            return;
+          }
+          packet = freePackets.pollFirst();
+        }
+        // If every buffer is waiting to be read then the datagram is still received, so that the
+        // socket keeps being drained, but into a scratch buffer whose contents are discarded.
+        Packet target = packet != null ? packet : overflowPacket;
+        try {
+          target.datagramPacket.setLength(maxPacketSize);
+          socket.receive(target.datagramPacket);
+        } catch (IOException e) {
+          synchronized (this) {
+            if (!canceled) {
+              receiveError = e;
+              notifyAll();
+            }
+          }
+          return;
+        }
+        long nowMs = SystemClock.elapsedRealtime();
+        synchronized (this) {
+          if (canceled) {
+            return;
+          }
+          receivedPacketCount++;
+          if (packet == null) {
+            overflowPacketCount++;
+          } else if (!parsePacket(packet)) {
+            freePackets.addLast(packet);
+          } else if (packet.sequenceNumber == C.INDEX_UNSET) {
+            readyPackets.addLast(packet);
+            notifyAll();
+          } else {
+            if (!jitterBuffer.add(packet, packet.sequenceNumber, nowMs)) {
+              freePackets.addLast(packet);
+            }
+            jitterBuffer.maybeSkipGap(nowMs);
+            notifyAll();
+          }
+        }
+      }
+    }
+
+    public int read(byte[] buffer, int offset, int readLength) throws UdpDataSourceException {
+      int bytesRead = 0;
+      synchronized (this) {
+        if (currentPacket == null) {
+          waitForReadyPacket();
+        }
+        // Copy as many buffered payloads as fit, so that bursts are consumed in few reads.
+        while (currentPacket != null && bytesRead < readLength) {
+          int bytesToRead = Math.min(currentPacketBytesRemaining, readLength - bytesRead);
+          int packetOffset = currentPacket.payloadOffset + currentPacket.payloadLength
+              - currentPacketBytesRemaining;
+          System.arraycopy(currentPacket.data, packetOffset, buffer, offset + bytesRead,
+              bytesToRead);
+          bytesRead += bytesToRead;
+          currentPacketBytesRemaining -= bytesToRead;
+          if (currentPacketBytesRemaining == 0) {
+            freePackets.addLast(currentPacket);
+            currentPacket = null;
+            dequeueReadyPacket();
+          }
+        }
+      }
+      return bytesRead;
+    }
+
+    public synchronized int getAndResetBytesDequeued() {
+      int bytesDequeued = this.bytesDequeued;
+      this.bytesDequeued = 0;
+      return bytesDequeued;
+    }
+
+    private void waitForReadyPacket() throws UdpDataSourceException {
+      long startTimeMs = SystemClock.elapsedRealtime();
+      while (!dequeueReadyPacket()) {
+        if (receiveError != null) {
+          throw new UdpDataSourceException(receiveError);
+        }
+        long nowMs = SystemClock.elapsedRealtime();
+        if (jitterBuffer.maybeSkipGap(nowMs)) {
+          continue;
+        }
+        long waitMs = 0;
+        if (socketTimeoutMillis != 0) {
+          waitMs = startTimeMs + socketTimeoutMillis - nowMs;
+          if (waitMs <= 0) {
+            throw new UdpDataSourceException(new SocketTimeoutException());
+          }
+        }
+        long gapDeadlineMs = jitterBuffer.getGapDeadlineMs();
+        if (gapDeadlineMs != C.TIME_UNSET) {
+          long gapWaitMs = Math.max(1, gapDeadlineMs - nowMs);
+          waitMs = waitMs == 0 ? gapWaitMs : Math.min(waitMs, gapWaitMs);
+        }
+        try {
+          wait(waitMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new UdpDataSourceException(new InterruptedIOException());
+        }
+      }
+    }
+
+    private boolean dequeueReadyPacket() {
+      currentPacket = readyPackets.pollFirst();
+      if (currentPacket == null) {
+        return false;
+      }
+      currentPacketBytesRemaining = currentPacket.payloadLength;
+      bytesDequeued += currentPacket.payloadLength;
+      return true;
+    }
+
+    /**
+     * Sets the payload of a received packet, stripping any RTP header.
+     *
+     * @return Whether the packet has a payload that should be read.
+     */
+    private boolean parsePacket(Packet packet) {
+      byte[] data = packet.data;
+      int length = packet.datagramPacket.getLength();
+      packet.sequenceNumber = C.INDEX_UNSET;
+      packet.payloadOffset = 0;
+      packet.payloadLength = length;
+      if (rtpMode == RTP_MODE_DISABLED || length == 0) {
+        return length > 0;
+      }
+      if (length < RTP_HEADER_LENGTH || ((data[0] & 0xFF) >> 6) != RTP_VERSION) {
+        return rtpMode == RTP_MODE_AUTO;
+      }
+      boolean hasPadding = (data[0] & 0x20) != 0;
+      boolean hasExtension = (data[0] & 0x10) != 0;
+      int csrcCount = data[0] & 0x0F;
+      int headerLength = RTP_HEADER_LENGTH + 4 * csrcCount;
+      if (hasExtension && headerLength + 4 <= length) {
+        int extensionLength =
+            ((data[headerLength + 2] & 0xFF) << 8) | (data[headerLength + 3] & 0xFF);
+        headerLength += 4 + 4 * extensionLength;
+      }
+      int paddingLength = hasPadding ? data[length - 1] & 0xFF : 0;
+      int payloadLength = length - headerLength - paddingLength;
+      if (payloadLength <= 0) {
+        return rtpMode == RTP_MODE_AUTO;
+      }
+      if (rtpMode == RTP_MODE_AUTO && data[headerLength] != TS_SYNC_BYTE) {
+        return true;
+      }
+      packet.sequenceNumber = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+      packet.payloadOffset = headerLength;
+      packet.payloadLength = payloadLength;
+      return true;
+    }
+
+  }
+
+}
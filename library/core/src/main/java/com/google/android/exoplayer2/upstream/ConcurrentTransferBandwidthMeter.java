@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.os.Handler;
+import android.util.SparseArray;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.SlidingPercentile;
+import java.util.IdentityHashMap;
+
+/**
+ * Estimates bandwidth by listening to data transfers, tracking each concurrent transfer
+ * independently.
+ * <p>
+ * {@link DefaultBandwidthMeter} merges overlapping transfers into a single sample, which distorts
+ * the elapsed time attributed to each of them. This meter instead keeps the start time and byte
+ * count of every active transfer, and derives two kinds of estimate:
+ * <ul>
+ *   <li>The aggregate link capacity, returned by {@link #getBitrateEstimate()}. Samples are taken
+ *   over the union of the intervals during which at least one transfer is active, so bytes that
+ *   are transferred concurrently are counted against the same elapsed time rather than against
+ *   the elapsed time of each transfer.</li>
+ *   <li>The throughput of individual transfers of each track type, returned by
+ *   {@link #getBitrateEstimate(int)}. The track type of a transfer is determined by a
+ *   {@link TrackTypeClassifier}.</li>
+ * </ul>
+ */
+public final class ConcurrentTransferBandwidthMeter implements BandwidthMeter,
+    TransferListener<Object> {
+
+  /**
+   * Determines the track type of the data being transferred.
+   */
+  public interface TrackTypeClassifier {
+
+    /**
+     * A classifier that returns {@link C#TRACK_TYPE_UNKNOWN} for all transfers.
+     */
+    TrackTypeClassifier UNKNOWN = new TrackTypeClassifier() {
+      @Override
+      public int getTrackType(Object source, DataSpec dataSpec) {
+        return C.TRACK_TYPE_UNKNOWN;
+      }
+    };
+
+    /**
+     * Returns the track type of a transfer.
+     *
+     * @param source The source performing the transfer.
+     * @param dataSpec Describes the data being transferred.
+     * @return One of the {@link C} {@code TRACK_TYPE_*} constants.
+     */
+    int getTrackType(Object source, DataSpec dataSpec);
+
+  }
+
+  /**
+   * The default maximum weight for the sliding windows.
+   */
+  public static final int DEFAULT_MAX_WEIGHT = 2000;
+
+  private static final int ELAPSED_MILLIS_FOR_ESTIMATE = 2000;
+  private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 512 * 1024;
+
+  private final Handler eventHandler;
+  private final EventListener eventListener;
+  private final TrackTypeClassifier trackTypeClassifier;
+  private final int maxWeight;
+  private final Clock clock;
+  private final IdentityHashMap<Object, Transfer> activeTransfers;
+  private final ThroughputEstimator aggregateEstimator;
+  private final SparseArray<ThroughputEstimator> trackTypeEstimators;
+
+  private long aggregateSampleStartTimeMs;
+  private long aggregateSampleBytesTransferred;
+
+  public ConcurrentTransferBandwidthMeter() {
+    this(null, null, TrackTypeClassifier.UNKNOWN);
+  }
+
+  public ConcurrentTransferBandwidthMeter(Handler eventHandler, EventListener eventListener,
+      TrackTypeClassifier trackTypeClassifier) {
+    this(eventHandler, eventListener, trackTypeClassifier, DEFAULT_MAX_WEIGHT, Clock.DEFAULT);
+  }
+
+  public ConcurrentTransferBandwidthMeter(Handler eventHandler, EventListener eventListener,
+      TrackTypeClassifier trackTypeClassifier, int maxWeight, Clock clock) {
+    this.eventHandler = eventHandler;
+    this.eventListener = eventListener;
+    this.trackTypeClassifier = Assertions.checkNotNull(trackTypeClassifier);
+    this.maxWeight = maxWeight;
+    this.clock = clock;
+    activeTransfers = new IdentityHashMap<>();
+    aggregateEstimator = new ThroughputEstimator(maxWeight);
+    trackTypeEstimators = new SparseArray<>();
+  }
+
+  /**
+   * Returns the estimated aggregate link capacity in bits/sec, or {@link #NO_ESTIMATE} if an
+   * estimate is not available.
+   */
+  @Override
+  public synchronized long getBitrateEstimate() {
+    return aggregateEstimator.bitrateEstimate;
+  }
+
+  /**
+   * Returns the estimated throughput of individual transfers of a track type in bits/sec, or
+   * {@link #NO_ESTIMATE} if an estimate is not available.
+   *
+   * @param trackType One of the {@link C} {@code TRACK_TYPE_*} constants.
+   */
+  public synchronized long getBitrateEstimate(int trackType) {
+    ThroughputEstimator estimator = trackTypeEstimators.get(trackType);
+    return estimator == null ? NO_ESTIMATE : estimator.bitrateEstimate;
+  }
+
+  /**
+   * Returns the number of transfers that are currently active.
+   */
+  public synchronized int getActiveTransferCount() {
+    return activeTransfers.size();
+  }
+
+  @Override
+  public synchronized void onTransferStart(Object source, DataSpec dataSpec) {
+    long nowMs = clock.elapsedRealtime();
+    if (activeTransfers.isEmpty()) {
+      aggregateSampleStartTimeMs = nowMs;
+    }
+    int trackType = trackTypeClassifier.getTrackType(source, dataSpec);
+    activeTransfers.put(source, new Transfer(trackType, nowMs));
+  }
+
+  @Override
+  public synchronized void onBytesTransferred(Object source, int bytes) {
+    Transfer transfer = activeTransfers.get(source);
+    if (transfer != null) {
+      transfer.bytesTransferred += bytes;
+      aggregateSampleBytesTransferred += bytes;
+    }
+  }
+
+  @Override
+  public synchronized void onTransferEnd(Object source) {
+    Transfer transfer = activeTransfers.remove(source);
+    Assertions.checkState(transfer != null);
+    long nowMs = clock.elapsedRealtime();
+
+    int transferElapsedTimeMs = (int) (nowMs - transfer.startTimeMs);
+    ThroughputEstimator trackTypeEstimator = trackTypeEstimators.get(transfer.trackType);
+    if (trackTypeEstimator == null) {
+      trackTypeEstimator = new ThroughputEstimator(maxWeight);
+      trackTypeEstimators.put(transfer.trackType, trackTypeEstimator);
+    }
+    trackTypeEstimator.addSample(transfer.bytesTransferred, transferElapsedTimeMs);
+
+    // The aggregate sample covers the time since the previous transfer end (or since the link
+    // became busy), and all bytes transferred by any transfer in that interval.
+    int aggregateElapsedTimeMs = (int) (nowMs - aggregateSampleStartTimeMs);
+    long aggregateBytesTransferred = aggregateSampleBytesTransferred;
+    aggregateEstimator.addSample(aggregateBytesTransferred, aggregateElapsedTimeMs);
+    aggregateSampleStartTimeMs = nowMs;
+    aggregateSampleBytesTransferred = 0;
+
+    notifyBandwidthSample(aggregateElapsedTimeMs, aggregateBytesTransferred,
+        aggregateEstimator.bitrateEstimate);
+  }
+
+  private void notifyBandwidthSample(final int elapsedMs, final long bytes, final long bitrate) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onBandwidthSample(elapsedMs, bytes, bitrate);
+        }
+      });
+    }
+  }
+
+  private static final class Transfer {
+
+    public final int trackType;
+    public final long startTimeMs;
+
+    public long bytesTransferred;
+
+    public Transfer(int trackType, long startTimeMs) {
+      this.trackType = trackType;
+      this.startTimeMs = startTimeMs;
+    }
+
+  }
+
+  /**
+   * Derives a bitrate estimate from throughput samples, in the same way as
+   * {@link DefaultBandwidthMeter}.
+   */
+  private static final class ThroughputEstimator {
+
+    private final SlidingPercentile slidingPercentile;
+
+    private long totalElapsedTimeMs;
+    private long totalBytesTransferred;
+    public long bitrateEstimate;
+
+    public ThroughputEstimator(int maxWeight) {
+      slidingPercentile = new SlidingPercentile(maxWeight);
+      bitrateEstimate = NO_ESTIMATE;
+    }
+
+    public void addSample(long bytesTransferred, int elapsedTimeMs) {
+      totalElapsedTimeMs += elapsedTimeMs;
+      totalBytesTransferred += bytesTransferred;
+      if (elapsedTimeMs > 0) {
+        float bitsPerSecond = (bytesTransferred * 8000) / elapsedTimeMs;
+        slidingPercentile.addSample((int) Math.sqrt(bytesTransferred), bitsPerSecond);
+        if (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
+            || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
+          float bitrateEstimateFloat = slidingPercentile.getPercentile(0.5f);
+          bitrateEstimate = Float.isNaN(bitrateEstimateFloat) ? NO_ESTIMATE
+              : (long) bitrateEstimateFloat;
+        }
+      }
+    }
+
+  }
+
+}
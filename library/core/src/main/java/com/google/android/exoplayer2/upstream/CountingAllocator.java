@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * An {@link Allocator} that counts the bytes allocated through it, obtaining the allocations from
+ * an upstream allocator that may be shared with other users.
+ * <p>
+ * A counting allocator can be attached to another one, after which the bytes it has allocated and
+ * will allocate are also counted by the allocator it's attached to. This allows memory that was
+ * allocated before its eventual user was known (e.g. by a prefetched media period) to be
+ * attributed to that user.
+ */
+public final class CountingAllocator implements Allocator {
+
+  private final Allocator upstreamAllocator;
+
+  // Guarded by this.
+  private int allocatedCount;
+  private CountingAllocator owner;
+
+  /**
+   * @param upstreamAllocator The allocator from which allocations are obtained.
+   */
+  public CountingAllocator(Allocator upstreamAllocator) {
+    this.upstreamAllocator = upstreamAllocator;
+  }
+
+  /**
+   * Returns the allocator from which allocations are obtained.
+   */
+  public Allocator getUpstreamAllocator() {
+    return upstreamAllocator;
+  }
+
+  /**
+   * Attaches this allocator to another one, which then also counts the bytes allocated through this
+   * allocator. Must be called at most once.
+   *
+   * @param owner The allocator to attach to.
+   */
+  public synchronized void attachTo(CountingAllocator owner) {
+    Assertions.checkState(this.owner == null && owner != this);
+    this.owner = owner;
+    owner.updateAllocatedCount(allocatedCount);
+  }
+
+  @Override
+  public Allocation allocate() {
+    Allocation allocation = upstreamAllocator.allocate();
+    updateAllocatedCount(1);
+    return allocation;
+  }
+
+  @Override
+  public void release(Allocation allocation) {
+    updateAllocatedCount(-1);
+    upstreamAllocator.release(allocation);
+  }
+
+  @Override
+  public void release(Allocation[] allocations) {
+    updateAllocatedCount(-allocations.length);
+    upstreamAllocator.release(allocations);
+  }
+
+  @Override
+  public void trim() {
+    upstreamAllocator.trim();
+  }
+
+  @Override
+  public synchronized int getTotalBytesAllocated() {
+    return allocatedCount * upstreamAllocator.getIndividualAllocationLength();
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return upstreamAllocator.getIndividualAllocationLength();
+  }
+
+  private synchronized void updateAllocatedCount(int delta) {
+    allocatedCount += delta;
+    if (owner != null) {
+      // Locks are always taken from an attached allocator to its owner, so this can't deadlock.
+      owner.updateAllocatedCount(delta);
+    }
+  }
+
+}
@@ -18,9 +18,12 @@ package com.google.android.exoplayer2.upstream;
 import android.content.Context;
 import android.net.Uri;
 import android.util.Log;
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A {@link DataSource} that supports multiple URI schemes. The supported schemes are:
@@ -160,6 +163,18 @@ public final class DefaultDataSource implements DataSource {
     return dataSource == null ? null : dataSource.getUri();
   }
 
+  /**
+   * When the source is open and reading over HTTP, returns the response headers of the
+   * {@link HttpDataSource} from which data is being read.
+   *
+   * @return The response headers, or null if the source is not open or isn't reading from an
+   *     {@link HttpDataSource}.
+   */
+  public @Nullable Map<String, List<String>> getResponseHeaders() {
+    return dataSource instanceof HttpDataSource
+        ? ((HttpDataSource) dataSource).getResponseHeaders() : null;
+  }
+
   @Override
   public void close() throws IOException {
     if (dataSource != null) {
@@ -138,6 +138,7 @@ public final class Loader implements LoaderErrorThrower {
   public static final int DONT_RETRY_FATAL = 3;
 
   private final ExecutorService downloadExecutorService;
+  @Nullable private final LoaderExecutor.SerialExecutorService serialExecutorService;
 
   private LoadTask<? extends Loadable> currentTask;
   private IOException fatalError;
@@ -147,6 +148,32 @@ public final class Loader implements LoaderErrorThrower {
    */
   public Loader(String threadName) {
     this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    serialExecutorService = null;
+  }
+
+  /**
+   * Creates a loader that borrows threads from a shared {@link LoaderExecutor} rather than owning a
+   * dedicated thread. Loads are still performed one at a time and in order.
+   *
+   * @param loaderExecutor The {@link LoaderExecutor} on which loads are performed.
+   * @param priority The priority of the loader's loads relative to other loads on the same
+   *     {@link LoaderExecutor}. Larger values indicate higher priorities.
+   */
+  public Loader(LoaderExecutor loaderExecutor, int priority) {
+    serialExecutorService = loaderExecutor.createSerialExecutor(priority);
+    downloadExecutorService = serialExecutorService;
+  }
+
+  /**
+   * Sets the priority of subsequent loads relative to other loads on the {@link LoaderExecutor}
+   * that the loader was created with. Has no effect if the loader owns a dedicated thread.
+   *
+   * @param priority The priority of the loader's loads. Larger values indicate higher priorities.
+   */
+  public void setPriority(int priority) {
+    if (serialExecutorService != null) {
+      serialExecutorService.setPriority(priority);
+    }
   }
 
   /**
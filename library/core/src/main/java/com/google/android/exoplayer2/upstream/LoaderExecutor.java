@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.NonNull;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of loading threads that can be shared by many {@link Loader}s.
+ * <p>
+ * Each {@link Loader} constructed with a {@link LoaderExecutor} runs its tasks one at a time and in
+ * order, exactly as it would on a dedicated thread, but borrows a thread from the pool for each
+ * task. When more tasks are pending than there are threads, tasks of {@link Loader}s with higher
+ * priority are started first, and tasks of equal priority are started in submission order.
+ * Priorities follow the convention of {@link C#PRIORITY_PLAYBACK}: larger values indicate higher
+ * priorities.
+ * <p>
+ * A task occupies its thread until the load completes or is canceled, and some loads (e.g.
+ * progressive loads waiting to be told to continue) occupy a thread for a long time. Queued tasks
+ * are never preempted, so to ensure that playback critical loads are never stuck behind them,
+ * tasks with priority {@link C#PRIORITY_PLAYBACK} or higher that can't start immediately on the
+ * bounded pool are run on additional threads instead of being queued. The bound therefore only
+ * applies to lower priority work, such as prefetching and downloading.
+ * <p>
+ * Only {@link com.google.android.exoplayer2.source.ExtractorMediaSource} can currently be
+ * configured to load on a {@link LoaderExecutor}. Other media sources, including the DASH, HLS and
+ * SmoothStreaming chunk sources, load on dedicated threads, so their loads aren't bounded or
+ * prioritized by the pool.
+ */
+public final class LoaderExecutor {
+
+  /**
+   * The default maximum number of threads.
+   */
+  public static final int DEFAULT_MAX_THREAD_COUNT = 4;
+  /**
+   * The default time after which idle threads are terminated, in milliseconds.
+   */
+  public static final long DEFAULT_KEEP_ALIVE_MS = 10000;
+
+  private final int maxThreadCount;
+  private final ThreadPoolExecutor threadPoolExecutor;
+  private final ThreadPoolExecutor overflowExecutor;
+  private final AtomicLong taskSequenceNumber;
+
+  // Guarded by this.
+  private int pooledTaskCount;
+
+  /**
+   * Creates an instance with {@link #DEFAULT_MAX_THREAD_COUNT} threads.
+   *
+   * @param threadName A name prefix for the pool's threads.
+   */
+  public LoaderExecutor(String threadName) {
+    this(threadName, DEFAULT_MAX_THREAD_COUNT);
+  }
+
+  /**
+   * @param threadName A name prefix for the pool's threads.
+   * @param maxThreadCount The maximum number of threads in the pool.
+   */
+  public LoaderExecutor(final String threadName, int maxThreadCount) {
+    Assertions.checkArgument(maxThreadCount > 0);
+    this.maxThreadCount = maxThreadCount;
+    final AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = new ThreadFactory() {
+      @Override
+      public Thread newThread(@NonNull Runnable r) {
+        return new Thread(r, threadName + ":" + threadCount.incrementAndGet());
+      }
+    };
+    threadPoolExecutor = new ThreadPoolExecutor(maxThreadCount, maxThreadCount,
+        DEFAULT_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+        threadFactory);
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    overflowExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, DEFAULT_KEEP_ALIVE_MS,
+        TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(), threadFactory);
+    taskSequenceNumber = new AtomicLong();
+  }
+
+  /**
+   * Shuts down the pool. Loads that are in progress are allowed to complete, but {@link Loader}s
+   * must not start further loads.
+   */
+  public void release() {
+    threadPoolExecutor.shutdown();
+    overflowExecutor.shutdown();
+  }
+
+  /**
+   * Returns an {@link ExecutorService} that runs tasks sequentially on this pool with the given
+   * priority. Shutting down the returned {@link ExecutorService} does not affect the pool.
+   *
+   * @param priority The priority of the tasks.
+   */
+  /* package */ SerialExecutorService createSerialExecutor(int priority) {
+    return new SerialExecutorService(priority);
+  }
+
+  /**
+   * Runs a task on the pool, or on an additional thread if it's a playback critical task and the
+   * pool is busy.
+   *
+   * @param runnable The task.
+   * @param onFinished Run on the same thread once the task has finished. If the task ran on the
+   *     pool, its thread is no longer counted as busy when this is run, so that a task submitted
+   *     from it can take the thread over rather than spilling to an additional thread.
+   * @param priority The priority of the task.
+   */
+  private void executeTask(final Runnable runnable, final Runnable onFinished, int priority) {
+    synchronized (this) {
+      if (priority >= C.PRIORITY_PLAYBACK && pooledTaskCount >= maxThreadCount) {
+        // Every thread of the pool is busy, possibly with loads that are waiting to continue.
+        overflowExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              runnable.run();
+            } finally {
+              onFinished.run();
+            }
+          }
+        });
+        return;
+      }
+      pooledTaskCount++;
+    }
+    threadPoolExecutor.execute(new PrioritizedTask(runnable, onFinished, priority));
+  }
+
+  private synchronized void onPooledTaskFinished() {
+    pooledTaskCount--;
+  }
+
+  private final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+    private final Runnable runnable;
+    private final Runnable onFinished;
+    private final int priority;
+    private final long sequenceNumber;
+
+    public PrioritizedTask(Runnable runnable, Runnable onFinished, int priority) {
+      this.runnable = runnable;
+      this.onFinished = onFinished;
+      this.priority = priority;
+      this.sequenceNumber = taskSequenceNumber.getAndIncrement();
+    }
+
+    @Override
+    public void run() {
+      try {
+        runnable.run();
+      } finally {
+        onPooledTaskFinished();
+        onFinished.run();
+      }
+    }
+
+    @Override
+    public int compareTo(@NonNull PrioritizedTask other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return sequenceNumber < other.sequenceNumber ? -1
+          : (sequenceNumber == other.sequenceNumber ? 0 : 1);
+    }
+
+  }
+
+  /**
+   * Runs tasks one at a time, in submission order, on the shared pool.
+   */
+  /* package */ final class SerialExecutorService extends AbstractExecutorService {
+
+    private final ArrayDeque<Runnable> tasks;
+    private final Runnable scheduleNextRunnable;
+
+    private volatile int priority;
+
+    // Guarded by tasks.
+    private boolean taskActive;
+    private Thread activeThread;
+    private boolean shutdown;
+
+    public SerialExecutorService(int priority) {
+      this.priority = priority;
+      tasks = new ArrayDeque<>();
+      scheduleNextRunnable = new Runnable() {
+        @Override
+        public void run() {
+          scheduleNext();
+        }
+      };
+    }
+
+    /**
+     * Sets the priority of tasks that are started on the pool from now on. A task that is already
+     * waiting for a thread of the pool keeps its priority.
+     *
+     * @param priority The priority of the tasks.
+     */
+    public void setPriority(int priority) {
+      this.priority = priority;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+      synchronized (tasks) {
+        if (shutdown) {
+          throw new RejectedExecutionException();
+        }
+        tasks.addLast(command);
+        if (!taskActive) {
+          scheduleNext();
+        }
+      }
+    }
+
+    @Override
+    public void shutdown() {
+      synchronized (tasks) {
+        shutdown = true;
+        tasks.notifyAll();
+      }
+    }
+
+    /**
+     * Shuts down the executor, interrupts the running task if there is one, and returns the tasks
+     * that have not started.
+     */
+    @NonNull
+    @Override
+    public List<Runnable> shutdownNow() {
+      synchronized (tasks) {
+        shutdown = true;
+        List<Runnable> pendingTasks = new ArrayList<>(tasks);
+        tasks.clear();
+        if (activeThread != null) {
+          activeThread.interrupt();
+        }
+        tasks.notifyAll();
+        return pendingTasks;
+      }
+    }
+
+    @Override
+    public boolean isShutdown() {
+      synchronized (tasks) {
+        return shutdown;
+      }
+    }
+
+    @Override
+    public boolean isTerminated() {
+      synchronized (tasks) {
+        return shutdown && !taskActive;
+      }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @NonNull TimeUnit unit)
+        throws InterruptedException {
+      long deadlineMs = System.currentTimeMillis() + unit.toMillis(timeout);
+      synchronized (tasks) {
+        while (!(shutdown && !taskActive)) {
+          long remainingMs = deadlineMs - System.currentTimeMillis();
+          if (remainingMs <= 0) {
+            return false;
+          }
+          tasks.wait(remainingMs);
+        }
+        return true;
+      }
+    }
+
+    private void scheduleNext() {
+      synchronized (tasks) {
+        final Runnable command = tasks.pollFirst();
+        taskActive = command != null;
+        if (command == null) {
+          tasks.notifyAll();
+          return;
+        }
+        executeTask(new Runnable() {
+          @Override
+          public void run() {
+            synchronized (tasks) {
+              activeThread = Thread.currentThread();
+            }
+            try {
+              command.run();
+            } finally {
+              synchronized (tasks) {
+                activeThread = null;
+                // Clear an interrupt from shutdownNow, so that it doesn't affect the next task run
+                // on this thread.
+                Thread.interrupted();
+              }
+            }
+          }
+        }, scheduleNextRunnable, priority);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A {@link DataSource} that fetches disjoint byte ranges of a resource concurrently from several
+ * equivalent origins (e.g. the entries of a DASH BaseURL list, or HLS redundant streams) and
+ * returns them in order.
+ * <p>
+ * Origins are described by base URIs. A {@link DataSpec} whose URI starts with one of the base URIs
+ * is mapped onto every other origin by replacing that prefix. The first range is read synchronously
+ * from the origin of the requested URI, whilst the remainder of the resource is split into ranges
+ * that are claimed by one worker per origin. The length of the ranges claimed by each origin is
+ * proportional to its measured throughput, as tracked by a {@link ThroughputTracker} that may be
+ * shared between instances. If an origin fails, the range it was loading is resumed by the
+ * remaining origins.
+ * <p>
+ * Requests that cannot be split (requests whose URI does not match any base URI, requests whose
+ * length cannot be resolved, requests that are too short to benefit, and requests that allow gzip)
+ * are passed directly to a single upstream {@link DataSource}.
+ */
+public final class ParallelRangeDataSource implements DataSource {
+
+  /**
+   * Tracks the throughput of each origin across transfers.
+   */
+  public static final class ThroughputTracker {
+
+    private static final float SMOOTHING_FACTOR = 0.3f;
+
+    private final long[] bitrateEstimates;
+
+    /**
+     * @param originCount The number of origins being tracked.
+     */
+    public ThroughputTracker(int originCount) {
+      bitrateEstimates = new long[originCount];
+      for (int i = 0; i < originCount; i++) {
+        bitrateEstimates[i] = BandwidthMeter.NO_ESTIMATE;
+      }
+    }
+
+    /**
+     * Returns the number of origins being tracked.
+     */
+    public int getOriginCount() {
+      return bitrateEstimates.length;
+    }
+
+    /**
+     * Returns the smoothed throughput estimate of an origin in bits per second, or
+     * {@link BandwidthMeter#NO_ESTIMATE} if no estimate is available.
+     *
+     * @param origin The index of the origin.
+     */
+    public synchronized long getBitrateEstimate(int origin) {
+      return bitrateEstimates[origin];
+    }
+
+    /**
+     * Called when a range has been transferred from an origin.
+     *
+     * @param origin The index of the origin.
+     * @param bytes The number of bytes transferred.
+     * @param elapsedMs The time taken to transfer the range, in milliseconds.
+     */
+    public synchronized void onRangeTransferred(int origin, long bytes, long elapsedMs) {
+      if (elapsedMs <= 0) {
+        return;
+      }
+      long bitsPerSecond = (bytes * 8000) / elapsedMs;
+      long previousEstimate = bitrateEstimates[origin];
+      bitrateEstimates[origin] = previousEstimate == BandwidthMeter.NO_ESTIMATE ? bitsPerSecond
+          : (long) (SMOOTHING_FACTOR * bitsPerSecond + (1 - SMOOTHING_FACTOR) * previousEstimate);
+    }
+
+    /**
+     * Called when a transfer from an origin has failed. Halves the throughput estimate of the
+     * origin, so that it is assigned shorter ranges until it recovers.
+     *
+     * @param origin The index of the origin.
+     */
+    public synchronized void onRangeFailed(int origin) {
+      if (bitrateEstimates[origin] != BandwidthMeter.NO_ESTIMATE) {
+        bitrateEstimates[origin] /= 2;
+      }
+    }
+
+    /**
+     * Returns the length of the next range that should be claimed by an origin. Origins are
+     * assigned {@code defaultRangeLength} scaled by the ratio of their throughput to the mean
+     * throughput of all origins, constrained to within a fixed factor of the default.
+     *
+     * @param origin The index of the origin.
+     * @param defaultRangeLength The range length if all origins have the same throughput.
+     */
+    /* package */ synchronized int getRangeLength(int origin, int defaultRangeLength) {
+      long totalBitrate = 0;
+      for (long bitrateEstimate : bitrateEstimates) {
+        if (bitrateEstimate == BandwidthMeter.NO_ESTIMATE) {
+          return defaultRangeLength;
+        }
+        totalBitrate += bitrateEstimate;
+      }
+      if (totalBitrate == 0) {
+        return defaultRangeLength;
+      }
+      long rangeLength =
+          defaultRangeLength * bitrateEstimates[origin] * bitrateEstimates.length / totalBitrate;
+      return (int) Util.constrainValue(rangeLength, defaultRangeLength / MAX_RANGE_SCALE,
+          (long) defaultRangeLength * MAX_RANGE_SCALE);
+    }
+
+  }
+
+  /**
+   * The default length of the ranges into which a resource is split.
+   */
+  public static final int DEFAULT_RANGE_LENGTH = 256 * 1024;
+  /**
+   * The default minimum resource length for which ranges are fetched in parallel.
+   */
+  public static final int DEFAULT_MIN_PARALLEL_LENGTH = 2 * DEFAULT_RANGE_LENGTH;
+
+  /**
+   * The maximum factor by which the range length of an origin may deviate from the default.
+   */
+  private static final int MAX_RANGE_SCALE = 4;
+  /**
+   * The maximum number of ranges per origin that may be loaded ahead of the read position.
+   */
+  private static final int MAX_PENDING_RANGES_PER_ORIGIN = 2;
+
+  private final DataSource.Factory upstreamFactory;
+  private final String[] baseUris;
+  private final ExecutorService executorService;
+  private final ThroughputTracker throughputTracker;
+  private final int rangeLength;
+  private final long minParallelLength;
+  private final Clock clock;
+
+  private DataSource directSource;
+  private Uri uri;
+  private int headOrigin;
+  private long headBytesRemaining;
+  private long headStartTimeMs;
+  private long headLength;
+  private ParallelLoad parallelLoad;
+
+  /**
+   * @param upstreamFactory A factory for the {@link DataSource}s used to fetch each range.
+   * @param baseUris The base URIs of the equivalent origins.
+   * @param executorService The {@link ExecutorService} on which ranges are fetched. One task per
+   *     origin is submitted for each opened request.
+   */
+  public ParallelRangeDataSource(DataSource.Factory upstreamFactory, List<Uri> baseUris,
+      ExecutorService executorService) {
+    this(upstreamFactory, baseUris, executorService, new ThroughputTracker(baseUris.size()),
+        DEFAULT_RANGE_LENGTH, DEFAULT_MIN_PARALLEL_LENGTH);
+  }
+
+  /**
+   * @param upstreamFactory A factory for the {@link DataSource}s used to fetch each range.
+   * @param baseUris The base URIs of the equivalent origins.
+   * @param executorService The {@link ExecutorService} on which ranges are fetched. One task per
+   *     origin is submitted for each opened request.
+   * @param throughputTracker The {@link ThroughputTracker} used to balance range lengths between
+   *     origins. Must track {@code baseUris.size()} origins.
+   * @param rangeLength The length of the ranges if all origins have the same throughput.
+   * @param minParallelLength The minimum resource length for which ranges are fetched in parallel.
+   */
+  public ParallelRangeDataSource(DataSource.Factory upstreamFactory, List<Uri> baseUris,
+      ExecutorService executorService, ThroughputTracker throughputTracker, int rangeLength,
+      long minParallelLength) {
+    Assertions.checkArgument(throughputTracker.getOriginCount() == baseUris.size());
+    Assertions.checkArgument(rangeLength > 0);
+    this.upstreamFactory = Assertions.checkNotNull(upstreamFactory);
+    this.executorService = Assertions.checkNotNull(executorService);
+    this.throughputTracker = throughputTracker;
+    this.rangeLength = rangeLength;
+    this.minParallelLength = Math.max(minParallelLength, rangeLength);
+    this.baseUris = new String[baseUris.size()];
+    for (int i = 0; i < this.baseUris.length; i++) {
+      this.baseUris[i] = baseUris.get(i).toString();
+    }
+    clock = Clock.DEFAULT;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    uri = dataSpec.uri;
+    int origin = getOrigin(dataSpec.uri.toString());
+    if (origin == C.INDEX_UNSET || baseUris.length < 2 || dataSpec.postBody != null
+        || dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)
+        || (dataSpec.length != C.LENGTH_UNSET && dataSpec.length < minParallelLength)) {
+      directSource = upstreamFactory.createDataSource();
+      return directSource.open(dataSpec);
+    }
+
+    DataSource headSource = upstreamFactory.createDataSource();
+    headStartTimeMs = clock.elapsedRealtime();
+    // If the length is unknown then the head request is opened unbounded, which resolves the
+    // length. Only its first range is read, after which it is closed.
+    DataSpec headSpec = dataSpec.length == C.LENGTH_UNSET ? dataSpec
+        : dataSpec.subrange(0, rangeLength);
+    long openedLength = headSource.open(headSpec);
+    long length = dataSpec.length != C.LENGTH_UNSET ? dataSpec.length : openedLength;
+    if (length == C.LENGTH_UNSET || length < minParallelLength) {
+      directSource = headSource;
+      return openedLength;
+    }
+
+    directSource = headSource;
+    headOrigin = origin;
+    headLength = rangeLength;
+    headBytesRemaining = rangeLength;
+    parallelLoad = new ParallelLoad(dataSpec, origin, rangeLength, length);
+    parallelLoad.start();
+    return length;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    if (parallelLoad == null) {
+      return directSource.read(buffer, offset, readLength);
+    }
+    if (headBytesRemaining > 0) {
+      int bytesRead =
+          directSource.read(buffer, offset, (int) Math.min(headBytesRemaining, readLength));
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        throw new EOFException();
+      }
+      headBytesRemaining -= bytesRead;
+      if (headBytesRemaining == 0) {
+        throughputTracker.onRangeTransferred(headOrigin, headLength,
+            clock.elapsedRealtime() - headStartTimeMs);
+        DataSource headSource = directSource;
+        directSource = null;
+        headSource.close();
+      }
+      return bytesRead;
+    }
+    return parallelLoad.read(buffer, offset, readLength);
+  }
+
+  @Override
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() throws IOException {
+    uri = null;
+    headBytesRemaining = 0;
+    if (parallelLoad != null) {
+      parallelLoad.cancel();
+      parallelLoad = null;
+    }
+    if (directSource != null) {
+      try {
+        directSource.close();
+      } finally {
+        directSource = null;
+      }
+    }
+  }
+
+  private int getOrigin(String uri) {
+    for (int i = 0; i < baseUris.length; i++) {
+      if (uri.startsWith(baseUris[i])) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  /**
+   * A contiguous range of the resource and the data loaded for it so far.
+   */
+  private static final class Range {
+
+    public final long position;
+    public final byte[] data;
+
+    /** The number of bytes of {@link #data} that have been loaded. Guarded by the load's lock. */
+    public int bytesLoaded;
+    /** Whether an origin is currently loading the range. Guarded by the load's lock. */
+    public boolean loading;
+
+    public Range(long position, int length) {
+      this.position = position;
+      this.data = new byte[length];
+    }
+
+    public boolean isLoaded() {
+      return bytesLoaded == data.length;
+    }
+
+  }
+
+  /**
+   * The state of a single opened request that is being loaded in parallel. Cancelled loads are
+   * abandoned by their workers without affecting a subsequently opened request.
+   */
+  private final class ParallelLoad {
+
+    private final DataSpec dataSpec;
+    private final int requestOrigin;
+    private final long endPosition;
+    private final Object lock;
+    /** Ranges that have been claimed but not yet read, in order of position. */
+    private final ArrayDeque<Range> pendingRanges;
+    /** Ranges that were partially loaded by an origin that failed. */
+    private final ArrayDeque<Range> retryRanges;
+    private final int maxPendingRanges;
+
+    private long nextClaimPosition;
+    private int readOffsetInRange;
+    private int activeOriginCount;
+    private IOException fatalError;
+    private volatile boolean canceled;
+
+    public ParallelLoad(DataSpec dataSpec, int requestOrigin, long startPosition, long length) {
+      this.dataSpec = dataSpec;
+      this.requestOrigin = requestOrigin;
+      this.endPosition = length;
+      this.nextClaimPosition = startPosition;
+      lock = new Object();
+      pendingRanges = new ArrayDeque<>();
+      retryRanges = new ArrayDeque<>();
+      maxPendingRanges = baseUris.length * MAX_PENDING_RANGES_PER_ORIGIN;
+    }
+
+    public void start() {
+      activeOriginCount = baseUris.length;
+      for (int i = 0; i < baseUris.length; i++) {
+        final int origin = i;
+        executorService.execute(new Runnable() {
+          @Override
+          public void run() {
+            runOrigin(origin);
+          }
+        });
+      }
+    }
+
+    public void cancel() {
+      synchronized (lock) {
+        canceled = true;
+        lock.notifyAll();
+      }
+    }
+
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      Range range;
+      int bytesAvailable;
+      synchronized (lock) {
+        while (true) {
+          range = pendingRanges.peekFirst();
+          if (range == null && nextClaimPosition == endPosition) {
+            return C.RESULT_END_OF_INPUT;
+          } else if (range != null && range.bytesLoaded > readOffsetInRange) {
+            bytesAvailable = range.bytesLoaded - readOffsetInRange;
+            break;
+          } else if (fatalError != null) {
+            throw fatalError;
+          }
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+          }
+        }
+      }
+      // Loaded bytes are never modified, so they can be copied without holding the lock.
+      int bytesToRead = Math.min(readLength, bytesAvailable);
+      System.arraycopy(range.data, readOffsetInRange, buffer, offset, bytesToRead);
+      readOffsetInRange += bytesToRead;
+      if (readOffsetInRange == range.data.length) {
+        synchronized (lock) {
+          pendingRanges.removeFirst();
+          readOffsetInRange = 0;
+          lock.notifyAll();
+        }
+      }
+      return bytesToRead;
+    }
+
+    private void runOrigin(int origin) {
+      DataSource dataSource = upstreamFactory.createDataSource();
+      Uri originUri = Uri.parse(baseUris[origin]
+          + dataSpec.uri.toString().substring(baseUris[requestOrigin].length()));
+      Range range;
+      while ((range = claimRange(origin)) != null) {
+        try {
+          loadRange(dataSource, originUri, range, origin);
+        } catch (IOException e) {
+          throughputTracker.onRangeFailed(origin);
+          onOriginFailed(range, e);
+          return;
+        } finally {
+          Util.closeQuietly(dataSource);
+        }
+      }
+    }
+
+    private Range claimRange(int origin) {
+      synchronized (lock) {
+        while (!canceled) {
+          if (!retryRanges.isEmpty()) {
+            Range range = retryRanges.removeFirst();
+            range.loading = true;
+            return range;
+          } else if (nextClaimPosition < endPosition) {
+            if (pendingRanges.size() < maxPendingRanges) {
+              int length = (int) Math.min(throughputTracker.getRangeLength(origin, rangeLength),
+                  endPosition - nextClaimPosition);
+              Range range = new Range(nextClaimPosition, length);
+              range.loading = true;
+              nextClaimPosition += length;
+              pendingRanges.addLast(range);
+              return range;
+            }
+          } else if (!isAnyRangeLoading()) {
+            // Everything has been claimed and loaded, and no range can require a retry.
+            activeOriginCount--;
+            return null;
+          }
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+        }
+        activeOriginCount--;
+        return null;
+      }
+    }
+
+    private void loadRange(DataSource dataSource, Uri originUri, Range range, int origin)
+        throws IOException {
+      int bytesLoaded;
+      synchronized (lock) {
+        bytesLoaded = range.bytesLoaded;
+      }
+      long startTimeMs = clock.elapsedRealtime();
+      long rangeOffset = range.position + bytesLoaded;
+      dataSource.open(new DataSpec(originUri, dataSpec.absoluteStreamPosition + rangeOffset,
+          dataSpec.position + rangeOffset, range.data.length - bytesLoaded, dataSpec.key,
+          dataSpec.flags));
+      int bytesTransferred = 0;
+      while (bytesLoaded < range.data.length) {
+        if (canceled) {
+          return;
+        }
+        int bytesRead = dataSource.read(range.data, bytesLoaded, range.data.length - bytesLoaded);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          throw new EOFException();
+        }
+        bytesLoaded += bytesRead;
+        bytesTransferred += bytesRead;
+        synchronized (lock) {
+          range.bytesLoaded = bytesLoaded;
+          if (range == pendingRanges.peekFirst()) {
+            lock.notifyAll();
+          }
+        }
+      }
+      throughputTracker.onRangeTransferred(origin, bytesTransferred,
+          clock.elapsedRealtime() - startTimeMs);
+      synchronized (lock) {
+        range.loading = false;
+        lock.notifyAll();
+      }
+    }
+
+    private void onOriginFailed(Range range, IOException e) {
+      synchronized (lock) {
+        range.loading = false;
+        activeOriginCount--;
+        if (activeOriginCount == 0) {
+          fatalError = e;
+        } else {
+          retryRanges.addLast(range);
+        }
+        lock.notifyAll();
+      }
+    }
+
+    private boolean isAnyRangeLoading() {
+      for (Range range : pendingRanges) {
+        if (range.loading) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.upstream.DataSource.Factory;
+import com.google.android.exoplayer2.upstream.ParallelRangeDataSource.ThroughputTracker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A {@link DataSource.Factory} that produces {@link ParallelRangeDataSource} instances. All
+ * instances share a single {@link ThroughputTracker}, so range lengths are balanced using the
+ * throughput measured across all requests.
+ */
+public final class ParallelRangeDataSourceFactory implements Factory {
+
+  private final Factory upstreamFactory;
+  private final List<Uri> baseUris;
+  private final ExecutorService executorService;
+  private final ThroughputTracker throughputTracker;
+  private final int rangeLength;
+  private final long minParallelLength;
+
+  /**
+   * @param upstreamFactory A {@link DataSource.Factory} to be used to create the upstream {@link
+   *     DataSource}s for {@link ParallelRangeDataSource}.
+   * @param baseUris The base URIs of the equivalent origins.
+   * @param executorService The {@link ExecutorService} on which ranges are fetched.
+   */
+  public ParallelRangeDataSourceFactory(Factory upstreamFactory, List<Uri> baseUris,
+      ExecutorService executorService) {
+    this(upstreamFactory, baseUris, executorService, ParallelRangeDataSource.DEFAULT_RANGE_LENGTH,
+        ParallelRangeDataSource.DEFAULT_MIN_PARALLEL_LENGTH);
+  }
+
+  /**
+   * @param upstreamFactory A {@link DataSource.Factory} to be used to create the upstream {@link
+   *     DataSource}s for {@link ParallelRangeDataSource}.
+   * @param baseUris The base URIs of the equivalent origins.
+   * @param executorService The {@link ExecutorService} on which ranges are fetched.
+   * @param rangeLength The length of the ranges if all origins have the same throughput.
+   * @param minParallelLength The minimum resource length for which ranges are fetched in parallel.
+   */
+  public ParallelRangeDataSourceFactory(Factory upstreamFactory, List<Uri> baseUris,
+      ExecutorService executorService, int rangeLength, long minParallelLength) {
+    this.upstreamFactory = upstreamFactory;
+    this.baseUris = new ArrayList<>(baseUris);
+    this.executorService = executorService;
+    this.rangeLength = rangeLength;
+    this.minParallelLength = minParallelLength;
+    throughputTracker = new ThroughputTracker(baseUris.size());
+  }
+
+  /**
+   * Returns the {@link ThroughputTracker} shared by the created data sources.
+   */
+  public ThroughputTracker getThroughputTracker() {
+    return throughputTracker;
+  }
+
+  @Override
+  public ParallelRangeDataSource createDataSource() {
+    return new ParallelRangeDataSource(upstreamFactory, baseUris, executorService,
+        throughputTracker, rangeLength, minParallelLength);
+  }
+
+}
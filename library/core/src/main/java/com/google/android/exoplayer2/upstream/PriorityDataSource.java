@@ -27,6 +27,8 @@ import java.io.IOException;
  * Calls to {@link #open(DataSpec)} and {@link #read(byte[], int, int)} are allowed to proceed only
  * if there are no higher priority tasks registered to the {@link PriorityTaskManager}. If there
  * exists a higher priority task then {@link PriorityTaskManager.PriorityTooLowException} is thrown.
+ * Bytes read are reported to the {@link PriorityTaskManager}, for use by its weighted fair sharing
+ * and bandwidth quotas.
  * <p>
  * Instances of this class are intended to be used as parts of (possibly larger) tasks that are
  * registered with the {@link PriorityTaskManager}, and hence do <em>not</em> register as tasks
@@ -59,7 +61,11 @@ public final class PriorityDataSource implements DataSource {
   @Override
   public int read(byte[] buffer, int offset, int max) throws IOException {
     priorityTaskManager.proceedOrThrow(priority);
-    return upstream.read(buffer, offset, max);
+    int bytesRead = upstream.read(buffer, offset, max);
+    if (bytesRead > 0) {
+      priorityTaskManager.onBytesTransferred(priority, bytesRead);
+    }
+    return bytesRead;
   }
 
   @Override
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.Queue;
+
+/**
+ * Reorders RTP packets by sequence number.
+ * <p>
+ * Packets are held until all packets with earlier sequence numbers have been released, and are
+ * then added to an output queue in sequence order. A gap in the sequence is skipped once later
+ * packets have been held for longer than the maximum delay, or once the gap no longer fits in the
+ * buffer. A jump in the sequence of at least twice the capacity of the buffer is treated as the
+ * sender restarting, and the buffer resynchronizes to the new sequence.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @param <T> The type of the packets.
+ */
+/* package */ final class RtpJitterBuffer<T> {
+
+  private static final int SEQUENCE_NUMBER_MODULUS = 1 << 16;
+
+  private final int capacity;
+  private final int maxDelayMs;
+  private final Queue<T> output;
+  private final Object[] heldPackets;
+
+  private int nextSequenceNumber;
+  private int head;
+  private int heldPacketCount;
+  private long oldestHeldPacketTimeMs;
+  private long lostPacketCount;
+  private long latePacketCount;
+
+  /**
+   * @param capacity The number of packets that can be held for reordering.
+   * @param maxDelayMs The maximum time that a packet is held waiting for a missing earlier packet,
+   *     in milliseconds.
+   * @param output The queue to which packets are added in sequence order.
+   */
+  public RtpJitterBuffer(int capacity, int maxDelayMs, Queue<T> output) {
+    Assertions.checkArgument(capacity > 0);
+    this.capacity = capacity;
+    this.maxDelayMs = maxDelayMs;
+    this.output = output;
+    heldPackets = new Object[capacity];
+    nextSequenceNumber = C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns the number of packets that were never received, as inferred from skipped gaps in the
+   * sequence.
+   */
+  public long getLostPacketCount() {
+    return lostPacketCount;
+  }
+
+  /**
+   * Returns the number of packets that were discarded because they arrived after their position in
+   * the sequence had been skipped or released, or were duplicates.
+   */
+  public long getLatePacketCount() {
+    return latePacketCount;
+  }
+
+  /**
+   * Returns the time at which a gap in the sequence will be skipped if the missing packet hasn't
+   * arrived, in milliseconds, or {@link C#TIME_UNSET} if no packets are held.
+   */
+  public long getGapDeadlineMs() {
+    return heldPacketCount == 0 ? C.TIME_UNSET : oldestHeldPacketTimeMs + maxDelayMs;
+  }
+
+  /**
+   * Adds a received packet. The packet and any held packets that follow it in the sequence are
+   * added to the output queue if no earlier packets are missing.
+   *
+   * @param packet The packet.
+   * @param sequenceNumber The RTP sequence number of the packet.
+   * @param nowMs The current time, in milliseconds.
+   * @return Whether the packet was accepted. If false, the packet is late or a duplicate, and the
+   *     caller may reuse it.
+   */
+  public boolean add(T packet, int sequenceNumber, long nowMs) {
+    if (nextSequenceNumber == C.INDEX_UNSET) {
+      nextSequenceNumber = sequenceNumber;
+    }
+    // The signed distance from the next expected sequence number, allowing for wraparound.
+    int distance = (short) (sequenceNumber - nextSequenceNumber);
+    if (Math.abs(distance) >= 2 * capacity) {
+      // The sender has jumped far away in the sequence (e.g. it restarted). Release the held
+      // packets and resynchronize, without counting the jump itself as loss.
+      while (heldPacketCount > 0) {
+        skipSequenceNumber();
+      }
+      nextSequenceNumber = sequenceNumber;
+      distance = 0;
+    }
+    if (distance < 0 || (distance < capacity && heldPackets[getIndex(distance)] != null)) {
+      latePacketCount++;
+      return false;
+    }
+    while (distance >= capacity) {
+      skipSequenceNumber();
+      distance--;
+    }
+    if (heldPacketCount == 0) {
+      oldestHeldPacketTimeMs = nowMs;
+    }
+    heldPackets[getIndex(distance)] = packet;
+    heldPacketCount++;
+    releaseInOrderPackets(nowMs);
+    return true;
+  }
+
+  /**
+   * Skips missing sequence numbers if packets following a gap have been held for longer than the
+   * maximum delay.
+   *
+   * @param nowMs The current time, in milliseconds.
+   * @return Whether any packets were added to the output queue.
+   */
+  public boolean maybeSkipGap(long nowMs) {
+    if (heldPacketCount == 0 || nowMs - oldestHeldPacketTimeMs < maxDelayMs) {
+      return false;
+    }
+    while (heldPackets[head] == null) {
+      skipSequenceNumber();
+    }
+    releaseInOrderPackets(nowMs);
+    return true;
+  }
+
+  /**
+   * Releases any held packet with the next expected sequence number, or counts it as lost, and
+   * advances the next expected sequence number.
+   */
+  private void skipSequenceNumber() {
+    if (heldPackets[head] != null) {
+      releaseHeadPacket();
+    } else {
+      lostPacketCount++;
+      advanceHead();
+    }
+  }
+
+  private void releaseInOrderPackets(long nowMs) {
+    boolean releasedPackets = false;
+    while (heldPackets[head] != null) {
+      releaseHeadPacket();
+      releasedPackets = true;
+    }
+    if (releasedPackets && heldPacketCount > 0) {
+      // The remaining held packets all follow a new gap, so the delay restarts from now.
+      oldestHeldPacketTimeMs = nowMs;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void releaseHeadPacket() {
+    output.add((T) heldPackets[head]);
+    heldPackets[head] = null;
+    heldPacketCount--;
+    advanceHead();
+  }
+
+  private void advanceHead() {
+    nextSequenceNumber = (nextSequenceNumber + 1) % SEQUENCE_NUMBER_MODULUS;
+    head = (head + 1) % capacity;
+  }
+
+  /**
+   * Returns the index of the packet at a given distance from the next expected sequence number.
+   */
+  private int getIndex(int distance) {
+    return (head + distance) % capacity;
+  }
+
+}
@@ -417,10 +417,37 @@ public final class NalUnitUtil {
       }
     }
 
+    // We're looking for the NAL unit start code prefix 0x000001, which begins with a zero byte.
+    // Test eight bytes at a time for a zero byte, and only check for a prefix at zero bytes.
+    int wordStartOffset = startOffset;
+    int wordLimit = endOffset - 8;
+    while (wordStartOffset <= wordLimit) {
+      long word = readLittleEndianLong(data, wordStartOffset);
+      // Has the high bit of each zero byte set. Bytes above the lowest zero byte may also be set,
+      // so only the lowest set bit is meaningful.
+      long zeroBytes = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+      if (zeroBytes == 0) {
+        wordStartOffset += 8;
+        continue;
+      }
+      int zeroOffset = wordStartOffset + (Long.numberOfTrailingZeros(zeroBytes) >> 3);
+      if (zeroOffset + 3 >= endOffset) {
+        // A prefix here wouldn't be followed by a byte. Leave it to the byte-wise check below.
+        wordStartOffset = zeroOffset;
+        break;
+      }
+      if (data[zeroOffset + 1] == 0 && data[zeroOffset + 2] == 1) {
+        if (prefixFlags != null) {
+          clearPrefixFlags(prefixFlags);
+        }
+        return zeroOffset;
+      }
+      wordStartOffset = zeroOffset + 1;
+    }
+
     int limit = endOffset - 1;
-    // We're looking for the NAL unit start code prefix 0x000001. The value of i tracks the index of
-    // the third byte.
-    for (int i = startOffset + 2; i < limit; i += 3) {
+    // Check the remaining bytes. The value of i tracks the index of the third byte.
+    for (int i = wordStartOffset + 2; i < limit; i += 3) {
       if ((data[i] & 0xFE) != 0) {
         // There isn't a NAL prefix here, or at the next two positions. Do nothing and let the
         // loop advance the index by three.
@@ -463,6 +490,17 @@ public final class NalUnitUtil {
     prefixFlags[2] = false;
   }
 
+  private static long readLittleEndianLong(byte[] data, int offset) {
+    return (data[offset] & 0xFFL)
+        | (data[offset + 1] & 0xFFL) << 8
+        | (data[offset + 2] & 0xFFL) << 16
+        | (data[offset + 3] & 0xFFL) << 24
+        | (data[offset + 4] & 0xFFL) << 32
+        | (data[offset + 5] & 0xFFL) << 40
+        | (data[offset + 6] & 0xFFL) << 48
+        | (data[offset + 7] & 0xFFL) << 56;
+  }
+
   private static int findNextUnescapeIndex(byte[] bytes, int offset, int limit) {
     for (int i = offset; i < limit - 2; i++) {
       if (bytes[i] == 0x00 && bytes[i + 1] == 0x00 && bytes[i + 2] == 0x03) {
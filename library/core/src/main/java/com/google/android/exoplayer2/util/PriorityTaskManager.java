@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.util;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.PriorityQueue;
 
 /**
@@ -26,6 +27,21 @@ import java.util.PriorityQueue;
  * unregister. A registered task will prevent tasks of lower priority from proceeding, and should
  * call {@link #proceed(int)}, {@link #proceedNonBlocking(int)} or {@link #proceedOrThrow(int)} each
  * time it wishes to check whether it is itself allowed to proceed.
+ * <p>
+ * By default priorities are strict. Two optional mechanisms relax or tighten this per priority:
+ * <ul>
+ *   <li>Weighted fair sharing. If a priority is given a weight with {@link #setWeight(int, int)},
+ *   and all registered higher priorities also have weights, tasks of that priority are allowed to
+ *   proceed alongside the higher priority tasks for as long as the number of bytes they have
+ *   transferred, divided by their weight, does not exceed that of any other registered weighted
+ *   priority. Transferred bytes are reported with {@link #onBytesTransferred(int, long)}. A higher
+ *   priority that does not report its transfers is never overtaken by this mechanism.</li>
+ *   <li>Bandwidth quotas. If a priority is given a quota with
+ *   {@link #setBandwidthQuota(int, long)}, its tasks are not allowed to proceed while the bytes
+ *   they have reported exceed the quota, even if they have the highest priority.</li>
+ * </ul>
+ * The time tasks spend waiting in {@link #proceed(int)}, and the number of times they are not
+ * allowed to proceed, are recorded per priority.
  */
 public final class PriorityTaskManager {
 
@@ -40,17 +56,84 @@ public final class PriorityTaskManager {
 
   }
 
+  /**
+   * The number of bytes by which a weighted priority may get ahead of its fair share before it is
+   * made to wait. Avoids switching on every read when the shares are nearly equal.
+   */
+  private static final long FAIR_SHARE_SLACK_BYTES = 256 * 1024;
+  /**
+   * The maximum burst allowed by a bandwidth quota, expressed as the time the quota takes to
+   * accumulate it.
+   */
+  private static final long QUOTA_BURST_MS = 1000;
+  /**
+   * Returned by {@link #getProceedDelayMs(int, long)} if the task must wait until the state of the
+   * manager changes.
+   */
+  private static final long DELAY_UNTIL_NOTIFIED = -1;
+
   private final Object lock = new Object();
+  private final Clock clock;
 
   // Guarded by lock.
   private final PriorityQueue<Integer> queue;
+  private final HashMap<Integer, PriorityClass> priorityClasses;
   private int highestPriority;
+  private int waitingTaskCount;
 
   public PriorityTaskManager() {
+    this(Clock.DEFAULT);
+  }
+
+  /**
+   * @param clock The {@link Clock} used for bandwidth quotas and wait time measurements.
+   */
+  public PriorityTaskManager(Clock clock) {
+    this.clock = clock;
     queue = new PriorityQueue<>(10, Collections.reverseOrder());
+    priorityClasses = new HashMap<>();
     highestPriority = Integer.MIN_VALUE;
   }
 
+  /**
+   * Sets the weight of a priority for weighted fair sharing.
+   *
+   * @param priority The priority.
+   * @param weight The weight of the priority relative to other weighted priorities, or 0 for the
+   *     priority to be strictly subordinate to higher priorities (the default).
+   */
+  public void setWeight(int priority, int weight) {
+    Assertions.checkArgument(weight >= 0);
+    synchronized (lock) {
+      PriorityClass priorityClass = getPriorityClass(priority);
+      if (priorityClass.weight == 0 && weight > 0) {
+        // Don't let the priority claim a backlog of service it was never entitled to.
+        priorityClass.virtualTime = Math.max(priorityClass.virtualTime,
+            getMinVirtualTime(priorityClass));
+      }
+      priorityClass.weight = weight;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Sets the bandwidth quota of a priority.
+   *
+   * @param priority The priority.
+   * @param maxBitrate The maximum bitrate at which tasks of the priority may transfer data, in
+   *     bits per second, or 0 to remove the quota.
+   */
+  public void setBandwidthQuota(int priority, long maxBitrate) {
+    Assertions.checkArgument(maxBitrate >= 0);
+    synchronized (lock) {
+      PriorityClass priorityClass = getPriorityClass(priority);
+      priorityClass.quotaBytesPerSecond = maxBitrate / 8;
+      priorityClass.quotaTokens = priorityClass.quotaBytesPerSecond * QUOTA_BURST_MS / 1000;
+      priorityClass.quotaUpdateTimeMs = clock.elapsedRealtime();
+      lock.notifyAll();
+    }
+  }
+
   /**
    * Register a new task. The task must call {@link #remove(int)} when done.
    *
@@ -60,6 +143,38 @@ public final class PriorityTaskManager {
     synchronized (lock) {
       queue.add(priority);
       highestPriority = Math.max(highestPriority, priority);
+      PriorityClass priorityClass = getPriorityClass(priority);
+      if (priorityClass.registeredTaskCount++ == 0 && priorityClass.weight > 0) {
+        priorityClass.virtualTime = Math.max(priorityClass.virtualTime,
+            getMinVirtualTime(priorityClass));
+      }
+      if (waitingTaskCount > 0) {
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Reports that a task has transferred data. Required for weighted fair sharing and bandwidth
+   * quotas, and otherwise only used for {@link #getBytesTransferred(int)}.
+   *
+   * @param priority The priority of the task.
+   * @param bytes The number of bytes transferred.
+   */
+  public void onBytesTransferred(int priority, long bytes) {
+    synchronized (lock) {
+      PriorityClass priorityClass = getPriorityClass(priority);
+      priorityClass.bytesTransferred += bytes;
+      if (priorityClass.weight > 0) {
+        priorityClass.virtualTime += (double) bytes / priorityClass.weight;
+      }
+      if (priorityClass.quotaBytesPerSecond > 0) {
+        priorityClass.updateQuotaTokens(clock.elapsedRealtime());
+        priorityClass.quotaTokens -= bytes;
+      }
+      if (waitingTaskCount > 0) {
+        lock.notifyAll();
+      }
     }
   }
 
@@ -71,8 +186,22 @@ public final class PriorityTaskManager {
    */
   public void proceed(int priority) throws InterruptedException {
     synchronized (lock) {
-      while (highestPriority != priority) {
-        lock.wait();
+      long startTimeMs = clock.elapsedRealtime();
+      long delayMs = getProceedDelayMs(priority, startTimeMs);
+      if (delayMs == 0) {
+        return;
+      }
+      waitingTaskCount++;
+      try {
+        do {
+          lock.wait(delayMs == DELAY_UNTIL_NOTIFIED ? 0 : delayMs);
+          delayMs = getProceedDelayMs(priority, clock.elapsedRealtime());
+        } while (delayMs != 0);
+      } finally {
+        waitingTaskCount--;
+        PriorityClass priorityClass = getPriorityClass(priority);
+        priorityClass.waitCount++;
+        priorityClass.waitTimeMs += clock.elapsedRealtime() - startTimeMs;
       }
     }
   }
@@ -85,7 +214,11 @@ public final class PriorityTaskManager {
    */
   public boolean proceedNonBlocking(int priority) {
     synchronized (lock) {
-      return highestPriority == priority;
+      if (getProceedDelayMs(priority, clock.elapsedRealtime()) != 0) {
+        getPriorityClass(priority).waitCount++;
+        return false;
+      }
+      return true;
     }
   }
 
@@ -97,7 +230,8 @@ public final class PriorityTaskManager {
    */
   public void proceedOrThrow(int priority) throws PriorityTooLowException {
     synchronized (lock) {
-      if (highestPriority != priority) {
+      if (getProceedDelayMs(priority, clock.elapsedRealtime()) != 0) {
+        getPriorityClass(priority).waitCount++;
         throw new PriorityTooLowException(priority, highestPriority);
       }
     }
@@ -110,10 +244,144 @@ public final class PriorityTaskManager {
    */
   public void remove(int priority) {
     synchronized (lock) {
-      queue.remove(priority);
+      if (queue.remove(priority)) {
+        getPriorityClass(priority).registeredTaskCount--;
+      }
       highestPriority = queue.isEmpty() ? Integer.MIN_VALUE : queue.peek();
       lock.notifyAll();
     }
   }
 
+  /**
+   * Returns the total time tasks of a priority have spent blocked in {@link #proceed(int)}, in
+   * milliseconds.
+   *
+   * @param priority The priority.
+   */
+  public long getWaitTimeMs(int priority) {
+    synchronized (lock) {
+      PriorityClass priorityClass = priorityClasses.get(priority);
+      return priorityClass == null ? 0 : priorityClass.waitTimeMs;
+    }
+  }
+
+  /**
+   * Returns the number of times tasks of a priority were not immediately allowed to proceed.
+   *
+   * @param priority The priority.
+   */
+  public int getWaitCount(int priority) {
+    synchronized (lock) {
+      PriorityClass priorityClass = priorityClasses.get(priority);
+      return priorityClass == null ? 0 : priorityClass.waitCount;
+    }
+  }
+
+  /**
+   * Returns the total number of bytes reported for a priority through
+   * {@link #onBytesTransferred(int, long)}.
+   *
+   * @param priority The priority.
+   */
+  public long getBytesTransferred(int priority) {
+    synchronized (lock) {
+      PriorityClass priorityClass = priorityClasses.get(priority);
+      return priorityClass == null ? 0 : priorityClass.bytesTransferred;
+    }
+  }
+
+  // Internal methods. All must be called while holding lock.
+
+  private PriorityClass getPriorityClass(int priority) {
+    PriorityClass priorityClass = priorityClasses.get(priority);
+    if (priorityClass == null) {
+      priorityClass = new PriorityClass(priority);
+      priorityClasses.put(priority, priorityClass);
+    }
+    return priorityClass;
+  }
+
+  /**
+   * Returns 0 if a task of the given priority may proceed, the time after which it should check
+   * again if it's waiting for its bandwidth quota, or {@link #DELAY_UNTIL_NOTIFIED}.
+   */
+  private long getProceedDelayMs(int priority, long nowMs) {
+    PriorityClass priorityClass = priorityClasses.get(priority);
+    if (priorityClass != null && priorityClass.quotaBytesPerSecond > 0) {
+      priorityClass.updateQuotaTokens(nowMs);
+      if (priorityClass.quotaTokens < 0) {
+        return Math.max(1, -priorityClass.quotaTokens * 1000 / priorityClass.quotaBytesPerSecond);
+      }
+    }
+    if (highestPriority == priority
+        || (priorityClass != null && isWithinFairShare(priorityClass))) {
+      return 0;
+    }
+    return DELAY_UNTIL_NOTIFIED;
+  }
+
+  private boolean isWithinFairShare(PriorityClass priorityClass) {
+    if (priorityClass.weight == 0 || priorityClass.registeredTaskCount == 0) {
+      return false;
+    }
+    for (PriorityClass other : priorityClasses.values()) {
+      if (other.priority > priorityClass.priority && other.registeredTaskCount > 0
+          && other.weight == 0) {
+        // A strictly prioritized task is registered.
+        return false;
+      }
+    }
+    double slack = (double) FAIR_SHARE_SLACK_BYTES / priorityClass.weight;
+    return priorityClass.virtualTime - slack <= getMinVirtualTime(priorityClass);
+  }
+
+  /**
+   * Returns the minimum virtual time of the registered weighted priorities other than the one
+   * given, or 0 if there are none.
+   */
+  private double getMinVirtualTime(PriorityClass excludedPriorityClass) {
+    double minVirtualTime = Double.MAX_VALUE;
+    for (PriorityClass other : priorityClasses.values()) {
+      if (other != excludedPriorityClass && other.registeredTaskCount > 0 && other.weight > 0) {
+        minVirtualTime = Math.min(minVirtualTime, other.virtualTime);
+      }
+    }
+    return minVirtualTime == Double.MAX_VALUE ? 0 : minVirtualTime;
+  }
+
+  private static final class PriorityClass {
+
+    public final int priority;
+
+    public int registeredTaskCount;
+    public int weight;
+    /** Bytes transferred, divided by weight, since the priority was last given a fair share. */
+    public double virtualTime;
+    public long quotaBytesPerSecond;
+    public long quotaTokens;
+    public long quotaUpdateTimeMs;
+    public long bytesTransferred;
+    public long waitTimeMs;
+    public int waitCount;
+
+    public PriorityClass(int priority) {
+      this.priority = priority;
+    }
+
+    public void updateQuotaTokens(long nowMs) {
+      long maxTokens = quotaBytesPerSecond * QUOTA_BURST_MS / 1000;
+      long addedTokens = quotaBytesPerSecond * (nowMs - quotaUpdateTimeMs) / 1000;
+      quotaTokens += addedTokens;
+      if (quotaTokens >= maxTokens) {
+        quotaTokens = maxTokens;
+        quotaUpdateTimeMs = nowMs;
+      } else {
+        // Only consume the time that was converted into tokens, so that frequent updates don't
+        // lose fractional tokens.
+        quotaUpdateTimeMs += addedTokens * 1000 / quotaBytesPerSecond;
+      }
+    }
+
+  }
+
 }
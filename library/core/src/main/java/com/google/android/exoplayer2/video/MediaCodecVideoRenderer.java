@@ -83,6 +83,12 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
   // pending output streams that have fewer frames than the codec latency.
   private static final int MAX_PENDING_OUTPUT_STREAM_OFFSET_COUNT = 10;
 
+  // How early a frame may be rendered, relative to its release time. From API 21 the framework
+  // times the release of frames rendered early. Before API 21 the renderer sleeps until the release
+  // time, so only frames that are about to be released are rendered.
+  private static final long MAX_EARLY_RENDER_US_V21 = 50000;
+  private static final long MAX_EARLY_RENDER_US = 30000;
+
   private final Context context;
   private final VideoFrameReleaseTimeHelper frameReleaseTimeHelper;
   private final EventDispatcher eventDispatcher;
@@ -106,6 +112,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
   private int consecutiveDroppedFrameCount;
   private int buffersInCodecCount;
   private long lastRenderTimeUs;
+  private long earlyFrameRenderDelayUs;
 
   private int pendingRotationDegrees;
   private float pendingPixelWidthHeightRatio;
@@ -289,6 +296,22 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     }
   }
 
+  @Override
+  public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+    earlyFrameRenderDelayUs = C.TIME_UNSET;
+    super.render(positionUs, elapsedRealtimeUs);
+  }
+
+  @Override
+  public long getMaxRenderDelayUs() {
+    long defaultMaxRenderDelayUs = super.getMaxRenderDelayUs();
+    if (earlyFrameRenderDelayUs == C.TIME_UNSET || hasReadStreamToEnd()) {
+      return defaultMaxRenderDelayUs;
+    }
+    // Nothing needs to happen until the pending frame enters the release window.
+    return Math.max(defaultMaxRenderDelayUs, earlyFrameRenderDelayUs);
+  }
+
   @Override
   public boolean isReady() {
     if (super.isReady() && (renderedFirstFrame || (dummySurface != null && surface == dummySurface)
@@ -592,13 +615,13 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
 
     if (Util.SDK_INT >= 21) {
       // Let the underlying framework time the release.
-      if (earlyUs < 50000) {
+      if (earlyUs < MAX_EARLY_RENDER_US_V21) {
         renderOutputBufferV21(codec, bufferIndex, presentationTimeUs, adjustedReleaseTimeNs);
         return true;
       }
     } else {
       // We need to time the release ourselves.
-      if (earlyUs < 30000) {
+      if (earlyUs < MAX_EARLY_RENDER_US) {
         if (earlyUs > 11000) {
           // We're a little too early to render the frame. Sleep until the frame can be rendered.
           // Note: The 11ms threshold was chosen fairly arbitrarily.
@@ -616,6 +639,8 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     }
 
     // We're either not playing, or it's not time to render the frame yet.
+    earlyFrameRenderDelayUs =
+        earlyUs - (Util.SDK_INT >= 21 ? MAX_EARLY_RENDER_US_V21 : MAX_EARLY_RENDER_US);
     return false;
   }
 
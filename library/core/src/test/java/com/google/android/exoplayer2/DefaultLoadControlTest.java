@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link DefaultLoadControl}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class DefaultLoadControlTest {
+
+  private static final int SEGMENT_SIZE = C.DEFAULT_BUFFER_SEGMENT_SIZE;
+  private static final int TARGET_BUFFER_BYTES = 4 * SEGMENT_SIZE;
+  private static final int BACK_BUFFER_DURATION_MS = 8000;
+  private static final long BACK_BUFFER_DURATION_US = BACK_BUFFER_DURATION_MS * 1000L;
+
+  private DefaultAllocator allocator;
+  private DefaultLoadControl loadControl;
+
+  @Before
+  public void setUp() {
+    allocator = new DefaultAllocator(/* trimOnReset= */ true, SEGMENT_SIZE);
+    loadControl =
+        new DefaultLoadControl(
+            allocator,
+            DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+            TARGET_BUFFER_BYTES,
+            DefaultLoadControl.DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS,
+            /* priorityTaskManager= */ null,
+            BACK_BUFFER_DURATION_MS,
+            DefaultLoadControl.DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME);
+    loadControl.onPrepared();
+    loadControl.onTracksSelected(
+        new Renderer[0], TrackGroupArray.EMPTY, new TrackSelectionArray());
+  }
+
+  @Test
+  public void testBackBufferDurationIsMaximumWhenNothingIsAllocated() {
+    assertThat(loadControl.getBackBufferDurationUs()).isEqualTo(BACK_BUFFER_DURATION_US);
+  }
+
+  @Test
+  public void testBackBufferDurationScalesWithUnallocatedTargetBuffer() {
+    allocator.allocate();
+
+    assertThat(loadControl.getBackBufferDurationUs()).isEqualTo(BACK_BUFFER_DURATION_US * 3 / 4);
+  }
+
+  @Test
+  public void testBackBufferKeepsReservedShareWhenTargetBufferIsFull() {
+    for (int i = 0; i < TARGET_BUFFER_BYTES / SEGMENT_SIZE + 1; i++) {
+      allocator.allocate();
+    }
+
+    assertThat(loadControl.getBackBufferDurationUs())
+        .isEqualTo(
+            BACK_BUFFER_DURATION_US * DefaultLoadControl.MIN_BACK_BUFFER_SHARE_PERCENT / 100);
+  }
+
+  @Test
+  public void testBackBufferGrowsAgainWhenMemoryIsReleased() {
+    Allocation[] allocations = new Allocation[TARGET_BUFFER_BYTES / SEGMENT_SIZE];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    allocator.release(allocations);
+
+    assertThat(loadControl.getBackBufferDurationUs()).isEqualTo(BACK_BUFFER_DURATION_US);
+  }
+
+  @Test
+  public void testOnBackwardSeekCountsSeeksAndBufferHits() {
+    loadControl.onBackwardSeek(/* seekBackDurationUs= */ 1000000, /* inBuffer= */ true);
+    loadControl.onBackwardSeek(/* seekBackDurationUs= */ 20000000, /* inBuffer= */ false);
+    loadControl.onBackwardSeek(/* seekBackDurationUs= */ 2000000, /* inBuffer= */ true);
+
+    assertThat(loadControl.getBackwardSeekCount()).isEqualTo(3);
+    assertThat(loadControl.getBackwardSeekInBufferCount()).isEqualTo(2);
+  }
+
+}
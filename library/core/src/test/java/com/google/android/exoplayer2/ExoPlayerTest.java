@@ -23,6 +23,7 @@ import com.google.android.exoplayer2.Player.DefaultEventListener;
 import com.google.android.exoplayer2.Player.EventListener;
 import com.google.android.exoplayer2.Timeline.Window;
 import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
+import com.google.android.exoplayer2.source.MediaPeriod;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
 import com.google.android.exoplayer2.source.TrackGroup;
@@ -44,6 +45,7 @@ import com.google.android.exoplayer2.testutil.FakeTrackSelection;
 import com.google.android.exoplayer2.testutil.FakeTrackSelector;
 import com.google.android.exoplayer2.testutil.RobolectricUtil;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -67,6 +69,9 @@ public final class ExoPlayerTest {
    */
   private static final int TIMEOUT_MS = 10000;
 
+  /** The target buffer size of the load controls used in back-buffer tests, in segments. */
+  private static final int BACK_BUFFER_TEST_TARGET_BUFFER_SEGMENTS = 4;
+
   /**
    * Tests playback of a source that exposes an empty timeline. Playback is expected to end without
    * error.
@@ -1904,8 +1909,193 @@ public final class ExoPlayerTest {
         .inOrder();
   }
 
+  @Test
+  public void testDefaultLoadControlDoesNotLimitUpcomingPeriods() throws Exception {
+    DefaultLoadControl loadControl = new DefaultLoadControl();
+    assertThat(
+            loadControl.getUpcomingPeriodsTargetBufferBytes(/* playingPeriodBytesAllocated= */ 0))
+        .isEqualTo(C.LENGTH_UNSET);
+    FakeMediaSource mediaSource =
+        new FakeMediaSource(
+            new FakeTimeline(/* windowCount= */ 3), /* manifest= */ null, Builder.VIDEO_FORMAT);
+    ExoPlayerTestRunner testRunner =
+        new Builder()
+            .setMediaSource(mediaSource)
+            .setLoadControl(loadControl)
+            .build()
+            .start()
+            .blockUntilEnded(TIMEOUT_MS);
+    testRunner.assertPlayedPeriodIndices(0, 1, 2);
+    assertThat(mediaSource.getCreatedMediaPeriods())
+        .containsExactly(
+            new MediaPeriodId(/* periodIndex= */ 0, /* windowSequenceNumber= */ 0),
+            new MediaPeriodId(/* periodIndex= */ 1, /* windowSequenceNumber= */ 1),
+            new MediaPeriodId(/* periodIndex= */ 2, /* windowSequenceNumber= */ 2))
+        .inOrder();
+  }
+
+  @Test
+  public void testZeroUpcomingPeriodsBudgetStillPlaysNextPeriods() throws Exception {
+    DefaultLoadControl loadControl =
+        new DefaultLoadControl(
+            new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+            DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+            DefaultLoadControl.DEFAULT_TARGET_BUFFER_BYTES,
+            DefaultLoadControl.DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS,
+            /* priorityTaskManager= */ null,
+            DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS,
+            DefaultLoadControl.DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME,
+            /* upcomingPeriodsMaxBufferBytes= */ 0);
+    assertThat(
+            loadControl.getUpcomingPeriodsTargetBufferBytes(/* playingPeriodBytesAllocated= */ 0))
+        .isEqualTo(0);
+    FakeMediaSource mediaSource =
+        new FakeMediaSource(
+            new FakeTimeline(/* windowCount= */ 3), /* manifest= */ null, Builder.VIDEO_FORMAT);
+    ExoPlayerTestRunner testRunner =
+        new Builder()
+            .setMediaSource(mediaSource)
+            .setLoadControl(loadControl)
+            .build()
+            .start()
+            .blockUntilEnded(TIMEOUT_MS);
+    testRunner.assertPlayedPeriodIndices(0, 1, 2);
+    // The period after the reading period is never evicted, so no period is created twice.
+    assertThat(mediaSource.getCreatedMediaPeriods())
+        .containsExactly(
+            new MediaPeriodId(/* periodIndex= */ 0, /* windowSequenceNumber= */ 0),
+            new MediaPeriodId(/* periodIndex= */ 1, /* windowSequenceNumber= */ 1),
+            new MediaPeriodId(/* periodIndex= */ 2, /* windowSequenceNumber= */ 2))
+        .inOrder();
+  }
+
+  @Test
+  public void testBackwardSeekInBufferIsReportedToLoadControl() throws Exception {
+    DefaultLoadControl loadControl = createBackBufferLoadControl(/* backBufferDurationMs= */ 5000);
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("testBackwardSeekInBuffer")
+            .pause()
+            .waitForPlaybackState(Player.STATE_READY)
+            .seekAndWait(/* positionMs= */ 8000)
+            .seekAndWait(/* positionMs= */ 2000)
+            .play()
+            .build();
+    new Builder()
+        .setLoadControl(loadControl)
+        .setActionSchedule(actionSchedule)
+        .build()
+        .start()
+        .blockUntilActionScheduleFinished(TIMEOUT_MS)
+        .blockUntilEnded(TIMEOUT_MS);
+    // Only the seek to an earlier position is reported, and the fake media is fully buffered.
+    assertThat(loadControl.getBackwardSeekCount()).isEqualTo(1);
+    assertThat(loadControl.getBackwardSeekInBufferCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testPlayingPeriodDiscardsMediaBehindBackBuffer() throws Exception {
+    final DefaultLoadControl loadControl =
+        createBackBufferLoadControl(/* backBufferDurationMs= */ 5000);
+    final DiscardRecordingMediaSource mediaSource = new DiscardRecordingMediaSource();
+    final long[] discardPositionsUs = new long[2];
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("testDiscardsMediaBehindBackBuffer")
+            .pause()
+            .waitForPlaybackState(Player.STATE_READY)
+            .seekAndWait(/* positionMs= */ 8000)
+            .executeRunnable(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    discardPositionsUs[0] = mediaSource.lastDiscardPositionUs;
+                    // Fill the whole target buffer size.
+                    Allocator allocator = loadControl.getAllocator();
+                    for (int i = 0; i < BACK_BUFFER_TEST_TARGET_BUFFER_SEGMENTS; i++) {
+                      allocator.allocate();
+                    }
+                  }
+                })
+            .seekAndWait(/* positionMs= */ 9000)
+            .executeRunnable(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    discardPositionsUs[1] = mediaSource.lastDiscardPositionUs;
+                  }
+                })
+            .play()
+            .build();
+    new Builder()
+        .setMediaSource(mediaSource)
+        .setLoadControl(loadControl)
+        .setActionSchedule(actionSchedule)
+        .build()
+        .start()
+        .blockUntilActionScheduleFinished(TIMEOUT_MS)
+        .blockUntilEnded(TIMEOUT_MS);
+    // Nothing is allocated, so the whole back-buffer is retained.
+    assertThat(discardPositionsUs[0]).isEqualTo(8000000 - 5000000);
+    // The target buffer size is full, so only the reserved share of the back-buffer is retained.
+    assertThat(discardPositionsUs[1])
+        .isEqualTo(9000000 - 5000000 * DefaultLoadControl.MIN_BACK_BUFFER_SHARE_PERCENT / 100);
+  }
+
+  @Test
+  public void testAudioOnlyPlaybackWithFullAudioSinkRendersAtMaxInterval() throws Exception {
+    // An audio renderer whose sink is full only needs to be rendered every 100ms.
+    RenderCountingRenderer audioRenderer =
+        new RenderCountingRenderer(/* maxRenderDelayUs= */ 100000, Builder.AUDIO_FORMAT);
+    new ExoPlayerTestRunner.Builder()
+        .setSupportedFormats(Builder.AUDIO_FORMAT)
+        .setRenderers(audioRenderer)
+        .build()
+        .start()
+        .blockUntilEnded(TIMEOUT_MS);
+    long expectedRenderCount = TimelineWindowDefinition.DEFAULT_WINDOW_DURATION_US / 100000;
+    assertThat(audioRenderer.startedRenderCount).isAtLeast((int) (expectedRenderCount * 9 / 10));
+    assertThat(audioRenderer.startedRenderCount).isAtMost((int) (expectedRenderCount * 11 / 10));
+  }
+
+  @Test
+  public void testLowFrameRateVideoPlaybackRendersAtVideoRendererInterval() throws Exception {
+    // At 12fps the next frame enters the 50ms release window about 33ms after the previous one is
+    // released, which is sooner than the audio renderer needs to be rendered.
+    RenderCountingRenderer videoRenderer =
+        new RenderCountingRenderer(/* maxRenderDelayUs= */ 33000, Builder.VIDEO_FORMAT);
+    RenderCountingRenderer audioRenderer =
+        new RenderCountingRenderer(/* maxRenderDelayUs= */ 100000, Builder.AUDIO_FORMAT);
+    new ExoPlayerTestRunner.Builder()
+        .setSupportedFormats(Builder.VIDEO_FORMAT, Builder.AUDIO_FORMAT)
+        .setRenderers(videoRenderer, audioRenderer)
+        .build()
+        .start()
+        .blockUntilEnded(TIMEOUT_MS);
+    long expectedRenderCount = TimelineWindowDefinition.DEFAULT_WINDOW_DURATION_US / 33000;
+    assertThat(videoRenderer.startedRenderCount).isAtLeast((int) (expectedRenderCount * 9 / 10));
+    assertThat(videoRenderer.startedRenderCount).isAtMost((int) (expectedRenderCount * 11 / 10));
+    assertThat(audioRenderer.startedRenderCount).isEqualTo(videoRenderer.startedRenderCount);
+  }
+
   // Internal methods.
 
+  private static DefaultLoadControl createBackBufferLoadControl(int backBufferDurationMs) {
+    return new DefaultLoadControl(
+        new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+        DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+        DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+        DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+        DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+        /* targetBufferBytes= */ BACK_BUFFER_TEST_TARGET_BUFFER_SEGMENTS
+            * C.DEFAULT_BUFFER_SEGMENT_SIZE,
+        DefaultLoadControl.DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS,
+        /* priorityTaskManager= */ null,
+        backBufferDurationMs,
+        DefaultLoadControl.DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME);
+  }
+
   private static ActionSchedule.Builder addSurfaceSwitch(ActionSchedule.Builder builder) {
     final Surface surface1 = new Surface(null);
     final Surface surface2 = new Surface(null);
@@ -1928,6 +2118,62 @@ public final class ExoPlayerTest {
 
   // Internal classes.
 
+  /**
+   * {@link FakeMediaSource} with a single window, whose media periods record the position passed to
+   * {@link MediaPeriod#discardBuffer(long, boolean)}.
+   */
+  private static final class DiscardRecordingMediaSource extends FakeMediaSource {
+
+    public volatile long lastDiscardPositionUs;
+
+    public DiscardRecordingMediaSource() {
+      super(new FakeTimeline(/* windowCount= */ 1), /* manifest= */ null, Builder.VIDEO_FORMAT);
+      lastDiscardPositionUs = C.TIME_UNSET;
+    }
+
+    @Override
+    protected FakeMediaPeriod createFakeMediaPeriod(
+        MediaPeriodId id, TrackGroupArray trackGroupArray, Allocator allocator) {
+      return new FakeMediaPeriod(trackGroupArray) {
+        @Override
+        public void discardBuffer(long positionUs, boolean toKeyframe) {
+          lastDiscardPositionUs = positionUs;
+        }
+      };
+    }
+
+  }
+
+  /**
+   * {@link FakeRenderer} that reports a fixed maximum render delay and counts the calls to
+   * {@link #render(long, long)} while it is started.
+   */
+  private static final class RenderCountingRenderer extends FakeRenderer {
+
+    private final long maxRenderDelayUs;
+
+    public int startedRenderCount;
+
+    public RenderCountingRenderer(long maxRenderDelayUs, Format... expectedFormats) {
+      super(expectedFormats);
+      this.maxRenderDelayUs = maxRenderDelayUs;
+    }
+
+    @Override
+    public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+      if (getState() == STATE_STARTED) {
+        startedRenderCount++;
+      }
+      super.render(positionUs, elapsedRealtimeUs);
+    }
+
+    @Override
+    public long getMaxRenderDelayUs() {
+      return maxRenderDelayUs;
+    }
+
+  }
+
   private static final class PositionGrabbingMessageTarget extends PlayerTarget {
 
     public int windowIndex;
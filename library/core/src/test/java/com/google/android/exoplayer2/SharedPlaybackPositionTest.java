@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link SharedPlaybackPosition}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class SharedPlaybackPositionTest {
+
+  private Timeline timeline;
+  private Timeline.Period period;
+  private SharedPlaybackPosition sharedPlaybackPosition;
+
+  @Before
+  public void setUp() {
+    timeline = new FakeTimeline(/* windowCount= */ 2);
+    period = new Timeline.Period();
+    sharedPlaybackPosition = new SharedPlaybackPosition();
+  }
+
+  @Test
+  public void testNothingPublished() {
+    assertThat(
+            sharedPlaybackPosition.getWindowPositionMs(
+                timeline, new MediaPeriodId(/* periodIndex= */ 0), /* buffered= */ false))
+        .isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void testPublishedPositionsAreReadForSamePeriod() {
+    MediaPeriodId periodId = new MediaPeriodId(/* periodIndex= */ 1);
+    PlaybackInfo playbackInfo = createPlaybackInfo(periodId);
+    playbackInfo.positionUs = 2000000;
+    playbackInfo.bufferedPositionUs = 5000000;
+    sharedPlaybackPosition.update(playbackInfo, period);
+
+    assertThat(
+            sharedPlaybackPosition.getWindowPositionMs(
+                timeline, periodId, /* buffered= */ false))
+        .isEqualTo(2000);
+    assertThat(
+            sharedPlaybackPosition.getWindowPositionMs(
+                timeline, periodId, /* buffered= */ true))
+        .isEqualTo(5000);
+
+    playbackInfo.positionUs = 3000000;
+    sharedPlaybackPosition.update(playbackInfo, period);
+
+    assertThat(
+            sharedPlaybackPosition.getWindowPositionMs(
+                timeline, periodId, /* buffered= */ false))
+        .isEqualTo(3000);
+  }
+
+  @Test
+  public void testPublishedPositionsAreIgnoredForOtherPeriods() {
+    PlaybackInfo playbackInfo = createPlaybackInfo(new MediaPeriodId(/* periodIndex= */ 1));
+    playbackInfo.positionUs = 2000000;
+    sharedPlaybackPosition.update(playbackInfo, period);
+
+    assertThat(
+            sharedPlaybackPosition.getWindowPositionMs(
+                timeline, new MediaPeriodId(/* periodIndex= */ 0), /* buffered= */ false))
+        .isEqualTo(C.TIME_UNSET);
+    assertThat(
+            sharedPlaybackPosition.getWindowPositionMs(
+                new FakeTimeline(/* windowCount= */ 2),
+                new MediaPeriodId(/* periodIndex= */ 1),
+                /* buffered= */ false))
+        .isEqualTo(C.TIME_UNSET);
+  }
+
+  private PlaybackInfo createPlaybackInfo(MediaPeriodId periodId) {
+    return new PlaybackInfo(
+        timeline,
+        /* manifest= */ null,
+        periodId,
+        /* startPositionUs= */ 0,
+        /* contentPositionUs= */ C.TIME_UNSET,
+        Player.STATE_READY,
+        /* isLoading= */ false,
+        /* trackSelectorResult= */ null);
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeTrackOutput;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link BatchingTrackOutput}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class BatchingTrackOutputTest {
+
+  private static final int MAX_BATCH_SIZE = 4;
+
+  private FakeTrackOutput fakeTrackOutput;
+  private BatchingTrackOutput batchingTrackOutput;
+
+  @Before
+  public void setUp() {
+    fakeTrackOutput = new FakeTrackOutput();
+    batchingTrackOutput = new BatchingTrackOutput(fakeTrackOutput, MAX_BATCH_SIZE);
+  }
+
+  @Test
+  public void testSamplesArePassedOnWhenBatchIsFull() {
+    writeSamples(0, MAX_BATCH_SIZE - 1);
+    fakeTrackOutput.assertSampleCount(0);
+
+    writeSamples(MAX_BATCH_SIZE - 1, MAX_BATCH_SIZE);
+    fakeTrackOutput.assertSampleCount(MAX_BATCH_SIZE);
+    assertSamples(0, MAX_BATCH_SIZE);
+  }
+
+  @Test
+  public void testFlushPassesOnSamplesWithCorrectOffsets() {
+    writeSamples(0, 2);
+    // Write data for a sample whose metadata is not yet known.
+    batchingTrackOutput.sampleData(new ParsableByteArray(new byte[] {42, 42}), 2);
+    batchingTrackOutput.flush();
+
+    fakeTrackOutput.assertSampleCount(2);
+    assertSamples(0, 2);
+  }
+
+  @Test
+  public void testClearDiscardsPendingSamples() {
+    writeSamples(0, 2);
+    batchingTrackOutput.clear();
+    batchingTrackOutput.flush();
+
+    fakeTrackOutput.assertSampleCount(0);
+  }
+
+  private void writeSamples(int fromIndex, int toIndex) {
+    for (int i = fromIndex; i < toIndex; i++) {
+      byte[] data = new byte[] {(byte) i, (byte) i};
+      batchingTrackOutput.sampleData(new ParsableByteArray(data), data.length);
+      batchingTrackOutput.sampleMetadata(i * 1000L, i == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0,
+          data.length, 0, null);
+    }
+  }
+
+  private void assertSamples(int fromIndex, int toIndex) {
+    for (int i = fromIndex; i < toIndex; i++) {
+      fakeTrackOutput.assertSample(i, new byte[] {(byte) i, (byte) i}, i * 1000L,
+          i == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0, null);
+    }
+  }
+
+}
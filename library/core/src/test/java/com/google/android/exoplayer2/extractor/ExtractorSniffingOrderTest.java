@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.android.exoplayer2.testutil.TestUtil.createByteArray;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.extractor.wav.WavExtractor;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link ExtractorSniffingOrder}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class ExtractorSniffingOrderTest {
+
+  private static final byte[] WAV_HEADER =
+      createByteArray('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ');
+  private static final byte[] UNKNOWN_HEADER = createByteArray(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+
+  @Test
+  public void testOrderUnchangedWithoutHints() throws Exception {
+    Extractor[] extractors = createExtractors();
+    Extractor[] originalExtractors = extractors.clone();
+
+    ExtractorSniffingOrder.sort(
+        extractors, createInput(UNKNOWN_HEADER), Uri.parse("https://test.test/media"), null);
+
+    assertThat(extractors).asList().containsExactly((Object[]) originalExtractors).inOrder();
+  }
+
+  @Test
+  public void testFileExtensionMovesExtractorFirst() throws Exception {
+    Extractor[] extractors = createExtractors();
+
+    ExtractorSniffingOrder.sort(
+        extractors, createInput(UNKNOWN_HEADER), Uri.parse("https://test.test/a.mp3?b=c"), null);
+
+    assertThat(extractors[0]).isInstanceOf(Mp3Extractor.class);
+    assertThat(extractors[1]).isInstanceOf(Mp4Extractor.class);
+  }
+
+  @Test
+  public void testMagicBytesTakePrecedenceOverMimeTypeAndFileExtension() throws Exception {
+    Extractor[] extractors = createExtractors();
+    FakeExtractorInput input = createInput(WAV_HEADER);
+
+    ExtractorSniffingOrder.sort(
+        extractors, input, Uri.parse("https://test.test/a.ts"), "audio/ogg; codecs=opus");
+
+    assertThat(extractors[0]).isInstanceOf(WavExtractor.class);
+    assertThat(extractors[1]).isInstanceOf(OggExtractor.class);
+    assertThat(extractors[2]).isInstanceOf(TsExtractor.class);
+    assertThat(input.getPeekPosition()).isEqualTo(0);
+  }
+
+  @Test
+  public void testShortInput() throws Exception {
+    Extractor[] extractors = createExtractors();
+
+    ExtractorSniffingOrder.sort(
+        extractors, createInput(createByteArray('O', 'g')), Uri.parse("https://test.test/a.wav"),
+        null);
+
+    assertThat(extractors[0]).isInstanceOf(WavExtractor.class);
+  }
+
+  private static Extractor[] createExtractors() {
+    return new Extractor[] {
+      new Mp4Extractor(), new Mp3Extractor(), new TsExtractor(), new OggExtractor(),
+      new WavExtractor()
+    };
+  }
+
+  private static FakeExtractorInput createInput(byte[] data) {
+    return new FakeExtractorInput.Builder().setData(data).build();
+  }
+
+}
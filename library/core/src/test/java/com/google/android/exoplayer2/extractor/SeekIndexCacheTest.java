@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Unit tests for {@link SeekIndexCache}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class SeekIndexCacheTest {
+
+  private static final String KEY = "https://example.com/video.mkv";
+  private static final long LENGTH = 1000;
+  private static final String ETAG = "\"abc123\"";
+
+  private File tempFolder;
+  private SeekIndexCache seekIndexCache;
+
+  @Before
+  public void setUp() throws IOException {
+    tempFolder = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+    seekIndexCache = new SeekIndexCache(new File(tempFolder, "seekIndices"));
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void testReadWithoutWrite() {
+    SeekIndexCache.Entry entry = seekIndexCache.getEntry(KEY, LENGTH, ETAG);
+    assertThat(entry.read()).isNull();
+    assertThat(entry.readChunkIndex()).isNull();
+  }
+
+  @Test
+  public void testWriteAndRead() {
+    byte[] data = new byte[] {0, 1, 2, 3};
+    seekIndexCache.getEntry(KEY, LENGTH, ETAG).write(data);
+
+    SeekIndexCache restoredSeekIndexCache = new SeekIndexCache(new File(tempFolder, "seekIndices"));
+    assertThat(restoredSeekIndexCache.getEntry(KEY, LENGTH, ETAG).read()).isEqualTo(data);
+  }
+
+  @Test
+  public void testWriteAndReadChunkIndex() {
+    ChunkIndex seekIndex = createSeekIndex();
+    seekIndexCache.getEntry(KEY, LENGTH, ETAG).writeChunkIndex(seekIndex);
+
+    ChunkIndex restoredSeekIndex = new SeekIndexCache(new File(tempFolder, "seekIndices"))
+        .getEntry(KEY, LENGTH, ETAG).readChunkIndex();
+    assertThat(restoredSeekIndex).isNotNull();
+    assertThat(restoredSeekIndex.sizes).isEqualTo(seekIndex.sizes);
+    assertThat(restoredSeekIndex.offsets).isEqualTo(seekIndex.offsets);
+    assertThat(restoredSeekIndex.durationsUs).isEqualTo(seekIndex.durationsUs);
+    assertThat(restoredSeekIndex.timesUs).isEqualTo(seekIndex.timesUs);
+    assertThat(restoredSeekIndex.getDurationUs()).isEqualTo(seekIndex.getDurationUs());
+  }
+
+  @Test
+  public void testReadWithDifferentKeyLengthOrContentVersion() {
+    seekIndexCache.getEntry(KEY, LENGTH, ETAG).writeChunkIndex(createSeekIndex());
+
+    assertThat(seekIndexCache.getEntry(KEY + "?other", LENGTH, ETAG).read()).isNull();
+    assertThat(seekIndexCache.getEntry(KEY, LENGTH + 1, ETAG).read()).isNull();
+    assertThat(seekIndexCache.getEntry(KEY, LENGTH, "\"other\"").read()).isNull();
+    assertThat(seekIndexCache.getEntry(KEY, LENGTH, null).read()).isNull();
+  }
+
+  @Test
+  public void testWriteReplacesEntryOfChangedContent() {
+    seekIndexCache.getEntry(KEY, LENGTH, ETAG).write(new byte[] {0});
+    seekIndexCache.getEntry(KEY, LENGTH, null).write(new byte[] {1});
+
+    assertThat(seekIndexCache.getEntry(KEY, LENGTH, ETAG).read()).isNull();
+    assertThat(seekIndexCache.getEntry(KEY, LENGTH, null).read()).isEqualTo(new byte[] {1});
+  }
+
+  @Test
+  public void testWriteEvictsLeastRecentlyUsedEntries() {
+    File directory = new File(tempFolder, "seekIndices");
+    seekIndexCache.getEntry(KEY + 1, LENGTH, ETAG).write(new byte[100]);
+    File file1 = directory.listFiles()[0];
+    // Entries with keys and data of the same length have the same size.
+    SeekIndexCache boundedSeekIndexCache = new SeekIndexCache(directory, file1.length() * 2);
+    SeekIndexCache.Entry entry1 = boundedSeekIndexCache.getEntry(KEY + 1, LENGTH, ETAG);
+    SeekIndexCache.Entry entry2 = boundedSeekIndexCache.getEntry(KEY + 2, LENGTH, ETAG);
+    SeekIndexCache.Entry entry3 = boundedSeekIndexCache.getEntry(KEY + 3, LENGTH, ETAG);
+    entry2.write(new byte[100]);
+    long now = System.currentTimeMillis();
+    for (File file : directory.listFiles()) {
+      // The first entry was used longer ago than the second.
+      assertThat(file.setLastModified(file.equals(file1) ? now - 20000 : now - 10000)).isTrue();
+    }
+
+    assertThat(entry1.read()).isNotNull();
+    entry3.write(new byte[100]);
+
+    assertThat(directory.listFiles()).hasLength(2);
+    assertThat(entry1.read()).isNotNull();
+    assertThat(entry2.read()).isNull();
+    assertThat(entry3.read()).isNotNull();
+  }
+
+  private static ChunkIndex createSeekIndex() {
+    return new ChunkIndex(
+        /* sizes= */ new int[] {300, 400, 200},
+        /* offsets= */ new long[] {100, 400, 800},
+        /* durationsUs= */ new long[] {1000000, 1000000, 500000},
+        /* timesUs= */ new long[] {0, 1000000, 2000000});
+  }
+
+}
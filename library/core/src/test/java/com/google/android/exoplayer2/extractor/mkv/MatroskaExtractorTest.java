@@ -15,12 +15,24 @@
  */
 package com.google.android.exoplayer2.extractor.mkv;
 
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.extractor.ChunkIndex;
 import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekIndexCache;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts.ExtractorFactory;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.IOException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
 
 /** Tests for {@link MatroskaExtractor}. */
 @RunWith(RobolectricTestRunner.class)
@@ -61,4 +73,55 @@ public final class MatroskaExtractorTest {
         },
         "mkv/subsample_encrypted_altref.webm");
   }
+
+  @Test
+  public void testMkvSampleWithSeekIndexCache() throws Exception {
+    byte[] data = TestUtil.getByteArray(RuntimeEnvironment.application, "mkv/sample.mkv");
+    File tempFolder = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+    try {
+      SeekIndexCache seekIndexCache = new SeekIndexCache(tempFolder);
+
+      // The first extractor seeks to the cues and back, and stores the cues in the entry.
+      MatroskaExtractor extractor = new MatroskaExtractor();
+      extractor.setSeekIndexCacheEntry(seekIndexCache.getEntry("sample", data.length, null));
+      FakeExtractorOutput output = new FakeExtractorOutput();
+      assertThat(consume(extractor, output, data)).isEqualTo(2);
+      ChunkIndex seekIndex =
+          seekIndexCache.getEntry("sample", data.length, null).readChunkIndex();
+      assertThat(seekIndex).isNotNull();
+      assertThat(seekIndex.offsets).isEqualTo(((ChunkIndex) output.seekMap).offsets);
+
+      // The second extractor outputs the cues restored from the entry without seeking for them.
+      extractor = new MatroskaExtractor();
+      extractor.setSeekIndexCacheEntry(seekIndexCache.getEntry("sample", data.length, null));
+      output = new FakeExtractorOutput();
+      assertThat(consume(extractor, output, data)).isEqualTo(0);
+      output.assertOutput(RuntimeEnvironment.application, "mkv/sample.mkv.0.dump");
+      assertThat(((ChunkIndex) output.seekMap).offsets).isEqualTo(seekIndex.offsets);
+      assertThat(((ChunkIndex) output.seekMap).timesUs).isEqualTo(seekIndex.timesUs);
+    } finally {
+      Util.recursiveDelete(tempFolder);
+    }
+  }
+
+  /**
+   * Reads {@code data} to the end with {@code extractor}, returning the number of seeks requested.
+   */
+  private static int consume(Extractor extractor, FakeExtractorOutput output, byte[] data)
+      throws IOException, InterruptedException {
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder seekPositionHolder = new PositionHolder();
+    extractor.init(output);
+    int seekCount = 0;
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, seekPositionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) seekPositionHolder.position);
+        seekCount++;
+      }
+    }
+    return seekCount;
+  }
+
 }
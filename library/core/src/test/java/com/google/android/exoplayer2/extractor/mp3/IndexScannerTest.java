@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp3;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.MpegAudioHeader;
+import com.google.android.exoplayer2.extractor.SeekIndexCache;
+import com.google.android.exoplayer2.extractor.SeekPoint;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput.SimulatedIOException;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Unit tests for {@link IndexScanner}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class IndexScannerTest {
+
+  // MPEG-1 layer III headers at 44.1 kHz, at 128 kbit/s (417 byte frames) and 64 kbit/s (208 byte
+  // frames).
+  private static final int HEADER_128_KBPS = 0xFFFB9000;
+  private static final int HEADER_64_KBPS = 0xFFFB5000;
+  private static final int FRAME_COUNT = 200;
+  private static final int FIRST_FRAME_POSITION = 10;
+
+  private File tempFolder;
+  private SeekIndexCache.Entry seekIndexCacheEntry;
+
+  @Before
+  public void setUp() throws IOException {
+    tempFolder = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+    seekIndexCacheEntry = new SeekIndexCache(tempFolder).getEntry("key", 1000, null);
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void testScanIndexesVariableBitrateFrames() throws Exception {
+    long[] framePositions = new long[FRAME_COUNT + 1];
+    byte[] data = buildStream(framePositions);
+    IndexSeeker indexSeeker = new IndexSeeker(new FakeSeeker(), FIRST_FRAME_POSITION);
+    IndexScanner scanner = new IndexScanner(indexSeeker, HEADER_128_KBPS, FIRST_FRAME_POSITION,
+        seekIndexCacheEntry);
+
+    scan(scanner, data);
+
+    assertThat(indexSeeker.isComplete()).isTrue();
+    assertThat(indexSeeker.getDurationUs()).isEqualTo(getTimeUs(FRAME_COUNT));
+    for (int i = 0; i < FRAME_COUNT; i += 7) {
+      // Seeking to the time of a frame lands on the closest indexed frame at or before it.
+      long framePosition = indexSeeker.getSeekPoints(getTimeUs(i)).first.position;
+      int frameIndex = Util.binarySearchFloor(framePositions, framePosition, true, false);
+      assertThat(framePositions[frameIndex]).isEqualTo(framePosition);
+      assertThat(frameIndex).isAtMost(i);
+      assertThat(getTimeUs(i) - getTimeUs(frameIndex)).isLessThan(C.MICROS_PER_SECOND);
+    }
+    ChunkIndex storedIndex = seekIndexCacheEntry.readChunkIndex();
+    assertThat(storedIndex).isNotNull();
+    assertThat(storedIndex.offsets).isEqualTo(indexSeeker.toChunkIndex().offsets);
+    assertThat(storedIndex.getDurationUs()).isEqualTo(getTimeUs(FRAME_COUNT));
+  }
+
+  @Test
+  public void testScanSkipsDataBetweenFramesAndTruncatedLastFrame() throws Exception {
+    long[] framePositions = new long[FRAME_COUNT + 1];
+    byte[] data = buildStream(framePositions);
+    IndexSeeker indexSeeker = new IndexSeeker(new FakeSeeker(), FIRST_FRAME_POSITION);
+    IndexScanner scanner = new IndexScanner(indexSeeker, HEADER_128_KBPS, FIRST_FRAME_POSITION,
+        /* seekIndexCacheEntry= */ null);
+
+    scan(scanner, data);
+
+    ChunkIndex index = indexSeeker.toChunkIndex();
+    int lastIndex = index.length - 1;
+    // The index ends at the end of the last complete frame.
+    assertThat(index.offsets[lastIndex] + index.sizes[lastIndex])
+        .isEqualTo(framePositions[FRAME_COUNT]);
+    assertThat(seekIndexCacheEntry.read()).isNull();
+  }
+
+  /**
+   * Scans {@code data}, resuming the scan from its start position after each simulated error.
+   */
+  private static void scan(IndexScanner scanner, byte[] data) throws Exception {
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data)
+        .setSimulateIOErrors(true).setSimulatePartialReads(true).build();
+    while (true) {
+      input.setPosition((int) scanner.getStartPosition());
+      try {
+        scanner.scan(input);
+        return;
+      } catch (SimulatedIOException e) {
+        // Resume the scan.
+      }
+    }
+  }
+
+  /**
+   * Returns a stream of {@link #FRAME_COUNT} frames of alternating bitrates, with bytes that aren't
+   * frames after every tenth frame and a truncated frame at the end.
+   *
+   * @param framePositions Populated with the positions of the frames, and the end of the last
+   *     complete frame.
+   */
+  private static byte[] buildStream(long[] framePositions) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(new byte[FIRST_FRAME_POSITION], 0, FIRST_FRAME_POSITION);
+    MpegAudioHeader header = new MpegAudioHeader();
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      framePositions[i] = stream.size();
+      writeFrame(stream, i % 3 == 0 ? HEADER_64_KBPS : HEADER_128_KBPS, header);
+      if (i % 10 == 9 && i < FRAME_COUNT - 1) {
+        stream.write(new byte[5], 0, 5);
+      }
+    }
+    framePositions[FRAME_COUNT] = stream.size();
+    writeFrame(stream, HEADER_128_KBPS, header);
+    byte[] data = stream.toByteArray();
+    return Arrays.copyOf(data, data.length - 100);
+  }
+
+  private static void writeFrame(ByteArrayOutputStream stream, int headerData,
+      MpegAudioHeader header) {
+    MpegAudioHeader.populateHeader(headerData, header);
+    byte[] frame = new byte[header.frameSize];
+    frame[0] = (byte) (headerData >> 24);
+    frame[1] = (byte) (headerData >> 16);
+    frame[2] = (byte) (headerData >> 8);
+    frame[3] = (byte) headerData;
+    stream.write(frame, 0, frame.length);
+  }
+
+  private static long getTimeUs(int frameIndex) {
+    return frameIndex * 1152 * C.MICROS_PER_SECOND / 44100;
+  }
+
+  /**
+   * A fallback seeker that maps positions to times linearly.
+   */
+  private static final class FakeSeeker implements Mp3Extractor.Seeker {
+
+    @Override
+    public boolean isSeekable() {
+      return true;
+    }
+
+    @Override
+    public SeekPoints getSeekPoints(long timeUs) {
+      return new SeekPoints(new SeekPoint(timeUs, FIRST_FRAME_POSITION));
+    }
+
+    @Override
+    public long getTimeUs(long position) {
+      return (position - FIRST_FRAME_POSITION) * 100;
+    }
+
+    @Override
+    public long getDurationUs() {
+      return C.TIME_UNSET;
+    }
+
+  }
+
+}
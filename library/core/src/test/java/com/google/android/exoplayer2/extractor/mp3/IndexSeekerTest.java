@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp3;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.SeekMap.SeekPoints;
+import com.google.android.exoplayer2.extractor.SeekPoint;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link IndexSeeker}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class IndexSeekerTest {
+
+  private static final long FIRST_FRAME_POSITION = 100;
+  private static final long FRAME_DURATION_US = 26122;
+
+  @Test
+  public void testIncompleteIndexUsesFallbackBeyondIndexedPart() {
+    IndexSeeker seeker = new IndexSeeker(new FakeSeeker(), FIRST_FRAME_POSITION);
+    addFrames(seeker, /* frameCount= */ 100);
+
+    assertThat(seeker.isComplete()).isFalse();
+    assertThat(seeker.getDurationUs()).isEqualTo(FakeSeeker.DURATION_US);
+    assertThat(seeker.getSeekPoints(10 * C.MICROS_PER_SECOND))
+        .isEqualTo(new FakeSeeker().getSeekPoints(10 * C.MICROS_PER_SECOND));
+    assertThat(seeker.getTimeUs(100000)).isEqualTo(new FakeSeeker().getTimeUs(100000));
+  }
+
+  @Test
+  public void testSeekWithinIndexIsExact() {
+    IndexSeeker seeker = new IndexSeeker(new FakeSeeker(), FIRST_FRAME_POSITION);
+    addFrames(seeker, /* frameCount= */ 100);
+
+    SeekPoints seekPoints = seeker.getSeekPoints(1500000);
+    // A point is indexed at the first frame at least one second after the previous point.
+    SeekPoint indexedPoint = new SeekPoint(39 * FRAME_DURATION_US, getFramePosition(39));
+    assertThat(seekPoints.first).isEqualTo(indexedPoint);
+    assertThat(seekPoints.second)
+        .isEqualTo(new SeekPoint(78 * FRAME_DURATION_US, getFramePosition(78)));
+    assertThat(seeker.getTimeUs(indexedPoint.position)).isEqualTo(indexedPoint.timeUs);
+  }
+
+  @Test
+  public void testCompleteIndexRoundTripsThroughChunkIndex() {
+    IndexSeeker seeker = new IndexSeeker(new FakeSeeker(), FIRST_FRAME_POSITION);
+    addFrames(seeker, /* frameCount= */ 200);
+    seeker.setComplete(200 * FRAME_DURATION_US, getFramePosition(200));
+
+    ChunkIndex chunkIndex = seeker.toChunkIndex();
+    IndexSeeker restoredSeeker = new IndexSeeker(new FakeSeeker(), chunkIndex);
+
+    assertThat(restoredSeeker.isComplete()).isTrue();
+    assertThat(restoredSeeker.isSeekable()).isTrue();
+    assertThat(restoredSeeker.getDurationUs()).isEqualTo(200 * FRAME_DURATION_US);
+    for (long timeUs = 0; timeUs < 200 * FRAME_DURATION_US; timeUs += 250000) {
+      assertThat(restoredSeeker.getSeekPoints(timeUs)).isEqualTo(seeker.getSeekPoints(timeUs));
+      assertThat(chunkIndex.getSeekPoints(timeUs).first)
+          .isEqualTo(seeker.getSeekPoints(timeUs).first);
+    }
+  }
+
+  private static void addFrames(IndexSeeker seeker, int frameCount) {
+    for (int i = 0; i < frameCount; i++) {
+      seeker.maybeAddSeekPoint(i * FRAME_DURATION_US, getFramePosition(i));
+    }
+  }
+
+  /**
+   * Returns the position of a frame, for frames of varying sizes.
+   */
+  private static long getFramePosition(int frameIndex) {
+    long position = FIRST_FRAME_POSITION;
+    for (int i = 0; i < frameIndex; i++) {
+      position += i % 2 == 0 ? 417 : 209;
+    }
+    return position;
+  }
+
+  /**
+   * A fallback seeker that maps positions to times linearly.
+   */
+  private static final class FakeSeeker implements Mp3Extractor.Seeker {
+
+    private static final long DURATION_US = 10 * C.MICROS_PER_SECOND;
+
+    @Override
+    public boolean isSeekable() {
+      return true;
+    }
+
+    @Override
+    public SeekPoints getSeekPoints(long timeUs) {
+      return new SeekPoints(new SeekPoint(timeUs, FIRST_FRAME_POSITION + timeUs / 100));
+    }
+
+    @Override
+    public long getTimeUs(long position) {
+      return (position - FIRST_FRAME_POSITION) * 100;
+    }
+
+    @Override
+    public long getDurationUs() {
+      return DURATION_US;
+    }
+
+  }
+
+}
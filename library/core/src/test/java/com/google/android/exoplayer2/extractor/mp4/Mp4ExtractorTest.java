@@ -15,19 +15,48 @@
  */
 package com.google.android.exoplayer2.extractor.mp4;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import android.annotation.TargetApi;
 import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekIndexCache;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts.ExtractorFactory;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
 
 /** Tests for {@link Mp4Extractor}. */
 @TargetApi(16)
 @RunWith(RobolectricTestRunner.class)
 public final class Mp4ExtractorTest {
 
+  private File tempFolder;
+  private SeekIndexCache seekIndexCache;
+  private byte[] data;
+
+  @Before
+  public void setUp() throws IOException {
+    tempFolder = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+    seekIndexCache = new SeekIndexCache(tempFolder);
+    data = TestUtil.getByteArray(RuntimeEnvironment.application, "mp4/sample.mp4");
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(tempFolder);
+  }
+
   @Test
   public void testMp4Sample() throws Exception {
     ExtractorAsserts.assertBehavior(
@@ -39,4 +68,71 @@ public final class Mp4ExtractorTest {
         },
         "mp4/sample.mp4");
   }
+
+  @Test
+  public void testMp4SampleWithSeekIndexCache() throws Exception {
+    int seekCount = consume(null);
+
+    // The first extractor parses the sample tables and stores them in the entry.
+    assertThat(consume(seekIndexCache.getEntry("sample", data.length, null)))
+        .isEqualTo(seekCount);
+    byte[] sampleTables = seekIndexCache.getEntry("sample", data.length, null).read();
+    assertThat(sampleTables).isNotNull();
+
+    // The second extractor restores the sample tables and produces the same output.
+    assertThat(consume(seekIndexCache.getEntry("sample", data.length, null)))
+        .isEqualTo(seekCount);
+    assertThat(seekIndexCache.getEntry("sample", data.length, null).read())
+        .isEqualTo(sampleTables);
+  }
+
+  @Test
+  public void testMp4SampleWithMismatchedSeekIndexCacheEntry() throws Exception {
+    int seekCount = consume(null);
+    // An entry holding an empty sample table for a track that isn't in the stream.
+    byte[] mismatchedSampleTables = TestUtil.createByteArray(
+        0, 0, 0, 1, // Track count.
+        0, 0, 0, 99, // Track ID.
+        0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, // Encoder delay and padding.
+        0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0); // Sample count and duration.
+    seekIndexCache.getEntry("sample", data.length, null).write(mismatchedSampleTables);
+
+    // The extractor reads the moov atom again to parse the sample tables, and replaces the entry.
+    assertThat(consume(seekIndexCache.getEntry("sample", data.length, null)))
+        .isGreaterThan(seekCount);
+    byte[] sampleTables = seekIndexCache.getEntry("sample", data.length, null).read();
+    assertThat(sampleTables).isNotEqualTo(mismatchedSampleTables);
+    assertThat(consume(seekIndexCache.getEntry("sample", data.length, null)))
+        .isEqualTo(seekCount);
+  }
+
+  /**
+   * Reads the sample with an extractor using {@code entry}, and asserts that the output matches the
+   * dump.
+   *
+   * @param entry The entry to set on the extractor, or null to read the sample without a cache.
+   * @return The number of seeks requested by the extractor.
+   */
+  private int consume(SeekIndexCache.Entry entry) throws IOException, InterruptedException {
+    Mp4Extractor extractor = new Mp4Extractor();
+    if (entry != null) {
+      extractor.setSeekIndexCacheEntry(entry);
+    }
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    PositionHolder seekPositionHolder = new PositionHolder();
+    extractor.init(output);
+    int seekCount = 0;
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, seekPositionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) seekPositionHolder.position);
+        seekCount++;
+      }
+    }
+    output.assertOutput(RuntimeEnvironment.application, "mp4/sample.mp4.0.dump");
+    return seekCount;
+  }
+
 }
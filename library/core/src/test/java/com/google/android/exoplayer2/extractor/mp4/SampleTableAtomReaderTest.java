@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput.SimulatedIOException;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Tests for {@link SampleTableAtomReader}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class SampleTableAtomReaderTest {
+
+  private static final String VERSION_AND_FLAGS = "00000000";
+  private static final String SAMPLE_COUNT = "00000004";
+  private static final byte[] FOUR_BIT_STZ2 = Util.getBytesFromHexString(VERSION_AND_FLAGS
+      + "00000004" + SAMPLE_COUNT + "1234");
+  private static final byte[] EIGHT_BIT_STZ2 = Util.getBytesFromHexString(VERSION_AND_FLAGS
+      + "00000008" + SAMPLE_COUNT + "01020304");
+  private static final byte[] SIXTEEN_BIT_STZ2 = Util.getBytesFromHexString(VERSION_AND_FLAGS
+      + "00000010" + SAMPLE_COUNT + "0001000200030004");
+  private static final byte[] FIXED_SIZE_STSZ = Util.getBytesFromHexString(VERSION_AND_FLAGS
+      + "00000100" + SAMPLE_COUNT);
+  private static final byte[] CO64 = Util.getBytesFromHexString(VERSION_AND_FLAGS + "00000002"
+      + "0000000000000010" + "0000000100000000");
+  private static final byte[] TRUNCATED_STCO = Util.getBytesFromHexString(VERSION_AND_FLAGS
+      + "00000002" + "00000010");
+
+  @Test
+  public void testStz2Parsing4BitFieldSize() throws Exception {
+    verifyStz2Parsing(readAtom(Atom.TYPE_stz2, FOUR_BIT_STZ2).getSampleSizes());
+  }
+
+  @Test
+  public void testStz2Parsing8BitFieldSize() throws Exception {
+    verifyStz2Parsing(readAtom(Atom.TYPE_stz2, EIGHT_BIT_STZ2).getSampleSizes());
+  }
+
+  @Test
+  public void testStz2Parsing16BitFieldSize() throws Exception {
+    verifyStz2Parsing(readAtom(Atom.TYPE_stz2, SIXTEEN_BIT_STZ2).getSampleSizes());
+  }
+
+  @Test
+  public void testStszParsingFixedSampleSize() throws Exception {
+    SampleTableAtomReader.SampleSizes sampleSizes =
+        readAtom(Atom.TYPE_stsz, FIXED_SIZE_STSZ).getSampleSizes();
+    assertThat(sampleSizes.sampleCount).isEqualTo(4);
+    assertThat(sampleSizes.fixedSampleSize).isEqualTo(256);
+    assertThat(sampleSizes.getSize(3)).isEqualTo(256);
+  }
+
+  @Test
+  public void testStszParsingAcrossReadsWithIOErrors() throws Exception {
+    // More entries than are read at once, with sizes that don't fit in 16 bits.
+    int sampleCount = 40000;
+    byte[] stsz = new byte[12 + sampleCount * 4];
+    stsz[10] = (byte) (sampleCount >> 8);
+    stsz[11] = (byte) sampleCount;
+    for (int i = 0; i < sampleCount; i++) {
+      int size = i * 3;
+      int position = 12 + i * 4;
+      stsz[position] = (byte) (size >> 24);
+      stsz[position + 1] = (byte) (size >> 16);
+      stsz[position + 2] = (byte) (size >> 8);
+      stsz[position + 3] = (byte) size;
+    }
+
+    SampleTableAtomReader.SampleSizes sampleSizes =
+        readAtom(Atom.TYPE_stsz, stsz).getSampleSizes();
+    assertThat(sampleSizes.sampleCount).isEqualTo(sampleCount);
+    assertThat(sampleSizes.fixedSampleSize).isEqualTo(0);
+    for (int i = 0; i < sampleCount; i++) {
+      assertThat(sampleSizes.getSize(i)).isEqualTo(i * 3);
+    }
+  }
+
+  @Test
+  public void testCo64Parsing() throws Exception {
+    CompactLongArray chunkOffsets = readAtom(Atom.TYPE_co64, CO64).getChunkOffsets();
+    assertThat(chunkOffsets.length()).isEqualTo(2);
+    assertThat(chunkOffsets.get(0)).isEqualTo(0x10);
+    assertThat(chunkOffsets.get(1)).isEqualTo(0x100000000L);
+  }
+
+  @Test
+  public void testReadingWithoutEntries() throws Exception {
+    SampleTableAtomReader reader = new SampleTableAtomReader();
+    readAtom(reader, Atom.TYPE_stz2, SIXTEEN_BIT_STZ2, /* readEntries= */ false);
+    readAtom(reader, Atom.TYPE_co64, CO64, /* readEntries= */ false);
+    assertThat(reader.getSampleSizes()).isNull();
+    assertThat(reader.getChunkOffsets()).isNull();
+    assertThat(reader.getSampleCount()).isEqualTo(4);
+    assertThat(reader.getFirstChunkOffset()).isEqualTo(0x10);
+  }
+
+  @Test
+  public void testTruncatedAtomThrowsParserException() throws Exception {
+    try {
+      readAtom(Atom.TYPE_stco, TRUNCATED_STCO);
+      fail();
+    } catch (ParserException e) {
+      // Expected.
+    }
+  }
+
+  private static SampleTableAtomReader readAtom(int atomType, byte[] payload)
+      throws IOException, InterruptedException {
+    SampleTableAtomReader reader = new SampleTableAtomReader();
+    readAtom(reader, atomType, payload, /* readEntries= */ true);
+    return reader;
+  }
+
+  private static void readAtom(SampleTableAtomReader reader, int atomType, byte[] payload,
+      boolean readEntries) throws IOException, InterruptedException {
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(payload)
+        .setSimulateIOErrors(true).setSimulatePartialReads(true).build();
+    reader.startAtom(atomType, payload.length, readEntries);
+    while (true) {
+      try {
+        reader.readAtom(input);
+        break;
+      } catch (SimulatedIOException e) {
+        // Resume the read.
+      }
+    }
+    assertThat(input.getPosition()).isEqualTo(payload.length);
+  }
+
+  private static void verifyStz2Parsing(SampleTableAtomReader.SampleSizes sampleSizes) {
+    assertThat(sampleSizes.sampleCount).isEqualTo(4);
+    assertThat(sampleSizes.fixedSampleSize).isEqualTo(0);
+    for (int i = 0; i < sampleSizes.sampleCount; i++) {
+      assertThat(sampleSizes.getSize(i)).isEqualTo(i + 1);
+    }
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Util;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Tests for {@link TrackSampleTable}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class TrackSampleTableTest {
+
+  private static final int SAMPLE_COUNT = 1000;
+
+  @Test
+  public void testCompactTableReturnsEntries() {
+    assertTableReturnsEntries(/* largeValues= */ false);
+  }
+
+  @Test
+  public void testUncompactableTableReturnsEntries() {
+    assertTableReturnsEntries(/* largeValues= */ true);
+  }
+
+  @Test
+  public void testSynchronizationSampleSearchMatchesArraySearch() {
+    Random random = new Random(0);
+    long[] timestampsUs = new long[SAMPLE_COUNT];
+    int[] flags = new int[SAMPLE_COUNT];
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      // Duplicate timestamps, to check which of the equal samples is found.
+      timestampsUs[i] = (i / 2) * 20000L;
+      flags[i] = random.nextInt(10) == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    }
+    TrackSampleTable.Builder builder = new TrackSampleTable.Builder(SAMPLE_COUNT);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      builder.addSample(/* offset= */ 0, /* size= */ 0, timestampsUs[i], flags[i]);
+    }
+    TrackSampleTable table = builder.build(/* durationUs= */ SAMPLE_COUNT * 10000L);
+
+    for (long timeUs = -20000; timeUs < SAMPLE_COUNT * 10000L + 20000; timeUs += 5000) {
+      int earlierIndex = Util.binarySearchFloor(timestampsUs, timeUs, true, false);
+      while (earlierIndex >= 0 && flags[earlierIndex] == 0) {
+        earlierIndex--;
+      }
+      int laterIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
+      while (laterIndex < SAMPLE_COUNT && flags[laterIndex] == 0) {
+        laterIndex++;
+      }
+      assertThat(table.getIndexOfEarlierOrEqualSynchronizationSample(timeUs))
+          .isEqualTo(earlierIndex < 0 ? C.INDEX_UNSET : earlierIndex);
+      assertThat(table.getIndexOfLaterOrEqualSynchronizationSample(timeUs))
+          .isEqualTo(laterIndex == SAMPLE_COUNT ? C.INDEX_UNSET : laterIndex);
+    }
+  }
+
+  @Test
+  public void testScaleTimestampsMatchesArrayScaling() {
+    Random random = new Random(0);
+    long[] timestamps = new long[SAMPLE_COUNT];
+    TrackSampleTable.Builder builder = new TrackSampleTable.Builder(SAMPLE_COUNT);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      timestamps[i] = i * 3003L + random.nextInt(10000);
+      builder.addSample(/* offset= */ i, /* size= */ 1, timestamps[i], C.BUFFER_FLAG_KEY_FRAME);
+    }
+    long offset = 5000;
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      timestamps[i] -= offset;
+    }
+    Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, /* divisor= */ 30000);
+
+    builder.scaleTimestamps(offset, C.MICROS_PER_SECOND, /* divisor= */ 30000);
+    assertThat(builder.binarySearchTimestampCeil(timestamps[10], true, false))
+        .isEqualTo(Util.binarySearchCeil(timestamps, timestamps[10], true, false));
+    TrackSampleTable table = builder.build(/* durationUs= */ C.TIME_UNSET);
+
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      assertThat(table.getTimestampUs(i)).isEqualTo(timestamps[i]);
+    }
+  }
+
+  private static void assertTableReturnsEntries(boolean largeValues) {
+    Random random = new Random(0);
+    long[] offsets = new long[SAMPLE_COUNT];
+    int[] sizes = new int[SAMPLE_COUNT];
+    long[] timestampsUs = new long[SAMPLE_COUNT];
+    int[] flags = new int[SAMPLE_COUNT];
+    long offset = largeValues ? 1L << 40 : 1000;
+    int maximumSize = 0;
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      offsets[i] = offset;
+      sizes[i] = largeValues ? 100000 + random.nextInt(100000) : random.nextInt(5000);
+      maximumSize = Math.max(maximumSize, sizes[i]);
+      offset += sizes[i] + (largeValues ? Integer.MAX_VALUE : 0);
+      timestampsUs[i] = i * 33333L + random.nextInt(100000);
+      flags[i] = largeValues ? C.BUFFER_FLAG_ENCRYPTED
+          : random.nextBoolean() ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    }
+    TrackSampleTable.Builder builder = new TrackSampleTable.Builder(SAMPLE_COUNT);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      builder.addSample(offsets[i], sizes[i], timestampsUs[i], flags[i]);
+    }
+    TrackSampleTable table = builder.build(/* durationUs= */ SAMPLE_COUNT * 33333L);
+
+    assertThat(table.sampleCount).isEqualTo(SAMPLE_COUNT);
+    assertThat(table.maximumSize).isEqualTo(maximumSize);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      assertThat(table.getOffset(i)).isEqualTo(offsets[i]);
+      assertThat(table.getSize(i)).isEqualTo(sizes[i]);
+      assertThat(table.getTimestampUs(i)).isEqualTo(timestampsUs[i]);
+      assertThat(table.getFlags(i)).isEqualTo(flags[i]);
+    }
+  }
+
+}
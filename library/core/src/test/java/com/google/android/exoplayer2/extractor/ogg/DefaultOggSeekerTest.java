@@ -50,6 +50,68 @@ public final class DefaultOggSeekerTest {
     }
   }
 
+  @Test
+  public void testRepeatedSeekingNeedsFewerSeeks() throws IOException, InterruptedException {
+    Random random = new Random(0);
+    OggTestFile testFile = OggTestFile.generate(random, 1000);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(testFile.data).build();
+    DefaultOggSeeker oggSeeker =
+        new DefaultOggSeeker(
+            0,
+            testFile.data.length,
+            new TestStreamReader(),
+            testFile.firstPayloadPageSize,
+            testFile.firstPayloadPageGranulePosition);
+    // Read the duration.
+    long nextSeekPosition;
+    while ((nextSeekPosition = oggSeeker.read(input)) != -1) {
+      input.setPosition((int) nextSeekPosition);
+    }
+    long[] targetGranules = new long[100];
+    int[] initialPositions = new int[100];
+    for (int i = 0; i < 100; i++) {
+      targetGranules[i] = (long) (random.nextDouble() * testFile.lastGranule);
+      initialPositions[i] = random.nextInt(testFile.data.length);
+    }
+
+    int firstSeekCount = 0;
+    for (int i = 0; i < 100; i++) {
+      firstSeekCount += countSeeks(input, oggSeeker, targetGranules[i], initialPositions[i]);
+    }
+    int secondSeekCount = 0;
+    for (int i = 0; i < 100; i++) {
+      secondSeekCount += countSeeks(input, oggSeeker, targetGranules[i], initialPositions[i]);
+    }
+
+    assertThat(secondSeekCount).isLessThan(firstSeekCount);
+  }
+
+  @Test
+  public void testSeekingToIndexedLastGranule() throws IOException, InterruptedException {
+    OggTestFile testFile = OggTestFile.generate(new Random(0), 1000);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(testFile.data).build();
+    DefaultOggSeeker oggSeeker =
+        new DefaultOggSeeker(
+            0,
+            testFile.data.length,
+            new TestStreamReader(),
+            testFile.firstPayloadPageSize,
+            testFile.firstPayloadPageGranulePosition);
+    // Read the duration, which indexes the last page.
+    long nextSeekPosition;
+    while ((nextSeekPosition = oggSeeker.read(input)) != -1) {
+      input.setPosition((int) nextSeekPosition);
+    }
+
+    seekTo(input, oggSeeker, testFile.lastGranule, 0);
+    oggSeeker.skipToPageOfGranule(input, testFile.lastGranule, -1);
+
+    // The input is at the start of the last page, which contains the target granule.
+    OggPageHeader pageHeader = new OggPageHeader();
+    assertThat(pageHeader.populate(input, true)).isTrue();
+    assertThat(pageHeader.granulePosition).isEqualTo(testFile.lastGranule);
+  }
+
   private void testSeeking(Random random) throws IOException, InterruptedException {
     OggTestFile testFile = OggTestFile.generate(random, 1000);
     FakeExtractorInput input = new FakeExtractorInput.Builder().setData(testFile.data).build();
@@ -157,6 +219,22 @@ public final class DefaultOggSeekerTest {
     return -(nextSeekPosition + 2);
   }
 
+  private static int countSeeks(
+      FakeExtractorInput input, DefaultOggSeeker oggSeeker, long targetGranule,
+      int initialPosition) throws IOException, InterruptedException {
+    long nextSeekPosition = initialPosition;
+    int count = 0;
+    oggSeeker.resetSeeking();
+    while (true) {
+      input.setPosition((int) nextSeekPosition);
+      nextSeekPosition = oggSeeker.getNextSeekPosition(targetGranule, input);
+      if (nextSeekPosition < 0) {
+        return count;
+      }
+      count++;
+    }
+  }
+
   private static class TestStreamReader extends StreamReader {
     @Override
     protected long preparePayload(ParsableByteArray packet) {
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.ts;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link AsyncElementaryStreamReader}. */
+@RunWith(RobolectricTestRunner.class)
+public final class AsyncElementaryStreamReaderTest {
+
+  private static final long TIMEOUT_MS = 10000;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testAwaitFlushWaitsForReplayWhenInterrupted() throws Exception {
+    final BlockingReader blockingReader = new BlockingReader();
+    AsyncElementaryStreamReader reader = new AsyncElementaryStreamReader(blockingReader, executor);
+    reader.consume(new ParsableByteArray(new byte[] {0, 1, 2}));
+    reader.flush();
+    assertThat(blockingReader.consumeStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+
+    final Thread waitingThread = Thread.currentThread();
+    Thread unblockingThread = new Thread() {
+      @Override
+      public void run() {
+        waitingThread.interrupt();
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          // Do nothing.
+        }
+        blockingReader.unblock.countDown();
+      }
+    };
+    unblockingThread.start();
+    reader.awaitFlush();
+
+    // The replay completed before awaitFlush returned, and the interrupt wasn't lost.
+    assertThat(blockingReader.consumedBytes).isEqualTo(3);
+    assertThat(Thread.interrupted()).isTrue();
+    unblockingThread.join();
+  }
+
+  @Test
+  public void testFlushQueuesBatchesWhileReplaying() throws Exception {
+    BlockingReader blockingReader = new BlockingReader();
+    AsyncElementaryStreamReader reader = new AsyncElementaryStreamReader(blockingReader, executor);
+    reader.consume(new ParsableByteArray(new byte[] {0, 1, 2}));
+    reader.flush();
+    assertThat(blockingReader.consumeStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+
+    // The first batch is still being replayed, so these batches are queued.
+    for (int i = 1; i < AsyncElementaryStreamReader.MAX_PENDING_BATCHES; i++) {
+      reader.consume(new ParsableByteArray(new byte[] {0}));
+      reader.flush();
+    }
+    assertThat(blockingReader.consumedBytes).isEqualTo(0);
+    blockingReader.unblock.countDown();
+    reader.awaitFlush();
+
+    assertThat(blockingReader.consumedBytes)
+        .isEqualTo(3 + AsyncElementaryStreamReader.MAX_PENDING_BATCHES - 1);
+  }
+
+  @Test
+  public void testAwaitFlushRethrowsRuntimeExceptionOfWrappedReader() throws ParserException {
+    BlockingReader blockingReader = new BlockingReader();
+    blockingReader.unblock.countDown();
+    blockingReader.exception = new IllegalStateException();
+    AsyncElementaryStreamReader reader = new AsyncElementaryStreamReader(blockingReader, executor);
+    reader.consume(new ParsableByteArray(new byte[] {0}));
+    reader.flush();
+
+    try {
+      reader.awaitFlush();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).isSameAs(blockingReader.exception);
+    }
+    // The exception is only reported once.
+    reader.awaitFlush();
+  }
+
+  /**
+   * Reader that blocks in {@link #consume(ParsableByteArray)} until {@link #unblock} is counted
+   * down.
+   */
+  private static final class BlockingReader implements ElementaryStreamReader {
+
+    public final CountDownLatch consumeStarted;
+    public final CountDownLatch unblock;
+
+    public volatile RuntimeException exception;
+    public volatile int consumedBytes;
+
+    public BlockingReader() {
+      consumeStarted = new CountDownLatch(1);
+      unblock = new CountDownLatch(1);
+    }
+
+    @Override
+    public void seek() {
+      // Do nothing.
+    }
+
+    @Override
+    public void createTracks(ExtractorOutput extractorOutput,
+        PesReader.TrackIdGenerator idGenerator) {
+      // Do nothing.
+    }
+
+    @Override
+    public void packetStarted(long pesTimeUs, boolean dataAlignmentIndicator) {
+      // Do nothing.
+    }
+
+    @Override
+    public void consume(ParsableByteArray data) {
+      consumeStarted.countDown();
+      try {
+        unblock.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      if (exception != null) {
+        throw exception;
+      }
+      consumedBytes += data.bytesLeft();
+      data.skipBytes(data.bytesLeft());
+    }
+
+    @Override
+    public void packetFinished() {
+      // Do nothing.
+    }
+
+  }
+
+}
@@ -36,6 +36,8 @@ import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
 import java.io.ByteArrayOutputStream;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -60,6 +62,27 @@ public final class TsExtractorTest {
         "ts/sample.ts");
   }
 
+  @Test
+  public void testSampleWithDemuxExecutor() throws Exception {
+    final ExecutorService demuxExecutor = Executors.newCachedThreadPool();
+    try {
+      ExtractorAsserts.assertBehavior(
+          new ExtractorFactory() {
+            @Override
+            public Extractor create() {
+              return new TsExtractor(
+                  TsExtractor.MODE_SINGLE_PMT,
+                  new TimestampAdjuster(0),
+                  new DefaultTsPayloadReaderFactory(),
+                  demuxExecutor);
+            }
+          },
+          "ts/sample.ts");
+    } finally {
+      demuxExecutor.shutdown();
+    }
+  }
+
   @Test
   public void testIncompleteSample() throws Exception {
     Random random = new Random(0);
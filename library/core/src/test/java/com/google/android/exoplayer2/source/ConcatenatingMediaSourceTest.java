@@ -29,6 +29,7 @@ import com.google.android.exoplayer2.testutil.MediaSourceTestRunner;
 import com.google.android.exoplayer2.testutil.RobolectricUtil;
 import com.google.android.exoplayer2.testutil.TimelineAsserts;
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -270,6 +271,95 @@ public final class ConcatenatingMediaSourceTest {
     }
   }
 
+  @Test
+  public void testPeriodCreationWithPrefetching() throws IOException, InterruptedException {
+    FakeMediaSource[] childSources = new FakeMediaSource[3];
+    for (int i = 0; i < childSources.length; i++) {
+      childSources[i] = new FakeMediaSource(createFakeTimeline(1, i), null);
+    }
+    ConcatenatingMediaSource mediaSource = new ConcatenatingMediaSource(childSources);
+    mediaSource.setPrefetchCount(1);
+
+    MediaSourceTestRunner testRunner = new MediaSourceTestRunner(mediaSource, null);
+    try {
+      testRunner.prepareSource();
+      MediaPeriod firstPeriod =
+          testRunner.createPeriod(
+              new MediaPeriodId(/* periodIndex= */ 0, /* windowSequenceNumber= */ 0));
+      // Only the period of the next source is prefetched.
+      assertThat(childSources[1].getCreatedMediaPeriods()).hasSize(1);
+      assertThat(childSources[2].getCreatedMediaPeriods()).isEmpty();
+
+      MediaPeriod secondPeriod =
+          testRunner.createPeriod(
+              new MediaPeriodId(/* periodIndex= */ 1, /* windowSequenceNumber= */ 1));
+      // The prefetched period is used, and prefetching moves on to the following source.
+      assertThat(childSources[1].getCreatedMediaPeriods()).hasSize(1);
+      assertThat(childSources[2].getCreatedMediaPeriods()).hasSize(1);
+      CountDownLatch preparedCondition = testRunner.preparePeriod(secondPeriod, 0);
+      assertThat(preparedCondition.getCount()).isEqualTo(0);
+
+      testRunner.releasePeriod(firstPeriod);
+      testRunner.releasePeriod(secondPeriod);
+      // Releasing the source releases the period that is still prefetched.
+      testRunner.releaseSource();
+      for (FakeMediaSource childSource : childSources) {
+        childSource.assertReleased();
+      }
+    } finally {
+      testRunner.release();
+    }
+  }
+
+  @Test
+  public void testPrefetchingFollowsShuffleAndRepeatMode()
+      throws IOException, InterruptedException {
+    FakeMediaSource[] childSources = new FakeMediaSource[3];
+    for (int i = 0; i < childSources.length; i++) {
+      childSources[i] = new FakeMediaSource(createFakeTimeline(1, i), null);
+    }
+    ConcatenatingMediaSource mediaSource = new ConcatenatingMediaSource(
+        /* isAtomic= */ false, new FakeShuffleOrder(childSources.length), childSources);
+    mediaSource.setPrefetchCount(1);
+
+    MediaSourceTestRunner testRunner = new MediaSourceTestRunner(mediaSource, null);
+    try {
+      testRunner.prepareSource();
+      // The fake shuffle order plays the sources in reverse.
+      testRunner.setShuffleModeEnabled(true);
+      MediaPeriod firstPeriod =
+          testRunner.createPeriod(
+              new MediaPeriodId(/* periodIndex= */ 2, /* windowSequenceNumber= */ 0));
+      assertThat(childSources[0].getCreatedMediaPeriods()).isEmpty();
+      assertThat(childSources[1].getCreatedMediaPeriods()).hasSize(1);
+
+      // Without shuffling, the first source follows the last one when repeating all.
+      testRunner.setShuffleModeEnabled(false);
+      testRunner.setRepeatMode(Player.REPEAT_MODE_ALL);
+      MediaPeriod secondPeriod =
+          testRunner.createPeriod(
+              new MediaPeriodId(/* periodIndex= */ 2, /* windowSequenceNumber= */ 1));
+      assertThat(childSources[0].getCreatedMediaPeriods()).hasSize(1);
+
+      // The period prefetched for the shuffled order was released, so it's prefetched again.
+      testRunner.setShuffleModeEnabled(true);
+      MediaPeriod thirdPeriod =
+          testRunner.createPeriod(
+              new MediaPeriodId(/* periodIndex= */ 2, /* windowSequenceNumber= */ 2));
+      assertThat(childSources[1].getCreatedMediaPeriods()).hasSize(2);
+
+      testRunner.releasePeriod(firstPeriod);
+      testRunner.releasePeriod(secondPeriod);
+      testRunner.releasePeriod(thirdPeriod);
+      testRunner.releaseSource();
+      for (FakeMediaSource childSource : childSources) {
+        childSource.assertReleased();
+      }
+    } finally {
+      testRunner.release();
+    }
+  }
+
   /**
    * Wraps the specified timelines in a {@link ConcatenatingMediaSource} and returns the
    * concatenated timeline.
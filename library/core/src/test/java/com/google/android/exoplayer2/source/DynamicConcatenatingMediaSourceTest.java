@@ -26,6 +26,7 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.testutil.FakeMediaPeriod;
 import com.google.android.exoplayer2.testutil.FakeMediaSource;
 import com.google.android.exoplayer2.testutil.FakeShuffleOrder;
 import com.google.android.exoplayer2.testutil.FakeTimeline;
@@ -33,6 +34,10 @@ import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinit
 import com.google.android.exoplayer2.testutil.MediaSourceTestRunner;
 import com.google.android.exoplayer2.testutil.RobolectricUtil;
 import com.google.android.exoplayer2.testutil.TimelineAsserts;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.CountingAllocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
@@ -783,6 +788,112 @@ public final class DynamicConcatenatingMediaSourceTest {
     testRunner.releaseSource();
   }
 
+  @Test
+  public void testPeriodCreationWithPrefetching() throws IOException, InterruptedException {
+    FakeMediaSource[] childSources = new FakeMediaSource[3];
+    for (int i = 0; i < childSources.length; i++) {
+      childSources[i] = new FakeMediaSource(new FakeTimeline(/* windowCount= */ 1), null);
+    }
+    mediaSource.setPrefetchCount(1);
+    mediaSource.addMediaSources(Arrays.<MediaSource>asList(childSources));
+    testRunner.prepareSource();
+
+    MediaPeriod firstPeriod =
+        testRunner.createPeriod(
+            new MediaPeriodId(/* periodIndex= */ 0, /* windowSequenceNumber= */ 0));
+    // Only the period of the next media source is prefetched.
+    assertThat(childSources[1].getCreatedMediaPeriods()).hasSize(1);
+    assertThat(childSources[2].getCreatedMediaPeriods()).isEmpty();
+
+    MediaPeriod secondPeriod =
+        testRunner.createPeriod(
+            new MediaPeriodId(/* periodIndex= */ 1, /* windowSequenceNumber= */ 1));
+    // The prefetched period is used, and prefetching moves on to the following media source.
+    assertThat(secondPeriod).isInstanceOf(PrefetchedMediaPeriod.class);
+    assertThat(childSources[1].getCreatedMediaPeriods()).hasSize(1);
+    assertThat(childSources[2].getCreatedMediaPeriods()).hasSize(1);
+    CountDownLatch preparedCondition = testRunner.preparePeriod(secondPeriod, 0);
+    assertThat(preparedCondition.getCount()).isEqualTo(0);
+
+    testRunner.releasePeriod(firstPeriod);
+    testRunner.releasePeriod(secondPeriod);
+    // Releasing the source releases the period that is still prefetched.
+    testRunner.releaseSource();
+    for (FakeMediaSource childSource : childSources) {
+      childSource.assertReleased();
+    }
+  }
+
+  @Test
+  public void testPrefetchedPeriodIsAccountedAndReleasedToAdoptingPeriod()
+      throws IOException, InterruptedException {
+    // Release default test runner and replace with one that counts the allocated memory.
+    testRunner.release();
+    CountingAllocator triggeringAllocator =
+        new CountingAllocator(new DefaultAllocator(/* trimOnReset= */ true, 1024));
+    final CountingAllocator adoptingAllocator =
+        new CountingAllocator(triggeringAllocator.getUpstreamAllocator());
+    testRunner = new MediaSourceTestRunner(mediaSource, triggeringAllocator);
+    FakeMediaSource firstSource = new FakeMediaSource(new FakeTimeline(/* windowCount= */ 1), null);
+    LoadingMediaSource secondSource = new LoadingMediaSource();
+    mediaSource.setPrefetchCount(1);
+    mediaSource.addMediaSource(firstSource);
+    mediaSource.addMediaSource(secondSource);
+    testRunner.prepareSource();
+
+    MediaPeriod firstPeriod =
+        testRunner.createPeriod(
+            new MediaPeriodId(/* periodIndex= */ 0, /* windowSequenceNumber= */ 0));
+    final LoadingMediaPeriod loadingMediaPeriod = secondSource.lastCreatedPeriod;
+    // The prefetched period loads at low priority, and its memory isn't counted towards the period
+    // whose creation triggered prefetching.
+    assertThat(loadingMediaPeriod.getLoadPriority())
+        .isEqualTo(PrefetchedMediaPeriod.PREFETCH_LOAD_PRIORITY);
+    assertThat(loadingMediaPeriod.continueLoadingRequested).isTrue();
+    assertThat(triggeringAllocator.getTotalBytesAllocated()).isEqualTo(0);
+
+    final MediaPeriod[] secondPeriod = new MediaPeriod[1];
+    final int[] continueLoadingRequestCount = new int[1];
+    testRunner.runOnPlaybackThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            secondPeriod[0] =
+                mediaSource.createPeriod(
+                    new MediaPeriodId(/* periodIndex= */ 1, /* windowSequenceNumber= */ 1),
+                    adoptingAllocator);
+            secondPeriod[0].prepare(
+                new MediaPeriod.Callback() {
+                  @Override
+                  public void onPrepared(MediaPeriod mediaPeriod) {
+                    // Do nothing.
+                  }
+
+                  @Override
+                  public void onContinueLoadingRequested(MediaPeriod source) {
+                    continueLoadingRequestCount[0]++;
+                  }
+                },
+                /* positionUs= */ 0);
+          }
+        });
+    // On adoption, the memory is counted towards the adopting period, the load priority is restored
+    // and the request to continue loading made while the period was prefetched is replayed, even
+    // though the period isn't prepared yet.
+    assertThat(secondPeriod[0]).isInstanceOf(PrefetchedMediaPeriod.class);
+    assertThat(adoptingAllocator.getTotalBytesAllocated()).isEqualTo(1024);
+    assertThat(triggeringAllocator.getTotalBytesAllocated()).isEqualTo(0);
+    assertThat(loadingMediaPeriod.getLoadPriority()).isEqualTo(C.PRIORITY_PLAYBACK);
+    assertThat(continueLoadingRequestCount[0]).isEqualTo(1);
+
+    testRunner.releasePeriod(firstPeriod);
+    testRunner.releasePeriod(secondPeriod[0]);
+    assertThat(adoptingAllocator.getTotalBytesAllocated()).isEqualTo(0);
+    testRunner.releaseSource();
+    firstSource.assertReleased();
+    secondSource.assertReleased();
+  }
+
   private static FakeMediaSource[] createMediaSources(int count) {
     FakeMediaSource[] sources = new FakeMediaSource[count];
     for (int i = 0; i < count; i++) {
@@ -864,4 +975,74 @@ public final class DynamicConcatenatingMediaSourceTest {
       return timeline;
     }
   }
+
+  /**
+   * Fake media source creating {@link LoadingMediaPeriod}s.
+   */
+  private static final class LoadingMediaSource extends FakeMediaSource {
+
+    private LoadingMediaPeriod lastCreatedPeriod;
+
+    public LoadingMediaSource() {
+      super(new FakeTimeline(/* windowCount= */ 1), null);
+    }
+
+    @Override
+    protected FakeMediaPeriod createFakeMediaPeriod(
+        MediaPeriodId id, TrackGroupArray trackGroupArray, Allocator allocator) {
+      lastCreatedPeriod = new LoadingMediaPeriod(trackGroupArray, allocator);
+      return lastCreatedPeriod;
+    }
+
+  }
+
+  /**
+   * Fake media period that allocates memory when it's prepared and then, like a period that has
+   * loaded its maximum amount of data without completing preparation, blocks until it's asked to
+   * continue loading.
+   */
+  private static final class LoadingMediaPeriod extends FakeMediaPeriod
+      implements PrioritizableMediaPeriod {
+
+    private final Allocator allocator;
+
+    private Allocation allocation;
+    private int loadPriority;
+    private boolean continueLoadingRequested;
+
+    public LoadingMediaPeriod(TrackGroupArray trackGroupArray, Allocator allocator) {
+      super(trackGroupArray, /* deferOnPrepared= */ true);
+      this.allocator = allocator;
+      loadPriority = C.PRIORITY_PLAYBACK;
+    }
+
+    @Override
+    public synchronized void prepare(Callback callback, long positionUs) {
+      super.prepare(callback, positionUs);
+      allocation = allocator.allocate();
+      continueLoadingRequested = true;
+      callback.onContinueLoadingRequested(this);
+    }
+
+    @Override
+    public void release() {
+      super.release();
+      if (allocation != null) {
+        allocator.release(allocation);
+        allocation = null;
+      }
+    }
+
+    @Override
+    public int getLoadPriority() {
+      return loadPriority;
+    }
+
+    @Override
+    public void setLoadPriority(int priority) {
+      loadPriority = priority;
+    }
+
+  }
+
 }
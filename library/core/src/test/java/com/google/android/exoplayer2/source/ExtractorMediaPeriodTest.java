@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.extractor.BatchingTrackOutput;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.ExtractorsFactory;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekIndexScanner;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.MediaSourceTestRunner;
+import com.google.android.exoplayer2.testutil.RobolectricUtil;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Unit tests for {@link ExtractorMediaPeriod}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = {RobolectricUtil.CustomLooper.class, RobolectricUtil.CustomMessageQueue.class})
+public final class ExtractorMediaPeriodTest {
+
+  private static final String URI = "test://media";
+  private static final int SAMPLE_SIZE = 100;
+  private static final int SAMPLE_COUNT = 100;
+  private static final long SAMPLE_DURATION_US = 10000;
+  private static final int CONTINUE_LOADING_CHECK_INTERVAL_BYTES = 10 * SAMPLE_SIZE;
+
+  private AtomicInteger createdDataSourceCount;
+  private MediaSourceTestRunner testRunner;
+
+  @Before
+  public void setUp() {
+    createdDataSourceCount = new AtomicInteger();
+  }
+
+  @After
+  public void tearDown() {
+    if (testRunner != null) {
+      testRunner.release();
+    }
+  }
+
+  @Test
+  public void testBatchedSamplesAreAvailableWhileLoadingIsPaused()
+      throws IOException, InterruptedException {
+    createTestRunner(/* seekIndexScanner= */ null);
+    final MediaPeriod mediaPeriod = prepareAndLoadUntilPaused();
+
+    final long[] bufferedPositionUs = new long[1];
+    testRunner.runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        bufferedPositionUs[0] = mediaPeriod.getBufferedPositionUs();
+      }
+    });
+
+    // Loading pauses once the check interval has been loaded. The samples loaded by then are
+    // available, even though fewer of them than fill a batch have been extracted.
+    int loadedSampleCount = CONTINUE_LOADING_CHECK_INTERVAL_BYTES / SAMPLE_SIZE;
+    assertThat(bufferedPositionUs[0]).isAtLeast((loadedSampleCount - 1) * SAMPLE_DURATION_US);
+    // No data source is created for a seek index scan if the extractor doesn't provide a scanner.
+    assertThat(createdDataSourceCount.get()).isEqualTo(1);
+    testRunner.releasePeriod(mediaPeriod);
+    testRunner.releaseSource();
+  }
+
+  @Test
+  public void testSeekIndexScanStartsOnceLoadingPauses() throws IOException, InterruptedException {
+    RecordingScanner scanner = new RecordingScanner();
+    createTestRunner(scanner);
+    MediaPeriod mediaPeriod = prepareAndLoadUntilPaused();
+
+    assertThat(scanner.scanStarted.await(MediaSourceTestRunner.TIMEOUT_MS, TimeUnit.MILLISECONDS))
+        .isTrue();
+    // The scan started after the samples up to the check interval were loaded, and read the stream
+    // through a data source of its own.
+    assertThat(scanner.sampleBytesLoadedAtScanStart)
+        .isAtLeast((long) CONTINUE_LOADING_CHECK_INTERVAL_BYTES);
+    assertThat(createdDataSourceCount.get()).isEqualTo(2);
+    testRunner.releasePeriod(mediaPeriod);
+    testRunner.releaseSource();
+  }
+
+  private void createTestRunner(@Nullable final SeekIndexScanner seekIndexScanner) {
+    FakeDataSet dataSet = new FakeDataSet().setRandomData(URI, SAMPLE_SIZE * SAMPLE_COUNT);
+    final DataSource.Factory fakeDataSourceFactory =
+        new FakeDataSource.Factory(null).setFakeDataSet(dataSet);
+    DataSource.Factory dataSourceFactory = new DataSource.Factory() {
+      @Override
+      public DataSource createDataSource() {
+        createdDataSourceCount.incrementAndGet();
+        return fakeDataSourceFactory.createDataSource();
+      }
+    };
+    ExtractorMediaSource mediaSource =
+        new ExtractorMediaSource.Factory(dataSourceFactory)
+            .setExtractorsFactory(new ExtractorsFactory() {
+              @Override
+              public Extractor[] createExtractors() {
+                return new Extractor[] {new BatchingExtractor(seekIndexScanner)};
+              }
+            })
+            .setContinueLoadingCheckIntervalBytes(CONTINUE_LOADING_CHECK_INTERVAL_BYTES)
+            .createMediaSource(Uri.parse(URI));
+    testRunner = new MediaSourceTestRunner(mediaSource,
+        new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE));
+  }
+
+  /**
+   * Prepares a period of the source, enables its track, and waits until loading pauses at the
+   * first continue loading check.
+   */
+  private MediaPeriod prepareAndLoadUntilPaused() throws IOException, InterruptedException {
+    testRunner.prepareSource();
+    final MediaPeriod mediaPeriod = testRunner.createPeriod(new MediaPeriodId(0));
+    final CountDownLatch preparedCountDown = new CountDownLatch(1);
+    final CountDownLatch continueLoadingRequestedCountDown = new CountDownLatch(1);
+    testRunner.runOnPlaybackThread(new Runnable() {
+      @Override
+      public void run() {
+        mediaPeriod.prepare(new MediaPeriod.Callback() {
+          @Override
+          public void onPrepared(MediaPeriod mediaPeriod) {
+            // Enable the track and resume loading, as the player does once the period is prepared.
+            TrackSelection[] selections = new TrackSelection[] {
+                new FixedTrackSelection(mediaPeriod.getTrackGroups().get(0), 0)};
+            mediaPeriod.selectTracks(selections, new boolean[1], new SampleStream[1],
+                new boolean[1], /* positionUs= */ 0);
+            mediaPeriod.continueLoading(/* playbackPositionUs= */ 0);
+            preparedCountDown.countDown();
+          }
+
+          @Override
+          public void onContinueLoadingRequested(MediaPeriod source) {
+            // Don't continue loading, so that loading stays paused.
+            continueLoadingRequestedCountDown.countDown();
+          }
+        }, /* positionUs= */ 0);
+      }
+    });
+    assertThat(preparedCountDown.await(MediaSourceTestRunner.TIMEOUT_MS, TimeUnit.MILLISECONDS))
+        .isTrue();
+    assertThat(continueLoadingRequestedCountDown.await(MediaSourceTestRunner.TIMEOUT_MS,
+        TimeUnit.MILLISECONDS)).isTrue();
+    return mediaPeriod;
+  }
+
+  /**
+   * An extractor that outputs fixed size samples of a single track in batches that are larger than
+   * the continue loading check interval, and optionally provides a seek index scanner.
+   */
+  private static final class BatchingExtractor
+      implements Extractor, BatchingTrackOutput.Client, SeekIndexScanner.Provider {
+
+    @Nullable private final SeekIndexScanner seekIndexScanner;
+
+    private ExtractorOutput output;
+    private BatchingTrackOutput trackOutput;
+    private int sampleCount;
+    private int sampleBytesWritten;
+
+    public volatile long sampleBytesLoaded;
+
+    public BatchingExtractor(@Nullable SeekIndexScanner seekIndexScanner) {
+      this.seekIndexScanner = seekIndexScanner;
+    }
+
+    @Override
+    public boolean sniff(ExtractorInput input) {
+      return true;
+    }
+
+    @Override
+    public void init(ExtractorOutput output) {
+      this.output = output;
+    }
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition)
+        throws IOException, InterruptedException {
+      if (trackOutput == null) {
+        trackOutput = new BatchingTrackOutput(output.track(0, C.TRACK_TYPE_AUDIO),
+            /* maxBatchSize= */ SAMPLE_COUNT);
+        trackOutput.format(Format.createSampleFormat(null, MimeTypes.AUDIO_RAW,
+            Format.OFFSET_SAMPLE_RELATIVE));
+        output.endTracks();
+        output.seekMap(new SeekMap.Unseekable(C.TIME_UNSET));
+      }
+      int bytesAppended = trackOutput.sampleData(input, SAMPLE_SIZE - sampleBytesWritten, true);
+      if (bytesAppended == C.RESULT_END_OF_INPUT) {
+        trackOutput.flush();
+        return RESULT_END_OF_INPUT;
+      }
+      sampleBytesWritten += bytesAppended;
+      sampleBytesLoaded += bytesAppended;
+      if (sampleBytesWritten == SAMPLE_SIZE) {
+        trackOutput.sampleMetadata(sampleCount * SAMPLE_DURATION_US, C.BUFFER_FLAG_KEY_FRAME,
+            SAMPLE_SIZE, 0, null);
+        sampleCount++;
+        sampleBytesWritten = 0;
+      }
+      return RESULT_CONTINUE;
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {
+      if (trackOutput != null) {
+        trackOutput.clear();
+      }
+      sampleBytesWritten = 0;
+    }
+
+    @Override
+    public void release() {
+      // Do nothing.
+    }
+
+    @Override
+    public void flushSampleBatches() {
+      if (trackOutput != null) {
+        trackOutput.flush();
+      }
+    }
+
+    @Override
+    public @Nullable SeekIndexScanner getSeekIndexScanner() {
+      if (seekIndexScanner instanceof RecordingScanner) {
+        ((RecordingScanner) seekIndexScanner).extractor = this;
+      }
+      return seekIndexScanner;
+    }
+
+  }
+
+  /**
+   * A scanner that records how many sample bytes had been loaded when its scan started.
+   */
+  private static final class RecordingScanner implements SeekIndexScanner {
+
+    public final CountDownLatch scanStarted;
+
+    public volatile BatchingExtractor extractor;
+    public volatile long sampleBytesLoadedAtScanStart;
+
+    public RecordingScanner() {
+      scanStarted = new CountDownLatch(1);
+    }
+
+    @Override
+    public long getStartPosition() {
+      return 0;
+    }
+
+    @Override
+    public void scan(ExtractorInput input) {
+      sampleBytesLoadedAtScanStart = extractor.sampleBytesLoaded;
+      scanStarted.countDown();
+    }
+
+  }
+
+}
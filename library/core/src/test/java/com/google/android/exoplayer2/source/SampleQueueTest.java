@@ -511,6 +511,44 @@ public final class SampleQueueTest {
     assertThat(sampleQueue.getLargestQueuedTimestampUs()).isEqualTo(LAST_SAMPLE_TIMESTAMP);
   }
 
+  @Test
+  public void testManySamplesWithWrapAroundGrowthAndShrinking() {
+    sampleQueue.format(TEST_FORMAT_1);
+    assertReadFormat(false, TEST_FORMAT_1);
+    // Read and discard some samples so that the queue wraps around before it's grown.
+    writeSingleByteSamples(0, 600);
+    assertSingleByteSamplesRead(0, 500);
+    sampleQueue.discardToRead();
+    // Grow the queue several times.
+    writeSingleByteSamples(600, 5000);
+    assertSingleByteSamplesRead(500, 1500);
+    // Shrink the queue, and check the remaining samples are retained.
+    sampleQueue.discardUpstreamSamples(1600);
+    writeSingleByteSamples(1600, 1700);
+    assertSingleByteSamplesRead(1500, 1700);
+    assertNoSamplesToRead(TEST_FORMAT_1);
+  }
+
+  @Test
+  public void testAdvanceToWithManySamples() {
+    sampleQueue.format(TEST_FORMAT_1);
+    assertReadFormat(false, TEST_FORMAT_1);
+    writeSingleByteSamples(0, 5000);
+    sampleQueue.discardTo(1234500, true, false);
+    assertThat(sampleQueue.getFirstIndex()).isEqualTo(1230);
+
+    assertThat(sampleQueue.advanceTo(2345500, true, false)).isEqualTo(2340 - 1230);
+    assertSingleByteSamplesRead(2340, 2341);
+    assertThat(sampleQueue.advanceTo(2999500, false, false)).isEqualTo(2999 - 2341);
+    assertSingleByteSamplesRead(2999, 3000);
+    // Samples before the read position can't be advanced to.
+    assertThat(sampleQueue.advanceTo(2000000, true, false)).isEqualTo(SampleQueue.ADVANCE_FAILED);
+    // The read position is already at the last keyframe before the target.
+    assertThat(sampleQueue.advanceTo(3005000, true, false)).isEqualTo(0);
+    assertThat(sampleQueue.advanceTo(3005000, false, false)).isEqualTo(5);
+    assertSingleByteSamplesRead(3005, 3006);
+  }
+
   // Internal methods.
 
   /**
@@ -542,6 +580,26 @@ public final class SampleQueueTest {
     }
   }
 
+  /**
+   * Writes samples consisting of a single byte, equal to the sample index, with timestamps in
+   * milliseconds equal to the sample index. Every tenth sample is a keyframe.
+   */
+  private void writeSingleByteSamples(int fromIndex, int toIndex) {
+    for (int i = fromIndex; i < toIndex; i++) {
+      sampleQueue.sampleData(new ParsableByteArray(new byte[] {(byte) i}), 1);
+      sampleQueue.sampleMetadata(i * 1000L, i % 10 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0, 1, 0, null);
+    }
+  }
+
+  /**
+   * Asserts correct reading of samples written by {@link #writeSingleByteSamples(int, int)}.
+   */
+  private void assertSingleByteSamplesRead(int fromIndex, int toIndex) {
+    for (int i = fromIndex; i < toIndex; i++) {
+      assertSampleRead(i * 1000L, i % 10 == 0, new byte[] {(byte) i}, 0, 1);
+    }
+  }
+
   /**
    * Asserts correct reading of standard test data from {@code sampleQueue}.
    */
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link BufferedUdpDataSource}, sending datagrams over the loopback interface.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class BufferedUdpDataSourceTest {
+
+  private static final int MAX_PACKET_SIZE = 2048;
+  private static final int SOCKET_TIMEOUT_MS = 10000;
+  private static final int PAYLOAD_LENGTH = 188;
+
+  private InetAddress loopbackAddress;
+  private int port;
+  private DatagramSocket senderSocket;
+  private BufferedUdpDataSource dataSource;
+
+  @Before
+  public void setUp() throws IOException {
+    loopbackAddress = InetAddress.getByName("127.0.0.1");
+    DatagramSocket portSocket = new DatagramSocket(0, loopbackAddress);
+    port = portSocket.getLocalPort();
+    portSocket.close();
+    senderSocket = new DatagramSocket();
+  }
+
+  @After
+  public void tearDown() {
+    senderSocket.close();
+    if (dataSource != null) {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  public void testReadReordersRtpPacketsAndStripsHeaders() throws IOException {
+    dataSource = new BufferedUdpDataSource(null, MAX_PACKET_SIZE, /* packetBufferCount= */ 8,
+        /* jitterBufferPacketCount= */ 4, /* maxJitterDelayMs= */ 100, SOCKET_TIMEOUT_MS,
+        BufferedUdpDataSource.RTP_MODE_ENABLED);
+    dataSource.open(new DataSpec(Uri.parse("udp://127.0.0.1:" + port)));
+
+    send(buildRtpPacket(/* sequenceNumber= */ 0));
+    send(buildRtpPacket(/* sequenceNumber= */ 2));
+    send(buildRtpPacket(/* sequenceNumber= */ 1));
+    byte[] data = readFully(3 * PAYLOAD_LENGTH);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(data[i * PAYLOAD_LENGTH] & 0xFF).isEqualTo(0x47);
+      assertThat((int) data[i * PAYLOAD_LENGTH + 1]).isEqualTo(i);
+    }
+    assertThat(dataSource.getReceivedPacketCount()).isEqualTo(3);
+    assertThat(dataSource.getLostPacketCount()).isEqualTo(0);
+    assertThat(dataSource.getLatePacketCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testDatagramsArrivingWhenAllBuffersAreFullAreCountedAsOverflow()
+      throws IOException, InterruptedException {
+    dataSource = new BufferedUdpDataSource(null, MAX_PACKET_SIZE, /* packetBufferCount= */ 2,
+        /* jitterBufferPacketCount= */ 1, /* maxJitterDelayMs= */ 100, SOCKET_TIMEOUT_MS,
+        BufferedUdpDataSource.RTP_MODE_DISABLED);
+    dataSource.open(new DataSpec(Uri.parse("udp://127.0.0.1:" + port)));
+
+    for (int i = 0; i < 5; i++) {
+      send(new byte[] {(byte) i});
+    }
+    long deadlineMs = System.currentTimeMillis() + SOCKET_TIMEOUT_MS;
+    while (dataSource.getReceivedPacketCount() < 5 && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(10);
+    }
+
+    assertThat(dataSource.getReceivedPacketCount()).isEqualTo(5);
+    assertThat(dataSource.getOverflowPacketCount()).isEqualTo(3);
+    assertThat(readFully(2)).isEqualTo(new byte[] {0, 1});
+  }
+
+  private void send(byte[] data) throws IOException {
+    senderSocket.send(new DatagramPacket(data, data.length, loopbackAddress, port));
+  }
+
+  private byte[] readFully(int length) throws IOException {
+    byte[] data = new byte[length];
+    int bytesRead = 0;
+    while (bytesRead < length) {
+      bytesRead += dataSource.read(data, bytesRead, length - bytesRead);
+    }
+    return data;
+  }
+
+  private static byte[] buildRtpPacket(int sequenceNumber) {
+    byte[] packet = new byte[12 + PAYLOAD_LENGTH];
+    packet[0] = (byte) 0x80; // Version 2, no padding, extension or CSRCs.
+    packet[1] = 33; // MPEG-TS payload type.
+    packet[2] = (byte) (sequenceNumber >> 8);
+    packet[3] = (byte) sequenceNumber;
+    packet[12] = 0x47;
+    packet[13] = (byte) sequenceNumber;
+    return packet;
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.upstream.ConcurrentTransferBandwidthMeter.TrackTypeClassifier;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link ConcurrentTransferBandwidthMeter}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class ConcurrentTransferBandwidthMeterTest {
+
+  private static final Object AUDIO_SOURCE = new Object();
+  private static final Object VIDEO_SOURCE = new Object();
+  private static final DataSpec DATA_SPEC = new DataSpec(Uri.parse("https://test.test"));
+
+  private FakeClock clock;
+  private ConcurrentTransferBandwidthMeter bandwidthMeter;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(0);
+    TrackTypeClassifier trackTypeClassifier = new TrackTypeClassifier() {
+      @Override
+      public int getTrackType(Object source, DataSpec dataSpec) {
+        return source == AUDIO_SOURCE ? C.TRACK_TYPE_AUDIO : C.TRACK_TYPE_VIDEO;
+      }
+    };
+    bandwidthMeter = new ConcurrentTransferBandwidthMeter(null, null, trackTypeClassifier,
+        ConcurrentTransferBandwidthMeter.DEFAULT_MAX_WEIGHT, clock);
+  }
+
+  @Test
+  public void testNoEstimateInitially() {
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(BandwidthMeter.NO_ESTIMATE);
+    assertThat(bandwidthMeter.getBitrateEstimate(C.TRACK_TYPE_AUDIO))
+        .isEqualTo(BandwidthMeter.NO_ESTIMATE);
+  }
+
+  @Test
+  public void testOverlappingTransfersAreTrackedIndependently() {
+    bandwidthMeter.onTransferStart(VIDEO_SOURCE, DATA_SPEC);
+    bandwidthMeter.onTransferStart(AUDIO_SOURCE, DATA_SPEC);
+    assertThat(bandwidthMeter.getActiveTransferCount()).isEqualTo(2);
+
+    bandwidthMeter.onBytesTransferred(VIDEO_SOURCE, 500000);
+    bandwidthMeter.onBytesTransferred(AUDIO_SOURCE, 250000);
+    clock.advanceTime(2000);
+    bandwidthMeter.onTransferEnd(AUDIO_SOURCE);
+
+    // 250000 bytes in 2 seconds for audio, 750000 bytes in 2 seconds across the link.
+    assertThat(bandwidthMeter.getBitrateEstimate(C.TRACK_TYPE_AUDIO)).isEqualTo(1000000);
+    assertThat(bandwidthMeter.getBitrateEstimate(C.TRACK_TYPE_VIDEO))
+        .isEqualTo(BandwidthMeter.NO_ESTIMATE);
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(3000000);
+
+    bandwidthMeter.onBytesTransferred(VIDEO_SOURCE, 500000);
+    clock.advanceTime(1000);
+    bandwidthMeter.onTransferEnd(VIDEO_SOURCE);
+
+    // The video transfer spans its full 3 seconds, not just the time since the audio ended.
+    assertThat(bandwidthMeter.getBitrateEstimate(C.TRACK_TYPE_VIDEO)).isEqualTo(2666666);
+    assertThat(bandwidthMeter.getActiveTransferCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testIdleTimeIsExcludedFromAggregateEstimate() {
+    bandwidthMeter.onTransferStart(VIDEO_SOURCE, DATA_SPEC);
+    bandwidthMeter.onBytesTransferred(VIDEO_SOURCE, 1000000);
+    clock.advanceTime(2000);
+    bandwidthMeter.onTransferEnd(VIDEO_SOURCE);
+    clock.advanceTime(10000);
+    bandwidthMeter.onTransferStart(VIDEO_SOURCE, DATA_SPEC);
+    bandwidthMeter.onBytesTransferred(VIDEO_SOURCE, 1000000);
+    clock.advanceTime(2000);
+    bandwidthMeter.onTransferEnd(VIDEO_SOURCE);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(4000000);
+  }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link LoaderExecutor}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class LoaderExecutorTest {
+
+  private static final long TIMEOUT_MS = 10000;
+
+  private LoaderExecutor loaderExecutor;
+
+  @Before
+  public void setUp() {
+    loaderExecutor = new LoaderExecutor("LoaderExecutorTest", 1);
+  }
+
+  @After
+  public void tearDown() {
+    loaderExecutor.release();
+  }
+
+  @Test
+  public void testSerialExecutorRunsTasksInOrder() throws InterruptedException {
+    ExecutorService serialExecutor = loaderExecutor.createSerialExecutor(C.PRIORITY_PLAYBACK);
+    List<Integer> executionOrder = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      serialExecutor.execute(new RecordingTask(executionOrder, i));
+    }
+    serialExecutor.shutdown();
+
+    assertThat(serialExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(executionOrder).containsExactly(0, 1, 2, 3, 4).inOrder();
+  }
+
+  @Test
+  public void testHigherPriorityTaskStartsFirst() throws InterruptedException {
+    // Tasks below C.PRIORITY_PLAYBACK are queued when the pool is busy.
+    int prefetchPriority = C.PRIORITY_PLAYBACK - 1;
+    ExecutorService blockingExecutor = loaderExecutor.createSerialExecutor(C.PRIORITY_DOWNLOAD);
+    ExecutorService downloadExecutor = loaderExecutor.createSerialExecutor(C.PRIORITY_DOWNLOAD);
+    ExecutorService prefetchExecutor = loaderExecutor.createSerialExecutor(prefetchPriority);
+    final CountDownLatch releaseBlockingTask = new CountDownLatch(1);
+    AwaitingTask blockingTask = new AwaitingTask(releaseBlockingTask);
+    List<Integer> executionOrder = new CopyOnWriteArrayList<>();
+
+    // Occupy the only thread, so that subsequent tasks are queued.
+    blockingExecutor.execute(blockingTask);
+    assertThat(blockingTask.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    downloadExecutor.execute(new RecordingTask(executionOrder, C.PRIORITY_DOWNLOAD));
+    prefetchExecutor.execute(new RecordingTask(executionOrder, prefetchPriority));
+    releaseBlockingTask.countDown();
+    downloadExecutor.shutdown();
+    prefetchExecutor.shutdown();
+
+    assertThat(downloadExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(prefetchExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(executionOrder).containsExactly(prefetchPriority, C.PRIORITY_DOWNLOAD).inOrder();
+  }
+
+  @Test
+  public void testPlaybackTaskStartsWhilePoolIsOccupied() throws InterruptedException {
+    ExecutorService downloadExecutor = loaderExecutor.createSerialExecutor(C.PRIORITY_DOWNLOAD);
+    ExecutorService playbackExecutor = loaderExecutor.createSerialExecutor(C.PRIORITY_PLAYBACK);
+    final CountDownLatch releaseBlockingTask = new CountDownLatch(1);
+    final CountDownLatch playbackTaskRan = new CountDownLatch(1);
+
+    // Occupy the only thread with a task that won't complete until the playback task has run.
+    downloadExecutor.execute(new AwaitingTask(releaseBlockingTask));
+    playbackExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        playbackTaskRan.countDown();
+      }
+    });
+
+    assertThat(playbackTaskRan.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    releaseBlockingTask.countDown();
+  }
+
+  @Test
+  public void testSequentialPlaybackTasksRunOnPool() throws InterruptedException {
+    ExecutorService serialExecutor = loaderExecutor.createSerialExecutor(C.PRIORITY_PLAYBACK);
+    final List<String> threadNames = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      serialExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          threadNames.add(Thread.currentThread().getName());
+        }
+      });
+    }
+    serialExecutor.shutdown();
+
+    assertThat(serialExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    // Each task is started by the previous one as it finishes, which mustn't count as the pool
+    // being busy and spill the task onto an additional thread.
+    assertThat(threadNames).hasSize(5);
+    assertThat(new HashSet<>(threadNames)).containsExactly("LoaderExecutorTest:1");
+  }
+
+  @Test
+  public void testShutdownNowInterruptsActiveTaskAndReturnsPendingTasks()
+      throws InterruptedException {
+    ExecutorService serialExecutor = loaderExecutor.createSerialExecutor(C.PRIORITY_PLAYBACK);
+    final CountDownLatch neverReleased = new CountDownLatch(1);
+    AwaitingTask activeTask = new AwaitingTask(neverReleased);
+    Runnable pendingTask = new RecordingTask(new CopyOnWriteArrayList<Integer>(), 0);
+    serialExecutor.execute(activeTask);
+    serialExecutor.execute(pendingTask);
+    assertThat(activeTask.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+
+    List<Runnable> pendingTasks = serialExecutor.shutdownNow();
+
+    assertThat(pendingTasks).containsExactly(pendingTask);
+    assertThat(serialExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(activeTask.interrupted).isTrue();
+  }
+
+  private static final class AwaitingTask implements Runnable {
+
+    private final CountDownLatch release;
+    private final CountDownLatch started;
+    private volatile boolean interrupted;
+
+    public AwaitingTask(CountDownLatch release) {
+      this.release = release;
+      started = new CountDownLatch(1);
+    }
+
+    @Override
+    public void run() {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+
+  }
+
+  private static final class RecordingTask implements Runnable {
+
+    private final List<Integer> executionOrder;
+    private final int id;
+
+    public RecordingTask(List<Integer> executionOrder, int id) {
+      this.executionOrder = executionOrder;
+      this.id = id;
+    }
+
+    @Override
+    public void run() {
+      executionOrder.add(id);
+    }
+
+  }
+
+}
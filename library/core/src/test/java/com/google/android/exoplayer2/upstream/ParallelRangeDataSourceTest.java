@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.ParallelRangeDataSource.ThroughputTracker;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link ParallelRangeDataSource}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class ParallelRangeDataSourceTest {
+
+  private static final int RANGE_LENGTH = 100;
+  private static final byte[] TEST_DATA = TestUtil.buildTestData(1050);
+  private static final List<Uri> BASE_URIS =
+      Arrays.asList(Uri.parse("http://a.test/"), Uri.parse("http://b.test/"));
+
+  private ExecutorService executorService;
+  private OriginDataSourceFactory upstreamFactory;
+
+  @Before
+  public void setUp() {
+    executorService = Executors.newCachedThreadPool();
+    upstreamFactory = new OriginDataSourceFactory();
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testReadKnownLength() throws IOException {
+    ParallelRangeDataSource dataSource = createDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://a.test/segment"), 0, TEST_DATA.length, null);
+
+    DataSourceAsserts.assertDataSourceContent(dataSource, dataSpec, TEST_DATA);
+    for (Uri openedUri : upstreamFactory.openedUris) {
+      assertThat(openedUri.getPath()).isEqualTo("/segment");
+    }
+  }
+
+  @Test
+  public void testReadUnknownLength() throws IOException {
+    ParallelRangeDataSource dataSource = createDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://b.test/segment"));
+
+    DataSourceAsserts.assertDataSourceContent(dataSource, dataSpec, TEST_DATA);
+  }
+
+  @Test
+  public void testReadWithOffset() throws IOException {
+    ParallelRangeDataSource dataSource = createDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://a.test/segment"), 20, C.LENGTH_UNSET, null);
+
+    DataSourceAsserts.assertDataSourceContent(dataSource, dataSpec,
+        Arrays.copyOfRange(TEST_DATA, 20, TEST_DATA.length));
+  }
+
+  @Test
+  public void testFailingOriginIsCoveredByRemainingOrigin() throws IOException {
+    upstreamFactory.failingBaseUri = "http://b.test/";
+    ParallelRangeDataSource dataSource = createDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://a.test/segment"), 0, TEST_DATA.length, null);
+
+    DataSourceAsserts.assertDataSourceContent(dataSource, dataSpec, TEST_DATA);
+  }
+
+  @Test
+  public void testUnknownOriginIsReadDirectly() throws IOException {
+    ParallelRangeDataSource dataSource = createDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://c.test/segment"), 0, TEST_DATA.length, null);
+
+    DataSourceAsserts.assertDataSourceContent(dataSource, dataSpec, TEST_DATA);
+    assertThat(upstreamFactory.openedUris).containsExactly(Uri.parse("http://c.test/segment"));
+  }
+
+  @Test
+  public void testRangeLengthFollowsThroughput() {
+    ThroughputTracker throughputTracker = new ThroughputTracker(2);
+    assertThat(throughputTracker.getRangeLength(0, RANGE_LENGTH)).isEqualTo(RANGE_LENGTH);
+
+    throughputTracker.onRangeTransferred(0, 3000, 1000);
+    throughputTracker.onRangeTransferred(1, 1000, 1000);
+
+    assertThat(throughputTracker.getRangeLength(0, RANGE_LENGTH)).isEqualTo(150);
+    assertThat(throughputTracker.getRangeLength(1, RANGE_LENGTH)).isEqualTo(50);
+  }
+
+  private ParallelRangeDataSource createDataSource() {
+    return new ParallelRangeDataSource(upstreamFactory, BASE_URIS, executorService,
+        new ThroughputTracker(BASE_URIS.size()), RANGE_LENGTH, 2 * RANGE_LENGTH);
+  }
+
+  /**
+   * Creates data sources that serve {@link #TEST_DATA} for any URI, except for URIs starting with
+   * {@link #failingBaseUri}.
+   */
+  private static final class OriginDataSourceFactory implements DataSource.Factory {
+
+    public final List<Uri> openedUris;
+    public volatile String failingBaseUri;
+
+    public OriginDataSourceFactory() {
+      openedUris = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public DataSource createDataSource() {
+      final DataSource upstream = new ByteArrayDataSource(TEST_DATA);
+      return new DataSource() {
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+          openedUris.add(dataSpec.uri);
+          if (failingBaseUri != null && dataSpec.uri.toString().startsWith(failingBaseUri)) {
+            throw new IOException();
+          }
+          return upstream.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+          return upstream.read(buffer, offset, readLength);
+        }
+
+        @Override
+        public Uri getUri() {
+          return upstream.getUri();
+        }
+
+        @Override
+        public void close() throws IOException {
+          upstream.close();
+        }
+      };
+    }
+
+  }
+
+}
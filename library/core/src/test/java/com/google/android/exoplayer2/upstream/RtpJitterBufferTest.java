@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import java.util.ArrayDeque;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link RtpJitterBuffer}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class RtpJitterBufferTest {
+
+  private static final int CAPACITY = 4;
+  private static final int MAX_DELAY_MS = 100;
+
+  private ArrayDeque<Integer> output;
+  private RtpJitterBuffer<Integer> jitterBuffer;
+
+  @Before
+  public void setUp() {
+    output = new ArrayDeque<>();
+    jitterBuffer = new RtpJitterBuffer<>(CAPACITY, MAX_DELAY_MS, output);
+  }
+
+  @Test
+  public void testInOrderPacketsAreReleasedImmediately() {
+    add(10, 11, 12);
+
+    assertThat(output).containsExactly(10, 11, 12).inOrder();
+    assertThat(jitterBuffer.getGapDeadlineMs()).isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void testReordersPackets() {
+    add(10, 12, 13);
+    assertThat(output).containsExactly(10);
+    assertThat(jitterBuffer.getGapDeadlineMs()).isEqualTo(MAX_DELAY_MS);
+
+    add(11);
+
+    assertThat(output).containsExactly(10, 11, 12, 13).inOrder();
+    assertThat(jitterBuffer.getLostPacketCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testReordersPacketsAcrossSequenceNumberWraparound() {
+    add(65534, 0, 65535, 1);
+
+    assertThat(output).containsExactly(65534, 65535, 0, 1).inOrder();
+    assertThat(jitterBuffer.getLostPacketCount()).isEqualTo(0);
+    assertThat(jitterBuffer.getLatePacketCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testResynchronizesAfterLargeJump() {
+    add(10, 12);
+    add(10 + 2 * CAPACITY + 1, 10 + 2 * CAPACITY + 2);
+
+    // The held packet is released before the packets of the new sequence, and the jump itself
+    // isn't counted as loss.
+    assertThat(output).containsExactly(10, 12, 19, 20).inOrder();
+    assertThat(jitterBuffer.getLostPacketCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testDropsLateAndDuplicatePackets() {
+    add(10, 11, 13);
+
+    assertThat(jitterBuffer.add(9, 9, 0)).isFalse();
+    assertThat(jitterBuffer.add(11, 11, 0)).isFalse();
+    assertThat(jitterBuffer.add(13, 13, 0)).isFalse();
+
+    assertThat(output).containsExactly(10, 11).inOrder();
+    assertThat(jitterBuffer.getLatePacketCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void testSkipsGapAfterMaxDelay() {
+    add(10, 12);
+
+    assertThat(jitterBuffer.maybeSkipGap(MAX_DELAY_MS - 1)).isFalse();
+    assertThat(output).containsExactly(10);
+    assertThat(jitterBuffer.maybeSkipGap(MAX_DELAY_MS)).isTrue();
+
+    assertThat(output).containsExactly(10, 12).inOrder();
+    assertThat(jitterBuffer.getLostPacketCount()).isEqualTo(1);
+    // The missing packet arrives after its position has been skipped.
+    assertThat(jitterBuffer.add(11, 11, MAX_DELAY_MS)).isFalse();
+    assertThat(jitterBuffer.getLatePacketCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSkipsGapThatNoLongerFitsInBuffer() {
+    add(10, 12, 13, 14);
+    assertThat(output).containsExactly(10);
+
+    // Holding this packet requires the buffer to move past the missing packet.
+    add(15);
+
+    assertThat(output).containsExactly(10, 12, 13, 14, 15).inOrder();
+    assertThat(jitterBuffer.getLostPacketCount()).isEqualTo(1);
+  }
+
+  private void add(int... sequenceNumbers) {
+    for (int sequenceNumber : sequenceNumbers) {
+      assertThat(jitterBuffer.add(sequenceNumber, sequenceNumber, /* nowMs= */ 0)).isTrue();
+    }
+  }
+
+}
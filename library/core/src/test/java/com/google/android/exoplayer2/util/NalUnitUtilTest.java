@@ -58,6 +58,25 @@ public final class NalUnitUtilTest {
     assertThat(result).isEqualTo(data.length);
   }
 
+  @Test
+  public void testFindNalUnitInLongData() {
+    for (int nalPosition = 0; nalPosition < 40; nalPosition++) {
+      byte[] data = new byte[48];
+      Arrays.fill(data, (byte) 0x80);
+      // Add a zero byte that isn't part of a prefix before the NAL unit.
+      data[nalPosition / 2] = 0x00;
+      data[nalPosition] = 0x00;
+      data[nalPosition + 1] = 0x00;
+      data[nalPosition + 2] = 0x01;
+
+      int result = NalUnitUtil.findNalUnit(data, 0, data.length, null);
+      assertThat(result).isEqualTo(nalPosition);
+      // Shouldn't find NAL unit whose prefix ends at the limit.
+      result = NalUnitUtil.findNalUnit(data, 0, nalPosition + 3, null);
+      assertThat(result).isEqualTo(nalPosition + 3);
+    }
+  }
+
   @Test
   public void testFindNalUnitWithPrefix() {
     byte[] data = buildTestData();
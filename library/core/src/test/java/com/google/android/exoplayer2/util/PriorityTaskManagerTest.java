@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link PriorityTaskManager}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class PriorityTaskManagerTest {
+
+  private static final int PRIORITY_PREFETCH = C.PRIORITY_PLAYBACK - 500;
+
+  private FakeClock clock;
+  private PriorityTaskManager priorityTaskManager;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(0);
+    priorityTaskManager = new PriorityTaskManager(clock);
+  }
+
+  @Test
+  public void testHigherPriorityBlocksLowerPriorityByDefault() {
+    priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+    priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_PLAYBACK)).isTrue();
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isFalse();
+    assertThat(priorityTaskManager.getWaitCount(C.PRIORITY_DOWNLOAD)).isEqualTo(1);
+
+    priorityTaskManager.remove(C.PRIORITY_PLAYBACK);
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isTrue();
+  }
+
+  @Test
+  public void testWeightedPrioritiesShareInProportionToWeight() {
+    priorityTaskManager.setWeight(C.PRIORITY_PLAYBACK, 3);
+    priorityTaskManager.setWeight(C.PRIORITY_DOWNLOAD, 1);
+    priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+    priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isTrue();
+    priorityTaskManager.onBytesTransferred(C.PRIORITY_DOWNLOAD, 1024 * 1024);
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isFalse();
+
+    // Playback has to transfer three times as much before the download catches up.
+    priorityTaskManager.onBytesTransferred(C.PRIORITY_PLAYBACK, 2 * 1024 * 1024);
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isFalse();
+    priorityTaskManager.onBytesTransferred(C.PRIORITY_PLAYBACK, 1024 * 1024);
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isTrue();
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_PLAYBACK)).isTrue();
+  }
+
+  @Test
+  public void testUnweightedIntermediatePriorityBlocksWeightedLowerPriority() {
+    priorityTaskManager.setWeight(C.PRIORITY_PLAYBACK, 1);
+    priorityTaskManager.setWeight(C.PRIORITY_DOWNLOAD, 1);
+    priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+    priorityTaskManager.add(PRIORITY_PREFETCH);
+    priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+
+    assertThat(priorityTaskManager.proceedNonBlocking(PRIORITY_PREFETCH)).isFalse();
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isFalse();
+
+    priorityTaskManager.remove(PRIORITY_PREFETCH);
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isTrue();
+  }
+
+  @Test
+  public void testNewlyRegisteredPriorityDoesNotClaimPastShare() {
+    priorityTaskManager.setWeight(C.PRIORITY_PLAYBACK, 1);
+    priorityTaskManager.setWeight(C.PRIORITY_DOWNLOAD, 1);
+    priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+    priorityTaskManager.onBytesTransferred(C.PRIORITY_PLAYBACK, 10 * 1024 * 1024);
+
+    priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+    priorityTaskManager.onBytesTransferred(C.PRIORITY_DOWNLOAD, 1024 * 1024);
+
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isFalse();
+  }
+
+  @Test
+  public void testBandwidthQuotaLimitsHighestPriority() {
+    priorityTaskManager.setBandwidthQuota(C.PRIORITY_DOWNLOAD, 8000);
+    priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isTrue();
+    priorityTaskManager.onBytesTransferred(C.PRIORITY_DOWNLOAD, 1500);
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isFalse();
+
+    clock.advanceTime(499);
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isFalse();
+    clock.advanceTime(1);
+    assertThat(priorityTaskManager.proceedNonBlocking(C.PRIORITY_DOWNLOAD)).isTrue();
+    assertThat(priorityTaskManager.getBytesTransferred(C.PRIORITY_DOWNLOAD)).isEqualTo(1500);
+  }
+
+  @Test
+  public void testProceedRecordsWaitTime() throws InterruptedException {
+    priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+    priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+    final Thread waitingThread = Thread.currentThread();
+    Thread playbackTask = new Thread() {
+      @Override
+      public void run() {
+        while (waitingThread.getState() != State.WAITING) {
+          Thread.yield();
+        }
+        clock.advanceTime(1000);
+        priorityTaskManager.remove(C.PRIORITY_PLAYBACK);
+      }
+    };
+    playbackTask.start();
+
+    priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
+
+    playbackTask.join();
+    assertThat(priorityTaskManager.getWaitCount(C.PRIORITY_DOWNLOAD)).isEqualTo(1);
+    assertThat(priorityTaskManager.getWaitTimeMs(C.PRIORITY_DOWNLOAD)).isEqualTo(1000);
+  }
+
+}
@@ -344,6 +344,14 @@ public final class PlayerEmsgHandler implements Handler.Callback {
       parseAndDiscardSamples();
     }
 
+    @Override
+    public void sampleMetadataBatch(int sampleCount, long[] timesUs, int[] flags, int[] sizes,
+        int[] offsets, CryptoData[] encryptionDatas) {
+      sampleQueue.sampleMetadataBatch(sampleCount, timesUs, flags, sizes, offsets,
+          encryptionDatas);
+      parseAndDiscardSamples();
+    }
+
     /**
      * For live streaming, check if the DASH manifest is expired before the next segment start time.
      * If it is, the DASH media source will be notified to refresh the manifest.
@@ -97,6 +97,14 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
     cryptoDatas.add(cryptoData);
   }
 
+  @Override
+  public void sampleMetadataBatch(int sampleCount, long[] timesUs, int[] flags, int[] sizes,
+      int[] offsets, CryptoData[] cryptoDatas) {
+    for (int i = 0; i < sampleCount; i++) {
+      sampleMetadata(timesUs[i], flags[i], sizes[i], offsets[i], cryptoDatas[i]);
+    }
+  }
+
   public void assertSampleCount(int count) {
     assertThat(sampleTimesUs).hasSize(count);
   }
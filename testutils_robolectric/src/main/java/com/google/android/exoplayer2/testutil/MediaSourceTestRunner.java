@@ -24,6 +24,7 @@ import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
 import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.PlayerMessage;
 import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.source.MediaPeriod;
@@ -68,6 +69,24 @@ public class MediaSourceTestRunner {
     timelines = new LinkedBlockingDeque<>();
   }
 
+  /**
+   * Sets the repeat mode returned by the player passed to the source.
+   *
+   * @param repeatMode The repeat mode.
+   */
+  public void setRepeatMode(@Player.RepeatMode int repeatMode) {
+    player.setRepeatMode(repeatMode);
+  }
+
+  /**
+   * Sets whether shuffling is enabled for the player passed to the source.
+   *
+   * @param shuffleModeEnabled Whether shuffling is enabled.
+   */
+  public void setShuffleModeEnabled(boolean shuffleModeEnabled) {
+    player.setShuffleModeEnabled(shuffleModeEnabled);
+  }
+
   /**
    * Runs the provided {@link Runnable} on the playback thread, blocking until execution completes.
    *
@@ -296,10 +315,33 @@ public class MediaSourceTestRunner {
 
     private final Handler handler;
 
+    private volatile @RepeatMode int repeatMode;
+    private volatile boolean shuffleModeEnabled;
+
     public EventHandlingExoPlayer(Looper looper) {
       this.handler = new Handler(looper, this);
     }
 
+    @Override
+    public void setRepeatMode(@RepeatMode int repeatMode) {
+      this.repeatMode = repeatMode;
+    }
+
+    @Override
+    public @RepeatMode int getRepeatMode() {
+      return repeatMode;
+    }
+
+    @Override
+    public void setShuffleModeEnabled(boolean shuffleModeEnabled) {
+      this.shuffleModeEnabled = shuffleModeEnabled;
+    }
+
+    @Override
+    public boolean getShuffleModeEnabled() {
+      return shuffleModeEnabled;
+    }
+
     @Override
     public PlayerMessage createMessage(PlayerMessage.Target target) {
       return new PlayerMessage(